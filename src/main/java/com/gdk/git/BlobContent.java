@@ -0,0 +1,259 @@
+package com.gdk.git;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.IO;
+
+/**
+ * The content of a blob which is streamed instead of being loaded into the
+ * heap. The content, or a byte range of it for HTTP range requests, is copied
+ * to an output stream or a channel through a small buffer, so a raw view of a
+ * huge file does not allocate the file.
+ * <p>
+ * Whether the blob is binary is detected from its first chunk only. The blobs
+ * which are loaded into the heap, by {@link #getBytes} and by
+ * {@link JGitUtils#getByteContent}, are bounded by the heap limit.
+ */
+public class BlobContent {
+
+    /**
+     * The default maximum size in bytes of a blob which is loaded into the
+     * heap, the same as the default stream file threshold of JGit.
+     */
+    public static final int DEFAULT_HEAP_LIMIT = 50 * 1024 * 1024;
+
+    /**
+     * The size of the first chunk which is read to detect binary content, the
+     * same as git.
+     */
+    static final int FIRST_CHUNK = 8000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static volatile int heapLimit = DEFAULT_HEAP_LIMIT;
+
+    private final ObjectId id;
+
+    private final ObjectLoader loader;
+
+    private byte[] firstChunk;
+
+    private BlobContent(AnyObjectId id, ObjectLoader loader) {
+        this.id = id.copy();
+        this.loader = loader;
+    }
+
+    /**
+     * Sets the maximum size in bytes of a blob which is loaded into the heap.
+     *
+     * @param limit
+     */
+    public static void setHeapLimit(int limit) {
+        heapLimit = limit;
+    }
+
+    /**
+     * @return the maximum size in bytes of a blob which is loaded into the
+     *         heap
+     */
+    public static int getHeapLimit() {
+        return heapLimit;
+    }
+
+    /**
+     * Opens the content of a blob.
+     *
+     * @param repository
+     * @param objectId
+     * @return the content
+     * @throws IOException if the blob is missing
+     */
+    public static BlobContent open(Repository repository, AnyObjectId objectId) throws IOException {
+        return new BlobContent(objectId, repository.open(objectId, org.eclipse.jgit.lib.Constants.OBJ_BLOB));
+    }
+
+    /**
+     * Opens the content of a file in the specified tree.
+     *
+     * @param repository
+     * @param tree       if null, the RevTree from HEAD is assumed.
+     * @param path
+     * @return the content or null if the file does not exist
+     * @throws IOException
+     */
+    public static BlobContent open(Repository repository, RevTree tree, String path) throws IOException {
+        if (tree == null) {
+            ObjectId object;
+            try {
+                object = JGitUtils.getDefaultBranch(repository);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            if (object == null) {
+                return null;
+            }
+            try (RevWalk rw = new RevWalk(repository)) {
+                tree = rw.parseCommit(object).getTree();
+            }
+        }
+        try (TreeWalk tw = new TreeWalk(repository)) {
+            tw.setFilter(PathFilterGroup.createFromStrings(Collections.singleton(path)));
+            tw.reset(tree);
+            while (tw.next()) {
+                if (tw.isSubtree() && !path.equals(tw.getPathString())) {
+                    tw.enterSubtree();
+                    continue;
+                }
+                if (!tw.isSubtree() && tw.getFileMode(0) != FileMode.GITLINK) {
+                    return open(repository, tw.getObjectId(0));
+                }
+            }
+        }
+        return null;
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public long getSize() {
+        return loader.getSize();
+    }
+
+    /**
+     * Returns true if the first chunk of the blob contains a NUL byte or a
+     * lone carriage return, like {@link RawText#isBinary}.
+     *
+     * @return true if the blob is binary
+     * @throws IOException
+     */
+    public boolean isBinary() throws IOException {
+        byte[] chunk = getFirstChunk();
+        return RawText.isBinary(chunk, chunk.length, chunk.length == getSize());
+    }
+
+    private byte[] getFirstChunk() throws IOException {
+        if (firstChunk == null) {
+            int length = (int) Math.min(FIRST_CHUNK, getSize());
+            byte[] chunk = new byte[length];
+            try (InputStream in = loader.openStream()) {
+                IO.readFully(in, chunk, 0, length);
+            }
+            firstChunk = chunk;
+        }
+        return firstChunk;
+    }
+
+    /**
+     * Loads the whole blob into the heap.
+     *
+     * @return the content
+     * @throws LargeObjectException if the blob exceeds the heap limit
+     * @throws IOException
+     */
+    public byte[] getBytes() throws IOException {
+        return loader.getCachedBytes(heapLimit);
+    }
+
+    /**
+     * Copies the whole blob to the output stream.
+     *
+     * @param out
+     * @return the number of copied bytes
+     * @throws IOException
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        return writeTo(out, 0, -1);
+    }
+
+    /**
+     * Copies a byte range of the blob to the output stream.
+     *
+     * @param out
+     * @param offset the first byte of the range
+     * @param length the length of the range, if < 0 or beyond the end of the
+     *               blob the range ends with the blob
+     * @return the number of copied bytes
+     * @throws IOException
+     */
+    public long writeTo(OutputStream out, long offset, long length) throws IOException {
+        return copy(offset, length, (buffer, off, count) -> out.write(buffer, off, count));
+    }
+
+    /**
+     * Copies a byte range of the blob to the channel.
+     *
+     * @param channel
+     * @param offset  the first byte of the range
+     * @param length  the length of the range, if < 0 or beyond the end of the
+     *                blob the range ends with the blob
+     * @return the number of copied bytes
+     * @throws IOException
+     */
+    public long writeTo(WritableByteChannel channel, long offset, long length) throws IOException {
+        return copy(offset, length, (buffer, off, count) -> {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, off, count);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        });
+    }
+
+    /**
+     * Writes a chunk of the blob.
+     */
+    private interface Sink {
+
+        void write(byte[] buffer, int offset, int count) throws IOException;
+    }
+
+    private long copy(long offset, long length, Sink sink) throws IOException {
+        long size = getSize();
+        if (offset < 0 || offset > size) {
+            throw new IndexOutOfBoundsException("offset " + offset + " is outside of blob " + id.name()
+                    + " of size " + size);
+        }
+        long remaining = length < 0 ? size - offset : Math.min(length, size - offset);
+        if (!loader.isLarge()) {
+            // the blob is below the stream threshold and already in the heap
+            sink.write(loader.getCachedBytes(), (int) offset, (int) remaining);
+            return remaining;
+        }
+        if (firstChunk != null && offset + remaining <= firstChunk.length) {
+            sink.write(firstChunk, (int) offset, (int) remaining);
+            return remaining;
+        }
+        long copied = 0;
+        try (InputStream in = loader.openStream()) {
+            IO.skipFully(in, offset);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (copied < remaining) {
+                int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining - copied));
+                if (count < 0) {
+                    break;
+                }
+                sink.write(buffer, 0, count);
+                copied += count;
+            }
+        }
+        return copied;
+    }
+}
@@ -0,0 +1,231 @@
+package com.gdk.git;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.Pack;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Reads the sizes of blobs and whether they are filestore pointers in one
+ * pass. The blobs are read in the order of their offsets in the packs through
+ * a single object reader, so a folder with thousands of files is probed with
+ * one sequential read of the pack instead of two random reads per file.
+ * <p>
+ * Blobs are immutable, so the probes are memoized by blob id for all
+ * repositories. The memo is bounded by a number of blobs and evicts the least
+ * recently used probes.
+ */
+public class BlobProber {
+
+    private static final BlobProber instance;
+
+    public static final long DEFAULT_SIZE = 1_000_000;
+
+    private final Logger logger = LoggerFactory.getLogger(BlobProber.class);
+
+    protected volatile ObjectCache<Probe> cache;
+
+    static {
+        instance = new BlobProber();
+    }
+
+    public static BlobProber instance() {
+        return instance;
+    }
+
+    protected BlobProber() {
+        this.cache = new ObjectCache<Probe>(DEFAULT_SIZE);
+    }
+
+    /**
+     * Sets the maximum number of memoized probes, the memoized probes are
+     * discarded.
+     *
+     * @param size
+     */
+    public synchronized void setCacheSize(long size) {
+        this.cache = new ObjectCache<Probe>(size);
+    }
+
+    /**
+     * The size of a blob and its filestore pointer.
+     */
+    public static class Probe {
+
+        /**
+         * The size of the blob.
+         */
+        public final long size;
+
+        private final String oid;
+
+        private final long filestoreSize;
+
+        Probe(long size, FilestoreModel filestoreItem) {
+            this.size = size;
+            this.oid = filestoreItem == null ? null : filestoreItem.oid;
+            this.filestoreSize = filestoreItem == null ? 0 : filestoreItem.getSize();
+        }
+
+        /**
+         * @return true if the blob is a filestore pointer
+         */
+        public boolean isFilestoreItem() {
+            return oid != null;
+        }
+
+        /**
+         * Returns a new filestore item for every call, filestore items are
+         * mutable.
+         *
+         * @return the filestore item of the pointer or null
+         */
+        public FilestoreModel getFilestoreItem() {
+            return oid == null ? null : new FilestoreModel(oid, filestoreSize);
+        }
+    }
+
+    /**
+     * Probes a blob.
+     *
+     * @param repository
+     * @param reader     a reader of the repository
+     * @param blob
+     * @return the probe or null if the blob is missing
+     */
+    public Probe probe(Repository repository, ObjectReader reader, AnyObjectId blob) {
+        return probe(repository, reader, Collections.singleton(blob)).get(blob);
+    }
+
+    /**
+     * Probes blobs in the order of their pack offsets. The blobs which are
+     * missing or can not be read are missing from the result.
+     *
+     * @param repository
+     * @param reader     a reader of the repository
+     * @param blobs
+     * @return the probes by blob id
+     */
+    public Map<ObjectId, Probe> probe(Repository repository, ObjectReader reader,
+            Collection<? extends AnyObjectId> blobs) {
+        Map<ObjectId, Probe> probes = new HashMap<ObjectId, Probe>();
+        Set<ObjectId> unknown = new LinkedHashSet<ObjectId>();
+        for (AnyObjectId blob : blobs) {
+            if (blob == null || ObjectId.zeroId().equals(blob) || probes.containsKey(blob)) {
+                continue;
+            }
+            Probe probe = cache.getIfCurrent(blob.name(), 0);
+            if (probe != null) {
+                probes.put(blob.copy(), probe);
+            } else {
+                unknown.add(blob.copy());
+            }
+        }
+        if (unknown.isEmpty()) {
+            return probes;
+        }
+        for (ObjectId blob : sortByOffset(repository, unknown)) {
+            try {
+                long size = reader.getObjectSize(blob, org.eclipse.jgit.lib.Constants.OBJ_BLOB);
+                FilestoreModel filestoreItem = null;
+                if (JGitUtils.isPossibleFilestoreItem(size)) {
+                    filestoreItem = readFilestoreItem(reader.open(blob, org.eclipse.jgit.lib.Constants.OBJ_BLOB));
+                }
+                Probe probe = new Probe(size, filestoreItem);
+                cache.put(blob.name(), 0, probe);
+                probes.put(blob, probe);
+            } catch (MissingObjectException e) {
+                // not a blob of this repository
+            } catch (IOException e) {
+                logger.error("failed to probe blob " + blob.name(), e);
+            }
+        }
+        return probes;
+    }
+
+    private static FilestoreModel readFilestoreItem(ObjectLoader loader) throws IOException {
+        try {
+            byte[] blob = loader.getCachedBytes(com.gdk.git.Constants.LEN_FILESTORE_META_MAX);
+            return FilestoreModel.fromMetaString(new String(blob, StandardCharsets.UTF_8));
+        } catch (LargeObjectException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sorts blobs by their pack and their offset in the pack, loose blobs and
+     * blobs of other object databases are read last.
+     */
+    private static List<ObjectId> sortByOffset(Repository repository, Set<ObjectId> blobs) {
+        if (blobs.size() < 2 || !(repository.getObjectDatabase() instanceof ObjectDirectory)) {
+            return new ArrayList<ObjectId>(blobs);
+        }
+        final Map<ObjectId, long[]> positions = new HashMap<ObjectId, long[]>();
+        int index = 0;
+        for (Pack pack : ((ObjectDirectory) repository.getObjectDatabase()).getPacks()) {
+            try {
+                for (ObjectId blob : blobs) {
+                    if (positions.containsKey(blob)) {
+                        continue;
+                    }
+                    long offset = pack.getIndex().findOffset(blob);
+                    if (offset >= 0) {
+                        positions.put(blob, new long[] { index, offset });
+                    }
+                }
+            } catch (IOException e) {
+                // the pack is read in the order of the ids
+            }
+            index++;
+        }
+        final long[] loose = { Long.MAX_VALUE, Long.MAX_VALUE };
+        List<ObjectId> sorted = new ArrayList<ObjectId>(blobs);
+        sorted.sort((a, b) -> {
+            long[] pa = positions.getOrDefault(a, loose);
+            long[] pb = positions.getOrDefault(b, loose);
+            int c = Long.compare(pa[0], pb[0]);
+            return c != 0 ? c : Long.compare(pa[1], pb[1]);
+        });
+        return sorted;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of memoized probes
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the memo.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -0,0 +1,81 @@
+package com.gdk.git;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Includes the entries which differ on one of the paths, like the tree filter
+ * {@code AndTreeFilter.create(PathFilterGroup, TreeFilter.ANY_DIFF)}.
+ * <p>
+ * The tree filter of a RevWalk consults the changed-path Bloom filters of the
+ * commit-graph with the paths of its tree filter. An AndTreeFilter does not
+ * expose the paths of its path filter, so the Bloom filters are never used.
+ * This filter exposes its paths, the RevWalk skips the tree diff of every
+ * commit whose Bloom filter rules out the paths. The history is simplified
+ * like before, a merge follows the parent it has the same paths as.
+ */
+public class ChangedPathTreeFilter extends TreeFilter {
+
+    private final Collection<String> names;
+
+    private final Set<byte[]> paths;
+
+    private final TreeFilter filter;
+
+    public ChangedPathTreeFilter(Collection<String> paths) {
+        this.names = paths;
+        this.paths = new HashSet<byte[]>();
+        for (String path : paths) {
+            // the Bloom filters store the paths without trailing slashes
+            String name = path;
+            while (name.endsWith("/")) {
+                name = name.substring(0, name.length() - 1);
+            }
+            this.paths.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+        this.filter = AndTreeFilter.create(PathFilterGroup.createFromStrings(paths), TreeFilter.ANY_DIFF);
+    }
+
+    @Override
+    public boolean include(TreeWalk walker)
+            throws MissingObjectException, IncorrectObjectTypeException, IOException {
+        return filter.include(walker);
+    }
+
+    @Override
+    public int matchFilter(TreeWalk walker)
+            throws MissingObjectException, IncorrectObjectTypeException, IOException {
+        return filter.matchFilter(walker);
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+        return filter.shouldBeRecursive();
+    }
+
+    @Override
+    public Optional<Set<byte[]>> getPathsBestEffort() {
+        return Optional.of(paths);
+    }
+
+    @Override
+    public TreeFilter clone() {
+        return new ChangedPathTreeFilter(names);
+    }
+
+    @Override
+    public String toString() {
+        return filter.toString();
+    }
+}
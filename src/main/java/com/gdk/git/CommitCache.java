@@ -1,22 +1,53 @@
 package com.gdk.git;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
+import org.eclipse.jgit.util.NB;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheStats;
+
 /**
  * Caches repository commits for re-use in the dashboard and activity pages.
+ * <p>
+ * The commits of a branch are cached in the compact columnar form of an
+ * immutable {@link CommitHistory}. A branch is loaded by a single
+ * request at a time and requests of a branch which is being refreshed get the
+ * previously cached commits instead of waiting for the refresh. Repositories
+ * and branches never block each other.
+ * <p>
+ * If a cache folder is set the branch histories are saved to disk and
+ * restored on startup. A restored branch is updated by walking the commits
+ * between its saved tip and the current tip, it is only reloaded if the
+ * branch was not fast-forwarded. The saved files of branches which are no
+ * longer cached, like those of deleted repositories, are removed when the
+ * cache is saved.
  *
  * @author James Moger
  */
@@ -24,8 +55,32 @@ public class CommitCache {
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     private static final CommitCache instance;
-    protected final Map<String, ObjectCache<List<RepositoryCommit>>> cache;
-    protected int cacheDays = -1;
+
+    /**
+     * Separates the repository and the branch in a cache key. It is neither
+     * valid in a ref name nor in a repository path.
+     */
+    private static final char KEY_SEPARATOR = '\0';
+
+    /**
+     * Version of restored branches, it never matches the version of a tip.
+     */
+    private static final long RESTORED = Long.MIN_VALUE;
+
+    private static final String FILE_EXTENSION = ".commits";
+
+    /**
+     * Commits of a branch may be older than their parents by this much, see
+     * {@link #isFastForward(Repository, ObjectId, RevCommit)}.
+     */
+    private static final long CLOCK_SKEW = TimeUnit.DAYS.toMillis(1);
+
+    protected volatile ObjectCache<CommitHistory> cache;
+    protected volatile File cacheFolder;
+    protected final Set<String> modified = ConcurrentHashMap.newKeySet();
+    protected final Set<String> removed = ConcurrentHashMap.newKeySet();
+    protected final Set<String> restored = ConcurrentHashMap.newKeySet();
+    protected volatile int cacheDays = -1;
 
     public static CommitCache instance() {
         return instance;
@@ -36,7 +91,30 @@ public class CommitCache {
     }
 
     protected CommitCache() {
-        cache = new HashMap<>();
+        cache = newCache(128 * 1024 * 1024);
+    }
+
+    private static ObjectCache<CommitHistory> newCache(long budget) {
+        return new ObjectCache<CommitHistory>(budget,
+                (key, history) -> (int) Math.min(Integer.MAX_VALUE, history.getWeight()));
+    }
+
+    private static String getKey(String repositoryName, String branch) {
+        return repositoryName.toLowerCase() + KEY_SEPARATOR + branch.toLowerCase();
+    }
+
+    /**
+     * The cached commits of a branch are current as long as the branch points
+     * to the same tip. The commit time has a precision of seconds, so the
+     * leading bytes of the tip id are used instead.
+     */
+    private static long getVersion(RevCommit tip) {
+        if (tip == null) {
+            return 0;
+        }
+        byte[] id = new byte[org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH];
+        tip.copyRawTo(id, 0);
+        return NB.decodeInt64(id, 0);
     }
 
     /**
@@ -66,13 +144,42 @@ public class CommitCache {
         clear();
     }
 
+    /**
+     * Sets the approximate memory budget of the cache in bytes. The least
+     * recently used branches are evicted when the budget is exceeded.
+     *
+     * @param budget
+     */
+    public synchronized void setCacheBudget(long budget) {
+        this.cache = newCache(budget);
+    }
+
+    /**
+     * Sets the folder where the cache is saved.
+     *
+     * @param folder
+     */
+    public void setCacheFolder(File folder) {
+        this.cacheFolder = folder;
+    }
+
+    /**
+     * Returns the hit, miss, eviction and load time statistics of the cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
     /**
      * Clears the entire commit cache.
      */
     public void clear() {
-        synchronized (cache) {
-            cache.clear();
-        }
+        Set<String> keys = cache.keys();
+        cache.clear();
+        restored.clear();
+        removed.addAll(keys);
     }
 
     /**
@@ -81,10 +188,14 @@ public class CommitCache {
      * @param repositoryName
      */
     public void clear(String repositoryName) {
-        String repoKey = repositoryName.toLowerCase();
+        String prefix = repositoryName.toLowerCase() + KEY_SEPARATOR;
         boolean hadEntries = false;
-        synchronized (cache) {
-            hadEntries = cache.remove(repoKey) != null;
+        for (String key : cache.keys()) {
+            if (key.startsWith(prefix) && cache.remove(key) != null) {
+                restored.remove(key);
+                removed.add(key);
+                hadEntries = true;
+            }
         }
         if (hadEntries) {
             logger.info(MessageFormat.format("{0} commit cache cleared", repositoryName));
@@ -98,16 +209,13 @@ public class CommitCache {
      * @param branch
      */
     public void clear(String repositoryName, String branch) {
-        String repoKey = repositoryName.toLowerCase();
-        boolean hadEntries = false;
-        synchronized (cache) {
-            ObjectCache<List<RepositoryCommit>> repoCache = cache.get(repoKey);
-            if (repoCache != null) {
-                List<RepositoryCommit> commits = repoCache.remove(branch.toLowerCase());
-                hadEntries = commits != null && !commits.isEmpty();
-            }
+        String key = getKey(repositoryName, branch);
+        CommitHistory commits = cache.remove(key);
+        if (commits != null) {
+            restored.remove(key);
+            removed.add(key);
         }
-        if (hadEntries) {
+        if (commits != null && !commits.isEmpty()) {
             logger.info(MessageFormat.format("{0}:{1} commit cache cleared", repositoryName, branch));
         }
     }
@@ -141,57 +249,38 @@ public class CommitCache {
         List<RepositoryCommit> list;
         if (cacheDays > 0 && (sinceDate.getTime() >= cacheCutoffDate.getTime())) {
             // request fits within the cache window
-            String repoKey = repositoryName.toLowerCase();
-            String branchKey = branch.toLowerCase();
+            String key = getKey(repositoryName, branch);
 
             RevCommit tip = JGitUtils.getCommit(repository, branch);
-            Date tipDate = JGitUtils.getCommitDate(tip);
-
-            ObjectCache<List<RepositoryCommit>> repoCache;
-            synchronized (cache) {
-                repoCache = cache.get(repoKey);
-                if (repoCache == null) {
-                    repoCache = new ObjectCache<>();
-                    cache.put(repoKey, repoCache);
-                }
-            }
-            synchronized (repoCache) {
-                List<RepositoryCommit> commits;
-                if (!repoCache.hasCurrent(branchKey, tipDate)) {
-                    commits = repoCache.getObject(branchKey);
-                    if (commits == null || commits.isEmpty()) {
-                        // we don't have any cached commits for this branch, reload
-                        commits = get(repositoryName, repository, branch, cacheCutoffDate);
-                        repoCache.updateObject(branchKey, tipDate, commits);
-                        logger.debug(MessageFormat.format("parsed {0} commits from {1}:{2} since {3,date,yyyy-MM-dd} in {4} msecs",
-                                commits.size(), repositoryName, branch, cacheCutoffDate, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
-                    } else {
-                        // incrementally update cache since the last cached commit
-                        ObjectId sinceCommit = commits.get(0).getId();
-                        List<RepositoryCommit> incremental = get(repositoryName, repository, branch, sinceCommit);
-                        logger.info(MessageFormat.format("incrementally added {0} commits to cache for {1}:{2} in {3} msecs",
-                                incremental.size(), repositoryName, branch, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
-                        incremental.addAll(commits);
-                        repoCache.updateObject(branchKey, tipDate, incremental);
-                        commits = incremental;
-                    }
-                } else {
-                    // cache is current
-                    commits = repoCache.getObject(branchKey);
-                    // evict older commits outside the cache window
-                    commits = reduce(commits, cacheCutoffDate);
-                    // update cache
-                    repoCache.updateObject(branchKey, tipDate, commits);
-                }
 
-                if (sinceDate.equals(cacheCutoffDate)) {
-                    // Mustn't hand out the cached list; that's not thread-safe
-                    list = new ArrayList<>(commits);
-                } else {
-                    // reduce the commits to those since the specified date
-                    list = reduce(commits, sinceDate);
+            CommitHistory commits = cache.get(key, getVersion(tip), previous -> {
+                modified.add(key);
+                // only a restored branch is checked for a rewrite, it may have
+                // been rewritten while the server was down; the branches which
+                // were loaded since the start are updated incrementally
+                boolean wasRestored = restored.remove(key);
+                if (previous == null || previous.isEmpty()
+                        || (wasRestored && !isFastForward(repository, previous.getId(0), tip))) {
+                    // we don't have any cached commits for this branch or the
+                    // branch was rewritten, reload
+                    CommitHistory loaded = load(repository, JGitUtils.getRevLog(repository, branch, cacheCutoffDate),
+                            null, cacheCutoffDate);
+                    logger.debug(MessageFormat.format("parsed {0} commits from {1}:{2} since {3,date,yyyy-MM-dd} in {4} msecs",
+                            loaded.size(), repositoryName, branch, cacheCutoffDate, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                    return loaded;
                 }
-            }
+                // incrementally update cache since the last cached commit
+                ObjectId sinceCommit = previous.getId(0);
+                List<RevCommit> incremental = JGitUtils.getRevLog(repository, sinceCommit.getName(), branch);
+                logger.info(MessageFormat.format("incrementally added {0} commits to cache for {1}:{2} in {3} msecs",
+                        incremental.size(), repositoryName, branch, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                return load(repository, incremental, previous, cacheCutoffDate);
+            }, true);
+
+            // create views of the commits since the specified date, this also
+            // skips commits which have left the cache window since the branch
+            // was loaded
+            list = commits.getCommits(repositoryName, branch, sinceDate);
             logger.debug(MessageFormat.format("retrieved {0} commits from cache of {1}:{2} since {3,date,yyyy-MM-dd} in {4} msecs",
                     list.size(), repositoryName, branch, sinceDate, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
         } else {
@@ -204,39 +293,197 @@ public class CommitCache {
     }
 
     /**
-     * Returns a list of commits for the specified repository branch.
+     * Builds the history of a branch from new commits and the commits of the
+     * previous history which are within the cache window.
      *
-     * @param repositoryName
      * @param repository
-     * @param branch
-     * @param sinceDate
-     * @return a list of commits
+     * @param revLog the new commits
+     * @param previous the previous history or null
+     * @param cutoffDate
+     * @return the history
      */
-    protected List<RepositoryCommit> get(String repositoryName, Repository repository, String branch, Date sinceDate) {
+    protected CommitHistory load(Repository repository, List<RevCommit> revLog, CommitHistory previous, Date cutoffDate) {
         Map<ObjectId, List<RefModel>> allRefs = JGitUtils.getAllRefs(repository, false);
-        List<RevCommit> revLog = JGitUtils.getRevLog(repository, branch, sinceDate);
-        List<RepositoryCommit> commits = new ArrayList<RepositoryCommit>(revLog.size());
+        CommitHistory.Builder builder = new CommitHistory.Builder();
         for (RevCommit commit : revLog) {
-            RepositoryCommit commitModel = new RepositoryCommit(repositoryName, branch, commit);
-            List<RefModel> commitRefs = allRefs.get(commitModel.getId());
-            commitModel.setRefs(commitRefs);
-            commits.add(commitModel);
+            builder.add(commit, allRefs.get(commit.getId()));
         }
-        return commits;
+        if (previous != null) {
+            // evict older commits outside the cache window and attach the
+            // current refs, restored histories have none
+            long cutoff = cutoffDate.getTime();
+            for (int i = 0; i < previous.size(); i++) {
+                if (previous.getCommitTime(i) >= cutoff) {
+                    builder.add(previous, i, allRefs.get(previous.getId(i)));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns true if the previous tip of a branch is an ancestor of its
+     * current tip. The walk stops at commits which are older than the
+     * previous tip, allowing for some clock skew, so a rewritten branch is
+     * recognized without walking its entire history. Commits with a larger
+     * skew cause an unnecessary reload. If both tips are in the commit-graph
+     * its generation numbers answer without walking any commits.
+     *
+     * @param repository
+     * @param previousTip
+     * @param tip
+     * @return true if the branch was fast-forwarded
+     */
+    protected boolean isFastForward(Repository repository, ObjectId previousTip, RevCommit tip) {
+        if (tip == null) {
+            return false;
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            CommitGraph graph = CommitGraphs.getCommitGraph(walk.getObjectReader());
+            if (CommitGraphs.contains(graph, previousTip, tip)) {
+                return CommitGraphs.isMergedInto(graph, previousTip, tip);
+            }
+            walk.setRetainBody(false);
+            RevCommit previous = walk.parseCommit(previousTip);
+            walk.sort(RevSort.COMMIT_TIME_DESC);
+            walk.setRevFilter(CommitTimeRevFilter.after(previous.getCommitTime() * 1000L - CLOCK_SKEW));
+            walk.markStart(walk.parseCommit(tip));
+            for (RevCommit commit : walk) {
+                if (commit.equals(previous)) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            // the previous tip is gone
+        }
+        return false;
+    }
+
+    /**
+     * Restores the branches which were saved in the cache folder. Restored
+     * branches are updated when they are requested.
+     *
+     * @return the number of restored branches
+     */
+    public int restore() {
+        File folder = cacheFolder;
+        if (folder == null || cacheDays <= 0) {
+            return 0;
+        }
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int count = 0;
+        long commits = 0;
+        for (File file : files) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+                String key = in.readUTF();
+                CommitHistory history = CommitHistory.readFrom(in);
+                cache.put(key, RESTORED, history);
+                restored.add(key);
+                count++;
+                commits += history.size();
+            } catch (IOException | RuntimeException e) {
+                logger.warn(MessageFormat.format("Failed to restore commit cache {0}", file), e);
+                file.delete();
+            }
+        }
+        logger.info(MessageFormat.format("restored {0} commits of {1} branches from {2} in {3} msecs",
+                commits, count, folder, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return count;
     }
 
     /**
-     * Returns a list of commits for the specified repository branch since the specified commit.
+     * Saves the branches which were loaded or cleared since they were last
+     * saved to the cache folder and removes the files of the branches which
+     * are no longer cached.
+     *
+     * @return the number of saved branches
+     */
+    public synchronized int save() {
+        File folder = cacheFolder;
+        if (folder == null) {
+            return 0;
+        }
+        folder.mkdirs();
+        for (String key : new ArrayList<String>(removed)) {
+            // a branch which was loaded again since it was cleared is saved below
+            removed.remove(key);
+            getFile(folder, key).delete();
+        }
+        int count = 0;
+        for (String key : new ArrayList<String>(modified)) {
+            modified.remove(key);
+            CommitHistory history = cache.getIfPresent(key);
+            if (history == null) {
+                // evicted, the saved history is removed below
+                continue;
+            }
+            File file = getFile(folder, key);
+            if (history.isEmpty()) {
+                file.delete();
+                continue;
+            }
+            File tmp = new File(folder, file.getName() + ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+                    out.writeUTF(key);
+                    history.writeTo(out);
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                count++;
+            } catch (IOException e) {
+                logger.error(MessageFormat.format("Failed to save commit cache {0}", file), e);
+                tmp.delete();
+            }
+        }
+        if (count > 0) {
+            logger.debug(MessageFormat.format("saved {0} branches to commit cache {1}", count, folder));
+        }
+        prune(folder);
+        return count;
+    }
+
+    /**
+     * Removes the saved files of the branches which are not cached, the
+     * branches of deleted repositories and evicted branches.
+     */
+    private void prune(File folder) {
+        Set<String> names = new HashSet<String>();
+        for (String key : cache.keys()) {
+            names.add(getFile(folder, key).getName());
+        }
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION) && !names.contains(name));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+        if (files.length > 0) {
+            logger.debug(MessageFormat.format("removed {0} branches from commit cache {1}", files.length, folder));
+        }
+    }
+
+    private static File getFile(File folder, String key) {
+        byte[] digest = org.eclipse.jgit.lib.Constants.newMessageDigest().digest(key.getBytes(StandardCharsets.UTF_8));
+        return new File(folder, ObjectId.fromRaw(digest).name() + FILE_EXTENSION);
+    }
+
+    /**
+     * Returns a list of commits for the specified repository branch.
      *
      * @param repositoryName
      * @param repository
      * @param branch
-     * @param sinceCommit
+     * @param sinceDate
      * @return a list of commits
      */
-    protected List<RepositoryCommit> get(String repositoryName, Repository repository, String branch, ObjectId sinceCommit) {
+    protected List<RepositoryCommit> get(String repositoryName, Repository repository, String branch, Date sinceDate) {
         Map<ObjectId, List<RefModel>> allRefs = JGitUtils.getAllRefs(repository, false);
-        List<RevCommit> revLog = JGitUtils.getRevLog(repository, sinceCommit.getName(), branch);
+        List<RevCommit> revLog = JGitUtils.getRevLog(repository, branch, sinceDate);
         List<RepositoryCommit> commits = new ArrayList<RepositoryCommit>(revLog.size());
         for (RevCommit commit : revLog) {
             RepositoryCommit commitModel = new RepositoryCommit(repositoryName, branch, commit);
@@ -246,21 +493,4 @@ public class CommitCache {
         }
         return commits;
     }
-
-    /**
-     * Reduces the list of commits to those since the specified date.
-     *
-     * @param commits
-     * @param sinceDate
-     * @return a list of commits
-     */
-    protected List<RepositoryCommit> reduce(List<RepositoryCommit> commits, Date sinceDate) {
-        List<RepositoryCommit> filtered = new ArrayList<RepositoryCommit>(commits.size());
-        for (RepositoryCommit commit : commits) {
-            if (commit.getCommitDate().compareTo(sinceDate) >= 0) {
-                filtered.add(commit);
-            }
-        }
-        return filtered;
-    }
 }
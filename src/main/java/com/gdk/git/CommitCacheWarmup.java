@@ -0,0 +1,268 @@
+package com.gdk.git;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The commit cache warm-up loads the recently changed branches of all
+ * repositories into the {@link CommitCache} after startup.
+ * <p>
+ * The repository models are loaded on a bounded pool, then the repositories
+ * are warmed up on the pool in the order of their last change so that the
+ * most active repositories are cached first. The model loads, branch listings
+ * and branch loads are rate limited so that the warm-up does not starve live
+ * traffic. The progress is available from the getters while the warm-up
+ * runs.
+ */
+public class CommitCacheWarmup implements Runnable {
+
+	private final Logger logger = LoggerFactory.getLogger(CommitCacheWarmup.class);
+
+	private final GitStoreSettings settings;
+
+	private final IRepositoryManager repositoryManager;
+
+	private final CommitCache commitCache;
+
+	private final AtomicBoolean running = new AtomicBoolean(false);
+
+	private final AtomicBoolean forceClose = new AtomicBoolean(false);
+
+	private final AtomicInteger repositories = new AtomicInteger();
+
+	private final AtomicInteger warmedRepositories = new AtomicInteger();
+
+	private final LongAdder branches = new LongAdder();
+
+	private final LongAdder commits = new LongAdder();
+
+	private volatile long startTime;
+
+	private volatile long endTime;
+
+	private volatile ExecutorService executor;
+
+	public CommitCacheWarmup(GitStoreSettings settings, IRepositoryManager repositoryManager, CommitCache commitCache) {
+		this.settings = settings;
+		this.repositoryManager = repositoryManager;
+		this.commitCache = commitCache;
+	}
+
+	public boolean isReady() {
+		return settings.getActivityCacheDays() > 0;
+	}
+
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	public void close() {
+		forceClose.set(true);
+		ExecutorService service = executor;
+		if (service != null) {
+			service.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the number of repositories with recent changes
+	 */
+	public int getRepositoryCount() {
+		return repositories.get();
+	}
+
+	/**
+	 * @return the number of repositories which have been warmed up
+	 */
+	public int getWarmedRepositoryCount() {
+		return warmedRepositories.get();
+	}
+
+	/**
+	 * @return the number of branches which have been warmed up
+	 */
+	public long getBranchCount() {
+		return branches.sum();
+	}
+
+	/**
+	 * @return the number of commits in the warmed up branches
+	 */
+	public long getCommitCount() {
+		return commits.sum();
+	}
+
+	/**
+	 * @return the milliseconds since the warm-up started or its duration
+	 */
+	public long getElapsedTime() {
+		if (startTime == 0) {
+			return 0;
+		}
+		return (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+	}
+
+	@Override
+	public void run() {
+		if (!isReady() || !running.compareAndSet(false, true)) {
+			return;
+		}
+		startTime = System.currentTimeMillis();
+		try {
+			final Date cutoff = commitCache.getCutoffDate();
+			int threads = Math.max(1, settings.getCommitCacheWarmupThreads());
+			double rate = settings.getCommitCacheWarmupRate();
+			final RateLimiter rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactoryBuilder().setNameFormat("CommitCacheWarmup-%d").setDaemon(true).build());
+			executor = pool;
+
+			// the models, which read the refs of the repositories, are loaded
+			// on the pool too
+			List<Future<RepositoryModel>> loads = new ArrayList<Future<RepositoryModel>>();
+			for (final String repositoryName : repositoryManager.getRepositoryList()) {
+				loads.add(pool.submit(new Callable<RepositoryModel>() {
+					@Override
+					public RepositoryModel call() {
+						return loadModel(repositoryName, cutoff, rateLimiter);
+					}
+				}));
+			}
+			List<RepositoryModel> models = new ArrayList<RepositoryModel>();
+			for (Future<RepositoryModel> load : loads) {
+				try {
+					RepositoryModel model = load.get();
+					if (model != null) {
+						models.add(model);
+					}
+				} catch (ExecutionException | CancellationException e) {
+					// logged by the load or closed
+				}
+			}
+			// the most recently changed repositories first
+			Collections.sort(models, new Comparator<RepositoryModel>() {
+				@Override
+				public int compare(RepositoryModel o1, RepositoryModel o2) {
+					return o2.lastChange.compareTo(o1.lastChange);
+				}
+			});
+			repositories.set(models.size());
+			logger.info(MessageFormat.format("Warming up the commit cache of {0} repositories with {1} threads",
+					models.size(), threads));
+
+			for (final RepositoryModel model : models) {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						warmup(model, cutoff, rateLimiter);
+					}
+				});
+			}
+			pool.shutdown();
+			if (forceClose.get()) {
+				pool.shutdownNow();
+			}
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			endTime = System.currentTimeMillis();
+			logger.info(MessageFormat.format("built {0} day commit cache of {1} commits across {2} branches of {3} repositories in {4} msecs",
+					settings.getActivityCacheDays(), getCommitCount(), getBranchCount(), getWarmedRepositoryCount(),
+					getElapsedTime()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (endTime == 0) {
+				endTime = System.currentTimeMillis();
+			}
+			running.set(false);
+		}
+	}
+
+	/**
+	 * Loads the model of a repository.
+	 *
+	 * @return the model or null if the repository has no recent changes
+	 */
+	private RepositoryModel loadModel(String repositoryName, Date cutoff, RateLimiter rateLimiter) {
+		if (forceClose.get()) {
+			return null;
+		}
+		try {
+			acquire(rateLimiter);
+			RepositoryModel model = repositoryManager.getRepositoryModel(repositoryName);
+			if (model != null && model.hasCommits && model.lastChange != null && model.lastChange.after(cutoff)) {
+				return model;
+			}
+		} catch (Throwable t) {
+			logger.error(MessageFormat.format("Failed to load the model of {0}", repositoryName), t);
+		}
+		return null;
+	}
+
+	private static void acquire(RateLimiter rateLimiter) {
+		if (rateLimiter != null) {
+			rateLimiter.acquire();
+		}
+	}
+
+	private void warmup(RepositoryModel model, Date cutoff, RateLimiter rateLimiter) {
+		if (forceClose.get()) {
+			return;
+		}
+		Repository repository = repositoryManager.getRepository(model.name);
+		if (repository == null) {
+			return;
+		}
+		try {
+			acquire(rateLimiter);
+			for (RefModel ref : JGitUtils.getLocalBranches(repository, true, -1)) {
+				if (forceClose.get()) {
+					return;
+				}
+				if (!ref.getDate().after(cutoff)) {
+					// branch not recently updated
+					continue;
+				}
+				acquire(rateLimiter);
+				List<RepositoryCommit> list = commitCache.getCommits(model.name, repository, ref.getName());
+				branches.increment();
+				commits.add(list.size());
+				if (list.size() > 0) {
+					logger.debug(MessageFormat.format("  cached {0} commits for {1}:{2}", list.size(), model.name, ref.getName()));
+				}
+			}
+		} catch (Throwable t) {
+			logger.error(MessageFormat.format("Failed to warm up the commit cache of {0}", model.name), t);
+		} finally {
+			repository.close();
+		}
+		int warmed = warmedRepositories.incrementAndGet();
+		int total = repositories.get();
+		if (total >= 10 && warmed % (total / 10) == 0) {
+			logger.info(MessageFormat.format("commit cache warm-up {0}% ({1}/{2} repositories, {3} branches, {4} commits)",
+					warmed * 100 / total, warmed, total, getBranchCount(), getCommitCount()));
+		}
+	}
+}
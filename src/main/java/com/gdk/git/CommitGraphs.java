@@ -0,0 +1,300 @@
+package com.gdk.git;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphLoader;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility methods for the commit-graph file of a repository.
+ * <p>
+ * The commit-graph stores the parents, commit time, tree and generation number
+ * of every reachable commit. JGit reads it instead of inflating the commits
+ * from the packs as long as core.commitGraph is enabled and the walk does not
+ * retain the commit bodies. Commits which were pushed after the commit-graph
+ * was written are read from the packs until the commit-graph is refreshed.
+ * <p>
+ * The commit-graph may also store a changed-path Bloom filter per commit.
+ * Path-limited walks with a {@link ChangedPathTreeFilter} skip the tree diff
+ * of every commit whose Bloom filter rules out the paths, as long as
+ * commitGraph.readChangedPaths is enabled.
+ */
+public class CommitGraphs {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommitGraphs.class);
+
+    /**
+     * Generation number of commits which are not in the commit-graph.
+     */
+    public static final int GENERATION_UNKNOWN = Integer.MAX_VALUE;
+
+    /**
+     * Enables reading and writing the commit-graph in the repository config.
+     *
+     * @param repository
+     * @param changedPaths read and write changed-path Bloom filters
+     * @return true if the config was changed
+     * @throws IOException
+     */
+    public static boolean enable(Repository repository, boolean changedPaths) throws IOException {
+        StoredConfig config = repository.getConfig();
+        boolean changed = false;
+        if (!config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION, ConfigConstants.CONFIG_COMMIT_GRAPH, false)) {
+            config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_COMMIT_GRAPH, true);
+            changed = true;
+        }
+        if (!config.getBoolean(ConfigConstants.CONFIG_GC_SECTION, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, false)) {
+            config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, true);
+            changed = true;
+        }
+        if (config.getBoolean(ConfigConstants.CONFIG_GC_SECTION, ConfigConstants.CONFIG_KEY_WRITE_CHANGED_PATHS, false) != changedPaths) {
+            config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_WRITE_CHANGED_PATHS, changedPaths);
+            changed = true;
+        }
+        if (config.getBoolean(ConfigConstants.CONFIG_COMMIT_GRAPH_SECTION, ConfigConstants.CONFIG_KEY_READ_CHANGED_PATHS, false) != changedPaths) {
+            config.setBoolean(ConfigConstants.CONFIG_COMMIT_GRAPH_SECTION, null, ConfigConstants.CONFIG_KEY_READ_CHANGED_PATHS, changedPaths);
+            changed = true;
+        }
+        if (changed) {
+            config.save();
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the commit-graph of the reader or an empty graph if the
+     * repository has no commit-graph or it is not enabled.
+     *
+     * @param reader
+     * @return the commit-graph
+     */
+    public static CommitGraph getCommitGraph(ObjectReader reader) {
+        try {
+            return reader.getCommitGraph().orElse(CommitGraph.EMPTY);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read the commit-graph", e);
+            return CommitGraph.EMPTY;
+        }
+    }
+
+    /**
+     * Returns true if the repository has a readable commit-graph.
+     *
+     * @param walk
+     * @return true if the walk can read commits from the commit-graph
+     */
+    public static boolean hasCommitGraph(RevWalk walk) {
+        return getCommitGraph(walk.getObjectReader()).getCommitCnt() > 0;
+    }
+
+    /**
+     * Returns the generation number of the commit. A commit can only reach
+     * commits with a lower generation number.
+     *
+     * @param graph
+     * @param commitId
+     * @return the generation number or {@link #GENERATION_UNKNOWN}
+     */
+    public static int getGeneration(CommitGraph graph, AnyObjectId commitId) {
+        int position = graph.findGraphPosition(commitId);
+        if (position < 0) {
+            return GENERATION_UNKNOWN;
+        }
+        return graph.getCommitData(position).getGeneration();
+    }
+
+    /**
+     * Returns true if both commits are in the commit-graph so that
+     * {@link #isMergedInto(CommitGraph, AnyObjectId, AnyObjectId)} can answer.
+     *
+     * @param graph
+     * @param commitId
+     * @param tipId
+     * @return true if the commit-graph contains both commits
+     */
+    public static boolean contains(CommitGraph graph, AnyObjectId commitId, AnyObjectId tipId) {
+        return graph.findGraphPosition(commitId) >= 0 && graph.findGraphPosition(tipId) >= 0;
+    }
+
+    /**
+     * Determines if the commit is reachable from the tip by walking the parent
+     * positions of the commit-graph. Commits with a generation number lower
+     * than or equal to the generation of the commit can not reach it and are
+     * not walked, so the walk is bounded by the distance of the two commits.
+     * Both commits must be in the commit-graph.
+     *
+     * @param graph
+     * @param commitId
+     * @param tipId
+     * @return true if the commit is the tip or an ancestor of the tip
+     */
+    public static boolean isMergedInto(CommitGraph graph, AnyObjectId commitId, AnyObjectId tipId) {
+        int target = graph.findGraphPosition(commitId);
+        int tip = graph.findGraphPosition(tipId);
+        if (target < 0 || tip < 0) {
+            throw new IllegalArgumentException(MessageFormat.format("{0} or {1} is not in the commit-graph",
+                    commitId.name(), tipId.name()));
+        }
+        if (target == tip) {
+            return true;
+        }
+        int generation = graph.getCommitData(target).getGeneration();
+        if (generation > 0 && graph.getCommitData(tip).getGeneration() <= generation) {
+            return false;
+        }
+        BitSet seen = new BitSet();
+        int[] stack = new int[64];
+        int size = 0;
+        stack[size++] = tip;
+        while (size > 0) {
+            int position = stack[--size];
+            for (int parent : graph.getCommitData(position).getParents()) {
+                if (parent == target) {
+                    return true;
+                }
+                if (seen.get(parent)) {
+                    continue;
+                }
+                seen.set(parent);
+                if (generation > 0 && graph.getCommitData(parent).getGeneration() <= generation) {
+                    // too old to reach the commit
+                    continue;
+                }
+                if (size == stack.length) {
+                    int[] grown = new int[size * 2];
+                    System.arraycopy(stack, 0, grown, 0, size);
+                    stack = grown;
+                }
+                stack[size++] = parent;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the repository has no commit-graph, a branch points to a
+     * commit which is not in the commit-graph or the commit-graph lacks the
+     * changed-path Bloom filters.
+     *
+     * @param repository
+     * @param changedPaths the commit-graph should have changed-path Bloom filters
+     * @return true if the commit-graph should be written
+     * @throws IOException
+     */
+    public static boolean isStale(Repository repository, boolean changedPaths) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            CommitGraph graph = getCommitGraph(reader);
+            if (graph.getCommitCnt() == 0) {
+                return JGitUtils.hasCommits(repository);
+            }
+            if (changedPaths && !hasChangedPaths(repository)) {
+                return true;
+            }
+            for (Ref ref : repository.getRefDatabase().getRefsByPrefix(org.eclipse.jgit.lib.Constants.R_HEADS)) {
+                if (ref.getObjectId() != null && graph.findGraphPosition(ref.getObjectId()) < 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the commit-graph file of the repository has changed-path
+     * Bloom filters. The filters of the loaded commit-graph are only present
+     * if JGit reads them, so the file is read with the filters.
+     */
+    private static boolean hasChangedPaths(Repository repository) throws IOException {
+        if (!(repository.getObjectDatabase() instanceof ObjectDirectory)) {
+            return false;
+        }
+        File file = new File(((ObjectDirectory) repository.getObjectDatabase()).getDirectory(),
+                org.eclipse.jgit.lib.Constants.INFO_COMMIT_GRAPH);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            CommitGraph graph = CommitGraphLoader.read(in, true);
+            return graph.getCommitCnt() == 0 || graph.getChangedPathFilter(0) != null;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the commit-graph of all commits reachable from the refs of the
+     * repository and enables the commit-graph in the repository config. The
+     * file is replaced atomically, concurrent readers see either the previous
+     * or the new commit-graph. The Bloom filters of the previous commit-graph
+     * are reused, only the filters of new commits are computed.
+     *
+     * @param repository
+     * @param changedPaths write changed-path Bloom filters
+     * @return true if the commit-graph was written
+     * @throws IOException
+     */
+    public static boolean write(Repository repository, boolean changedPaths) throws IOException {
+        if (!(repository.getObjectDatabase() instanceof ObjectDirectory)) {
+            return false;
+        }
+        File file = new File(((ObjectDirectory) repository.getObjectDatabase()).getDirectory(),
+                org.eclipse.jgit.lib.Constants.INFO_COMMIT_GRAPH);
+        RefDatabase refDatabase = repository.getRefDatabase();
+        Set<ObjectId> tips = new HashSet<ObjectId>();
+        for (Ref ref : refDatabase.getRefs()) {
+            Ref peeled = ref.isPeeled() ? ref : refDatabase.peel(ref);
+            ObjectId id = peeled.getPeeledObjectId() != null ? peeled.getPeeledObjectId() : peeled.getObjectId();
+            if (id != null) {
+                tips.add(id);
+            }
+        }
+        if (tips.isEmpty()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        enable(repository, changedPaths);
+        file.getParentFile().mkdirs();
+        LockFile lock = new LockFile(file);
+        if (!lock.lock()) {
+            // written concurrently
+            return false;
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            GraphCommits commits = GraphCommits.fromWalk(NullProgressMonitor.INSTANCE, tips, walk);
+            try (OutputStream out = lock.getOutputStream()) {
+                new CommitGraphWriter(commits, changedPaths).write(NullProgressMonitor.INSTANCE, out);
+            }
+            if (!lock.commit()) {
+                return false;
+            }
+            LOGGER.debug(MessageFormat.format("wrote commit-graph for {0} in {1} msecs",
+                    repository.getDirectory(), (System.nanoTime() - start) / 1000000L));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
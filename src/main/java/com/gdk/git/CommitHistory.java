@@ -0,0 +1,490 @@
+package com.gdk.git;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * CommitHistory is an immutable, compact columnar store of the commits of a
+ * branch which is used by the {@link CommitCache}.
+ * <p>
+ * Object ids are packed into byte arrays, times are stored in primitive arrays,
+ * identities are dictionary-encoded and the short messages are stored as UTF-8
+ * in a single byte array. Raw commit buffers are not retained.
+ * {@link RepositoryCommit} views of the stored commits are created on request.
+ * <p>
+ * A history can be written to and read from a binary stream. Refs are not
+ * written, they are attached again when the history is updated.
+ */
+public class CommitHistory {
+
+    private static final int ID_LENGTH = org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH;
+
+    private static final int FORMAT = 1;
+
+    private static final CommitHistory EMPTY = new Builder().build();
+
+    private final int size;
+
+    private final byte[] ids;
+
+    private final long[] commitTimes;
+
+    private final long[] authorTimes;
+
+    private final short[] commitTimeZones;
+
+    private final short[] authorTimeZones;
+
+    private final int[] committers;
+
+    private final int[] authors;
+
+    private final String[] names;
+
+    private final String[] emails;
+
+    private final byte[] messages;
+
+    private final int[] messageOffsets;
+
+    private final int[] parentOffsets;
+
+    private final byte[] parentIds;
+
+    private final Map<Integer, List<RefModel>> refs;
+
+    private final long weight;
+
+    private CommitHistory(Builder builder) {
+        this(builder.size,
+                Arrays.copyOf(builder.ids, builder.size * ID_LENGTH),
+                Arrays.copyOf(builder.commitTimes, builder.size),
+                Arrays.copyOf(builder.authorTimes, builder.size),
+                Arrays.copyOf(builder.commitTimeZones, builder.size),
+                Arrays.copyOf(builder.authorTimeZones, builder.size),
+                Arrays.copyOf(builder.committers, builder.size),
+                Arrays.copyOf(builder.authors, builder.size),
+                builder.names.toArray(new String[0]),
+                builder.emails.toArray(new String[0]),
+                Arrays.copyOf(builder.messages, builder.messagesLength),
+                Arrays.copyOf(builder.messageOffsets, builder.size + 1),
+                Arrays.copyOf(builder.parentOffsets, builder.size + 1),
+                Arrays.copyOf(builder.parentIds, builder.parentOffsets[builder.size] * ID_LENGTH),
+                builder.refs.isEmpty() ? Collections.<Integer, List<RefModel>> emptyMap() : new HashMap<>(builder.refs));
+    }
+
+    private CommitHistory(int size, byte[] ids, long[] commitTimes, long[] authorTimes, short[] commitTimeZones,
+            short[] authorTimeZones, int[] committers, int[] authors, String[] names, String[] emails,
+            byte[] messages, int[] messageOffsets, int[] parentOffsets, byte[] parentIds,
+            Map<Integer, List<RefModel>> refs) {
+        this.size = size;
+        this.ids = ids;
+        this.commitTimes = commitTimes;
+        this.authorTimes = authorTimes;
+        this.commitTimeZones = commitTimeZones;
+        this.authorTimeZones = authorTimeZones;
+        this.committers = committers;
+        this.authors = authors;
+        this.names = names;
+        this.emails = emails;
+        this.messages = messages;
+        this.messageOffsets = messageOffsets;
+        this.parentOffsets = parentOffsets;
+        this.parentIds = parentIds;
+        this.refs = refs;
+
+        long bytes = 128L + ids.length + parentIds.length + messages.length
+                + size * (8L + 8L + 2L + 2L + 4L + 4L + 4L + 4L);
+        for (int i = 0; i < names.length; i++) {
+            bytes += 96 + 2L * (names[i].length() + emails[i].length());
+        }
+        bytes += 128L * refs.size();
+        this.weight = bytes;
+    }
+
+    /**
+     * Reads a history which was written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in
+     * @return the history
+     * @throws IOException if the stream is truncated or has an unsupported format
+     */
+    public static CommitHistory readFrom(DataInput in) throws IOException {
+        if (in.readInt() != FORMAT) {
+            throw new IOException("Unsupported commit history format");
+        }
+        int size = in.readInt();
+        byte[] ids = readBytes(in);
+        long[] commitTimes = new long[size];
+        long[] authorTimes = new long[size];
+        short[] commitTimeZones = new short[size];
+        short[] authorTimeZones = new short[size];
+        int[] committers = new int[size];
+        int[] authors = new int[size];
+        for (int i = 0; i < size; i++) {
+            commitTimes[i] = in.readLong();
+            authorTimes[i] = in.readLong();
+            commitTimeZones[i] = in.readShort();
+            authorTimeZones[i] = in.readShort();
+            committers[i] = in.readInt();
+            authors[i] = in.readInt();
+        }
+        String[] names = new String[in.readInt()];
+        String[] emails = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+            emails[i] = in.readUTF();
+        }
+        byte[] messages = readBytes(in);
+        int[] messageOffsets = new int[size + 1];
+        int[] parentOffsets = new int[size + 1];
+        for (int i = 0; i <= size; i++) {
+            messageOffsets[i] = in.readInt();
+            parentOffsets[i] = in.readInt();
+        }
+        byte[] parentIds = readBytes(in);
+        if (ids.length != size * ID_LENGTH || parentIds.length != parentOffsets[size] * ID_LENGTH
+                || messages.length != messageOffsets[size]) {
+            throw new IOException("Corrupt commit history");
+        }
+        for (int i = 0; i < size; i++) {
+            if (committers[i] >= names.length || authors[i] >= names.length) {
+                throw new IOException("Corrupt commit history");
+            }
+        }
+        return new CommitHistory(size, ids, commitTimes, authorTimes, commitTimeZones, authorTimeZones,
+                committers, authors, names, emails, messages, messageOffsets, parentOffsets, parentIds,
+                Collections.<Integer, List<RefModel>> emptyMap());
+    }
+
+    /**
+     * Writes the history without its refs.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT);
+        out.writeInt(size);
+        writeBytes(out, ids);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(commitTimes[i]);
+            out.writeLong(authorTimes[i]);
+            out.writeShort(commitTimeZones[i]);
+            out.writeShort(authorTimeZones[i]);
+            out.writeInt(committers[i]);
+            out.writeInt(authors[i]);
+        }
+        out.writeInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            out.writeUTF(names[i]);
+            out.writeUTF(emails[i]);
+        }
+        writeBytes(out, messages);
+        for (int i = 0; i <= size; i++) {
+            out.writeInt(messageOffsets[i]);
+            out.writeInt(parentOffsets[i]);
+        }
+        writeBytes(out, parentIds);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt commit history");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @return an empty history
+     */
+    public static CommitHistory empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return the number of commits
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the approximate retained size of the history in bytes
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    public ObjectId getId(int index) {
+        return ObjectId.fromRaw(ids, index * ID_LENGTH);
+    }
+
+    /**
+     * @param index
+     * @return the commit time in milliseconds
+     */
+    public long getCommitTime(int index) {
+        return commitTimes[index];
+    }
+
+    public String getShortMessage(int index) {
+        int start = messageOffsets[index];
+        return new String(messages, start, messageOffsets[index + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    public PersonIdent getAuthorIdent(int index) {
+        int ident = authors[index];
+        return new PersonIdent(names[ident], emails[ident], Instant.ofEpochMilli(authorTimes[index]),
+                PersonIdent.getZoneId(authorTimeZones[index]));
+    }
+
+    public PersonIdent getCommitterIdent(int index) {
+        int ident = committers[index];
+        return new PersonIdent(names[ident], emails[ident], Instant.ofEpochMilli(commitTimes[index]),
+                PersonIdent.getZoneId(commitTimeZones[index]));
+    }
+
+    public int getParentCount(int index) {
+        return parentOffsets[index + 1] - parentOffsets[index];
+    }
+
+    /**
+     * Returns the parents of a commit. The parents are not parsed, only their
+     * ids are available.
+     *
+     * @param index
+     * @return the parents
+     */
+    public RevCommit[] getParents(int index) {
+        int start = parentOffsets[index];
+        RevCommit[] parents = new RevCommit[parentOffsets[index + 1] - start];
+        if (parents.length > 0) {
+            try (RevWalk walk = new RevWalk((ObjectReader) null)) {
+                for (int i = 0; i < parents.length; i++) {
+                    parents[i] = walk.lookupCommit(ObjectId.fromRaw(parentIds, (start + i) * ID_LENGTH));
+                }
+            }
+        }
+        return parents;
+    }
+
+    public List<RefModel> getRefs(int index) {
+        return refs.get(index);
+    }
+
+    /**
+     * Creates views of the commits since the specified date.
+     *
+     * @param repositoryName
+     * @param branch
+     * @param sinceDate
+     * @return a list of commits
+     */
+    public List<RepositoryCommit> getCommits(String repositoryName, String branch, Date sinceDate) {
+        long since = sinceDate.getTime();
+        List<RepositoryCommit> commits = new ArrayList<RepositoryCommit>(size);
+        for (int i = 0; i < size; i++) {
+            if (commitTimes[i] >= since) {
+                commits.add(new RepositoryCommit(repositoryName, branch, this, i));
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * Builds a history by appending commits.
+     */
+    public static class Builder {
+
+        private int size;
+
+        private byte[] ids = new byte[16 * ID_LENGTH];
+
+        private long[] commitTimes = new long[16];
+
+        private long[] authorTimes = new long[16];
+
+        private short[] commitTimeZones = new short[16];
+
+        private short[] authorTimeZones = new short[16];
+
+        private int[] committers = new int[16];
+
+        private int[] authors = new int[16];
+
+        private final List<String> names = new ArrayList<String>();
+
+        private final List<String> emails = new ArrayList<String>();
+
+        private final Map<String, Integer> identities = new HashMap<String, Integer>();
+
+        private byte[] messages = new byte[1024];
+
+        private int messagesLength;
+
+        private int[] messageOffsets = new int[17];
+
+        private int[] parentOffsets = new int[17];
+
+        private byte[] parentIds = new byte[16 * ID_LENGTH];
+
+        private final Map<Integer, List<RefModel>> refs = new HashMap<Integer, List<RefModel>>();
+
+        /**
+         * Appends a commit.
+         *
+         * @param commit a parsed commit
+         * @param commitRefs the refs which point to the commit or null
+         * @return this builder
+         */
+        public Builder add(RevCommit commit, List<RefModel> commitRefs) {
+            PersonIdent author = commit.getAuthorIdent();
+            PersonIdent committer = commit.getCommitterIdent();
+            ensureCapacity(commit.getParentCount());
+            commit.copyRawTo(ids, size * ID_LENGTH);
+            authorTimes[size] = author.getWhenAsInstant().toEpochMilli();
+            authorTimeZones[size] = getTimeZoneOffset(author);
+            authors[size] = identity(author.getName(), author.getEmailAddress());
+            commitTimes[size] = committer.getWhenAsInstant().toEpochMilli();
+            commitTimeZones[size] = getTimeZoneOffset(committer);
+            committers[size] = identity(committer.getName(), committer.getEmailAddress());
+            appendMessage(commit.getShortMessage().getBytes(StandardCharsets.UTF_8));
+            int parents = parentOffsets[size];
+            for (RevCommit parent : commit.getParents()) {
+                parent.copyRawTo(parentIds, parents++ * ID_LENGTH);
+            }
+            parentOffsets[size + 1] = parents;
+            if (commitRefs != null && !commitRefs.isEmpty()) {
+                refs.put(size, commitRefs);
+            }
+            size++;
+            return this;
+        }
+
+        /**
+         * Appends a commit of another history with its refs.
+         *
+         * @param history
+         * @param index
+         * @return this builder
+         */
+        public Builder add(CommitHistory history, int index) {
+            return add(history, index, history.refs.get(index));
+        }
+
+        /**
+         * Appends a commit of another history.
+         *
+         * @param history
+         * @param index
+         * @param commitRefs the refs which point to the commit or null
+         * @return this builder
+         */
+        public Builder add(CommitHistory history, int index, List<RefModel> commitRefs) {
+            int parentCount = history.getParentCount(index);
+            ensureCapacity(parentCount);
+            System.arraycopy(history.ids, index * ID_LENGTH, ids, size * ID_LENGTH, ID_LENGTH);
+            authorTimes[size] = history.authorTimes[index];
+            authorTimeZones[size] = history.authorTimeZones[index];
+            authors[size] = identity(history.names[history.authors[index]], history.emails[history.authors[index]]);
+            commitTimes[size] = history.commitTimes[index];
+            commitTimeZones[size] = history.commitTimeZones[index];
+            committers[size] = identity(history.names[history.committers[index]], history.emails[history.committers[index]]);
+            int start = history.messageOffsets[index];
+            appendMessage(Arrays.copyOfRange(history.messages, start, history.messageOffsets[index + 1]));
+            int parents = parentOffsets[size];
+            System.arraycopy(history.parentIds, history.parentOffsets[index] * ID_LENGTH, parentIds,
+                    parents * ID_LENGTH, parentCount * ID_LENGTH);
+            parentOffsets[size + 1] = parents + parentCount;
+            if (commitRefs != null && !commitRefs.isEmpty()) {
+                refs.put(size, commitRefs);
+            }
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public CommitHistory build() {
+            return new CommitHistory(this);
+        }
+
+        private int identity(String name, String email) {
+            String key = name + '\n' + email;
+            Integer identity = identities.get(key);
+            if (identity == null) {
+                identity = names.size();
+                names.add(name);
+                emails.add(email);
+                identities.put(key, identity);
+            }
+            return identity;
+        }
+
+        /**
+         * @return the time zone offset of the ident in minutes
+         */
+        private static short getTimeZoneOffset(PersonIdent ident) {
+            return (short) (ident.getZoneOffset().getTotalSeconds() / 60);
+        }
+
+        private void appendMessage(byte[] message) {
+            if (messagesLength + message.length > messages.length) {
+                messages = Arrays.copyOf(messages, Math.max(messages.length * 2, messagesLength + message.length));
+            }
+            System.arraycopy(message, 0, messages, messagesLength, message.length);
+            messagesLength += message.length;
+            messageOffsets[size + 1] = messagesLength;
+        }
+
+        private void ensureCapacity(int parentCount) {
+            if (size == commitTimes.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity * ID_LENGTH);
+                commitTimes = Arrays.copyOf(commitTimes, capacity);
+                authorTimes = Arrays.copyOf(authorTimes, capacity);
+                commitTimeZones = Arrays.copyOf(commitTimeZones, capacity);
+                authorTimeZones = Arrays.copyOf(authorTimeZones, capacity);
+                committers = Arrays.copyOf(committers, capacity);
+                authors = Arrays.copyOf(authors, capacity);
+                messageOffsets = Arrays.copyOf(messageOffsets, capacity + 1);
+                parentOffsets = Arrays.copyOf(parentOffsets, capacity + 1);
+            }
+            int parents = parentOffsets[size] + parentCount;
+            if (parents * ID_LENGTH > parentIds.length) {
+                parentIds = Arrays.copyOf(parentIds, Math.max(parentIds.length * 2, parents * ID_LENGTH));
+            }
+        }
+    }
+}
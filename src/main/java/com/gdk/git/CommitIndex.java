@@ -0,0 +1,873 @@
+package com.gdk.git;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gdk.git.Constants.SearchType;
+
+/**
+ * Inverted index of the commit messages, authors and committers of the
+ * branches of a repository for {@link JGitUtils#searchRevlogs}.
+ * <p>
+ * The index maps the lower case trigrams of each field to the commits whose
+ * field contains them, so it finds every commit which contains a query of at
+ * least three characters as a substring, like the search filter of the walk.
+ * The candidates are checked with the search filter before they are returned.
+ * Each branch records its indexed tip and the set of indexed commits reachable
+ * from it. A search answers from the index if the searched revision is the
+ * indexed tip of a branch, all other searches walk the history.
+ * <p>
+ * The index is updated incrementally. A fast-forwarded branch only indexes
+ * the commits between its indexed tip and the new tip, other branch updates
+ * walk the headers of the branch and only index the commits which are not yet
+ * indexed. If a folder is set the indexes are saved to disk and loaded when a
+ * repository is searched.
+ * <p>
+ * The indexes in memory are bounded by their total number of commits. The
+ * least recently used indexes are evicted, a modified index is saved before
+ * it is evicted.
+ * <p>
+ * The matches are listed by commit date, newest first. The walk lists a
+ * commit which is newer than its child after the child.
+ */
+public class CommitIndex {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final CommitIndex instance;
+
+    private static final int VERSION = 1;
+
+    private static final String FILE_EXTENSION = ".index";
+
+    /**
+     * Length of the indexed character sequences, shorter queries walk.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * The default maximum total number of commits of the indexes in memory.
+     */
+    public static final long DEFAULT_SIZE = 2_000_000;
+
+    protected final Map<String, RepositoryIndex> indexes = new ConcurrentHashMap<String, RepositoryIndex>();
+    protected final Set<String> modified = ConcurrentHashMap.newKeySet();
+    protected final Set<String> pending = ConcurrentHashMap.newKeySet();
+    protected final Set<String> building = ConcurrentHashMap.newKeySet();
+    protected volatile File indexFolder;
+    protected volatile ScheduledExecutorService executor;
+    protected volatile int updateDelay;
+    protected volatile long maximumSize = DEFAULT_SIZE;
+
+    static {
+        instance = new CommitIndex();
+    }
+
+    public static CommitIndex instance() {
+        return instance;
+    }
+
+    protected CommitIndex() {
+    }
+
+    /**
+     * Sets the folder where the indexes are saved.
+     *
+     * @param folder
+     */
+    public void setIndexFolder(File folder) {
+        this.indexFolder = folder;
+    }
+
+    /**
+     * Sets the executor which builds the index of a searched repository and
+     * updates the indexes after ref changes. Without an executor the indexes
+     * are only built by {@link #update(Repository)}.
+     *
+     * @param executor
+     * @param delay seconds after a ref change until the index is updated
+     */
+    public void setExecutor(ScheduledExecutorService executor, int delay) {
+        this.executor = executor;
+        this.updateDelay = delay;
+    }
+
+    /**
+     * Sets the maximum total number of commits of the indexes in memory, the
+     * least recently used indexes are evicted.
+     *
+     * @param size
+     */
+    public void setCacheSize(long size) {
+        this.maximumSize = size;
+        evict(null);
+    }
+
+    /**
+     * Returns true if the repository has an index, which may be outdated.
+     *
+     * @param repository
+     * @return true if the repository is indexed
+     */
+    public boolean isIndexed(Repository repository) {
+        String key = getKey(repository);
+        return key != null && (indexes.containsKey(key) || hasFile(key));
+    }
+
+    /**
+     * Indexes the new commits of the branches of the repository.
+     *
+     * @param repository
+     * @return the number of indexed commits
+     * @throws IOException
+     */
+    public int update(Repository repository) throws IOException {
+        String key = getKey(repository);
+        if (key == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        RepositoryIndex index = getIndex(key);
+        int count;
+        if (index == null) {
+            // searches walk until the index is complete
+            if (!building.add(key)) {
+                return 0;
+            }
+            try {
+                index = new RepositoryIndex();
+                index.update(repository);
+                count = index.entries.size();
+                indexes.put(key, index);
+                modified.add(key);
+            } finally {
+                building.remove(key);
+            }
+        } else {
+            index.lock.writeLock().lock();
+            try {
+                int commits = index.entries.size();
+                if (!index.update(repository)) {
+                    return 0;
+                }
+                count = index.entries.size() - commits;
+                modified.add(key);
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        }
+        evict(key);
+        logger.debug(MessageFormat.format("indexed {0} commits of {1} in {2} msecs", count, key,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return count;
+    }
+
+    /**
+     * Schedules an update of the index of the repository if it is indexed.
+     *
+     * @param repository
+     */
+    public void scheduleUpdate(Repository repository) {
+        if (isIndexed(repository)) {
+            schedule(repository, updateDelay);
+        }
+    }
+
+    private void schedule(Repository repository, int delay) {
+        ScheduledExecutorService executor = this.executor;
+        final String key = getKey(repository);
+        if (executor == null || key == null || !pending.add(key)) {
+            return;
+        }
+        final File folder = repository.getDirectory();
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    pending.remove(key);
+                    try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setMustExist(true).build()) {
+                        update(repository);
+                    } catch (Exception e) {
+                        logger.error(MessageFormat.format("Failed to index the commits of {0}", folder), e);
+                    }
+                }
+            }, delay, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            pending.remove(key);
+        }
+    }
+
+    /**
+     * Searches the commits of an indexed branch. If the repository is not
+     * indexed its index is built in the background.
+     *
+     * @param repository
+     * @param objectId if unspecified, HEAD is assumed. Ranges are not indexed.
+     * @param value
+     * @param type AUTHOR, COMMITTER, COMMIT
+     * @param offset
+     * @param maxCount if < 0, all matches are returned
+     * @return the matching commits or null if the search has to walk
+     */
+    public List<RevCommit> search(Repository repository, String objectId, String value, SearchType type,
+                                  int offset, int maxCount) {
+        return search(repository, objectId, value, type, offset, maxCount, true);
+    }
+
+    /**
+     * Searches the commits of an indexed branch.
+     *
+     * @param repository
+     * @param objectId if unspecified, HEAD is assumed. Ranges are not indexed.
+     * @param value
+     * @param type AUTHOR, COMMITTER, COMMIT
+     * @param offset
+     * @param maxCount if < 0, all matches are returned
+     * @param build if true and the repository is not indexed, its index is
+     *            built in the background
+     * @return the matching commits or null if the search has to walk
+     */
+    public List<RevCommit> search(Repository repository, String objectId, String value, SearchType type,
+                                  int offset, int maxCount, boolean build) {
+        String key = getKey(repository);
+        String lcValue = value.toLowerCase();
+        if (key == null || lcValue.length() < GRAM || (objectId != null && objectId.contains(".."))) {
+            return null;
+        }
+        try {
+            RepositoryIndex index = getIndex(key);
+            if (index == null) {
+                if (build) {
+                    schedule(repository, 0);
+                }
+                return null;
+            }
+            ObjectId tip = StringUtils.isEmpty(objectId) ? JGitUtils.getDefaultBranch(repository)
+                    : repository.resolve(objectId);
+            if (tip == null) {
+                return null;
+            }
+            Entry[] candidates;
+            index.lock.readLock().lock();
+            try {
+                BitSet branch = index.getBranch(tip);
+                if (branch == null) {
+                    // an outdated branch or not a branch
+                    scheduleUpdate(repository);
+                    return null;
+                }
+                candidates = index.find(type, lcValue, branch);
+            } finally {
+                index.lock.readLock().unlock();
+            }
+
+            List<RevCommit> list = new ArrayList<RevCommit>();
+            RevFilter filter = new RawSearchFilter(type, lcValue);
+            try (RevWalk rw = new RevWalk(repository)) {
+                int count = 0;
+                for (Entry candidate : candidates) {
+                    RevCommit commit = rw.parseCommit(candidate);
+                    if (!filter.include(rw, commit)) {
+                        // a commit with all trigrams, but not the value
+                        continue;
+                    }
+                    if (++count > offset) {
+                        list.add(commit);
+                        if (maxCount > 0 && list.size() == maxCount) {
+                            break;
+                        }
+                    }
+                }
+            }
+            return list;
+        } catch (Exception e) {
+            logger.error(MessageFormat.format("Failed to search the commit index of {0}", key), e);
+            return null;
+        }
+    }
+
+    /**
+     * Removes the indexes of the repositories in the folder.
+     *
+     * @param folder
+     */
+    public void clear(File folder) {
+        String path = folder.getAbsolutePath();
+        for (String key : new ArrayList<String>(indexes.keySet())) {
+            if (key.equals(path) || key.startsWith(path + File.separator)) {
+                indexes.remove(key);
+                modified.remove(key);
+            }
+        }
+        File indexes = indexFolder;
+        if (indexes != null) {
+            getFile(indexes, path).delete();
+            getFile(indexes, new File(folder, org.eclipse.jgit.lib.Constants.DOT_GIT).getAbsolutePath()).delete();
+        }
+    }
+
+    /**
+     * Saves the indexes which were updated since they were last saved.
+     *
+     * @return the number of saved indexes
+     */
+    public synchronized int save() {
+        File folder = indexFolder;
+        if (folder == null) {
+            return 0;
+        }
+        folder.mkdirs();
+        int count = 0;
+        for (String key : new ArrayList<String>(modified)) {
+            modified.remove(key);
+            RepositoryIndex index = indexes.get(key);
+            if (index != null && save(folder, key, index)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.debug(MessageFormat.format("saved {0} commit indexes to {1}", count, folder));
+        }
+        return count;
+    }
+
+    private boolean save(File folder, String key, RepositoryIndex index) {
+        File file = getFile(folder, key);
+        File tmp = new File(folder, file.getName() + ".tmp");
+        index.lock.readLock().lock();
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                index.writeTo(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            logger.error(MessageFormat.format("Failed to save commit index {0}", file), e);
+            tmp.delete();
+            return false;
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Evicts the least recently used indexes until the indexes in memory fit
+     * the maximum size. The index of the current key is kept.
+     */
+    private synchronized void evict(String current) {
+        long total = 0;
+        for (RepositoryIndex index : indexes.values()) {
+            total += index.size();
+        }
+        if (total <= maximumSize) {
+            return;
+        }
+        List<Map.Entry<String, RepositoryIndex>> lru = new ArrayList<Map.Entry<String, RepositoryIndex>>(indexes.entrySet());
+        lru.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+        File folder = indexFolder;
+        for (Map.Entry<String, RepositoryIndex> entry : lru) {
+            if (total <= maximumSize) {
+                break;
+            }
+            String key = entry.getKey();
+            if (key.equals(current)) {
+                continue;
+            }
+            if (modified.remove(key) && folder != null) {
+                folder.mkdirs();
+                save(folder, key, entry.getValue());
+            }
+            if (indexes.remove(key, entry.getValue())) {
+                total -= entry.getValue().size();
+                logger.debug(MessageFormat.format("evicted commit index of {0}", key));
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the repository, it is loaded from the index folder
+     * on first use.
+     */
+    private RepositoryIndex getIndex(String key) {
+        RepositoryIndex index = indexes.get(key);
+        File folder = indexFolder;
+        if (index != null) {
+            index.lastUsed = System.nanoTime();
+            return index;
+        }
+        if (folder == null) {
+            return null;
+        }
+        File file = getFile(folder, key);
+        if (!file.exists()) {
+            return null;
+        }
+        synchronized (this) {
+            index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            long start = System.nanoTime();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+                if (in.readInt() != VERSION || !key.equals(in.readUTF())) {
+                    throw new IOException("Unsupported commit index");
+                }
+                index = RepositoryIndex.readFrom(in);
+            } catch (IOException | RuntimeException e) {
+                logger.warn(MessageFormat.format("Failed to load commit index {0}", file), e);
+                file.delete();
+                return null;
+            }
+            indexes.put(key, index);
+            logger.debug(MessageFormat.format("loaded commit index of {0} in {1} msecs", key,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+        evict(key);
+        return index;
+    }
+
+    private boolean hasFile(String key) {
+        File folder = indexFolder;
+        return folder != null && getFile(folder, key).exists();
+    }
+
+    private static String getKey(Repository repository) {
+        if (repository == null || repository.getDirectory() == null) {
+            return null;
+        }
+        return repository.getDirectory().getAbsolutePath();
+    }
+
+    private static File getFile(File folder, String key) {
+        byte[] digest = org.eclipse.jgit.lib.Constants.newMessageDigest().digest(key.getBytes(StandardCharsets.UTF_8));
+        return new File(folder, ObjectId.fromRaw(digest).name() + FILE_EXTENSION);
+    }
+
+    /**
+     * Returns the sorted, distinct trigrams of the values.
+     */
+    static long[] grams(String... values) {
+        int length = 0;
+        for (String value : values) {
+            length += Math.max(0, value.length() - GRAM + 1);
+        }
+        long[] grams = new long[length];
+        int n = 0;
+        for (String value : values) {
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                grams[n++] = ((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2);
+            }
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || grams[distinct - 1] != grams[i]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * An indexed commit, the ordinal is its position in the index.
+     */
+    static class Entry extends ObjectIdOwnerMap.Entry {
+
+        private static final long serialVersionUID = 1L;
+
+        final int ordinal;
+
+        final int time;
+
+        Entry(AnyObjectId id, int ordinal, int time) {
+            super(id);
+            this.ordinal = ordinal;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The ascending ordinals of the commits which contain a trigram, encoded
+     * as variable length deltas.
+     */
+    static class Postings {
+
+        private byte[] bytes;
+
+        private int length;
+
+        private int size;
+
+        private int last;
+
+        Postings() {
+            this.bytes = new byte[4];
+        }
+
+        Postings(byte[] bytes, int size, int last) {
+            this.bytes = bytes;
+            this.length = bytes.length;
+            this.size = size;
+            this.last = last;
+        }
+
+        void add(int ordinal) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            }
+            int delta = ordinal - last;
+            while ((delta & ~0x7f) != 0) {
+                bytes[length++] = (byte) ((delta & 0x7f) | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+            last = ordinal;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Keeps the ordinals which are in these postings.
+         *
+         * @param ordinals ascending ordinals
+         * @param count the number of ordinals
+         * @return the number of kept ordinals
+         */
+        int retain(int[] ordinals, int count) {
+            int kept = 0;
+            int position = 0;
+            int read = 0;
+            int value = 0;
+            int ordinal = -1;
+            for (int i = 0; i < count; i++) {
+                while (ordinal < ordinals[i] && read < size) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = bytes[position++];
+                        delta |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    value += delta;
+                    ordinal = value;
+                    read++;
+                }
+                if (ordinal == ordinals[i]) {
+                    ordinals[kept++] = ordinals[i];
+                } else if (ordinal < ordinals[i]) {
+                    // no more postings
+                    break;
+                }
+            }
+            return kept;
+        }
+
+        /**
+         * Returns the ordinals which are in the set.
+         */
+        int[] decode(BitSet set) {
+            int[] ordinals = new int[size];
+            int count = 0;
+            int position = 0;
+            int ordinal = 0;
+            for (int i = 0; i < size; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    delta |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                ordinal += delta;
+                if (set.get(ordinal)) {
+                    ordinals[count++] = ordinal;
+                }
+            }
+            return Arrays.copyOf(ordinals, count);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            out.writeInt(last);
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+        }
+
+        static Postings readFrom(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            int last = in.readInt();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Postings(bytes, size, last);
+        }
+    }
+
+    /**
+     * The index of a repository. Searches hold the read lock, updates of a
+     * published index hold the write lock.
+     */
+    static class RepositoryIndex {
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        final ObjectIdOwnerMap<Entry> commits = new ObjectIdOwnerMap<Entry>();
+
+        final List<Entry> entries = new ArrayList<Entry>();
+
+        final Map<String, ObjectId> tips = new HashMap<String, ObjectId>();
+
+        final Map<String, BitSet> branches = new HashMap<String, BitSet>();
+
+        final Map<SearchType, Map<Long, Postings>> fields = new EnumMap<SearchType, Map<Long, Postings>>(SearchType.class);
+
+        /**
+         * The time of the last use for the eviction.
+         */
+        volatile long lastUsed = System.nanoTime();
+
+        RepositoryIndex() {
+            for (SearchType type : SearchType.values()) {
+                fields.put(type, new HashMap<Long, Postings>());
+            }
+        }
+
+        /**
+         * @return the number of indexed commits
+         */
+        int size() {
+            return entries.size();
+        }
+
+        /**
+         * Returns the commits of the branch whose indexed tip is the commit.
+         */
+        BitSet getBranch(ObjectId tip) {
+            for (Map.Entry<String, ObjectId> branch : tips.entrySet()) {
+                if (branch.getValue().equals(tip)) {
+                    return branches.get(branch.getKey());
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the commits of the branch which contain all trigrams of the
+         * value, newest first.
+         */
+        Entry[] find(SearchType type, String lcValue, BitSet branch) {
+            Map<Long, Postings> field = fields.get(type);
+            List<Postings> lists = new ArrayList<Postings>();
+            for (long gram : grams(lcValue)) {
+                Postings postings = field.get(gram);
+                if (postings == null) {
+                    return new Entry[0];
+                }
+                lists.add(postings);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+            int[] ordinals = lists.get(0).decode(branch);
+            int count = ordinals.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) {
+                count = lists.get(i).retain(ordinals, count);
+            }
+            // newest first, the ordinals of commits with the same time are
+            // in walk order
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = ((long) -entries.get(ordinals[i]).time << 32) | ordinals[i];
+            }
+            Arrays.sort(order);
+            Entry[] candidates = new Entry[count];
+            for (int i = 0; i < count; i++) {
+                candidates[i] = entries.get((int) order[i]);
+            }
+            return candidates;
+        }
+
+        /**
+         * Updates the branches and indexes their new commits.
+         *
+         * @return true if the index changed
+         */
+        boolean update(Repository repository) throws IOException {
+            boolean changed = false;
+            Set<String> names = new HashSet<String>();
+            try (RevWalk rw = new RevWalk(repository)) {
+                rw.setRetainBody(false);
+                for (Ref ref : repository.getRefDatabase().getRefsByPrefix(org.eclipse.jgit.lib.Constants.R_HEADS)) {
+                    ObjectId tip = ref.getObjectId();
+                    if (tip == null) {
+                        continue;
+                    }
+                    names.add(ref.getName());
+                    ObjectId indexed = tips.get(ref.getName());
+                    if (tip.equals(indexed)) {
+                        continue;
+                    }
+                    rw.reset();
+                    try {
+                        rw.markStart(rw.parseCommit(tip));
+                    } catch (IncorrectObjectTypeException | MissingObjectException e) {
+                        names.remove(ref.getName());
+                        continue;
+                    }
+                    BitSet branch;
+                    if (indexed != null && JGitUtils.isMergedInto(repository, indexed, tip)) {
+                        // fast-forward
+                        branch = (BitSet) branches.get(ref.getName()).clone();
+                        rw.markUninteresting(rw.parseCommit(indexed));
+                    } else {
+                        branch = new BitSet();
+                    }
+                    RevCommit commit;
+                    while ((commit = rw.next()) != null) {
+                        Entry entry = commits.get(commit);
+                        if (entry == null) {
+                            rw.parseBody(commit);
+                            entry = add(commit);
+                            commit.disposeBody();
+                        }
+                        branch.set(entry.ordinal);
+                    }
+                    tips.put(ref.getName(), tip.copy());
+                    branches.put(ref.getName(), branch);
+                    changed = true;
+                }
+            }
+            changed |= tips.keySet().retainAll(names);
+            branches.keySet().retainAll(names);
+            return changed;
+        }
+
+        private Entry add(RevCommit commit) {
+            Entry entry = new Entry(commit, entries.size(), commit.getCommitTime());
+            commits.add(entry);
+            entries.add(entry);
+            PersonIdent author = commit.getAuthorIdent();
+            PersonIdent committer = commit.getCommitterIdent();
+            index(SearchType.AUTHOR, entry, grams(author.getName().toLowerCase(),
+                    author.getEmailAddress().toLowerCase()));
+            index(SearchType.COMMITTER, entry, grams(committer.getName().toLowerCase(),
+                    committer.getEmailAddress().toLowerCase()));
+            index(SearchType.COMMIT, entry, grams(commit.getFullMessage().toLowerCase()));
+            return entry;
+        }
+
+        private void index(SearchType type, Entry entry, long[] grams) {
+            Map<Long, Postings> field = fields.get(type);
+            for (long gram : grams) {
+                Postings postings = field.get(gram);
+                if (postings == null) {
+                    postings = new Postings();
+                    field.put(gram, postings);
+                }
+                postings.add(entry.ordinal);
+            }
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            byte[] raw = new byte[org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH];
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                entry.copyRawTo(raw, 0);
+                out.write(raw);
+                out.writeInt(entry.time);
+            }
+            out.writeInt(tips.size());
+            for (Map.Entry<String, ObjectId> tip : tips.entrySet()) {
+                out.writeUTF(tip.getKey());
+                tip.getValue().copyRawTo(raw, 0);
+                out.write(raw);
+                long[] words = branches.get(tip.getKey()).toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+            for (SearchType type : SearchType.values()) {
+                Map<Long, Postings> field = fields.get(type);
+                out.writeInt(field.size());
+                for (Map.Entry<Long, Postings> postings : field.entrySet()) {
+                    out.writeLong(postings.getKey());
+                    postings.getValue().writeTo(out);
+                }
+            }
+        }
+
+        static RepositoryIndex readFrom(DataInputStream in) throws IOException {
+            RepositoryIndex index = new RepositoryIndex();
+            byte[] raw = new byte[org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH];
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                in.readFully(raw);
+                Entry entry = new Entry(ObjectId.fromRaw(raw), i, in.readInt());
+                index.commits.add(entry);
+                index.entries.add(entry);
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                in.readFully(raw);
+                long[] words = new long[in.readInt()];
+                for (int j = 0; j < words.length; j++) {
+                    words[j] = in.readLong();
+                }
+                index.tips.put(name, ObjectId.fromRaw(raw));
+                index.branches.put(name, BitSet.valueOf(words));
+            }
+            for (SearchType type : SearchType.values()) {
+                Map<Long, Postings> field = index.fields.get(type);
+                count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long gram = in.readLong();
+                    field.put(gram, Postings.readFrom(in));
+                }
+            }
+            return index;
+        }
+    }
+}
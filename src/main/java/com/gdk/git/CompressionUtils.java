@@ -7,6 +7,7 @@ import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
@@ -81,25 +82,18 @@ public class CompressionUtils {
                 tw.setFilter(f);
             }
             tw.setRecursive(true);
-            MutableObjectId id = new MutableObjectId();
             ObjectReader reader = tw.getObjectReader();
             long modified = commit.getAuthorIdent().getWhen().getTime();
-            while (tw.next()) {
-                FileMode mode = tw.getFileMode(0);
-                if (mode == FileMode.GITLINK || mode == FileMode.TREE) {
-                    continue;
-                }
-                tw.getObjectId(id, 0);
-
-                ObjectLoader loader = repository.open(id);
+            List<ArchivedFile> files = listFiles(tw);
+            Map<ObjectId, BlobProber.Probe> probes = BlobProber.instance().probe(repository, reader, files);
+            for (ArchivedFile file : files) {
+                FileMode mode = file.mode;
+                ObjectLoader loader = reader.open(file);
 
-                ZipArchiveEntry entry = new ZipArchiveEntry(tw.getPathString());
+                ZipArchiveEntry entry = new ZipArchiveEntry(file.path);
 
-                FilestoreModel filestoreItem = null;
-
-                if (JGitUtils.isPossibleFilestoreItem(loader.getSize())) {
-                    filestoreItem = JGitUtils.getFilestoreItem(tw.getObjectReader().open(id));
-                }
+                BlobProber.Probe probe = probes.get(file);
+                FilestoreModel filestoreItem = probe == null ? null : probe.getFilestoreItem();
 
                 final long size = (filestoreItem == null) ? loader.getSize() : filestoreItem.getSize();
 
@@ -233,19 +227,15 @@ public class CompressionUtils {
                 tw.setFilter(f);
             }
             tw.setRecursive(true);
-            MutableObjectId id = new MutableObjectId();
+            ObjectReader reader = tw.getObjectReader();
             long modified = commit.getAuthorIdent().getWhen().getTime();
-            while (tw.next()) {
-                FileMode mode = tw.getFileMode(0);
-                if (mode == FileMode.GITLINK || mode == FileMode.TREE) {
-                    continue;
-                }
-
-                tw.getObjectId(id, 0);
-
-                ObjectLoader loader = repository.open(id);
+            List<ArchivedFile> files = listFiles(tw);
+            Map<ObjectId, BlobProber.Probe> probes = BlobProber.instance().probe(repository, reader, files);
+            for (ArchivedFile file : files) {
+                FileMode mode = file.mode;
+                ObjectLoader loader = reader.open(file);
                 if (FileMode.SYMLINK == mode) {
-                    TarArchiveEntry entry = new TarArchiveEntry(tw.getPathString(), TarArchiveEntry.LF_SYMLINK);
+                    TarArchiveEntry entry = new TarArchiveEntry(file.path, TarArchiveEntry.LF_SYMLINK);
                     ByteArrayOutputStream bos = new ByteArrayOutputStream();
                     loader.copyTo(bos);
                     entry.setLinkName(bos.toString());
@@ -253,15 +243,12 @@ public class CompressionUtils {
                     tos.putArchiveEntry(entry);
                     tos.closeArchiveEntry();
                 } else {
-                    TarArchiveEntry entry = new TarArchiveEntry(tw.getPathString());
+                    TarArchiveEntry entry = new TarArchiveEntry(file.path);
                     entry.setMode(mode.getBits());
                     entry.setModTime(modified);
 
-                    FilestoreModel filestoreItem = null;
-
-                    if (JGitUtils.isPossibleFilestoreItem(loader.getSize())) {
-                        filestoreItem = JGitUtils.getFilestoreItem(tw.getObjectReader().open(id));
-                    }
+                    BlobProber.Probe probe = probes.get(file);
+                    FilestoreModel filestoreItem = probe == null ? null : probe.getFilestoreItem();
 
                     final long size = (filestoreItem == null) ? loader.getSize() : filestoreItem.getSize();
 
@@ -298,4 +285,42 @@ public class CompressionUtils {
         }
         return success;
     }
+
+    /**
+     * Lists the files of a tree walk, the sizes and the filestore pointers of
+     * the files are probed in one batch before they are archived.
+     *
+     * @param tw
+     * @return the files without folders and submodules
+     * @throws IOException
+     */
+    private static List<ArchivedFile> listFiles(TreeWalk tw) throws IOException {
+        List<ArchivedFile> files = new ArrayList<ArchivedFile>();
+        while (tw.next()) {
+            FileMode mode = tw.getFileMode(0);
+            if (mode == FileMode.GITLINK || mode == FileMode.TREE) {
+                continue;
+            }
+            files.add(new ArchivedFile(tw.getObjectId(0), tw.getPathString(), mode));
+        }
+        return files;
+    }
+
+    /**
+     * A file of an archive.
+     */
+    private static class ArchivedFile extends ObjectId {
+
+        private static final long serialVersionUID = 1L;
+
+        final String path;
+
+        final FileMode mode;
+
+        ArchivedFile(AnyObjectId id, String path, FileMode mode) {
+            super(id);
+            this.path = path;
+            this.mode = mode;
+        }
+    }
 }
@@ -176,6 +176,14 @@ public class GarbageCollectorService implements Runnable {
 
                     garbageCollected = true;
                 }
+
+                // gc writes the commit-graph of enabled repositories, refresh
+                // it if commits were pushed since the last collection
+                boolean changedPaths = settings.isWriteChangedPathFilters();
+                if (settings.isWriteCommitGraph() && CommitGraphs.isStale(repository, changedPaths)) {
+                    logger.debug("Writing commit-graph of {}", repositoryName);
+                    CommitGraphs.write(repository, changedPaths);
+                }
             } catch (Exception e) {
                 logger.error("Error collecting garbage in {}", repositoryName, e);
             } finally {
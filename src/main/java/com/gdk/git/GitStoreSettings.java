@@ -7,6 +7,7 @@ import java.util.List;
 public class GitStoreSettings {
     private File repositoriesFolder;
     private boolean createRepositoriesShared = false;
+    private boolean createRepositoriesReftable = false;
     private boolean cacheRepositoryList = true;
     private boolean searchRepositoriesSubfolders = true;
     private int searchRecursionDepth = -1;
@@ -51,6 +52,36 @@ public class GitStoreSettings {
 
     private String commitMessageRenderer = "plain";
 
+    private File cacheFolder;
+    private int catalogSnapshotInterval = 15;
+
+    private boolean watchRepositoriesFolder = true;
+    private long repositoryWatcherDelay = 2000;
+
+    private int repositorySizeCacheSize = 100000;
+    private long repositoryMetricsCacheBudget = 16 * 1024 * 1024;
+    private long commitCacheBudget = 128 * 1024 * 1024;
+    private int commitCacheWarmupThreads = 2;
+    private double commitCacheWarmupRate = 20;
+
+    private boolean writeCommitGraph = true;
+    private int commitGraphDelay = 60;
+    private boolean writeChangedPathFilters = true;
+
+    private boolean indexCommits = true;
+    private int commitIndexDelay = 10;
+    private long commitIndexSize = 2000000;
+
+    private int repositorySearchThreads = 4;
+    private long repositorySearchBudget = 2000;
+
+    private long mergeBaseCacheSize = 100000;
+    private long refCacheSize = 1000000;
+    private long treeListingCacheSize = 64L * 1024 * 1024;
+    private long lastCommitCacheSize = 1000000;
+    private long blobProbeCacheSize = 1000000;
+    private int blobHeapLimit = 50 * 1024 * 1024;
+
     public File getRepositoriesFolder() {
         return repositoriesFolder;
     }
@@ -67,6 +98,18 @@ public class GitStoreSettings {
         this.createRepositoriesShared = createRepositoriesShared;
     }
 
+    /**
+     * Creates new repositories with their refs in a reftable instead of loose
+     * and packed refs.
+     */
+    public boolean isCreateRepositoriesReftable() {
+        return createRepositoriesReftable;
+    }
+
+    public void setCreateRepositoriesReftable(boolean createRepositoriesReftable) {
+        this.createRepositoriesReftable = createRepositoriesReftable;
+    }
+
     public boolean isCacheRepositoryList() {
         return cacheRepositoryList;
     }
@@ -319,4 +362,274 @@ public class GitStoreSettings {
         this.commitMessageRenderer = commitMessageRenderer;
     }
 
+    /**
+     * Folder for persistent caches. Persistent caches are disabled if this is
+     * not set.
+     */
+    public File getCacheFolder() {
+        return cacheFolder;
+    }
+
+    public void setCacheFolder(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    /**
+     * Minutes between snapshots of the repository catalog and the commit cache,
+     * 0 = only on shutdown.
+     */
+    public int getCatalogSnapshotInterval() {
+        return catalogSnapshotInterval;
+    }
+
+    public void setCatalogSnapshotInterval(int catalogSnapshotInterval) {
+        this.catalogSnapshotInterval = catalogSnapshotInterval;
+    }
+
+    /**
+     * Watch the repositories folder for created and deleted repositories when
+     * the repository list is cached.
+     */
+    public boolean isWatchRepositoriesFolder() {
+        return watchRepositoriesFolder;
+    }
+
+    public void setWatchRepositoriesFolder(boolean watchRepositoriesFolder) {
+        this.watchRepositoriesFolder = watchRepositoriesFolder;
+    }
+
+    /**
+     * Milliseconds to wait for a path to settle before a watch event is
+     * processed.
+     */
+    public long getRepositoryWatcherDelay() {
+        return repositoryWatcherDelay;
+    }
+
+    public void setRepositoryWatcherDelay(long repositoryWatcherDelay) {
+        this.repositoryWatcherDelay = repositoryWatcherDelay;
+    }
+
+    /**
+     * Maximum number of cached repository sizes.
+     */
+    public int getRepositorySizeCacheSize() {
+        return repositorySizeCacheSize;
+    }
+
+    public void setRepositorySizeCacheSize(int repositorySizeCacheSize) {
+        this.repositorySizeCacheSize = repositorySizeCacheSize;
+    }
+
+    /**
+     * Approximate memory budget in bytes of the repository metrics cache.
+     */
+    public long getRepositoryMetricsCacheBudget() {
+        return repositoryMetricsCacheBudget;
+    }
+
+    public void setRepositoryMetricsCacheBudget(long repositoryMetricsCacheBudget) {
+        this.repositoryMetricsCacheBudget = repositoryMetricsCacheBudget;
+    }
+
+    /**
+     * Approximate memory budget in bytes of the commit cache.
+     */
+    public long getCommitCacheBudget() {
+        return commitCacheBudget;
+    }
+
+    public void setCommitCacheBudget(long commitCacheBudget) {
+        this.commitCacheBudget = commitCacheBudget;
+    }
+
+    /**
+     * Number of threads which warm up the commit cache after startup.
+     */
+    public int getCommitCacheWarmupThreads() {
+        return commitCacheWarmupThreads;
+    }
+
+    public void setCommitCacheWarmupThreads(int commitCacheWarmupThreads) {
+        this.commitCacheWarmupThreads = commitCacheWarmupThreads;
+    }
+
+    /**
+     * Maximum number of branches per second which are loaded by the commit
+     * cache warm-up, 0 = unlimited.
+     */
+    public double getCommitCacheWarmupRate() {
+        return commitCacheWarmupRate;
+    }
+
+    public void setCommitCacheWarmupRate(double commitCacheWarmupRate) {
+        this.commitCacheWarmupRate = commitCacheWarmupRate;
+    }
+
+    /**
+     * Write commit-graph files during garbage collection and after pushes so
+     * that history walks read the commit graph instead of the packs.
+     */
+    public boolean isWriteCommitGraph() {
+        return writeCommitGraph;
+    }
+
+    public void setWriteCommitGraph(boolean writeCommitGraph) {
+        this.writeCommitGraph = writeCommitGraph;
+    }
+
+    /**
+     * Seconds after the last push until the commit-graph of a repository is
+     * refreshed, 0 = only during garbage collection.
+     */
+    public int getCommitGraphDelay() {
+        return commitGraphDelay;
+    }
+
+    public void setCommitGraphDelay(int commitGraphDelay) {
+        this.commitGraphDelay = commitGraphDelay;
+    }
+
+    /**
+     * Write changed-path Bloom filters into the commit-graph so that the
+     * history of a path skips the commits which did not change it.
+     */
+    public boolean isWriteChangedPathFilters() {
+        return writeChangedPathFilters;
+    }
+
+    public void setWriteChangedPathFilters(boolean writeChangedPathFilters) {
+        this.writeChangedPathFilters = writeChangedPathFilters;
+    }
+
+    /**
+     * Maintain an index of the commit messages, authors and committers of the
+     * branches of searched repositories so that searches do not walk the
+     * history.
+     */
+    public boolean isIndexCommits() {
+        return indexCommits;
+    }
+
+    public void setIndexCommits(boolean indexCommits) {
+        this.indexCommits = indexCommits;
+    }
+
+    /**
+     * Seconds after the last push until the commit index of a repository is
+     * updated.
+     */
+    public int getCommitIndexDelay() {
+        return commitIndexDelay;
+    }
+
+    public void setCommitIndexDelay(int commitIndexDelay) {
+        this.commitIndexDelay = commitIndexDelay;
+    }
+
+    /**
+     * Maximum total number of commits of the commit indexes in memory, the
+     * least recently used indexes are evicted.
+     */
+    public long getCommitIndexSize() {
+        return commitIndexSize;
+    }
+
+    public void setCommitIndexSize(long commitIndexSize) {
+        this.commitIndexSize = commitIndexSize;
+    }
+
+    /**
+     * Number of threads which search the repositories of a search across
+     * all repositories.
+     */
+    public int getRepositorySearchThreads() {
+        return repositorySearchThreads;
+    }
+
+    public void setRepositorySearchThreads(int repositorySearchThreads) {
+        this.repositorySearchThreads = repositorySearchThreads;
+    }
+
+    /**
+     * Milliseconds a search across all repositories may walk the history of
+     * one repository, 0 = unlimited.
+     */
+    public long getRepositorySearchBudget() {
+        return repositorySearchBudget;
+    }
+
+    public void setRepositorySearchBudget(long repositorySearchBudget) {
+        this.repositorySearchBudget = repositorySearchBudget;
+    }
+
+    /**
+     * Maximum number of cached merge bases, ancestry checks and commit
+     * counts of pairs of commits.
+     */
+    public long getMergeBaseCacheSize() {
+        return mergeBaseCacheSize;
+    }
+
+    public void setMergeBaseCacheSize(long mergeBaseCacheSize) {
+        this.mergeBaseCacheSize = mergeBaseCacheSize;
+    }
+
+    /**
+     * Maximum total number of refs of the cached branch and tag lists.
+     */
+    public long getRefCacheSize() {
+        return refCacheSize;
+    }
+
+    public void setRefCacheSize(long refCacheSize) {
+        this.refCacheSize = refCacheSize;
+    }
+
+    /**
+     * Memory budget in bytes of the cached folder and document listings.
+     */
+    public long getTreeListingCacheSize() {
+        return treeListingCacheSize;
+    }
+
+    public void setTreeListingCacheSize(long treeListingCacheSize) {
+        this.treeListingCacheSize = treeListingCacheSize;
+    }
+
+    /**
+     * Maximum total number of folder entries of the cached last commits.
+     */
+    public long getLastCommitCacheSize() {
+        return lastCommitCacheSize;
+    }
+
+    public void setLastCommitCacheSize(long lastCommitCacheSize) {
+        this.lastCommitCacheSize = lastCommitCacheSize;
+    }
+
+    /**
+     * Maximum number of memoized blob sizes and filestore pointers.
+     */
+    public long getBlobProbeCacheSize() {
+        return blobProbeCacheSize;
+    }
+
+    public void setBlobProbeCacheSize(long blobProbeCacheSize) {
+        this.blobProbeCacheSize = blobProbeCacheSize;
+    }
+
+    /**
+     * Maximum size in bytes of a blob which is loaded into the heap by the
+     * content views, larger blobs are streamed. JGit's own stream file
+     * threshold is not changed.
+     */
+    public int getBlobHeapLimit() {
+        return blobHeapLimit;
+    }
+
+    public void setBlobHeapLimit(int blobHeapLimit) {
+        this.blobHeapLimit = blobHeapLimit;
+    }
+
 }
@@ -197,6 +197,43 @@ public interface IRepositoryManager {
      */
     RepositoryModel getRepositoryModel(UserModel user, String repositoryName);
 
+    /**
+     * Converts the refs of a repository to the reftable format or back to
+     * loose and packed refs. The repository should not be used while its refs
+     * are converted.
+     *
+     * @param repositoryName
+     * @param reftable if true, the refs are converted to a reftable
+     * @return true if the refs were converted, false if the repository
+     *         already uses the format
+     * @throws GitException
+     */
+    boolean convertRefStorage(String repositoryName, boolean reftable) throws GitException;
+
+    /**
+     * Converts the refs of all repositories with at least the specified
+     * number of refs to the reftable format.
+     *
+     * @param minimumRefs
+     * @return the names of the converted repositories
+     */
+    List<String> convertToReftable(int minimumRefs);
+
+    /**
+     * Searches the history of the default branches of all repositories which
+     * the user can view and lists the newest matches of all repositories.
+     *
+     * @param user
+     * @param value
+     * @param type AUTHOR, COMMITTER, COMMIT
+     * @param maxCount the number of listed matches
+     * @param listener receives the matches as soon as they are listed, may be null
+     * @return the finished search
+     * @throws InterruptedException
+     */
+    RepositorySearch searchRepositories(UserModel user, String value, Constants.SearchType type, int maxCount,
+            RepositorySearch.Listener listener) throws InterruptedException;
+
     /**
      * Returns the repository model for the specified repository. This method
      * does not consider user access permissions.
@@ -10,6 +10,8 @@ import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.io.filefilter.TrueFileFilter;
@@ -28,6 +30,9 @@ import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.errors.*;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.ChangedPathFilter;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.RefUpdate.Result;
@@ -43,6 +48,7 @@ import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.*;
 import org.eclipse.jgit.util.FS;
@@ -58,6 +64,11 @@ public class JGitUtils {
 
     static final Logger LOGGER = LoggerFactory.getLogger(JGitUtils.class);
 
+    /**
+     * The ref storage format of loose and packed refs.
+     */
+    private static final String REF_STORAGE_REFDIR = "refdir";
+
     /**
      * Log an error message and exception.
      *
@@ -228,6 +239,21 @@ public class JGitUtils {
      * @return Repository
      */
     public static Repository createRepository(File repositoriesFolder, String name, String shared) {
+        return createRepository(repositoriesFolder, name, shared, false);
+    }
+
+    /**
+     * Creates a bare, shared repository which optionally stores its refs in a
+     * reftable.
+     *
+     * @param repositoriesFolder
+     * @param name
+     * @param shared             the setting for the --shared option of "git init".
+     * @param reftable           if true, the refs are stored in a reftable
+     * @return Repository
+     */
+    public static Repository createRepository(File repositoriesFolder, String name, String shared,
+            boolean reftable) {
         try {
             Repository repo = null;
             try {
@@ -236,6 +262,9 @@ public class JGitUtils {
             } catch (GitAPIException e) {
                 throw new RuntimeException(e);
             }
+            if (reftable) {
+                convertRefStorage(repo, true);
+            }
 
             GitConfigSharedRepository sharedRepository = new GitConfigSharedRepository(shared);
             if (sharedRepository.isShared()) {
@@ -260,6 +289,43 @@ public class JGitUtils {
         }
     }
 
+    /**
+     * Returns true if the repository stores its refs in a reftable instead of
+     * loose and packed refs.
+     *
+     * @param repository
+     * @return true if the repository uses the reftable format
+     */
+    public static boolean isReftable(Repository repository) {
+        return ConfigConstants.CONFIG_REF_STORAGE_REFTABLE.equalsIgnoreCase(repository.getConfig().getString(
+                ConfigConstants.CONFIG_EXTENSIONS_SECTION, null, ConfigConstants.CONFIG_KEY_REF_STORAGE));
+    }
+
+    /**
+     * Converts the refs and reflogs of the repository to the reftable format
+     * or back to loose and packed refs. A reftable reads and updates refs in
+     * time independent of the number of refs, which matters for repositories
+     * with hundreds of thousands of refs. The repository must not be used by
+     * other threads or processes during the conversion.
+     *
+     * @param repository
+     * @param reftable   if true, the refs are converted to a reftable
+     * @return true if the refs were converted, false if the repository
+     *         already uses the format
+     * @throws IOException
+     */
+    public static boolean convertRefStorage(Repository repository, boolean reftable) throws IOException {
+        if (isReftable(repository) == reftable) {
+            return false;
+        }
+        if (!(repository instanceof FileRepository)) {
+            throw new IOException(MessageFormat.format("Can not convert the refs of {0}", repository));
+        }
+        ((FileRepository) repository).convertRefStorage(reftable ? ConfigConstants.CONFIG_REF_STORAGE_REFTABLE
+                : REF_STORAGE_REFDIR, true, false);
+        return true;
+    }
+
     private enum GitConfigSharedRepositoryValue {
         UMASK("0", 0), FALSE("0", 0), OFF("0", 0), NO("0", 0),
         GROUP("1", 0660), TRUE("1", 0660), ON("1", 0660), YES("1", 0660),
@@ -422,81 +488,10 @@ public class JGitUtils {
      */
     public static List<String> getRepositoryList(File repositoriesFolder, boolean onlyBare,
                                                  boolean searchSubfolders, int depth, List<String> exclusions) {
-        List<String> list = new ArrayList<String>();
         if (repositoriesFolder == null || !repositoriesFolder.exists()) {
-            return list;
-        }
-        List<Pattern> patterns = new ArrayList<Pattern>();
-        if (exclusions != null && !exclusions.isEmpty()) {
-            for (String regex : exclusions) {
-                patterns.add(Pattern.compile(regex));
-            }
+            return new ArrayList<String>();
         }
-        list.addAll(getRepositoryList(repositoriesFolder.getAbsolutePath(), repositoriesFolder,
-                onlyBare, searchSubfolders, depth, patterns));
-        StringUtils.sortRepositorynames(list);
-        list.remove(".git"); // issue-256
-        return list;
-    }
-
-    /**
-     * Recursive function to find git repositories.
-     *
-     * @param basePath         basePath is stripped from the repository name as repositories
-     *                         are relative to this path
-     * @param searchFolder
-     * @param onlyBare         if true only bare repositories will be listed. if false all
-     *                         repositories are included.
-     * @param searchSubfolders recurse into subfolders to find grouped repositories
-     * @param depth            recursion depth, -1 = infinite recursion
-     * @param patterns         list of regex patterns for matching to folder names
-     * @return
-     */
-    private static List<String> getRepositoryList(String basePath, File searchFolder,
-                                                  boolean onlyBare, boolean searchSubfolders, int depth, List<Pattern> patterns) {
-        File baseFile = new File(basePath);
-        List<String> list = new ArrayList<String>();
-        if (depth == 0) {
-            return list;
-        }
-
-        int nextDepth = (depth == -1) ? -1 : depth - 1;
-        for (File file : searchFolder.listFiles()) {
-            if (file.isDirectory()) {
-                boolean exclude = false;
-                for (Pattern pattern : patterns) {
-                    String path = GitFileUtils.getRelativePath(baseFile, file).replace('\\', '/');
-                    if (pattern.matcher(path).matches()) {
-                        LOGGER.debug(MessageFormat.format("excluding {0} because of rule {1}", path, pattern.pattern()));
-                        exclude = true;
-                        break;
-                    }
-                }
-                if (exclude) {
-                    // skip to next file
-                    continue;
-                }
-
-                File gitDir = FileKey.resolve(new File(searchFolder, file.getName()), FS.DETECTED);
-                if (gitDir != null) {
-                    if (onlyBare && gitDir.getName().equals(".git")) {
-                        continue;
-                    }
-                    if (gitDir.equals(file) || gitDir.getParentFile().equals(file)) {
-                        // determine repository name relative to base path
-                        String repository = GitFileUtils.getRelativePath(baseFile, file);
-                        list.add(repository);
-                    } else if (searchSubfolders && file.canRead()) {
-                        // look for repositories in subfolders
-                        list.addAll(getRepositoryList(basePath, file, onlyBare, searchSubfolders, nextDepth, patterns));
-                    }
-                } else if (searchSubfolders && file.canRead()) {
-                    // look for repositories in subfolders
-                    list.addAll(getRepositoryList(basePath, file, onlyBare, searchSubfolders, nextDepth, patterns));
-                }
-            }
-        }
-        return list;
+        return new RepositoryDiscovery(repositoriesFolder, onlyBare, searchSubfolders, depth, exclusions).list();
     }
 
     /**
@@ -522,10 +517,15 @@ public class JGitUtils {
             }
 
             RevWalk walk = new RevWalk(repository);
+            // walk the commit-graph, only the first commit needs a body
+            walk.setRetainBody(false);
             walk.sort(RevSort.REVERSE);
             RevCommit head = walk.parseCommit(branchObject);
             walk.markStart(head);
             commit = walk.next();
+            if (commit != null) {
+                walk.parseBody(commit);
+            }
             walk.dispose();
         } catch (Throwable t) {
             error(t, repository, "{0} failed to determine first commit");
@@ -718,7 +718,7 @@ public class JGitUtils {
                 FileMode entmode = tw.getFileMode(0);
                 if (entmode != FileMode.GITLINK) {
                     ObjectLoader ldr = repository.open(entid, Constants.OBJ_BLOB);
-                    content = ldr.getCachedBytes();
+                    content = ldr.getCachedBytes(BlobContent.getHeapLimit());
                 }
             }
         } catch (Throwable t) {
@@ -762,7 +762,7 @@ public class JGitUtils {
         try {
             RevBlob blob = rw.lookupBlob(ObjectId.fromString(objectId));
             ObjectLoader ldr = repository.open(blob.getId(), Constants.OBJ_BLOB);
-            content = ldr.getCachedBytes();
+            content = ldr.getCachedBytes(BlobContent.getHeapLimit());
         } catch (Throwable t) {
             error(t, repository, "{0} can't find blob {1}", objectId);
         } finally {
@@ -798,46 +798,7 @@ public class JGitUtils {
      * @return list of files in specified path
      */
     public static List<PathModel> getFilesInPath(Repository repository, String path, RevCommit commit) {
-        List<PathModel> list = new ArrayList<PathModel>();
-        if (!hasCommits(repository)) {
-            return list;
-        }
-        if (commit == null) {
-            commit = getCommit(repository, null);
-        }
-        final TreeWalk tw = new TreeWalk(repository);
-        try {
-            tw.addTree(commit.getTree());
-            if (!StringUtils.isEmpty(path)) {
-                PathFilter f = PathFilter.create(path);
-                tw.setFilter(f);
-                tw.setRecursive(false);
-                boolean foundFolder = false;
-                while (tw.next()) {
-                    if (!foundFolder && tw.isSubtree()) {
-                        tw.enterSubtree();
-                    }
-                    if (tw.getPathString().equals(path)) {
-                        foundFolder = true;
-                        continue;
-                    }
-                    if (foundFolder) {
-                        list.add(getPathModel(tw, path, commit));
-                    }
-                }
-            } else {
-                tw.setRecursive(false);
-                while (tw.next()) {
-                    list.add(getPathModel(tw, null, commit));
-                }
-            }
-        } catch (IOException e) {
-            error(e, repository, "{0} failed to get files for commit {1}", commit.getName());
-        } finally {
-            tw.close();
-        }
-        Collections.sort(list);
-        return list;
+        return getFolderListing(repository, path, commit, TreeListingCache.Mode.FILES);
     }
 
     /**
@@ -845,7 +806,13 @@ public class JGitUtils {
      * commit. If the repository does not exist or is empty, an empty list is
      * returned.
      * <p>
-     * This is modified version that implements path compression feature.
+     * This is modified version that implements path compression feature: a
+     * chain of folders which only contain one folder is listed as a single
+     * entry, e.g. {@code src/main/java}, see {@link PathUtils#compressPaths}.
+     * <p>
+     * The folder is listed in a single pass: only the folder and the folders of
+     * the compressed chains are parsed, and the blob sizes and the filestore
+     * pointers of the files are read in batches.
      *
      * @param repository
      * @param path       if unspecified, root folder is assumed.
@@ -853,44 +820,192 @@ public class JGitUtils {
      * @return list of files in specified path
      */
     public static List<PathModel> getFilesInPath2(Repository repository, String path, RevCommit commit) {
-        List<PathModel> list = new ArrayList<PathModel>();
+        return getFolderListing(repository, path, commit, TreeListingCache.Mode.COMPRESSED);
+    }
+
+    /**
+     * Returns the cached listing of a folder, see {@link TreeListingCache}.
+     *
+     * @param repository
+     * @param path       if unspecified, root folder is assumed.
+     * @param commit     if null, HEAD is assumed.
+     * @param mode       {@code FILES} or {@code COMPRESSED}
+     * @return list of files in specified path
+     */
+    private static List<PathModel> getFolderListing(Repository repository, String path, RevCommit commit,
+            final TreeListingCache.Mode mode) {
         if (!hasCommits(repository)) {
-            return list;
+            return new ArrayList<PathModel>();
         }
         if (commit == null) {
             commit = getCommit(repository, null);
         }
-        final TreeWalk tw = new TreeWalk(repository);
-        try {
+        final String commitId = commit.getName();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            ObjectId tree = commit.getTree();
+            String basePath = "";
+            if (!StringUtils.isEmpty(path)) {
+                try (TreeWalk tw = TreeWalk.forPath(reader, path, commit.getTree())) {
+                    if (tw == null || !tw.isSubtree()) {
+                        return new ArrayList<PathModel>();
+                    }
+                    tree = tw.getObjectId(0);
+                    basePath = tw.getPathString() + '/';
+                }
+            }
+            final ObjectId folder = tree;
+            final String prefix = basePath;
+            return TreeListingCache.instance().get(mode, folder, prefix, commitId,
+                    () -> listFolder(repository, reader, folder, prefix, mode == TreeListingCache.Mode.COMPRESSED, commitId));
+        } catch (IOException e) {
+            error(e, repository, "{0} failed to get files for commit {1}", commitId);
+        }
+        return new ArrayList<PathModel>();
+    }
 
-            tw.addTree(commit.getTree());
-            final boolean isPathEmpty = StringUtils.isEmpty(path);
-            if (!isPathEmpty) {
-                PathFilter f = PathFilter.create(path);
-                tw.setFilter(f);
+    /**
+     * Lists the entries of a folder in a single pass: only the folder and the
+     * folders of the compressed chains are parsed, and the blob sizes and the
+     * filestore pointers of the files are read in one batch.
+     *
+     * @param repository
+     * @param reader
+     * @param tree     the tree of the folder
+     * @param basePath the path of the folder with a trailing slash
+     * @param compress if true, chains of folders are listed as one entry
+     * @param commitId
+     * @return the entries of the folder
+     * @throws IOException
+     */
+    private static List<PathModel> listFolder(Repository repository, ObjectReader reader, ObjectId tree, String basePath, boolean compress,
+            String commitId) throws IOException {
+        List<ListedEntry> entries = new ArrayList<ListedEntry>();
+        List<ListedEntry> blobs = new ArrayList<ListedEntry>();
+        for (CanonicalTreeParser p = new CanonicalTreeParser(null, reader, tree); !p.eof(); p.next()) {
+            int mode = FileMode.fromBits(p.getEntryRawMode()).getBits();
+            ListedEntry entry;
+            if (FileMode.TREE.equals(mode) && compress) {
+                entry = compressFolder(reader, p.getEntryPathString(), p.getEntryObjectId());
+            } else {
+                entry = new ListedEntry(p.getEntryObjectId(), p.getEntryPathString(), mode);
+                if (!FileMode.TREE.equals(mode) && !FileMode.GITLINK.equals(mode)) {
+                    blobs.add(entry);
+                }
             }
+            entries.add(entry);
+        }
+        if (!readBlobSizes(repository, reader, blobs)) {
+            throw new TreeListingCache.IncompleteListingException(MessageFormat.format(
+                    "failed to read the blobs of folder {0} of tree {1}", basePath, tree.name()),
+                    toPathModels(entries, basePath, commitId));
+        }
+        return toPathModels(entries, basePath, commitId);
+    }
 
-            tw.setRecursive(true);
-            List<String> paths = new ArrayList<>();
+    private static List<PathModel> toPathModels(List<ListedEntry> entries, String basePath, String commitId) {
+        List<PathModel> list = new ArrayList<PathModel>(entries.size());
+        for (ListedEntry entry : entries) {
+            list.add(new PathModel(entry.name, basePath + entry.name, entry.filestoreItem, entry.size, entry.mode,
+                    entry.getName(), commitId));
+        }
+        return list;
+    }
 
-            while (tw.next()) {
-                String pathString = tw.getPathString();
-                String child = isPathEmpty ? pathString : pathString.replaceFirst(Pattern.quote(String.format("%s/", path)), "");
-                paths.add(child);
+    /**
+     * Follows the chain of folders below a folder which only contain one
+     * folder.
+     *
+     * @param reader
+     * @param name   the name of the folder
+     * @param tree   the tree of the folder
+     * @return the last folder of the chain, named by the chain
+     * @throws IOException
+     */
+    private static ListedEntry compressFolder(ObjectReader reader, String name, ObjectId tree) throws IOException {
+        StringBuilder chain = new StringBuilder(name);
+        CanonicalTreeParser p = new CanonicalTreeParser(null, reader, tree);
+        while (!p.eof() && FileMode.TREE.equals(p.getEntryRawMode())) {
+            String child = p.getEntryPathString();
+            ObjectId childTree = p.getEntryObjectId();
+            p.next();
+            if (!p.eof()) {
+                // more than one entry
+                break;
             }
+            chain.append('/').append(child);
+            tree = childTree;
+            p = new CanonicalTreeParser(null, reader, tree);
+        }
+        return new ListedEntry(tree, chain.toString(), FileMode.TREE.getBits());
+    }
 
-            for (String p : PathUtils.compressPaths(paths)) {
-                String pathString = isPathEmpty ? p : String.format("%s/%s", path, p);
-                list.add(getPathModel(repository, pathString, path, commit));
+    /**
+     * Reads the sizes of the blobs and their filestore pointers in one pass
+     * over the packs, see {@link BlobProber}.
+     *
+     * @param repository
+     * @param reader
+     * @param blobs
+     * @return false if a blob is missing or can not be read, its size is 0
+     */
+    private static boolean readBlobSizes(Repository repository, ObjectReader reader, List<ListedEntry> blobs) {
+        if (blobs.isEmpty()) {
+            return true;
+        }
+        Map<ObjectId, BlobProber.Probe> probes = BlobProber.instance().probe(repository, reader, blobs);
+        boolean complete = true;
+        for (ListedEntry entry : blobs) {
+            BlobProber.Probe probe = probes.get(entry);
+            if (probe != null) {
+                entry.size = probe.size;
+                entry.filestoreItem = probe.getFilestoreItem();
+            } else {
+                complete = false;
             }
+        }
+        return complete;
+    }
 
-        } catch (IOException e) {
-            error(e, repository, "{0} failed to get files for commit {1}", commit.getName());
-        } finally {
-            tw.close();
+    /**
+     * Probes the new blobs of the diff entries in one pass, see
+     * {@link BlobProber}.
+     *
+     * @param repository
+     * @param reader
+     * @param diffs
+     * @return the probes by blob id
+     */
+    private static Map<ObjectId, BlobProber.Probe> probeNewBlobs(Repository repository, ObjectReader reader,
+            List<DiffEntry> diffs) {
+        List<ObjectId> blobs = new ArrayList<ObjectId>(diffs.size());
+        for (DiffEntry diff : diffs) {
+            if (diff.getNewId().isComplete() && diff.getNewMode() != FileMode.GITLINK) {
+                blobs.add(diff.getNewId().toObjectId());
+            }
+        }
+        return BlobProber.instance().probe(repository, reader, blobs);
+    }
+
+    /**
+     * An entry of a folder listing.
+     */
+    private static class ListedEntry extends ObjectId {
+
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+
+        final int mode;
+
+        long size;
+
+        FilestoreModel filestoreItem;
+
+        ListedEntry(AnyObjectId id, String name, int mode) {
+            super(id);
+            this.name = name;
+            this.mode = mode;
         }
-        Collections.sort(list);
-        return list;
     }
 
     /**
@@ -932,27 +1047,22 @@ public class JGitUtils {
                 tw.reset();
                 tw.setRecursive(true);
                 tw.addTree(commit.getTree());
+                List<ListedEntry> entries = new ArrayList<ListedEntry>();
+                List<ListedEntry> blobs = new ArrayList<ListedEntry>();
                 while (tw.next()) {
-                    long size = 0;
-                    FilestoreModel filestoreItem = null;
-                    ObjectId objectId = tw.getObjectId(0);
-
-                    try {
-                        if (!tw.isSubtree() && (tw.getFileMode(0) != FileMode.GITLINK)) {
-                            size = tw.getObjectReader().getObjectSize(objectId, Constants.OBJ_BLOB);
-                            if (isPossibleFilestoreItem(size)) {
-                                filestoreItem = getFilestoreItem(tw.getObjectReader().open(objectId));
-                            }
-                        }
-                    } catch (Throwable t) {
-                        error(t, null, "failed to retrieve blob size for " + tw.getPathString());
+                    ListedEntry entry = new ListedEntry(tw.getObjectId(0), tw.getPathString(), tw.getRawMode(0));
+                    if (!tw.isSubtree() && (tw.getFileMode(0) != FileMode.GITLINK)) {
+                        blobs.add(entry);
                     }
-
-                    list.add(new PathChangeModel(tw.getPathString(), tw.getPathString(), filestoreItem, size, tw
-                            .getRawMode(0), objectId.getName(), commit.getId().getName(),
-                            ChangeType.ADD));
+                    entries.add(entry);
                 }
+                readBlobSizes(repository, tw.getObjectReader(), blobs);
                 tw.close();
+
+                for (ListedEntry entry : entries) {
+                    list.add(new PathChangeModel(entry.name, entry.name, entry.filestoreItem, entry.size,
+                            entry.mode, entry.getName(), commit.getId().getName(), ChangeType.ADD));
+                }
             } else {
                 RevCommit parent = rw.parseCommit(commit.getParent(0).getId());
                 DiffStatFormatter df = new DiffStatFormatter(commit.getName(), repository);
@@ -960,9 +1070,11 @@ public class JGitUtils {
                 df.setDiffComparator(RawTextComparator.DEFAULT);
                 df.setDetectRenames(true);
                 List<DiffEntry> diffs = df.scan(parent.getTree(), commit.getTree());
+                Map<ObjectId, BlobProber.Probe> probes = probeNewBlobs(repository, rw.getObjectReader(), diffs);
                 for (DiffEntry diff : diffs) {
                     // create the path change model
-                    PathChangeModel pcm = PathChangeModel.from(diff, commit.getName(), repository);
+                    PathChangeModel pcm = PathChangeModel.from(diff, commit.getName(),
+                            probes.get(diff.getNewId().toObjectId()));
 
                     if (calculateDiffStat) {
                         // update file diffstats
@@ -1033,8 +1145,13 @@ public class JGitUtils {
             df.setDetectRenames(true);
 
             List<DiffEntry> diffEntries = df.scan(startCommit.getTree(), endCommit.getTree());
+            Map<ObjectId, BlobProber.Probe> probes;
+            try (ObjectReader reader = repository.newObjectReader()) {
+                probes = probeNewBlobs(repository, reader, diffEntries);
+            }
             for (DiffEntry diff : diffEntries) {
-                PathChangeModel pcm = PathChangeModel.from(diff, endCommit.getName(), repository);
+                PathChangeModel pcm = PathChangeModel.from(diff, endCommit.getName(),
+                        probes.get(diff.getNewId().toObjectId()));
                 list.add(pcm);
             }
             Collections.sort(list);
@@ -1068,80 +1185,59 @@ public class JGitUtils {
      * @return list of files in repository with a matching extension
      */
     public static List<PathModel> getDocuments(Repository repository, List<String> extensions, String objectId) {
-        List<PathModel> list = new ArrayList<PathModel>();
         if (!hasCommits(repository)) {
-            return list;
+            return new ArrayList<PathModel>();
         }
         RevCommit commit = getCommit(repository, objectId);
-        final TreeWalk tw = new TreeWalk(repository);
-        try {
-            tw.addTree(commit.getTree());
-            if (extensions != null && extensions.size() > 0) {
-                List<TreeFilter> suffixFilters = new ArrayList<TreeFilter>();
-                for (String extension : extensions) {
-                    if (extension.charAt(0) == '.') {
-                        suffixFilters.add(PathSuffixFilter.create(extension));
-                    } else {
-                        // escape the . since this is a regexp filter
-                        suffixFilters.add(PathSuffixFilter.create("." + extension));
-                    }
-                }
-                TreeFilter filter;
-                if (suffixFilters.size() == 1) {
-                    filter = suffixFilters.get(0);
-                } else {
-                    filter = OrTreeFilter.create(suffixFilters);
-                }
-                tw.setFilter(filter);
-                tw.setRecursive(true);
-            }
-            while (tw.next()) {
-                list.add(getPathModel(tw, null, commit));
-            }
+        if (extensions == null || extensions.isEmpty()) {
+            return getFolderListing(repository, null, commit, TreeListingCache.Mode.FILES);
+        }
+        final List<String> suffixes = new ArrayList<String>();
+        for (String extension : extensions) {
+            suffixes.add(extension.charAt(0) == '.' ? extension : "." + extension);
+        }
+        final String commitId = commit.getName();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            final RevTree tree = commit.getTree();
+            return TreeListingCache.instance().get(TreeListingCache.Mode.DOCUMENTS, tree,
+                    StringUtils.flattenStrings(suffixes, "/"), commitId,
+                    () -> listDocuments(repository, reader, tree, suffixes, commitId));
         } catch (IOException e) {
-            error(e, repository, "{0} failed to get documents for commit {1}", commit.getName());
-        } finally {
-            tw.close();
+            error(e, repository, "{0} failed to get documents for commit {1}", commitId);
         }
-        Collections.sort(list);
-        return list;
+        return new ArrayList<PathModel>();
     }
 
     /**
-     * Returns a path model of the current file in the treewalk.
-     *
-     * @param tw
-     * @param basePath
-     * @param commit
-     * @return a path model of the current file in the treewalk
+     * Lists the files below a tree which end with one of the suffixes.
      */
-    private static PathModel getPathModel(TreeWalk tw, String basePath, RevCommit commit) {
-        String name;
-        long size = 0;
-
-        if (StringUtils.isEmpty(basePath)) {
-            name = tw.getPathString();
-        } else {
-            name = tw.getPathString().substring(basePath.length() + 1);
+    private static List<PathModel> listDocuments(Repository repository, ObjectReader reader, RevTree tree, List<String> suffixes,
+            String commitId) throws IOException {
+        List<TreeFilter> suffixFilters = new ArrayList<TreeFilter>();
+        for (String suffix : suffixes) {
+            suffixFilters.add(PathSuffixFilter.create(suffix));
         }
-        ObjectId objectId = tw.getObjectId(0);
-        FilestoreModel filestoreItem = null;
-
-        try {
-            if (!tw.isSubtree() && (tw.getFileMode(0) != FileMode.GITLINK)) {
-
-                size = tw.getObjectReader().getObjectSize(objectId, Constants.OBJ_BLOB);
-
-                if (isPossibleFilestoreItem(size)) {
-                    filestoreItem = getFilestoreItem(tw.getObjectReader().open(objectId));
+        List<ListedEntry> entries = new ArrayList<ListedEntry>();
+        List<ListedEntry> blobs = new ArrayList<ListedEntry>();
+        try (TreeWalk tw = new TreeWalk(reader)) {
+            tw.addTree(tree);
+            tw.setFilter(suffixFilters.size() == 1 ? suffixFilters.get(0) : OrTreeFilter.create(suffixFilters));
+            tw.setRecursive(true);
+            while (tw.next()) {
+                int mode = tw.getFileMode(0).getBits();
+                ListedEntry entry = new ListedEntry(tw.getObjectId(0), tw.getPathString(), mode);
+                if (!FileMode.GITLINK.equals(mode)) {
+                    blobs.add(entry);
                 }
+                entries.add(entry);
             }
-        } catch (Throwable t) {
-            error(t, null, "failed to retrieve blob size for " + tw.getPathString());
         }
-
-        return new PathModel(name, tw.getPathString(), filestoreItem, size, tw.getFileMode(0).getBits(),
-                objectId.getName(), commit.getName());
+        if (!readBlobSizes(repository, reader, blobs)) {
+            throw new TreeListingCache.IncompleteListingException(MessageFormat.format(
+                    "failed to read the blobs of the documents of tree {0}", tree.name()),
+                    toPathModels(entries, "", commitId));
+        }
+        return toPathModels(entries, "", commitId);
     }
 
     public static boolean isPossibleFilestoreItem(long size) {
@@ -1168,44 +1264,6 @@ public class JGitUtils {
         return null;
     }
 
-    /**
-     * Returns a path model by path string
-     *
-     * @param repo
-     * @param path
-     * @param filter
-     * @param commit
-     * @return a path model of the specified object
-     */
-    private static PathModel getPathModel(Repository repo, String path, String filter, RevCommit commit) throws IOException {
-        long size = 0;
-        FilestoreModel filestoreItem = null;
-        TreeWalk tw = TreeWalk.forPath(repo, path, commit.getTree());
-        String pathString = path;
-
-        if (!tw.isSubtree() && (tw.getFileMode(0) != FileMode.GITLINK)) {
-            pathString = PathUtils.getLastPathComponent(pathString);
-            size = tw.getObjectReader().getObjectSize(tw.getObjectId(0), Constants.OBJ_BLOB);
-            if (isPossibleFilestoreItem(size)) {
-                filestoreItem = getFilestoreItem(tw.getObjectReader().open(tw.getObjectId(0)));
-            }
-        } else if (tw.isSubtree()) {
-            // do not display dirs that are behind in the path
-            if (!StringUtils.isEmpty(filter)) {
-                pathString = path.replaceFirst(filter + "/", "");
-            }
-
-            // remove the last slash from path in displayed link
-            if (pathString != null && pathString.charAt(pathString.length() - 1) == '/') {
-                pathString = pathString.substring(0, pathString.length() - 1);
-            }
-        }
-
-        return new PathModel(pathString, tw.getPathString(), filestoreItem, size, tw.getFileMode(0).getBits(),
-                tw.getObjectId(0).getName(), commit.getName());
-
-    }
-
     /**
      * Returns a permissions representation of the mode bits.
      *
@@ -1318,21 +1376,9 @@ public class JGitUtils {
         }
         try {
             // resolve branch
-            ObjectId startRange = null;
-            ObjectId endRange;
-            if (StringUtils.isEmpty(objectId)) {
-                endRange = getDefaultBranch(repository);
-            } else {
-                if (objectId.contains("..")) {
-                    // range expression
-                    String[] parts = objectId.split("\\.\\.");
-                    startRange = repository.resolve(parts[0]);
-                    endRange = repository.resolve(parts[1]);
-                } else {
-                    // objectid
-                    endRange = repository.resolve(objectId);
-                }
-            }
+            ObjectId[] range = resolveRange(repository, objectId);
+            ObjectId startRange = range[0];
+            ObjectId endRange = range[1];
             if (endRange == null) {
                 return list;
             }
@@ -1342,11 +1388,13 @@ public class JGitUtils {
             if (startRange != null) {
                 rw.markUninteresting(rw.parseCommit(startRange));
             }
+            // walk the commit-graph and only parse the bodies of the listed
+            // commits, the changed-path filters skip the tree diffs of most
+            // commits which did not change the path
+            boolean skipBodies = (offset > 0 || !StringUtils.isEmpty(path)) && CommitGraphs.hasCommitGraph(rw);
+            rw.setRetainBody(!skipBodies);
             if (!StringUtils.isEmpty(path)) {
-                TreeFilter filter = AndTreeFilter.create(
-                        PathFilterGroup.createFromStrings(Collections.singleton(path)),
-                        TreeFilter.ANY_DIFF);
-                rw.setTreeFilter(filter);
+                rw.setTreeFilter(new ChangedPathTreeFilter(Collections.singleton(path)));
             }
             Iterable<RevCommit> revlog = rw;
             if (offset > 0) {
@@ -1354,6 +1402,9 @@ public class JGitUtils {
                 for (RevCommit rev : revlog) {
                     count++;
                     if (count > offset) {
+                        if (skipBodies) {
+                            rw.parseBody(rev);
+                        }
                         list.add(rev);
                         if (maxCount > 0 && list.size() == maxCount) {
                             break;
@@ -1362,6 +1413,9 @@ public class JGitUtils {
                 }
             } else {
                 for (RevCommit rev : revlog) {
+                    if (skipBodies) {
+                        rw.parseBody(rev);
+                    }
                     list.add(rev);
                     if (maxCount > 0 && list.size() == maxCount) {
                         break;
@@ -1372,147 +1426,869 @@ public class JGitUtils {
         } catch (Throwable t) {
             error(t, repository, "{0} failed to get {1} revlog for path {2}", objectId, path);
         }
-        return list;
+        return list;
+    }
+
+    /**
+     * Returns the last commit which changed each entry of a folder, like
+     * {@code getRevLog(repository, commit, path + "/" + name, 0, 1)} for every
+     * entry but in a single walk of the history. The walk stops when the last
+     * commits of all entries are found or when the timeout expires; the
+     * entries which are not resolved by then are missing from the result.
+     * <p>
+     * Complete results are cached by commit and path in the
+     * {@link LastCommitCache}. A commit reuses the results of its ancestors
+     * on the first-parent chain up to the first merge, so a new commit only
+     * walks its own changes.
+     *
+     * @param repository
+     * @param path       if unspecified, root folder is assumed.
+     * @param commit     if null, HEAD is assumed.
+     * @param timeout    the maximum time of the walk in milliseconds, if <= 0
+     *                   the walk is not bounded
+     * @return the last commit of the entries by name, in the order of the
+     *         folder
+     */
+    public static Map<String, RevCommit> getLastCommits(Repository repository, String path, RevCommit commit,
+            long timeout) {
+        Map<String, RevCommit> commits = new LinkedHashMap<String, RevCommit>();
+        if (!hasCommits(repository)) {
+            return commits;
+        }
+        if (commit == null) {
+            commit = getCommit(repository, null);
+        }
+        String folder = path == null ? "" : path;
+        while (folder.endsWith("/")) {
+            folder = folder.substring(0, folder.length() - 1);
+        }
+        try {
+            Map<String, ObjectId> ids = LastCommitCache.instance().getIfPresent(repository, commit, folder);
+            if (ids == null) {
+                long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+                try (RevWalk rw = new RevWalk(repository)) {
+                    LastCommitWalk walk = new LastCommitWalk(repository, rw, folder, deadline);
+                    ids = walk.run(rw.parseCommit(commit));
+                }
+            }
+            try (RevWalk rw = new RevWalk(repository)) {
+                for (Map.Entry<String, ObjectId> entry : ids.entrySet()) {
+                    commits.put(entry.getKey(), rw.parseCommit(entry.getValue()));
+                }
+            }
+        } catch (IOException e) {
+            error(e, repository, "{0} failed to get the last commits of {1} for commit {2}", folder,
+                    commit.getName());
+        }
+        return commits;
+    }
+
+    /**
+     * Walks the history of a folder backwards until the last commit of every
+     * entry of the folder is found.
+     */
+    private static class LastCommitWalk {
+
+        private final Repository repository;
+
+        private final RevWalk rw;
+
+        private final String folder;
+
+        private final byte[] rawFolder;
+
+        private final long deadline;
+
+        private final TreeWalk diff;
+
+        /**
+         * The folder trees by root tree, null if the commit has no folder.
+         */
+        private final Map<ObjectId, ObjectId> folderTrees = new HashMap<ObjectId, ObjectId>();
+
+        private final Set<String> unresolved = new HashSet<String>();
+
+        private final Map<String, ObjectId> found = new HashMap<String, ObjectId>();
+
+        LastCommitWalk(Repository repository, RevWalk rw, String folder, long deadline) {
+            this.repository = repository;
+            this.rw = rw;
+            this.folder = folder;
+            this.rawFolder = Constants.encode(folder);
+            this.deadline = deadline;
+            this.diff = new TreeWalk(rw.getObjectReader());
+            this.diff.setFilter(TreeFilter.ANY_DIFF);
+        }
+
+        /**
+         * Finds the last commits of the entries of the folder of a commit and
+         * caches them if all of them are found before the deadline.
+         *
+         * @param commit
+         * @return the last commits of the entries by name
+         * @throws IOException
+         */
+        Map<String, ObjectId> run(RevCommit commit) throws IOException {
+            rw.setRetainBody(false);
+            List<String> names = new ArrayList<String>();
+            ObjectId tree = getFolderTree(commit);
+            if (tree != null) {
+                for (CanonicalTreeParser p = new CanonicalTreeParser(null, rw.getObjectReader(), tree); !p.eof(); p.next()) {
+                    names.add(p.getEntryPathString());
+                }
+            }
+            unresolved.addAll(names);
+
+            boolean complete = walk(commit);
+            Map<String, ObjectId> commits = new LinkedHashMap<String, ObjectId>();
+            for (String name : names) {
+                if (found.containsKey(name)) {
+                    commits.put(name, found.get(name));
+                }
+            }
+            if (complete) {
+                LastCommitCache.instance().put(repository, commit, folder, commits);
+            }
+            return commits;
+        }
+
+        /**
+         * @return true if the last commits of all entries are found
+         */
+        private boolean walk(RevCommit commit) throws IOException {
+            // the walk from a commit with a single parent continues with the
+            // walk from the parent, whose results may be cached
+            RevCommit c = commit;
+            while (!unresolved.isEmpty()) {
+                if (c != commit && useCached(c)) {
+                    return true;
+                }
+                if (c.getParentCount() != 1) {
+                    break;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                ChangedPathFilter filter = c.getChangedPathFilter(rw);
+                if (filter == null || rawFolder.length == 0 || filter.maybeContains(rawFolder)) {
+                    resolve(c);
+                }
+                c = c.getParent(0);
+                rw.parseHeaders(c);
+            }
+            if (unresolved.isEmpty()) {
+                return true;
+            }
+
+            // the history of a merge is walked by commit time like getRevLog
+            RevFilter treeFilter = null;
+            if (rawFolder.length > 0) {
+                treeFilter = new TreeRevFilter(rw, new ChangedPathTreeFilter(Collections.singleton(folder)));
+            }
+            EntryRoutes routes = new EntryRoutes(treeFilter);
+            routes.add(c, new HashSet<String>(unresolved));
+            rw.setRevFilter(routes);
+            rw.markStart(c);
+            for (RevCommit next = rw.next(); next != null; next = rw.next()) {
+                if (unresolved.isEmpty() || routes.isEmpty()) {
+                    break;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+            }
+            return unresolved.isEmpty();
+        }
+
+        /**
+         * Routes the unresolved entries through the history like getRevLog
+         * simplifies the history of the path of every entry: an entry follows
+         * the first parent of a merge which has the same entry and is resolved
+         * by the commit which changed it compared to all of its parents. The
+         * walk includes the commits which carry entries.
+         */
+        private class EntryRoutes extends RevFilter {
+
+            private final RevFilter treeFilter;
+
+            private final RevFlag walked;
+
+            private final Map<RevCommit, Set<String>> routes = new HashMap<RevCommit, Set<String>>();
+
+            private final Deque<RevCommit> late = new ArrayDeque<RevCommit>();
+
+            EntryRoutes(RevFilter treeFilter) {
+                this.treeFilter = treeFilter;
+                this.walked = rw.newFlag("walked");
+            }
+
+            boolean isEmpty() {
+                return routes.isEmpty();
+            }
+
+            void add(RevCommit commit, Set<String> names) {
+                Set<String> routed = routes.get(commit);
+                if (routed == null) {
+                    routes.put(commit, names);
+                } else {
+                    routed.addAll(names);
+                }
+                if (commit.has(walked)) {
+                    // walked before its child because of clock skew
+                    late.add(commit);
+                }
+            }
+
+            @Override
+            public boolean include(RevWalk walker, RevCommit commit)
+                    throws StopWalkException, MissingObjectException, IncorrectObjectTypeException, IOException {
+                commit.add(walked);
+                Set<String> names = routes.remove(commit);
+                if (names == null) {
+                    return false;
+                }
+                // the tree filter rules out the commits which do not change
+                // the folder and follows the parent of a merge with the same
+                // folder
+                route(commit, names, treeFilter == null || treeFilter.include(walker, commit));
+                while (!late.isEmpty()) {
+                    RevCommit c = late.poll();
+                    names = routes.remove(c);
+                    if (names != null) {
+                        route(c, names, true);
+                    }
+                }
+                return true;
+            }
+
+            private void route(RevCommit c, Set<String> names, boolean changed) throws IOException {
+                names.retainAll(unresolved);
+                if (names.isEmpty()) {
+                    return;
+                }
+                if (!changed && c.getParentCount() == 1) {
+                    add(c.getParent(0), names);
+                    return;
+                }
+                ObjectId tree = getFolderTree(c);
+                if (tree == null) {
+                    return;
+                }
+                if (c.getParentCount() == 0) {
+                    // a root commit adds the entries
+                    names.retainAll(getChangedNames(null, tree));
+                }
+                for (int i = 0; i < c.getParentCount() && !names.isEmpty(); i++) {
+                    RevCommit parent = c.getParent(i);
+                    rw.parseHeaders(parent);
+                    ObjectId parentTree = getFolderTree(parent);
+                    if (tree.equals(parentTree)) {
+                        add(parent, names);
+                        return;
+                    }
+                    Set<String> same = new HashSet<String>(names);
+                    same.removeAll(getChangedNames(parentTree, tree));
+                    if (!same.isEmpty()) {
+                        names.removeAll(same);
+                        add(parent, same);
+                    }
+                }
+                ObjectId id = c.copy();
+                for (String name : names) {
+                    found.put(name, id);
+                    unresolved.remove(name);
+                }
+            }
+
+            @Override
+            public boolean requiresCommitBody() {
+                return false;
+            }
+
+            @Override
+            public RevFilter clone() {
+                // the routes belong to the walk of the folder
+                return this;
+            }
+        }
+
+        /**
+         * Resolves the unresolved entries from the complete cached results of
+         * an ancestor whose first-parent chain leads to the commit.
+         */
+        private boolean useCached(RevCommit c) {
+            Map<String, ObjectId> cached = LastCommitCache.instance().getIfPresent(repository, c, folder);
+            if (cached == null || !cached.keySet().containsAll(unresolved)) {
+                return false;
+            }
+            for (String name : unresolved) {
+                found.put(name, cached.get(name));
+            }
+            unresolved.clear();
+            return true;
+        }
+
+        /**
+         * Resolves the unresolved entries which the commit changed compared
+         * to all of its parents, or which it added if it is a root commit.
+         */
+        private void resolve(RevCommit c) throws IOException {
+            ObjectId tree = getFolderTree(c);
+            if (tree == null) {
+                return;
+            }
+            Set<String> changed = null;
+            if (c.getParentCount() == 0) {
+                changed = getChangedNames(null, tree);
+            }
+            for (int i = 0; i < c.getParentCount(); i++) {
+                RevCommit parent = c.getParent(i);
+                rw.parseHeaders(parent);
+                ObjectId parentTree = getFolderTree(parent);
+                if (tree.equals(parentTree)) {
+                    return;
+                }
+                Set<String> names = getChangedNames(parentTree, tree);
+                if (changed == null) {
+                    changed = names;
+                } else {
+                    changed.retainAll(names);
+                }
+                if (changed.isEmpty()) {
+                    return;
+                }
+            }
+            ObjectId id = c.copy();
+            for (String name : changed) {
+                found.put(name, id);
+                unresolved.remove(name);
+            }
+        }
+
+        /**
+         * Returns the unresolved entries of the folder tree which are
+         * different in or missing from the parent tree.
+         */
+        private Set<String> getChangedNames(ObjectId parentTree, ObjectId tree) throws IOException {
+            Set<String> names = new HashSet<String>();
+            diff.reset();
+            if (parentTree == null) {
+                diff.addTree(new EmptyTreeIterator());
+            } else {
+                diff.addTree(parentTree);
+            }
+            diff.addTree(tree);
+            while (diff.next()) {
+                if (diff.getRawMode(1) != 0) {
+                    String name = diff.getNameString();
+                    if (unresolved.contains(name)) {
+                        names.add(name);
+                    }
+                }
+            }
+            return names;
+        }
+
+        private ObjectId getFolderTree(RevCommit c) throws IOException {
+            RevTree root = c.getTree();
+            if (folder.isEmpty()) {
+                return root;
+            }
+            if (folderTrees.containsKey(root)) {
+                return folderTrees.get(root);
+            }
+            ObjectId tree = null;
+            try (TreeWalk tw = TreeWalk.forPath(rw.getObjectReader(), folder, root)) {
+                if (tw != null && tw.isSubtree()) {
+                    tree = tw.getObjectId(0);
+                }
+            }
+            folderTrees.put(root.copy(), tree);
+            return tree;
+        }
+    }
+
+    /**
+     * Returns a list of commits for the repository within the range specified
+     * by startRangeId and endRangeId. If the repository does not exist or is
+     * empty, an empty list is returned.
+     *
+     * @param repository
+     * @param startRangeId the first commit (not included in results)
+     * @param endRangeId   the end commit (included in results)
+     * @return a list of commits
+     */
+    public static List<RevCommit> getRevLog(Repository repository, String startRangeId,
+                                            String endRangeId) {
+        List<RevCommit> list = new ArrayList<RevCommit>();
+        if (!hasCommits(repository)) {
+            return list;
+        }
+        try {
+            ObjectId endRange = repository.resolve(endRangeId);
+            ObjectId startRange = repository.resolve(startRangeId);
+
+            RevWalk rw = new RevWalk(repository);
+            rw.markStart(rw.parseCommit(endRange));
+            if (startRange.equals(ObjectId.zeroId())) {
+                // maybe this is a tag or an orphan branch
+                list.add(rw.parseCommit(endRange));
+                rw.dispose();
+                return list;
+            } else {
+                rw.markUninteresting(rw.parseCommit(startRange));
+            }
+
+            Iterable<RevCommit> revlog = rw;
+            for (RevCommit rev : revlog) {
+                list.add(rev);
+            }
+            rw.dispose();
+        } catch (Throwable t) {
+            error(t, repository, "{0} failed to get revlog for {1}..{2}", startRangeId, endRangeId);
+        }
+        return list;
+    }
+
+    /**
+     * Search the commit history for a case-insensitive match to the value.
+     * Search results require a specified SearchType of AUTHOR, COMMITTER, or
+     * COMMIT. Results may be paginated using offset and maxCount. If the
+     * repository does not exist or is empty, an empty list is returned.
+     * <p>
+     * The tips of branches are searched in the {@link CommitIndex} of the
+     * repository if it is indexed, other revisions walk the history.
+     *
+     * @param repository
+     * @param objectId   if unspecified, HEAD is assumed.
+     * @param value
+     * @param type       AUTHOR, COMMITTER, COMMIT
+     * @param offset
+     * @param maxCount   if < 0, all matches are returned
+     * @return matching list of commits
+     */
+    public static List<RevCommit> searchRevlogs(Repository repository, String objectId,
+                                                String value, final com.gdk.git.Constants.SearchType type, int offset, int maxCount) {
+        List<RevCommit> list = new ArrayList<RevCommit>();
+        if (StringUtils.isEmpty(value)) {
+            return list;
+        }
+        if (maxCount == 0) {
+            return list;
+        }
+        if (!hasCommits(repository)) {
+            return list;
+        }
+        List<RevCommit> indexed = CommitIndex.instance().search(repository, objectId, value, type, offset, maxCount);
+        if (indexed != null) {
+            return indexed;
+        }
+        final String lcValue = value.toLowerCase();
+        try {
+            // resolve branch
+            ObjectId branchObject;
+            if (StringUtils.isEmpty(objectId)) {
+                branchObject = getDefaultBranch(repository);
+            } else {
+                branchObject = repository.resolve(objectId);
+            }
+
+            RevWalk rw = new RevWalk(repository);
+            rw.setRevFilter(new RawSearchFilter(type, lcValue));
+            rw.markStart(rw.parseCommit(branchObject));
+            Iterable<RevCommit> revlog = rw;
+            if (offset > 0) {
+                int count = 0;
+                for (RevCommit rev : revlog) {
+                    count++;
+                    if (count > offset) {
+                        list.add(rev);
+                        if (maxCount > 0 && list.size() == maxCount) {
+                            break;
+                        }
+                    }
+                }
+            } else {
+                for (RevCommit rev : revlog) {
+                    list.add(rev);
+                    if (maxCount > 0 && list.size() == maxCount) {
+                        break;
+                    }
+                }
+            }
+            rw.dispose();
+        } catch (Throwable t) {
+            error(t, repository, "{0} failed to {1} search revlogs for {2}", type.name(), value);
+        }
+        return list;
+    }
+
+    /**
+     * Search the history of several revisions for commits which match any of
+     * the values. Search results require a specified SearchType of AUTHOR,
+     * COMMITTER, or COMMIT. The matches are listed newest first.
+     * <p>
+     * If an executor is specified each revision walks its own part of the
+     * history in parallel, the commits which are not reachable from the
+     * previous revisions. The walk of the first revision covers all of its
+     * history, so the search is only faster if the revisions diverge.
+     *
+     * @param repository
+     * @param objectIds  the revisions to search
+     * @param values     at most {@link RawSearchFilter#MAX_VALUES} values
+     * @param type       AUTHOR, COMMITTER, COMMIT
+     * @param maxCount   if < 0, all matches are returned
+     * @param executor   if not null, the revisions are walked in parallel
+     * @return matching list of commits
+     */
+    public static List<RevCommit> searchRevlogs(Repository repository, List<String> objectIds,
+                                                List<String> values, com.gdk.git.Constants.SearchType type,
+                                                int maxCount, ExecutorService executor) {
+        List<RevCommit> list = new ArrayList<RevCommit>();
+        if (values.isEmpty() || maxCount == 0 || !hasCommits(repository)) {
+            return list;
+        }
+        try {
+            final RevFilter filter = new RawSearchFilter(type, values);
+            final List<ObjectId> tips = new ArrayList<ObjectId>();
+            for (String objectId : objectIds) {
+                ObjectId tip = repository.resolve(objectId);
+                if (tip != null && !tips.contains(tip)) {
+                    tips.add(tip);
+                }
+            }
+            if (executor == null || tips.size() < 2) {
+                return searchRevlogs(repository, tips, Collections.<ObjectId>emptyList(), filter, maxCount);
+            }
+            List<Future<List<RevCommit>>> parts = new ArrayList<Future<List<RevCommit>>>();
+            for (int i = 0; i < tips.size(); i++) {
+                final List<ObjectId> starts = tips.subList(i, i + 1);
+                final List<ObjectId> previous = tips.subList(0, i);
+                final int count = maxCount;
+                parts.add(executor.submit(() -> searchRevlogs(repository, starts, previous, filter, count)));
+            }
+            for (Future<List<RevCommit>> part : parts) {
+                list.addAll(part.get());
+            }
+            list.sort((c1, c2) -> Integer.compare(c2.getCommitTime(), c1.getCommitTime()));
+            if (maxCount > 0 && list.size() > maxCount) {
+                list = new ArrayList<RevCommit>(list.subList(0, maxCount));
+            }
+        } catch (Throwable t) {
+            error(t, repository, "{0} failed to {1} search revlogs for {2}", type.name(), values);
+        }
+        return list;
+    }
+
+    private static List<RevCommit> searchRevlogs(Repository repository, List<ObjectId> starts,
+                                                 List<ObjectId> uninteresting, RevFilter filter,
+                                                 int maxCount) throws IOException {
+        List<RevCommit> list = new ArrayList<RevCommit>();
+        try (RevWalk rw = new RevWalk(repository)) {
+            rw.setRevFilter(filter);
+            for (ObjectId start : starts) {
+                rw.markStart(rw.parseCommit(start));
+            }
+            for (ObjectId id : uninteresting) {
+                rw.markUninteresting(rw.parseCommit(id));
+            }
+            RevCommit commit;
+            while ((commit = rw.next()) != null) {
+                list.add(commit);
+                if (maxCount > 0 && list.size() == maxCount) {
+                    break;
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * A page of commits and the token of the next page.
+     */
+    public static class RevLogPage {
+        public List<RevCommit> commits = new ArrayList<RevCommit>();
+        public String nextToken;
+
+        /**
+         * @return true if there may be more commits after this page
+         */
+        public boolean hasNext() {
+            return nextToken != null;
+        }
+    }
+
+    /**
+     * Returns a page of commits for the repository or a path within the
+     * repository. Unlike the offset of
+     * {@link #getRevLog(Repository, String, String, int, int)} the page token
+     * resumes the walk where the previous page stopped, so every page costs
+     * the same regardless of its depth. Pass the same objectId and path with
+     * the {@link RevLogPage#nextToken} of the previous page to get the next
+     * page. If the repository does not exist or is empty, an empty page is
+     * returned.
+     *
+     * @param repository
+     * @param objectId   if unspecified, HEAD is assumed. May be a range.
+     * @param path       if unspecified, commits for repository are returned. If
+     *                   specified, commits for the path are returned.
+     * @param pageToken  if unspecified, the first page is returned.
+     * @param maxCount   if < 0, all commits are returned.
+     * @return a page of commits
+     */
+    public static RevLogPage getRevLogPage(Repository repository, String objectId, String path,
+                                           String pageToken, int maxCount) {
+        if (maxCount == 0 || !hasCommits(repository)) {
+            return new RevLogPage();
+        }
+        try {
+            TreeFilter pathFilter = null;
+            if (!StringUtils.isEmpty(path)) {
+                pathFilter = new ChangedPathTreeFilter(Collections.singleton(path));
+            }
+            return getRevLogPage(repository, objectId, null, pathFilter, pageToken, maxCount);
+        } catch (Throwable t) {
+            error(t, repository, "{0} failed to get {1} revlog page for path {2}", objectId, path);
+        }
+        return new RevLogPage();
+    }
+
+    /**
+     * Search the commit history for a case-insensitive match to the value and
+     * returns a page of the matches. Pass the same objectId, value and type
+     * with the {@link RevLogPage#nextToken} of the previous page to get the
+     * next page. If the repository does not exist or is empty, an empty page
+     * is returned.
+     *
+     * @param repository
+     * @param objectId   if unspecified, HEAD is assumed.
+     * @param value
+     * @param type       AUTHOR, COMMITTER, COMMIT
+     * @param pageToken  if unspecified, the first page is returned.
+     * @param maxCount   if < 0, all matches are returned
+     * @return a page of matching commits
+     */
+    public static RevLogPage searchRevlogsPage(Repository repository, String objectId, String value,
+                                               com.gdk.git.Constants.SearchType type, String pageToken, int maxCount) {
+        if (StringUtils.isEmpty(value) || maxCount == 0 || !hasCommits(repository)) {
+            return new RevLogPage();
+        }
+        try {
+            return getRevLogPage(repository, objectId, new RawSearchFilter(type, value), null, pageToken,
+                    maxCount);
+        } catch (Throwable t) {
+            error(t, repository, "{0} failed to {1} search revlog page for {2}", type.name(), value);
+        }
+        return new RevLogPage();
+    }
+
+    private static RevLogPage getRevLogPage(Repository repository, String objectId, RevFilter filter,
+                                            TreeFilter pathFilter, String pageToken, int maxCount) throws Exception {
+        RevLogPage page = new RevLogPage();
+        try (RevWalk rw = new RevWalk(repository)) {
+            // the tracker sees the commits which the path filter excludes and
+            // the simplified parents of the merges
+            RevLogCursor.Tracker tracker = new RevLogCursor.Tracker(
+                    pathFilter == null ? filter : new TreeRevFilter(rw, pathFilter));
+            if (StringUtils.isEmpty(pageToken)) {
+                ObjectId[] range = resolveRange(repository, objectId);
+                if (range[1] == null) {
+                    return page;
+                }
+                tracker.markStart(rw, range[1]);
+                if (range[0] != null) {
+                    tracker.markUninteresting(rw, range[0]);
+                }
+            } else {
+                tracker.resume(rw, RevLogCursor.parse(pageToken));
+            }
+            // walk the commit-graph and only parse the bodies of the listed
+            // commits unless the filter reads them
+            boolean skipBodies = !tracker.requiresCommitBody() && CommitGraphs.hasCommitGraph(rw);
+            rw.setRetainBody(!skipBodies);
+            rw.setRevFilter(tracker);
+            // the iterator of the walk reads ahead, next() does not
+            RevCommit rev;
+            while ((rev = rw.next()) != null) {
+                tracker.returned(rev);
+                if (skipBodies) {
+                    rw.parseBody(rev);
+                }
+                page.commits.add(rev);
+                if (maxCount > 0 && page.commits.size() == maxCount) {
+                    RevLogCursor cursor = tracker.getCursor(rev);
+                    if (cursor != null) {
+                        page.nextToken = cursor.toToken();
+                    }
+                    break;
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Resolves the start and the end of a range expression "start..end" or the
+     * end of a revision. HEAD is assumed if the objectId is unspecified.
+     *
+     * @param repository
+     * @param objectId
+     * @return the start, which is null unless objectId is a range, and the end
+     * @throws Exception
+     */
+    private static ObjectId[] resolveRange(Repository repository, String objectId) throws Exception {
+        if (StringUtils.isEmpty(objectId)) {
+            return new ObjectId[] { null, getDefaultBranch(repository) };
+        }
+        if (objectId.contains("..")) {
+            // range expression
+            String[] parts = objectId.split("\\.\\.");
+            return new ObjectId[] { repository.resolve(parts[0]), repository.resolve(parts[1]) };
+        }
+        return new ObjectId[] { null, repository.resolve(objectId) };
     }
 
     /**
-     * Returns a list of commits for the repository within the range specified
-     * by startRangeId and endRangeId. If the repository does not exist or is
-     * empty, an empty list is returned.
+     * Callback of the streaming history walks. Unlike the lists of getRevLog
+     * and searchRevlogs, the walks release the body of a commit after it was
+     * visited, so a visitor must copy the message or identities it keeps.
+     */
+    public interface RevLogVisitor {
+
+        /**
+         * Visits the next commit of the history.
+         *
+         * @param commit
+         * @return false to stop the walk
+         * @throws IOException
+         */
+        boolean visit(RevCommit commit) throws IOException;
+
+        /**
+         * Returns true if the visitor reads the message, author or committer
+         * of the commits. Otherwise only the headers of the commits, which are
+         * the tree, parents and commit time, are parsed.
+         *
+         * @return true if the commit bodies are parsed before the visit
+         */
+        default boolean requiresCommitBody() {
+            return true;
+        }
+    }
+
+    /**
+     * Walks the commits for the repository or a path within the repository
+     * without collecting them. Memory for the commit bodies does not grow with
+     * the length of the history. If the repository does not exist or is empty,
+     * no commit is visited.
      *
      * @param repository
-     * @param startRangeId the first commit (not included in results)
-     * @param endRangeId   the end commit (included in results)
-     * @return a list of commits
+     * @param objectId   if unspecified, HEAD is assumed. May be a range.
+     * @param path       if unspecified, commits for repository are visited. If
+     *                   specified, commits for the path are visited.
+     * @param visitor
+     * @return the number of visited commits
      */
-    public static List<RevCommit> getRevLog(Repository repository, String startRangeId,
-                                            String endRangeId) {
-        List<RevCommit> list = new ArrayList<RevCommit>();
+    public static int walkRevLog(Repository repository, String objectId, String path, RevLogVisitor visitor) {
         if (!hasCommits(repository)) {
-            return list;
+            return 0;
         }
         try {
-            ObjectId endRange = repository.resolve(endRangeId);
-            ObjectId startRange = repository.resolve(startRangeId);
-
-            RevWalk rw = new RevWalk(repository);
-            rw.markStart(rw.parseCommit(endRange));
-            if (startRange.equals(ObjectId.zeroId())) {
-                // maybe this is a tag or an orphan branch
-                list.add(rw.parseCommit(endRange));
-                rw.dispose();
-                return list;
-            } else {
-                rw.markUninteresting(rw.parseCommit(startRange));
+            TreeFilter pathFilter = null;
+            if (!StringUtils.isEmpty(path)) {
+                pathFilter = new ChangedPathTreeFilter(Collections.singleton(path));
             }
+            return walkRevLog(repository, resolveRange(repository, objectId), RevFilter.ALL, pathFilter, visitor);
+        } catch (Throwable t) {
+            error(t, repository, "{0} failed to walk {1} revlog for path {2}", objectId, path);
+        }
+        return 0;
+    }
 
-            Iterable<RevCommit> revlog = rw;
-            for (RevCommit rev : revlog) {
-                list.add(rev);
-            }
-            rw.dispose();
+    /**
+     * Walks the commits since the minimum date starting from the specified
+     * object id without collecting them.
+     *
+     * @param repository
+     * @param objectId    if unspecified, HEAD is assumed.
+     * @param minimumDate
+     * @param visitor
+     * @return the number of visited commits
+     */
+    public static int walkRevLogSince(Repository repository, String objectId, Date minimumDate,
+                                      RevLogVisitor visitor) {
+        if (!hasCommits(repository)) {
+            return 0;
+        }
+        try {
+            return walkRevLog(repository, resolveRange(repository, objectId), CommitTimeRevFilter.after(minimumDate),
+                    null, visitor);
         } catch (Throwable t) {
-            error(t, repository, "{0} failed to get revlog for {1}..{2}", startRangeId, endRangeId);
+            error(t, repository, "{0} failed to walk {1} revlog for minimum date {2}", objectId, minimumDate);
         }
-        return list;
+        return 0;
     }
 
     /**
-     * Search the commit history for a case-insensitive match to the value.
-     * Search results require a specified SearchType of AUTHOR, COMMITTER, or
-     * COMMIT. Results may be paginated using offset and maxCount. If the
-     * repository does not exist or is empty, an empty list is returned.
+     * Search the commit history for a case-insensitive match to the value and
+     * visits the matches without collecting them.
      *
      * @param repository
      * @param objectId   if unspecified, HEAD is assumed.
      * @param value
      * @param type       AUTHOR, COMMITTER, COMMIT
-     * @param offset
-     * @param maxCount   if < 0, all matches are returned
-     * @return matching list of commits
+     * @param visitor
+     * @return the number of visited commits
      */
-    public static List<RevCommit> searchRevlogs(Repository repository, String objectId,
-                                                String value, final com.gdk.git.Constants.SearchType type, int offset, int maxCount) {
-        List<RevCommit> list = new ArrayList<RevCommit>();
-        if (StringUtils.isEmpty(value)) {
-            return list;
-        }
-        if (maxCount == 0) {
-            return list;
-        }
-        if (!hasCommits(repository)) {
-            return list;
+    public static int searchRevlogs(Repository repository, String objectId, String value,
+                                    com.gdk.git.Constants.SearchType type, RevLogVisitor visitor) {
+        if (StringUtils.isEmpty(value) || !hasCommits(repository)) {
+            return 0;
         }
-        final String lcValue = value.toLowerCase();
         try {
-            // resolve branch
-            ObjectId branchObject;
-            if (StringUtils.isEmpty(objectId)) {
-                branchObject = getDefaultBranch(repository);
-            } else {
-                branchObject = repository.resolve(objectId);
-            }
-
-            RevWalk rw = new RevWalk(repository);
-            rw.setRevFilter(new RevFilter() {
-
-                @Override
-                public RevFilter clone() {
-                    // FindBugs complains about this method name.
-                    // This is part of JGit design and unrelated to Cloneable.
-                    return this;
-                }
-
-                @Override
-                public boolean include(RevWalk walker, RevCommit commit) throws StopWalkException,
-                        MissingObjectException, IncorrectObjectTypeException, IOException {
-                    boolean include = false;
-                    switch (type) {
-                        case AUTHOR:
-                            include = (commit.getAuthorIdent().getName().toLowerCase().indexOf(lcValue) > -1)
-                                    || (commit.getAuthorIdent().getEmailAddress().toLowerCase()
-                                    .indexOf(lcValue) > -1);
-                            break;
-                        case COMMITTER:
-                            include = (commit.getCommitterIdent().getName().toLowerCase()
-                                    .indexOf(lcValue) > -1)
-                                    || (commit.getCommitterIdent().getEmailAddress().toLowerCase()
-                                    .indexOf(lcValue) > -1);
-                            break;
-                        case COMMIT:
-                            include = commit.getFullMessage().toLowerCase().indexOf(lcValue) > -1;
-                            break;
-                    }
-                    return include;
-                }
+            return walkRevLog(repository, resolveRange(repository, objectId),
+                    new RawSearchFilter(type, value), null, visitor);
+        } catch (Throwable t) {
+            error(t, repository, "{0} failed to {1} search revlogs for {2}", type.name(), value);
+        }
+        return 0;
+    }
 
-            });
-            rw.markStart(rw.parseCommit(branchObject));
-            Iterable<RevCommit> revlog = rw;
-            if (offset > 0) {
-                int count = 0;
-                for (RevCommit rev : revlog) {
-                    count++;
-                    if (count > offset) {
-                        list.add(rev);
-                        if (maxCount > 0 && list.size() == maxCount) {
-                            break;
-                        }
-                    }
+    private static int walkRevLog(Repository repository, ObjectId[] range, RevFilter filter,
+                                  TreeFilter pathFilter, RevLogVisitor visitor) throws Exception {
+        int count = 0;
+        if (range[1] == null) {
+            return count;
+        }
+        try (RevWalk rw = new RevWalk(repository)) {
+            // the walk over the commit-graph only reads the bodies of the
+            // visited commits, the walk over the packs reads them anyway
+            boolean bodies = visitor.requiresCommitBody();
+            rw.setRetainBody(bodies && !CommitGraphs.hasCommitGraph(rw));
+            rw.setRevFilter(filter);
+            if (pathFilter != null) {
+                // rewriting the parents would buffer the whole history
+                rw.setRewriteParents(false);
+                rw.setTreeFilter(pathFilter);
+            }
+            rw.markStart(rw.parseCommit(range[1]));
+            if (range[0] != null) {
+                rw.markUninteresting(rw.parseCommit(range[0]));
+            }
+            RevCommit rev;
+            while ((rev = rw.next()) != null) {
+                if (bodies) {
+                    rw.parseBody(rev);
                 }
-            } else {
-                for (RevCommit rev : revlog) {
-                    list.add(rev);
-                    if (maxCount > 0 && list.size() == maxCount) {
-                        break;
-                    }
+                count++;
+                boolean next = visitor.visit(rev);
+                rev.disposeBody();
+                if (!next) {
+                    break;
                 }
             }
-            rw.dispose();
-        } catch (Throwable t) {
-            error(t, repository, "{0} failed to {1} search revlogs for {2}", type.name(), value);
         }
-        return list;
+        return count;
     }
 
     /**
@@ -1843,30 +2619,7 @@ public class JGitUtils {
             return list;
         }
         try {
-            Map<String, Ref> map = repository.getRefDatabase().getRefs(refs);
-            RevWalk rw = new RevWalk(repository);
-            for (Entry<String, Ref> entry : map.entrySet()) {
-                Ref ref = entry.getValue();
-                RevObject object = rw.parseAny(ref.getObjectId());
-                String name = entry.getKey();
-                if (fullName && !StringUtils.isEmpty(refs)) {
-                    name = refs + name;
-                }
-                list.add(new RefModel(name, ref, object));
-            }
-            rw.dispose();
-            Collections.sort(list);
-            Collections.reverse(list);
-            if (maxCount > 0 && list.size() > maxCount) {
-                if (offset < 0) {
-                    offset = 0;
-                }
-                int endIndex = offset + maxCount;
-                if (endIndex > list.size()) {
-                    endIndex = list.size();
-                }
-                list = new ArrayList<RefModel>(list.subList(offset, endIndex));
-            }
+            list = RefCache.instance().getRefs(repository, refs, fullName, maxCount, offset);
         } catch (IOException e) {
             error(e, repository, "{0} failed to retrieve {1}", refs);
         }
@@ -2270,21 +3023,43 @@ public class JGitUtils {
      * @return true if there is the commit is an ancestor of the tip
      */
     public static boolean isMergedInto(Repository repository, ObjectId commitId, ObjectId tipCommitId) {
-        // traverse the revlog looking for a commit chain between the endpoints
-        RevWalk rw = new RevWalk(repository);
         try {
-            // must re-lookup RevCommits to workaround undocumented RevWalk bug
-            RevCommit tip = rw.lookupCommit(tipCommitId);
-            RevCommit commit = rw.lookupCommit(commitId);
-            return rw.isMergedInto(commit, tip);
+            return MergeBaseCache.instance().get(repository, MergeBaseCache.Operation.MERGED_INTO, commitId,
+                    tipCommitId, () -> {
+                // traverse the revlog looking for a commit chain between the endpoints
+                try (RevWalk rw = new RevWalk(repository)) {
+                    rw.setRetainBody(false);
+                    // must re-lookup RevCommits to workaround undocumented RevWalk bug
+                    RevCommit tip = rw.lookupCommit(tipCommitId);
+                    RevCommit commit = rw.lookupCommit(commitId);
+                    return isMergedInto(rw, commit, tip);
+                }
+            });
         } catch (Exception e) {
             LOGGER.error("Failed to determine isMergedInto", e);
-        } finally {
-            rw.dispose();
         }
         return false;
     }
 
+    /**
+     * Returns true if the commit is an ancestor of the tip. If both commits are
+     * in the commit-graph the answer is determined from the generation numbers
+     * and parent positions of the commit-graph without parsing any commits.
+     *
+     * @param rw
+     * @param commit
+     * @param tip
+     * @return true if the commit is an ancestor of the tip
+     * @throws IOException
+     */
+    private static boolean isMergedInto(RevWalk rw, RevCommit commit, RevCommit tip) throws IOException {
+        CommitGraph graph = CommitGraphs.getCommitGraph(rw.getObjectReader());
+        if (CommitGraphs.contains(graph, commit, tip)) {
+            return CommitGraphs.isMergedInto(graph, commit, tip);
+        }
+        return rw.isMergedInto(commit, tip);
+    }
+
     /**
      * Returns the merge base of two commits or null if there is no common
      * ancestry.
@@ -2295,27 +3070,285 @@ public class JGitUtils {
      * @return the commit id of the merge base or null if there is no common base
      */
     public static String getMergeBase(Repository repository, ObjectId commitIdA, ObjectId commitIdB) {
-        RevWalk rw = new RevWalk(repository);
         try {
-            RevCommit a = rw.lookupCommit(commitIdA);
-            RevCommit b = rw.lookupCommit(commitIdB);
-
-            rw.setRevFilter(RevFilter.MERGE_BASE);
-            rw.markStart(a);
-            rw.markStart(b);
-            RevCommit mergeBase = rw.next();
-            if (mergeBase == null) {
-                return null;
-            }
-            return mergeBase.getName();
+            return MergeBaseCache.instance().get(repository, MergeBaseCache.Operation.MERGE_BASE, commitIdA,
+                    commitIdB, () -> {
+                try (RevWalk rw = new RevWalk(repository)) {
+                    RevCommit a = rw.lookupCommit(commitIdA);
+                    RevCommit b = rw.lookupCommit(commitIdB);
+
+                    rw.setRetainBody(false);
+                    rw.setRevFilter(RevFilter.MERGE_BASE);
+                    rw.markStart(a);
+                    rw.markStart(b);
+                    RevCommit mergeBase = rw.next();
+                    if (mergeBase == null) {
+                        return null;
+                    }
+                    return mergeBase.getName();
+                }
+            });
         } catch (Exception e) {
             LOGGER.error("Failed to determine merge base", e);
-        } finally {
-            rw.dispose();
         }
         return null;
     }
 
+    /**
+     * The number of commits of a branch which are not in the default branch
+     * and of the default branch which are not in the branch.
+     */
+    public static class AheadBehind {
+        public final int ahead;
+        public final int behind;
+
+        AheadBehind(int ahead, int behind) {
+            this.ahead = ahead;
+            this.behind = behind;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof AheadBehind) {
+                AheadBehind other = (AheadBehind) o;
+                return ahead == other.ahead && behind == other.behind;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * ahead + behind;
+        }
+
+        @Override
+        public String toString() {
+            return ahead + " ahead, " + behind + " behind";
+        }
+    }
+
+    /**
+     * Returns the number of commits each local branch is ahead and behind the
+     * default branch. If the repository has no default branch, an empty map is
+     * returned.
+     *
+     * @param repository
+     * @return the counts by the full name of the branch
+     */
+    public static Map<String, AheadBehind> getAheadBehind(Repository repository) {
+        try {
+            ObjectId baseId = getDefaultBranch(repository);
+            if (baseId != null) {
+                Map<String, ObjectId> tipIds = new LinkedHashMap<String, ObjectId>();
+                for (RefModel branch : getLocalBranches(repository, true, -1)) {
+                    tipIds.put(branch.getName(), branch.getReferencedObjectId());
+                }
+                return getAheadBehind(repository, baseId, tipIds);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to count the commits ahead and behind the default branch", e);
+        }
+        return new LinkedHashMap<String, AheadBehind>();
+    }
+
+    /**
+     * Returns the number of commits each tip is ahead and behind the base, like
+     * {@code countCommits(base, tip)} and {@code countCommits(tip, base)}.
+     * <p>
+     * The counts which are not in the {@link MergeBaseCache} are computed by a
+     * single walk from the base and all tips which marks every commit with the
+     * set of tips it is reachable from and stops when every pending commit is
+     * reachable from all of them. The counts are cached.
+     *
+     * @param repository
+     * @param baseId
+     * @param tipIds the tips by name
+     * @return the counts by the names of the tips
+     * @throws IOException
+     */
+    public static Map<String, AheadBehind> getAheadBehind(Repository repository, ObjectId baseId,
+            Map<String, ObjectId> tipIds) throws IOException {
+        MergeBaseCache cache = MergeBaseCache.instance();
+        // the tips which are not cached and their bit, bit 0 is the base
+        Map<ObjectId, Integer> bits = new LinkedHashMap<ObjectId, Integer>();
+        for (ObjectId tipId : tipIds.values()) {
+            if (bits.containsKey(tipId)) {
+                continue;
+            }
+            if (cache.getIfPresent(repository, MergeBaseCache.Operation.COUNT, baseId, tipId) == null
+                    || cache.getIfPresent(repository, MergeBaseCache.Operation.COUNT, tipId, baseId) == null) {
+                bits.put(tipId.copy(), bits.size() + 1);
+            }
+        }
+        if (!bits.isEmpty()) {
+            int[][] counts = countAheadBehind(repository, baseId, bits.keySet());
+            for (Map.Entry<ObjectId, Integer> tip : bits.entrySet()) {
+                int bit = tip.getValue();
+                cache.put(repository, MergeBaseCache.Operation.COUNT, baseId, tip.getKey(), counts[0][bit]);
+                cache.put(repository, MergeBaseCache.Operation.COUNT, tip.getKey(), baseId, counts[1][bit]);
+            }
+        }
+        Map<String, AheadBehind> aheadBehind = new LinkedHashMap<String, AheadBehind>();
+        for (Map.Entry<String, ObjectId> tip : tipIds.entrySet()) {
+            Integer ahead = cache.getIfPresent(repository, MergeBaseCache.Operation.COUNT, baseId, tip.getValue());
+            Integer behind = cache.getIfPresent(repository, MergeBaseCache.Operation.COUNT, tip.getValue(), baseId);
+            if (ahead == null || behind == null) {
+                // evicted by a concurrent request
+                ahead = countCommits(repository, new RevWalk(repository), baseId, tip.getValue());
+                behind = countCommits(repository, new RevWalk(repository), tip.getValue(), baseId);
+            }
+            aheadBehind.put(tip.getKey(), new AheadBehind(ahead, behind));
+        }
+        return aheadBehind;
+    }
+
+    /**
+     * A commit of the ahead/behind walk and the set of tips it is reachable
+     * from.
+     */
+    private static class ReachableCommit extends ObjectIdOwnerMap.Entry {
+
+        private static final long serialVersionUID = 1L;
+
+        final RevCommit commit;
+        final long[] tips;
+        boolean queued;
+
+        ReachableCommit(RevCommit commit, int words) {
+            super(commit);
+            this.commit = commit;
+            this.tips = new long[words];
+        }
+
+        /**
+         * Adds the tips of the child and returns true if this commit is
+         * reachable from more tips.
+         */
+        boolean addTips(long[] child) {
+            boolean added = false;
+            for (int i = 0; i < tips.length; i++) {
+                long merged = tips[i] | child[i];
+                if (merged != tips[i]) {
+                    tips[i] = merged;
+                    added = true;
+                }
+            }
+            return added;
+        }
+
+        boolean isReachableFrom(long[] all) {
+            return Arrays.equals(tips, all);
+        }
+
+        boolean isReachableFrom(int tip) {
+            return (tips[tip >>> 6] & (1L << tip)) != 0;
+        }
+    }
+
+    /**
+     * The number of commits which are walked beyond the oldest commit which is
+     * not reachable from all tips, see {@link #countAheadBehind}.
+     */
+    private static final int AHEAD_BEHIND_SLOP = 5;
+
+    /**
+     * Counts the commits of each tip which are not in the base and of the base
+     * which are not in the tip in one walk. The commits are walked by commit
+     * time and a walked commit which is reached from more tips later, because
+     * of clock skew, is walked again to pass those tips to its parents.
+     * <p>
+     * Once every queued commit is reachable from all tips, the walk goes on
+     * while the queued commits are not older than the oldest walked commit
+     * which is not, and for {@link #AHEAD_BEHIND_SLOP} commits beyond it, like
+     * git rev-list, so that the tips reach the walked commits below a commit
+     * with a skewed clock.
+     *
+     * @return the ahead counts and the behind counts by the bit of the tip
+     */
+    private static int[][] countAheadBehind(Repository repository, ObjectId baseId, Collection<ObjectId> tipIds)
+            throws IOException {
+        int tips = tipIds.size() + 1;
+        int words = (tips + 63) >>> 6;
+        long[] all = new long[words];
+        for (int tip = 0; tip < tips; tip++) {
+            all[tip >>> 6] |= 1L << tip;
+        }
+        ObjectIdOwnerMap<ReachableCommit> commits = new ObjectIdOwnerMap<ReachableCommit>();
+        PriorityQueue<ReachableCommit> queue = new PriorityQueue<ReachableCommit>(
+                (c1, c2) -> Integer.compare(c2.commit.getCommitTime(), c1.commit.getCommitTime()));
+        try (RevWalk rw = new RevWalk(repository)) {
+            rw.setRetainBody(false);
+            List<ObjectId> starts = new ArrayList<ObjectId>();
+            starts.add(baseId);
+            starts.addAll(tipIds);
+            // the number of queued commits which are not reachable from all tips
+            int partial = 0;
+            // the commit time of the oldest walked commit which is not
+            int oldestPartial = Integer.MAX_VALUE;
+            int slop = AHEAD_BEHIND_SLOP;
+            for (int tip = 0; tip < tips; tip++) {
+                long[] bit = new long[words];
+                bit[tip >>> 6] = 1L << tip;
+                partial += reach(commits, queue, rw.parseCommit(starts.get(tip)), bit, all);
+            }
+            while (!queue.isEmpty()) {
+                if (partial == 0) {
+                    if (queue.peek().commit.getCommitTime() >= oldestPartial) {
+                        slop = AHEAD_BEHIND_SLOP;
+                    } else if (slop-- == 0) {
+                        break;
+                    }
+                }
+                ReachableCommit next = queue.poll();
+                next.queued = false;
+                if (!next.isReachableFrom(all)) {
+                    partial--;
+                    oldestPartial = Math.min(oldestPartial, next.commit.getCommitTime());
+                }
+                for (RevCommit parent : next.commit.getParents()) {
+                    rw.parseHeaders(parent);
+                    partial += reach(commits, queue, parent, next.tips, all);
+                }
+            }
+        }
+        int[][] counts = new int[2][tips];
+        for (ReachableCommit commit : commits) {
+            boolean inBase = commit.isReachableFrom(0);
+            for (int tip = 1; tip < tips; tip++) {
+                if (commit.isReachableFrom(tip) != inBase) {
+                    counts[inBase ? 1 : 0][tip]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Marks the commit as reachable from the tips of a child and queues it if
+     * it is reachable from more tips.
+     *
+     * @return the change of the number of queued commits which are not
+     *         reachable from all tips
+     */
+    private static int reach(ObjectIdOwnerMap<ReachableCommit> commits, PriorityQueue<ReachableCommit> queue,
+            RevCommit commit, long[] tips, long[] all) {
+        ReachableCommit reachable = commits.get(commit);
+        if (reachable == null) {
+            reachable = new ReachableCommit(commit, all.length);
+            commits.add(reachable);
+        }
+        boolean wasPartial = reachable.queued && !reachable.isReachableFrom(all);
+        if (!reachable.addTips(tips)) {
+            return 0;
+        }
+        if (!reachable.queued) {
+            reachable.queued = true;
+            queue.add(reachable);
+            return reachable.isReachableFrom(all) ? 0 : 1;
+        }
+        return wasPartial && reachable.isReachableFrom(all) ? -1 : 0;
+    }
+
     public static enum MergeStatus {
         MISSING_INTEGRATION_BRANCH, MISSING_SRC_BRANCH, NOT_MERGEABLE, FAILED, ALREADY_MERGED, MERGEABLE, MERGED;
     }
@@ -2453,7 +3486,7 @@ public class JGitUtils {
                 if (srcTip == null) {
                     return MergeStatus.MISSING_SRC_BRANCH;
                 }
-                if (revWalk.isMergedInto(srcTip, branchTip)) {
+                if (isMergedInto(revWalk, srcTip, branchTip)) {
                     // already merged
                     return MergeStatus.ALREADY_MERGED;
                 }
@@ -2479,7 +3512,7 @@ public class JGitUtils {
         MergeResult merge(PersonIdent committer, String message) {
             try {
                 prepare();
-                if (revWalk.isMergedInto(srcTip, branchTip)) {
+                if (isMergedInto(revWalk, srcTip, branchTip)) {
                     // already merged
                     return new MergeResult(MergeStatus.ALREADY_MERGED, null);
                 }
@@ -2506,7 +3539,7 @@ public class JGitUtils {
 
         @Override
         MergeStatus _canMerge() throws IOException {
-            if (revWalk.isMergedInto(branchTip, srcTip)) {
+            if (isMergedInto(revWalk, branchTip, srcTip)) {
                 // fast-forward
                 return MergeStatus.MERGEABLE;
             }
@@ -2516,7 +3549,7 @@ public class JGitUtils {
 
         @Override
         MergeResult _merge(PersonIdent committer, String message) throws IOException {
-            if (!revWalk.isMergedInto(branchTip, srcTip)) {
+            if (!isMergedInto(revWalk, branchTip, srcTip)) {
                 // is not fast-forward
                 return new MergeResult(MergeStatus.FAILED, null);
             }
@@ -2536,7 +3569,7 @@ public class JGitUtils {
 
         @Override
         MergeStatus _canMerge() throws IOException {
-            if (revWalk.isMergedInto(branchTip, srcTip)) {
+            if (isMergedInto(revWalk, branchTip, srcTip)) {
                 // fast-forward
                 return MergeStatus.MERGEABLE;
             }
@@ -2552,7 +3585,7 @@ public class JGitUtils {
 
         @Override
         MergeResult _merge(PersonIdent committer, String message) throws IOException {
-            if (revWalk.isMergedInto(branchTip, srcTip)) {
+            if (isMergedInto(revWalk, branchTip, srcTip)) {
                 // fast-forward
                 mergeCommit = srcTip;
                 refLogMessage = "merge " + src + ": Fast-forward";
@@ -2928,6 +3961,8 @@ public class JGitUtils {
         RevWalk walk = new RevWalk(repository);
         walk.sort(RevSort.TOPO);
         walk.sort(RevSort.REVERSE, true);
+        // the sorted walk holds all commits, only their headers are retained
+        walk.setRetainBody(false);
         try {
             RevCommit tip = walk.parseCommit(repository.resolve(tipSha));
             RevCommit base = walk.parseCommit(repository.resolve(baseSha));
@@ -2938,7 +3973,9 @@ public class JGitUtils {
                 if (commit == null) {
                     break;
                 }
+                walk.parseBody(commit);
                 links.addAll(JGitUtils.identifyTicketsFromCommitMessage(repository, settings, commit));
+                commit.disposeBody();
             }
         } catch (IOException e) {
             LOGGER.error("failed to identify tickets between commits.", e);
@@ -2949,23 +3986,38 @@ public class JGitUtils {
         return links;
     }
 
+    /**
+     * Returns the number of commits of the tip which are not in the base. The
+     * count is cached by the {@link MergeBaseCache}. The walk is closed.
+     *
+     * @param repository
+     * @param walk
+     * @param baseId
+     * @param tipId
+     * @return the number of commits
+     */
     public static int countCommits(Repository repository, RevWalk walk, ObjectId baseId, ObjectId tipId) {
         int count = 0;
-        walk.reset();
-        walk.sort(RevSort.TOPO);
-        walk.sort(RevSort.REVERSE, true);
         try {
-            RevCommit tip = walk.parseCommit(tipId);
-            RevCommit base = walk.parseCommit(baseId);
-            walk.markStart(tip);
-            walk.markUninteresting(base);
-            for (; ; ) {
-                RevCommit c = walk.next();
-                if (c == null) {
-                    break;
+            count = MergeBaseCache.instance().get(repository, MergeBaseCache.Operation.COUNT, baseId, tipId, () -> {
+                int commits = 0;
+                walk.reset();
+                walk.setRetainBody(false);
+                walk.sort(RevSort.TOPO);
+                walk.sort(RevSort.REVERSE, true);
+                RevCommit tip = walk.parseCommit(tipId);
+                RevCommit base = walk.parseCommit(baseId);
+                walk.markStart(tip);
+                walk.markUninteresting(base);
+                for (; ; ) {
+                    RevCommit c = walk.next();
+                    if (c == null) {
+                        break;
+                    }
+                    commits++;
                 }
-                count++;
-            }
+                return commits;
+            });
         } catch (IOException e) {
             // Should never happen, the core receive process would have
             // identified the missing object earlier before we got control.
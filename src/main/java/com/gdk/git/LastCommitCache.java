@@ -0,0 +1,127 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the last commits which changed the entries of a folder, see
+ * {@link JGitUtils#getLastCommits}. The last commits only depend on the
+ * commit and the path of the folder, so they never become stale and are
+ * cached until they are evicted. Only complete results are cached; the
+ * results of a commit are reused by the computation of its children.
+ * <p>
+ * The cache is bounded by the total number of cached entries and evicts the
+ * least recently used folders.
+ */
+public class LastCommitCache {
+
+    private static final LastCommitCache instance;
+
+    /**
+     * The default maximum total number of cached folder entries.
+     */
+    public static final long DEFAULT_SIZE = 1_000_000;
+
+    /**
+     * Separates the repository from the commit and the path in a cache key.
+     */
+    private static final char KEY_SEPARATOR = '\0';
+
+    protected volatile ObjectCache<Map<String, ObjectId>> cache;
+
+    static {
+        instance = new LastCommitCache();
+    }
+
+    public static LastCommitCache instance() {
+        return instance;
+    }
+
+    protected LastCommitCache() {
+        this.cache = newCache(DEFAULT_SIZE);
+    }
+
+    private static ObjectCache<Map<String, ObjectId>> newCache(long size) {
+        return new ObjectCache<Map<String, ObjectId>>(size,
+                (String name, Map<String, ObjectId> commits) -> Math.max(1, commits.size()));
+    }
+
+    /**
+     * Sets the maximum total number of cached folder entries, the cached last
+     * commits are discarded.
+     *
+     * @param size
+     */
+    public synchronized void setCacheSize(long size) {
+        this.cache = newCache(size);
+    }
+
+    /**
+     * Returns the cached last commits of the entries of a folder.
+     *
+     * @param repository
+     * @param commit
+     * @param path       the folder, empty for the root folder
+     * @return the last commit of every entry by name or null
+     */
+    public Map<String, ObjectId> getIfPresent(Repository repository, AnyObjectId commit, String path) {
+        return cache.getIfCurrent(getKey(repository, commit, path), 0);
+    }
+
+    /**
+     * Caches the complete last commits of the entries of a folder.
+     *
+     * @param repository
+     * @param commit
+     * @param path       the folder, empty for the root folder
+     * @param commits    the last commit of every entry by name
+     */
+    public void put(Repository repository, AnyObjectId commit, String path, Map<String, ObjectId> commits) {
+        cache.put(getKey(repository, commit, path), 0,
+                Collections.unmodifiableMap(new LinkedHashMap<String, ObjectId>(commits)));
+    }
+
+    /**
+     * Removes the last commits of the repository in the folder and of the
+     * repositories below it.
+     *
+     * @param folder
+     */
+    public void clear(File folder) {
+        String path = folder.getAbsolutePath();
+        cache.removeByPrefix(path + KEY_SEPARATOR);
+        cache.removeByPrefix(path + File.separator);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached folders
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static String getKey(Repository repository, AnyObjectId commit, String path) {
+        return repository.getDirectory().getAbsolutePath() + KEY_SEPARATOR + commit.name() + path;
+    }
+}
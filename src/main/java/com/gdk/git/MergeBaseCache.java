@@ -0,0 +1,181 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the ancestry of pairs of commits: whether a commit is merged into
+ * another, their merge base and the number of commits of one which are not
+ * in the other. The answers only depend on the two commit ids, so they never
+ * become stale and are cached until they are evicted. Branch lists ask them
+ * for every branch on every request.
+ * <p>
+ * The cache is bounded by a number of entries and evicts the least recently
+ * used answers. Concurrent requests of the same answer wait for a single
+ * computation.
+ */
+public class MergeBaseCache {
+
+    private static final MergeBaseCache instance;
+
+    public static final long DEFAULT_SIZE = 100_000;
+
+    /**
+     * Separates the repository from the commits in a cache key.
+     */
+    private static final char KEY_SEPARATOR = '\0';
+
+    /**
+     * The cached answer of a computation without a result.
+     */
+    private static final Object NONE = new Object();
+
+    /**
+     * The cached relations of two commits.
+     */
+    public enum Operation {
+        MERGED_INTO, MERGE_BASE, COUNT
+    }
+
+    /**
+     * Computes an answer which is not cached.
+     */
+    public interface Computation<X> {
+
+        /**
+         * @return the answer, may be null
+         * @throws IOException the answer is not cached
+         */
+        X compute() throws IOException;
+    }
+
+    protected volatile ObjectCache<Object> cache;
+
+    static {
+        instance = new MergeBaseCache();
+    }
+
+    public static MergeBaseCache instance() {
+        return instance;
+    }
+
+    protected MergeBaseCache() {
+        this.cache = new ObjectCache<Object>(DEFAULT_SIZE);
+    }
+
+    /**
+     * Sets the maximum number of cached answers, the cached answers are
+     * discarded.
+     *
+     * @param size
+     */
+    public synchronized void setCacheSize(long size) {
+        this.cache = new ObjectCache<Object>(size);
+    }
+
+    /**
+     * Returns the cached answer or computes and caches it.
+     *
+     * @param repository
+     * @param operation
+     * @param a the first commit
+     * @param b the second commit
+     * @param computation
+     * @return the answer
+     * @throws IOException if the answer can not be computed
+     */
+    @SuppressWarnings("unchecked")
+    public <X> X get(Repository repository, Operation operation, AnyObjectId a, AnyObjectId b,
+            final Computation<X> computation) throws IOException {
+        Object answer;
+        try {
+            answer = cache.get(getKey(repository, operation, a, b), 0, previous -> {
+                try {
+                    X computed = computation.compute();
+                    return computed == null ? NONE : computed;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return answer == NONE ? null : (X) answer;
+    }
+
+    /**
+     * Returns the cached answer without computing it.
+     *
+     * @param repository
+     * @param operation
+     * @param a the first commit
+     * @param b the second commit
+     * @return the answer or null if it is not cached or the cached answer is
+     *         null
+     */
+    @SuppressWarnings("unchecked")
+    public <X> X getIfPresent(Repository repository, Operation operation, AnyObjectId a, AnyObjectId b) {
+        Object answer = cache.getIfPresent(getKey(repository, operation, a, b));
+        return answer == NONE ? null : (X) answer;
+    }
+
+    /**
+     * Caches an answer which was computed by the caller.
+     *
+     * @param repository
+     * @param operation
+     * @param a the first commit
+     * @param b the second commit
+     * @param answer
+     */
+    public void put(Repository repository, Operation operation, AnyObjectId a, AnyObjectId b, Object answer) {
+        cache.put(getKey(repository, operation, a, b), 0, answer == null ? NONE : answer);
+    }
+
+    /**
+     * Removes the answers of the repository in the folder and of the
+     * repositories below it.
+     *
+     * @param folder
+     */
+    public void clear(File folder) {
+        String path = folder.getAbsolutePath();
+        cache.removeByPrefix(path + KEY_SEPARATOR);
+        cache.removeByPrefix(path + File.separator);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached answers
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the hit, miss, eviction and computation time statistics of the
+     * cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static String getPrefix(Repository repository) {
+        return repository.getDirectory().getAbsolutePath() + KEY_SEPARATOR;
+    }
+
+    private static String getKey(Repository repository, Operation operation, AnyObjectId a, AnyObjectId b) {
+        return getPrefix(repository) + operation.ordinal() + a.name() + b.name();
+    }
+}
@@ -78,7 +78,6 @@ public class MetricUtils {
             for (RefModel tag : tags) {
                 tagMap.put(tag.getReferencedObjectId(), tag);
             }
-            RevWalk revWalk = null;
             try {
                 // resolve branch
                 ObjectId branchObject;
@@ -88,11 +87,12 @@ public class MetricUtils {
                     branchObject = repository.resolve(objectId);
                 }
 
-                revWalk = new RevWalk(repository);
-                RevCommit lastCommit = revWalk.parseCommit(branchObject);
-                revWalk.markStart(lastCommit);
+                RevCommit lastCommit;
+                try (RevWalk revWalk = new RevWalk(repository)) {
+                    lastCommit = revWalk.parseCommit(branchObject);
+                }
 
-                DateFormat df;
+                final DateFormat df;
                 if (StringUtils.isEmpty(dateFormat)) {
                     // dynamically determine date format
                     RevCommit firstCommit = JGitUtils.getFirstCommit(repository, branchObject.getName());
@@ -111,27 +111,26 @@ public class MetricUtils {
                 }
                 df.setTimeZone(timezone);
 
-                Iterable<RevCommit> revlog = revWalk;
-                for (RevCommit rev : revlog) {
-                    Date d = JGitUtils.getAuthorDate(rev);
-                    String p = df.format(d);
-                    if (!metricMap.containsKey(p)) {
-                        metricMap.put(p, new Metric(p));
-                    }
-                    Metric m = metricMap.get(p);
-                    m.count++;
-                    total.count++;
-                    if (tagMap.containsKey(rev.getId())) {
-                        m.tag++;
-                        total.tag++;
+                JGitUtils.walkRevLog(repository, branchObject.getName(), null, new JGitUtils.RevLogVisitor() {
+                    @Override
+                    public boolean visit(RevCommit rev) {
+                        Date d = JGitUtils.getAuthorDate(rev);
+                        String p = df.format(d);
+                        if (!metricMap.containsKey(p)) {
+                            metricMap.put(p, new Metric(p));
+                        }
+                        Metric m = metricMap.get(p);
+                        m.count++;
+                        total.count++;
+                        if (tagMap.containsKey(rev.getId())) {
+                            m.tag++;
+                            total.tag++;
+                        }
+                        return true;
                     }
-                }
+                });
             } catch (Throwable t) {
                 error(t, repository, "{0} failed to mine log history for date metrics of {1}", objectId);
-            } finally {
-                if (revWalk != null) {
-                    revWalk.dispose();
-                }
             }
         }
 
@@ -159,7 +158,6 @@ public class MetricUtils {
         final Map<String, Metric> metricMap = new HashMap<String, Metric>();
         if (JGitUtils.hasCommits(repository)) {
             try {
-                RevWalk walk = new RevWalk(repository);
                 // resolve branch
                 ObjectId branchObject;
                 if (StringUtils.isEmpty(objectId)) {
@@ -167,30 +165,31 @@ public class MetricUtils {
                 } else {
                     branchObject = repository.resolve(objectId);
                 }
-                RevCommit lastCommit = walk.parseCommit(branchObject);
-                walk.markStart(lastCommit);
 
-                Iterable<RevCommit> revlog = walk;
-                for (RevCommit rev : revlog) {
-                    String p;
-                    if (byEmailAddress) {
-                        p = rev.getAuthorIdent().getEmailAddress().toLowerCase();
-                        if (StringUtils.isEmpty(p)) {
+                JGitUtils.walkRevLog(repository, branchObject.getName(), null, new JGitUtils.RevLogVisitor() {
+                    @Override
+                    public boolean visit(RevCommit rev) {
+                        String p;
+                        if (byEmailAddress) {
+                            p = rev.getAuthorIdent().getEmailAddress().toLowerCase();
+                            if (StringUtils.isEmpty(p)) {
+                                p = rev.getAuthorIdent().getName().toLowerCase();
+                            }
+                        } else {
                             p = rev.getAuthorIdent().getName().toLowerCase();
+                            if (StringUtils.isEmpty(p)) {
+                                p = rev.getAuthorIdent().getEmailAddress().toLowerCase();
+                            }
                         }
-                    } else {
-                        p = rev.getAuthorIdent().getName().toLowerCase();
-                        if (StringUtils.isEmpty(p)) {
-                            p = rev.getAuthorIdent().getEmailAddress().toLowerCase();
+                        p = p.replace('\n', ' ').replace('\r', ' ').trim();
+                        if (!metricMap.containsKey(p)) {
+                            metricMap.put(p, new Metric(p));
                         }
+                        Metric m = metricMap.get(p);
+                        m.count++;
+                        return true;
                     }
-                    p = p.replace('\n', ' ').replace('\r', ' ').trim();
-                    if (!metricMap.containsKey(p)) {
-                        metricMap.put(p, new Metric(p));
-                    }
-                    Metric m = metricMap.get(p);
-                    m.count++;
-                }
+                });
             } catch (Throwable t) {
                 error(t, repository, "{0} failed to mine log history for author metrics of {1}",
                         objectId);
@@ -1,85 +1,307 @@
 package com.gdk.git;
 
-import java.io.Serializable;
-import java.util.Date;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 
 /**
- * Reusable coarse date-based object cache. The date precision is in
- * milliseconds and in fast, concurrent systems this cache is too simplistic.
- * However, for the cases where its being used in Gitblit this cache technique
- * is just fine.
+ * Reusable bounded object cache. Every cached object is stored with a version,
+ * typically the last modification time or a fingerprint of its source, and is
+ * reloaded when it is requested with a different version.
+ * <p>
+ * The cache is bounded by a number of entries or by a weight budget and evicts
+ * the least recently used entries. Loads are single-flight: an expensive object
+ * is computed only once even if it is requested concurrently, loads of
+ * different keys run in parallel and never block each other. Callers which can
+ * live with a stale object may get the previous object while it is reloaded.
  *
  * @author James Moger
  */
-public class ObjectCache<X> implements Serializable {
+public class ObjectCache<X> {
 
-    private static final long serialVersionUID = 1L;
+    /**
+     * Computes the object of a key.
+     */
+    public interface Loader<X> {
 
-    private final Map<String, CachedObject<X>> cache = new ConcurrentHashMap<String, CachedObject<X>>();
+        /**
+         * Loads the current object.
+         *
+         * @param previous the stale cached object or null
+         * @return the current object, never null
+         */
+        X load(X previous);
+    }
 
-    private class CachedObject<Y> {
+    private static final class Versioned<X> {
 
-        public final String name;
+        final long version;
 
-        private volatile Date date;
-        private volatile Y object;
+        final X object;
 
-        CachedObject(String name) {
-            this.name = name;
-            date = new Date(0);
+        Versioned(long version, X object) {
+            this.version = version;
+            this.object = object;
         }
+    }
 
-        @Override
-        public String toString() {
-            return getClass().getSimpleName() + ": " + name;
+    /**
+     * A running load of a version.
+     */
+    private static final class Load<X> extends CompletableFuture<X> {
+
+        final long version;
+
+        Load(long version) {
+            this.version = version;
         }
     }
 
-    public void clear() {
-        cache.clear();
+    private final Cache<String, Versioned<X>> cache;
+
+    private final Map<String, Load<X>> loading = new ConcurrentHashMap<String, Load<X>>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder staleHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder loadFailures = new LongAdder();
+
+    private final LongAdder loadTime = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache which holds at most the specified number of entries.
+     *
+     * @param maximumSize
+     */
+    public ObjectCache(long maximumSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    /**
+     * Creates a cache which holds entries up to the specified total weight.
+     *
+     * @param maximumWeight
+     * @param weigher
+     */
+    public ObjectCache(long maximumWeight, Weigher<String, ? super X> weigher) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((String name, Versioned<X> cached) -> weigher.weigh(name, cached.object))
+                .removalListener(this::onRemoval)
+                .build();
     }
 
-    public boolean hasCurrent(String name, Date date) {
-        return cache.containsKey(name) && cache.get(name).date.compareTo(date) == 0;
+    private void onRemoval(RemovalNotification<String, Versioned<X>> notification) {
+        if (notification.getCause() == RemovalCause.SIZE) {
+            evictions.increment();
+        }
     }
 
-    public Date getDate(String name) {
-        return cache.get(name).date;
+    /**
+     * Returns the cached object if it has the specified version, otherwise
+     * loads, caches and returns the current object. Concurrent requests of a
+     * stale key wait for a single load.
+     *
+     * @param name
+     * @param version
+     * @param loader
+     * @return the object
+     */
+    public X get(String name, long version, Loader<X> loader) {
+        return get(name, version, loader, false);
     }
 
-    public X getObject(String name) {
-        if (cache.containsKey(name)) {
-            return cache.get(name).object;
+    /**
+     * Returns the cached object if it has the specified version, otherwise
+     * loads, caches and returns the current object. If the object is already
+     * being loaded by a concurrent request the caller waits for that load, or
+     * gets the stale object immediately if it accepts stale objects.
+     *
+     * @param name
+     * @param version
+     * @param loader
+     * @param acceptStale return the previous object while it is reloaded
+     * @return the object
+     */
+    public X get(String name, long version, Loader<X> loader, boolean acceptStale) {
+        while (true) {
+            Versioned<X> cached = cache.getIfPresent(name);
+            if (cached != null && cached.version == version) {
+                hits.increment();
+                return cached.object;
+            }
+            Load<X> load = new Load<X>(version);
+            Load<X> running = loading.putIfAbsent(name, load);
+            if (running == null) {
+                try {
+                    return load(name, load, loader);
+                } finally {
+                    loading.remove(name, load);
+                }
+            }
+            if (acceptStale && cached != null) {
+                staleHits.increment();
+                return cached.object;
+            }
+            X object = await(running);
+            if (running.version == version) {
+                hits.increment();
+                return object;
+            }
+            // a different version was loaded, check again
         }
-        return null;
     }
 
-    public void updateObject(String name, X object) {
-        this.updateObject(name, new Date(), object);
+    private X load(String name, Load<X> load, Loader<X> loader) {
+        Versioned<X> cached = cache.getIfPresent(name);
+        if (cached != null && cached.version == load.version) {
+            // loaded by a concurrent request
+            hits.increment();
+            load.complete(cached.object);
+            return cached.object;
+        }
+        misses.increment();
+        long start = System.nanoTime();
+        X object;
+        try {
+            object = loader.load(cached == null ? null : cached.object);
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadTime.add(System.nanoTime() - start);
+        }
+        loads.increment();
+        cache.put(name, new Versioned<X>(load.version, object));
+        load.complete(object);
+        return object;
     }
 
-    public void updateObject(String name, Date date, X object) {
-        CachedObject<X> obj;
-        if (cache.containsKey(name)) {
-            obj = cache.get(name);
-        } else {
-            obj = new CachedObject<X>(name);
-            cache.put(name, obj);
+    private static <X> X await(Load<X> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
         }
-        obj.date = date;
-        obj.object = object;
     }
 
-    public X remove(String name) {
-        if (cache.containsKey(name)) {
-            return cache.remove(name).object;
+    /**
+     * Returns the cached object if it has the specified version.
+     *
+     * @param name
+     * @param version
+     * @return the object or null if it is not cached or stale
+     */
+    public X getIfCurrent(String name, long version) {
+        Versioned<X> cached = cache.getIfPresent(name);
+        if (cached != null && cached.version == version) {
+            hits.increment();
+            return cached.object;
         }
+        misses.increment();
         return null;
     }
 
-    public int size() {
+    /**
+     * Returns the cached object regardless of its version.
+     *
+     * @param name
+     * @return the object or null
+     */
+    public X getIfPresent(String name) {
+        Versioned<X> cached = cache.getIfPresent(name);
+        return cached == null ? null : cached.object;
+    }
+
+    public void put(String name, long version, X object) {
+        cache.put(name, new Versioned<X>(version, object));
+    }
+
+    public X remove(String name) {
+        Versioned<X> cached = cache.asMap().remove(name);
+        return cached == null ? null : cached.object;
+    }
+
+    /**
+     * @return a snapshot of the names of the cached objects
+     */
+    public Set<String> keys() {
+        return new HashSet<String>(cache.asMap().keySet());
+    }
+
+    /**
+     * Removes all objects whose names start with the specified prefix.
+     *
+     * @param prefix
+     * @return true if an object was removed
+     */
+    public boolean removeByPrefix(String prefix) {
+        return cache.asMap().keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
         return cache.size();
     }
+
+    /**
+     * Returns the number of requests which were answered with a stale object
+     * while the object was reloaded.
+     *
+     * @return the stale hit count
+     */
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    /**
+     * Returns the cache statistics. Requests of {@link #get} which wait for a
+     * concurrent load are counted as hits, stale hits are not counted. The
+     * load time is in nanoseconds.
+     *
+     * @return the statistics
+     */
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(),
+                loadTime.sum(), evictions.sum());
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = stats();
+        return String.format("%d entries, %d hits, %d stale hits, %d misses (%.1f%% hit rate), %d evictions, %d msecs loading",
+                size(), stats.hitCount(), getStaleHitCount(), stats.missCount(), stats.hitRate() * 100,
+                stats.evictionCount(), TimeUnit.NANOSECONDS.toMillis(stats.totalLoadTime()));
+    }
 }
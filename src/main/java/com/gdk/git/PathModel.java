@@ -4,10 +4,9 @@ import java.io.Serializable;
 
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
-import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.revwalk.RevWalk;
 
 /**
  * PathModel is a serializable model class that represents a file or a folder,
@@ -37,6 +36,19 @@ public class PathModel implements Serializable, Comparable<PathModel> {
 		this.commitId = commitId;
 	}
 
+	/**
+	 * Returns a copy of this path model for another commit which contains the
+	 * same object at the same path.
+	 *
+	 * @param commitId
+	 * @return the path model of the commit
+	 */
+	public PathModel withCommit(String commitId) {
+		PathModel model = new PathModel(name, path, filestoreItem, size, mode, objectId, commitId);
+		model.isParentPath = isParentPath;
+		return model;
+	}
+
 	public boolean isSymlink() {
 		return FileMode.SYMLINK.equals(mode);
 	}
@@ -144,20 +156,28 @@ public class PathModel implements Serializable, Comparable<PathModel> {
 		}
 
 		public static PathChangeModel from(DiffEntry diff, String commitId, Repository repository) {
-			PathChangeModel pcm;
-			FilestoreModel filestoreItem = null;
-			long size = 0;
-
-			if (repository != null) {
-				try (RevWalk revWalk = new RevWalk(repository)) {
-					size = revWalk.getObjectReader().getObjectSize(diff.getNewId().toObjectId(), Constants.OBJ_BLOB);
-					if (JGitUtils.isPossibleFilestoreItem(size)) {
-						filestoreItem = JGitUtils.getFilestoreItem(revWalk.getObjectReader().open(diff.getNewId().toObjectId()));
-					}
-				} catch (Exception e) {
-					e.printStackTrace();
+			BlobProber.Probe probe = null;
+			if (repository != null && diff.getNewId().isComplete()) {
+				try (ObjectReader reader = repository.newObjectReader()) {
+					probe = BlobProber.instance().probe(repository, reader, diff.getNewId().toObjectId());
 				}
 			}
+			return from(diff, commitId, probe);
+		}
+
+		/**
+		 * Creates the path change model of a diff entry whose new blob was
+		 * probed by {@link BlobProber}.
+		 *
+		 * @param diff
+		 * @param commitId
+		 * @param probe    the probe of the new blob, null if it is missing
+		 * @return the path change model
+		 */
+		public static PathChangeModel from(DiffEntry diff, String commitId, BlobProber.Probe probe) {
+			PathChangeModel pcm;
+			FilestoreModel filestoreItem = probe == null ? null : probe.getFilestoreItem();
+			long size = probe == null ? 0 : probe.size;
 			
 			if (diff.getChangeType().equals(ChangeType.DELETE)) {
 				pcm = new PathChangeModel(diff.getOldPath(), diff.getOldPath(), filestoreItem, size, diff
@@ -0,0 +1,194 @@
+package com.gdk.git;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import com.gdk.git.Constants.SearchType;
+
+/**
+ * Includes the commits whose author, committer or message contains one of the
+ * values, ignoring case. A commit matches a value like
+ * {@code field.toLowerCase().indexOf(value.toLowerCase()) > -1} of the name
+ * and email address of the author or committer or of the full message.
+ * <p>
+ * The filter searches the raw buffer of the commit and folds the case of
+ * ASCII bytes as it compares them, it does not parse the person identities
+ * or decode the message. Fields with non-ASCII characters and non-ASCII
+ * values are compared as lower case strings because their case folding
+ * depends on the Unicode rules of {@link String#toLowerCase()}.
+ */
+public class RawSearchFilter extends RevFilter {
+
+    /**
+     * The maximum number of values, see {@link #match(RevCommit)}.
+     */
+    public static final int MAX_VALUES = 64;
+
+    private final SearchType type;
+
+    private final String[] values;
+
+    /**
+     * The lower case ASCII values, null for non-ASCII values.
+     */
+    private final byte[][] patterns;
+
+    private final boolean ascii;
+
+    public RawSearchFilter(SearchType type, String... values) {
+        if (values.length > MAX_VALUES) {
+            throw new IllegalArgumentException("Too many search values " + values.length);
+        }
+        this.type = type;
+        this.values = new String[values.length];
+        this.patterns = new byte[values.length][];
+        boolean ascii = true;
+        for (int i = 0; i < values.length; i++) {
+            this.values[i] = values[i].toLowerCase();
+            byte[] pattern = this.values[i].getBytes(StandardCharsets.UTF_8);
+            if (isAscii(pattern, 0, pattern.length)) {
+                this.patterns[i] = pattern;
+            } else {
+                ascii = false;
+            }
+        }
+        this.ascii = ascii;
+    }
+
+    public RawSearchFilter(SearchType type, Collection<String> values) {
+        this(type, values.toArray(new String[values.size()]));
+    }
+
+    @Override
+    public boolean include(RevWalk walker, RevCommit commit)
+            throws StopWalkException, MissingObjectException, IncorrectObjectTypeException, IOException {
+        return match(commit) != 0;
+    }
+
+    /**
+     * Returns the values which the commit contains.
+     *
+     * @param commit a commit with its body
+     * @return a bit for each value, bit i is set if the commit contains value i
+     */
+    public long match(RevCommit commit) {
+        byte[] buffer = commit.getRawBuffer();
+        switch (type) {
+            case AUTHOR:
+                return matchIdent(commit, buffer, RawParseUtils.author(buffer, 0));
+            case COMMITTER:
+                return matchIdent(commit, buffer, RawParseUtils.committer(buffer, 0));
+            default:
+                int start = RawParseUtils.commitMessage(buffer, 0);
+                if (start < 0) {
+                    return 0;
+                }
+                if (ascii && isAscii(buffer, start, buffer.length)) {
+                    return matchRange(buffer, start, buffer.length, 0);
+                }
+                return matchString(commit.getFullMessage().toLowerCase(), 0);
+        }
+    }
+
+    /**
+     * Matches the name and email address of an identity line like
+     * {@code RawParseUtils.parsePersonIdent}.
+     */
+    private long matchIdent(RevCommit commit, byte[] buffer, int nameB) {
+        if (nameB < 0) {
+            return 0;
+        }
+        int emailB = RawParseUtils.nextLF(buffer, nameB, '<');
+        int emailE = RawParseUtils.nextLF(buffer, emailB, '>');
+        if (emailB >= buffer.length || buffer[emailB] == '\n'
+                || (emailE >= buffer.length - 1 && buffer[emailE - 1] != '>')) {
+            // not an identity, the commit has no author or committer
+            return 0;
+        }
+        int nameE = emailB - 2 >= nameB && buffer[emailB - 2] == ' ' ? emailB - 2 : emailB - 1;
+        if (ascii && isAscii(buffer, nameB, emailE)) {
+            return matchRange(buffer, nameB, nameE, 0) | matchRange(buffer, emailB, emailE - 1, 0);
+        }
+        PersonIdent ident = type == SearchType.AUTHOR ? commit.getAuthorIdent() : commit.getCommitterIdent();
+        return matchString(ident.getName().toLowerCase(), 0)
+                | matchString(ident.getEmailAddress().toLowerCase(), 0);
+    }
+
+    private long matchRange(byte[] buffer, int start, int end, long matches) {
+        for (int i = 0; i < patterns.length; i++) {
+            if ((matches & (1L << i)) == 0 && contains(buffer, start, end, patterns[i])) {
+                matches |= 1L << i;
+            }
+        }
+        return matches;
+    }
+
+    private long matchString(String field, long matches) {
+        for (int i = 0; i < values.length; i++) {
+            if (field.indexOf(values[i]) > -1) {
+                matches |= 1L << i;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns true if the range contains the lower case ASCII pattern,
+     * ignoring the case of the range.
+     */
+    static boolean contains(byte[] buffer, int start, int end, byte[] pattern) {
+        if (pattern.length == 0) {
+            return true;
+        }
+        byte first = pattern[0];
+        int last = end - pattern.length;
+        next:
+        for (int i = start; i <= last; i++) {
+            if (toLowerCase(buffer[i]) != first) {
+                continue;
+            }
+            for (int j = 1; j < pattern.length; j++) {
+                if (toLowerCase(buffer[i + j]) != pattern[j]) {
+                    continue next;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static boolean isAscii(byte[] buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public RevFilter clone() {
+        // immutable
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return type.name() + Arrays.toString(values);
+    }
+}
@@ -0,0 +1,291 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the refs of a repository by ref prefix for the ref database version
+ * of the repository, see {@link RepositoryVersion#getRefs()}.
+ * <p>
+ * Ref lists are ordered by the date of the referenced object, newest first.
+ * The dates of all refs of a list are read when the list is first ordered and
+ * the dates of the objects of a stale list are reused when the refs change.
+ * A page of refs is selected by a bounded heap, so the first page of a
+ * repository with many tags is selected in O(n log k). The {@link RefModel}s,
+ * which peel the tags and decode the messages, are only created for the refs
+ * of the requested pages and are cached with the list.
+ */
+public class RefCache {
+
+    private static final RefCache instance;
+
+    /**
+     * The default maximum number of cached refs.
+     */
+    public static final long DEFAULT_SIZE = 1_000_000;
+
+    protected volatile ObjectCache<RefList> cache;
+
+    static {
+        instance = new RefCache();
+    }
+
+    public static RefCache instance() {
+        return instance;
+    }
+
+    protected RefCache() {
+        this.cache = newCache(DEFAULT_SIZE);
+    }
+
+    private static ObjectCache<RefList> newCache(long size) {
+        return new ObjectCache<RefList>(size, (String name, RefList list) -> Math.max(1, list.refs.length));
+    }
+
+    /**
+     * Sets the maximum total number of cached refs, the cached refs are
+     * discarded.
+     *
+     * @param size
+     */
+    public synchronized void setCacheSize(long size) {
+        this.cache = newCache(size);
+    }
+
+    /**
+     * Returns a page of the refs matching the prefix, ordered by the date of
+     * the referenced object, newest first.
+     *
+     * @param repository
+     * @param refs       the ref prefix, {@code RefDatabase.ALL} for all refs
+     * @param fullName   if true, the display name is the full name of the ref
+     * @param maxCount   if < 0, all refs are returned
+     * @param offset     the index of the first ref if maxCount is exceeded
+     * @return the refs
+     * @throws IOException
+     */
+    public List<RefModel> getRefs(Repository repository, String refs, boolean fullName, int maxCount, int offset)
+            throws IOException {
+        RefList list = getRefList(repository, refs);
+        int[] page;
+        if (maxCount > 0 && list.refs.length > maxCount) {
+            page = list.select(repository, Math.max(0, offset), maxCount);
+        } else {
+            page = list.select(repository, 0, list.refs.length);
+        }
+        List<RefModel> models = new ArrayList<RefModel>(page.length);
+        try (RevWalk rw = new RevWalk(repository)) {
+            for (int index : page) {
+                models.add(list.getModel(rw, index, fullName));
+            }
+        }
+        return models;
+    }
+
+    private RefList getRefList(Repository repository, String refs) throws IOException {
+        String key = repository.getDirectory().getAbsolutePath() + '\0' + refs;
+        long version = RepositoryVersion.of(repository.getDirectory()).getRefs();
+        try {
+            return cache.get(key, version, previous -> {
+                try {
+                    return new RefList(refs, repository.getRefDatabase().getRefsByPrefix(refs), previous);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Removes the ref lists of the repository in the folder and of the
+     * repositories below it.
+     *
+     * @param folder
+     */
+    public void clear(File folder) {
+        String path = folder.getAbsolutePath();
+        cache.removeByPrefix(path + '\0');
+        cache.removeByPrefix(path + File.separator);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the hit, miss, eviction and load time statistics of the cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Returns the date of the referenced object like {@link RefModel#getDate()}.
+     */
+    static long getDate(RevObject object) {
+        if (object instanceof RevTag) {
+            RevTag tag = (RevTag) object;
+            return tag.getTaggerIdent() == null ? 0 : tag.getTaggerIdent().getWhenAsInstant().toEpochMilli();
+        } else if (object instanceof RevCommit) {
+            return JGitUtils.getAuthorDate((RevCommit) object).getTime();
+        }
+        return 0;
+    }
+
+    /**
+     * The refs of a prefix in the order of their names.
+     */
+    static class RefList {
+
+        final String prefix;
+
+        final String[] names;
+
+        final Ref[] refs;
+
+        /**
+         * The previous list whose dates are reused, cleared once the dates
+         * are read.
+         */
+        private RefList previous;
+
+        private volatile long[] dates;
+
+        private final AtomicReferenceArray<RefModel> shortModels;
+
+        private final AtomicReferenceArray<RefModel> fullModels;
+
+        RefList(String prefix, List<Ref> list, RefList previous) {
+            List<Ref> sorted = new ArrayList<Ref>(list);
+            sorted.sort(Comparator.comparing(Ref::getName));
+            this.prefix = prefix;
+            this.refs = sorted.toArray(new Ref[sorted.size()]);
+            this.names = new String[refs.length];
+            for (int i = 0; i < refs.length; i++) {
+                names[i] = refs[i].getName().substring(prefix.length());
+            }
+            this.previous = previous;
+            this.shortModels = new AtomicReferenceArray<RefModel>(refs.length);
+            this.fullModels = new AtomicReferenceArray<RefModel>(refs.length);
+        }
+
+        /**
+         * Returns the indexes of a page of refs ordered by date, newest first.
+         * Refs with the same date are ordered by name in reverse order.
+         *
+         * @param repository
+         * @param offset
+         * @param maxCount
+         * @return the indexes of the refs
+         * @throws IOException
+         */
+        int[] select(Repository repository, int offset, int maxCount) throws IOException {
+            int k = (int) Math.min((long) offset + maxCount, refs.length);
+            if (offset >= k) {
+                return new int[0];
+            }
+            final long[] dates = getDates(repository);
+            // the oldest of the selected refs is the head of the heap
+            Comparator<Integer> newest = (i1, i2) -> {
+                int c = Long.compare(dates[i1], dates[i2]);
+                return c != 0 ? c : Integer.compare(i1, i2);
+            };
+            PriorityQueue<Integer> heap = new PriorityQueue<Integer>(k + 1, newest);
+            for (int i = 0; i < refs.length; i++) {
+                if (heap.size() < k) {
+                    heap.add(i);
+                } else if (newest.compare(i, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(i);
+                }
+            }
+            int[] page = new int[k - offset];
+            for (int i = k - 1; i >= 0; i--) {
+                int index = heap.poll();
+                if (i >= offset) {
+                    page[i - offset] = index;
+                }
+            }
+            return page;
+        }
+
+        private long[] getDates(Repository repository) throws IOException {
+            long[] dates = this.dates;
+            if (dates != null) {
+                return dates;
+            }
+            synchronized (this) {
+                if (this.dates == null) {
+                    this.dates = readDates(repository);
+                    previous = null;
+                }
+                return this.dates;
+            }
+        }
+
+        private long[] readDates(Repository repository) throws IOException {
+            Map<ObjectId, Long> known = new HashMap<ObjectId, Long>();
+            RefList stale = previous;
+            if (stale != null && stale.dates != null) {
+                for (int i = 0; i < stale.refs.length; i++) {
+                    known.put(stale.refs[i].getObjectId(), stale.dates[i]);
+                }
+            }
+            long[] dates = new long[refs.length];
+            try (RevWalk rw = new RevWalk(repository)) {
+                for (int i = 0; i < refs.length; i++) {
+                    ObjectId id = refs[i].getObjectId();
+                    Long date = known.get(id);
+                    if (date == null) {
+                        RevObject object = rw.parseAny(id);
+                        date = getDate(object);
+                        known.put(id, date);
+                        if (object instanceof RevCommit) {
+                            ((RevCommit) object).disposeBody();
+                        } else if (object instanceof RevTag) {
+                            ((RevTag) object).disposeBody();
+                        }
+                    }
+                    dates[i] = date;
+                }
+            }
+            return dates;
+        }
+
+        RefModel getModel(RevWalk rw, int index, boolean fullName) throws IOException {
+            AtomicReferenceArray<RefModel> cached = fullName ? fullModels : shortModels;
+            RefModel model = cached.get(index);
+            if (model == null) {
+                String name = names[index];
+                if (fullName && !StringUtils.isEmpty(prefix)) {
+                    name = prefix + name;
+                }
+                model = new RefModel(name, refs[index], rw.parseAny(refs[index].getObjectId()));
+                cached.set(index, model);
+            }
+            return model;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * RepositoryCatalog persists a snapshot of the repository list cache so that
+ * the repository manager can serve the repository list immediately after a
+ * restart and validate it in the background.
+ * <p>
+ * The snapshot records the repository models, their last calculated sizes and
+ * the {@link RepositoryVersion} of each repository at the time its model was
+ * loaded. The snapshot is written to a temporary file and atomically moved
+ * into place.
+ */
+public class RepositoryCatalog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryCatalog.class);
+
+    private static final int FORMAT = 1;
+
+    private final File file;
+
+    /**
+     * A cataloged repository.
+     */
+    public static class Entry {
+
+        public final RepositoryModel model;
+
+        public final RepositoryVersion version;
+
+        public final long size;
+
+        public Entry(RepositoryModel model, RepositoryVersion version, long size) {
+            this.model = model;
+            this.version = version;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A catalog snapshot.
+     */
+    public static class Snapshot {
+
+        public int format;
+
+        public String checksum;
+
+        public Date date;
+
+        public List<Entry> entries;
+    }
+
+    public RepositoryCatalog(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the snapshot.
+     *
+     * @param checksum the checksum of the settings which affect the repository list
+     * @return the snapshot or null if there is no valid snapshot for the checksum
+     */
+    public Snapshot read(String checksum) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            Snapshot snapshot = gson().fromJson(reader, Snapshot.class);
+            if (snapshot == null || snapshot.format != FORMAT || snapshot.entries == null) {
+                LOGGER.info("Ignoring repository catalog {} with unsupported format", file);
+                return null;
+            }
+            if (!checksum.equals(snapshot.checksum)) {
+                LOGGER.info("Ignoring repository catalog {}, repository list settings have changed", file);
+                return null;
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to read repository catalog " + file, e);
+        }
+        return null;
+    }
+
+    /**
+     * Writes a snapshot of the specified entries.
+     *
+     * @param checksum the checksum of the settings which affect the repository list
+     * @param entries
+     * @return true if the snapshot was written
+     */
+    public boolean write(String checksum, Iterable<Entry> entries) {
+        File folder = file.getAbsoluteFile().getParentFile();
+        folder.mkdirs();
+        File tmp = new File(folder, file.getName() + ".tmp");
+        Gson gson = gson();
+        int count = 0;
+        try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8);
+             JsonWriter json = gson.newJsonWriter(writer)) {
+            json.beginObject();
+            json.name("format").value(FORMAT);
+            json.name("checksum").value(checksum);
+            json.name("date").value(System.currentTimeMillis());
+            json.name("entries").beginArray();
+            for (Entry entry : entries) {
+                gson.toJson(entry, Entry.class, json);
+                count++;
+            }
+            json.endArray();
+            json.endObject();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to write repository catalog " + tmp, e);
+            tmp.delete();
+            return false;
+        }
+
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Failed to replace repository catalog " + file, e);
+            tmp.delete();
+            return false;
+        }
+        LOGGER.debug("Wrote {} repositories to catalog {}", count, file);
+        return true;
+    }
+
+    private static Gson gson() {
+        GsonBuilder builder = new GsonBuilder();
+        // dates are stored as epoch milliseconds to keep their precision
+        builder.registerTypeAdapter(Date.class, new EpochDateTypeAdapter());
+        return builder.create();
+    }
+
+    private static class EpochDateTypeAdapter implements JsonSerializer<Date>, JsonDeserializer<Date> {
+
+        @Override
+        public JsonElement serialize(Date date, Type type, JsonSerializationContext context) {
+            return new JsonPrimitive(date.getTime());
+        }
+
+        @Override
+        public Date deserialize(JsonElement json, Type type, JsonDeserializationContext context)
+                throws JsonParseException {
+            return new Date(json.getAsLong());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.gdk.git;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.MessageFormat;
 import java.util.Date;
@@ -15,6 +16,10 @@ import org.eclipse.jgit.revwalk.RevWalk;
 
 /**
  * Model class to represent a RevCommit, it's source repository, and the branch. This class is used by the activity page.
+ * <p>
+ * Commits served by the {@link CommitCache} are views of a {@link CommitHistory}
+ * and are not backed by a parsed RevCommit: {@link #getCommit()} returns null
+ * and the parents are not parsed.
  *
  * @author James Moger
  */
@@ -24,9 +29,11 @@ public class RepositoryCommit implements Serializable, Comparable<RepositoryComm
 	public String repository;
 	public String branch;
 
-	private final String commitId;
+	private String commitId;
 	private List<RefModel> refs;
 	private transient RevCommit commit;
+	private transient CommitHistory history;
+	private transient int index;
 
 	public RepositoryCommit(String repository, String branch, RevCommit commit) {
 		this.repository = repository;
@@ -35,6 +42,22 @@ public class RepositoryCommit implements Serializable, Comparable<RepositoryComm
 		this.commitId = commit.getName();
 	}
 
+	/**
+	 * Creates a view of a commit of a history.
+	 *
+	 * @param repository
+	 * @param branch
+	 * @param history
+	 * @param index
+	 */
+	public RepositoryCommit(String repository, String branch, CommitHistory history, int index) {
+		this.repository = repository;
+		this.branch = branch;
+		this.history = history;
+		this.index = index;
+		this.refs = history.getRefs(index);
+	}
+
 	public void setRefs(List<RefModel> refs) {
 		this.refs = refs;
 	}
@@ -44,41 +67,51 @@ public class RepositoryCommit implements Serializable, Comparable<RepositoryComm
 	}
 
 	public ObjectId getId() {
-		return commit.getId();
+		return commit != null ? commit.getId() : history.getId(index);
 	}
 
 	public String getName() {
-		return commit.getName();
+		if (commitId == null) {
+			commitId = getId().getName();
+		}
+		return commitId;
 	}
 
 	public String getShortName() {
-		return commit.getName().substring(0, 8);
+		return getName().substring(0, 8);
 	}
 
 	public String getShortMessage() {
-		return commit.getShortMessage();
+		return commit != null ? commit.getShortMessage() : history.getShortMessage(index);
 	}
 
 	public Date getCommitDate() {
-		return new Date(commit.getCommitTime() * 1000L);
+		return new Date(getCommitTime());
+	}
+
+	private long getCommitTime() {
+		return commit != null ? commit.getCommitTime() * 1000L : history.getCommitTime(index);
 	}
 
 	public int getParentCount() {
-		return commit.getParentCount();
+		return commit != null ? commit.getParentCount() : history.getParentCount(index);
 	}
 
 	public RevCommit[] getParents() {
-		return commit.getParents();
+		return commit != null ? commit.getParents() : history.getParents(index);
 	}
 
 	public PersonIdent getAuthorIdent() {
-		return commit.getAuthorIdent();
+		return commit != null ? commit.getAuthorIdent() : history.getAuthorIdent(index);
 	}
 
 	public PersonIdent getCommitterIdent() {
-		return commit.getCommitterIdent();
+		return commit != null ? commit.getCommitterIdent() : history.getCommitterIdent(index);
 	}
 
+	/**
+	 * @return the parsed commit or null for a view of a {@link CommitHistory}
+	 */
 	public RevCommit getCommit() {
 		return commit;
 	}
@@ -94,21 +127,19 @@ public class RepositoryCommit implements Serializable, Comparable<RepositoryComm
 
 	@Override
 	public int hashCode() {
-		return (repository + commit).hashCode();
+		return (repository + getName()).hashCode();
 	}
 
 	@Override
 	public int compareTo(RepositoryCommit o) {
 		// reverse-chronological order
-		if (commit.getCommitTime() > o.commit.getCommitTime()) {
-			return -1;
-		} else if (commit.getCommitTime() < o.commit.getCommitTime()) {
-			return 1;
-		}
-		return 0;
+		return Long.compare(o.getCommitTime(), getCommitTime());
 	}
 
 	public RepositoryCommit clone(String withRef) {
+		if (commit == null) {
+			return new RepositoryCommit(repository, withRef, history, index);
+		}
 		return new RepositoryCommit(repository, withRef, commit);
 	}
 
@@ -120,6 +151,11 @@ public class RepositoryCommit implements Serializable, Comparable<RepositoryComm
 
 	// Serialization: restore the JGit RevCommit on reading
 
+	private void writeObject(ObjectOutputStream output) throws IOException {
+		getName();
+		output.defaultWriteObject();
+	}
+
 	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
 		// Read in fields and any hidden stuff
 		input.defaultReadObject();
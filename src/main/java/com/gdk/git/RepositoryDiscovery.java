@@ -0,0 +1,281 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.eclipse.jgit.lib.RepositoryCache.FileKey;
+import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Discovers the git repositories within a folder hierarchy.
+ * <p>
+ * Folders are listed with a {@link DirectoryStream} and searched concurrently
+ * on a fork-join pool so that the file system latency of large repository
+ * trees overlaps. Exclusions are matched once per folder against its relative
+ * path and excluded folders are pruned before they are descended into.
+ */
+public class RepositoryDiscovery {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryDiscovery.class);
+
+    private static final String DOT_GIT = org.eclipse.jgit.lib.Constants.DOT_GIT;
+
+    private static final Object END = new Object();
+
+    private static volatile ForkJoinPool defaultPool;
+
+    private final Path basePath;
+    private final boolean onlyBare;
+    private final boolean searchSubfolders;
+    private final int depth;
+    private final List<Pattern> exclusions;
+    private final ForkJoinPool pool;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param repositoriesFolder
+     * @param onlyBare           if true, only bare repositories repositories are listed. If
+     *                           false all repositories are included.
+     * @param searchSubfolders   recurse into subfolders to find grouped repositories
+     * @param depth              optional recursion depth, -1 = infinite recursion
+     * @param exclusions         list of regex exclusions for matching to folder names
+     */
+    public RepositoryDiscovery(File repositoriesFolder, boolean onlyBare, boolean searchSubfolders,
+                               int depth, List<String> exclusions) {
+        this(repositoriesFolder, onlyBare, searchSubfolders, depth, exclusions, getDefaultPool());
+    }
+
+    /**
+     * @param repositoriesFolder
+     * @param onlyBare           if true, only bare repositories repositories are listed. If
+     *                           false all repositories are included.
+     * @param searchSubfolders   recurse into subfolders to find grouped repositories
+     * @param depth              optional recursion depth, -1 = infinite recursion
+     * @param exclusions         list of regex exclusions for matching to folder names
+     * @param pool               the fork-join pool which walks the folders
+     */
+    public RepositoryDiscovery(File repositoriesFolder, boolean onlyBare, boolean searchSubfolders,
+                               int depth, List<String> exclusions, ForkJoinPool pool) {
+        this.basePath = repositoriesFolder == null ? null : repositoriesFolder.toPath().toAbsolutePath();
+        this.onlyBare = onlyBare;
+        this.searchSubfolders = searchSubfolders;
+        this.depth = depth;
+        this.exclusions = new ArrayList<Pattern>();
+        if (exclusions != null) {
+            for (String regex : exclusions) {
+                this.exclusions.add(Pattern.compile(regex));
+            }
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the shared discovery pool. Discovery is I/O bound so the pool is
+     * wider than the number of processors.
+     *
+     * @return the shared discovery pool
+     */
+    private static ForkJoinPool getDefaultPool() {
+        if (defaultPool == null) {
+            synchronized (RepositoryDiscovery.class) {
+                if (defaultPool == null) {
+                    int parallelism = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+                    defaultPool = new ForkJoinPool(parallelism, pool -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                        thread.setName("RepositoryDiscovery-" + thread.getPoolIndex());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, null, false);
+                }
+            }
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Returns the sorted list of repository names relative to the
+     * repositories folder.
+     *
+     * @return list of repository names
+     */
+    public List<String> list() {
+        List<String> list;
+        try (Stream<String> stream = stream()) {
+            list = stream.collect(Collectors.toCollection(ArrayList::new));
+        }
+        StringUtils.sortRepositorynames(list);
+        list.remove(".git"); // issue-256
+        return list;
+    }
+
+    /**
+     * Returns the repository names relative to the repositories folder as they
+     * are discovered. The names are unordered. Closing the stream cancels the
+     * remainder of the search.
+     *
+     * @return a stream of repository names
+     */
+    public Stream<String> stream() {
+        if (basePath == null || !Files.isDirectory(basePath)) {
+            return Stream.empty();
+        }
+        final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+        final ForkJoinTask<?> task = pool.submit(() -> {
+            try {
+                scan(basePath, "", depth, queue::add).invoke();
+            } catch (Throwable t) {
+                LOGGER.error(MessageFormat.format("failed to discover repositories in {0}", basePath), t);
+            } finally {
+                queue.add(END);
+            }
+        });
+
+        Spliterator<String> spliterator = new Spliterators.AbstractSpliterator<String>(Long.MAX_VALUE,
+                Spliterator.DISTINCT | Spliterator.NONNULL) {
+
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+                if (done) {
+                    return false;
+                }
+                Object next;
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelled = true;
+                    done = true;
+                    return false;
+                }
+                if (next == END) {
+                    done = true;
+                    return false;
+                }
+                action.accept((String) next);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            cancelled = true;
+            task.cancel(false);
+        });
+    }
+
+    /**
+     * Creates the task which searches the subfolders of the specified folder.
+     * Each subfolder is inspected by its own task.
+     *
+     * @param folder
+     * @param relativePath the path of the folder relative to the base path
+     * @param remaining    remaining recursion depth, -1 = infinite recursion
+     * @param sink
+     * @return a task
+     */
+    private RecursiveAction scan(final Path folder, final String relativePath, final int remaining,
+                                 final Consumer<String> sink) {
+        return new RecursiveAction() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                if (remaining == 0 || cancelled) {
+                    return;
+                }
+                int nextDepth = (remaining == -1) ? -1 : remaining - 1;
+                List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(folder)) {
+                    for (Path child : children) {
+                        String name = child.getFileName().toString();
+                        String path = relativePath.isEmpty() ? name : relativePath + "/" + name;
+                        if (isExcluded(path)) {
+                            // prune the excluded subtree
+                            continue;
+                        }
+                        tasks.add(inspect(child.toFile(), path, nextDepth, sink));
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug(MessageFormat.format("failed to list {0}", folder), e);
+                }
+                invokeAll(tasks);
+            }
+        };
+    }
+
+    /**
+     * Creates the task which determines if the specified folder is a
+     * repository and, if it is not, searches its subfolders.
+     *
+     * @param folder
+     * @param relativePath the path of the folder relative to the base path
+     * @param remaining    remaining recursion depth, -1 = infinite recursion
+     * @param sink
+     * @return a task
+     */
+    private RecursiveAction inspect(final File folder, final String relativePath, final int remaining,
+                                    final Consumer<String> sink) {
+        return new RecursiveAction() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                if (cancelled || !folder.isDirectory()) {
+                    return;
+                }
+                if (FileKey.isGitRepository(folder, FS.DETECTED)) {
+                    // bare repository or the .git folder of a working copy
+                    if (!(onlyBare && DOT_GIT.equals(folder.getName()))) {
+                        sink.accept(relativePath);
+                    }
+                    return;
+                }
+                if (FileKey.isGitRepository(new File(folder, DOT_GIT), FS.DETECTED)) {
+                    // working copy
+                    if (!onlyBare) {
+                        sink.accept(relativePath);
+                    }
+                    return;
+                }
+                if (searchSubfolders && folder.canRead()) {
+                    // look for repositories in subfolders
+                    scan(folder.toPath(), relativePath, remaining, sink).invoke();
+                }
+            }
+        };
+    }
+
+    private boolean isExcluded(String path) {
+        for (Pattern pattern : exclusions) {
+            if (pattern.matcher(path).matches()) {
+                LOGGER.debug(MessageFormat.format("excluding {0} because of rule {1}", path, pattern.pattern()));
+                return true;
+            }
+        }
+        return false;
+    }
+}
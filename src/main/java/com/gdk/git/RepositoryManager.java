@@ -12,16 +12,25 @@ import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.eclipse.jgit.events.ConfigChangedEvent;
+import org.eclipse.jgit.events.ConfigChangedListener;
+import org.eclipse.jgit.events.ListenerHandle;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.events.RefsChangedListener;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.lib.RepositoryCache.FileKey;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.FileUtils;
@@ -45,6 +54,7 @@ import com.gdk.git.RepositoryModel;
 import com.gdk.git.TeamModel;
 import com.gdk.git.UserModel;
 import com.gdk.git.JGitUtils.LastChange;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Repository manager creates, updates, deletes and caches git repositories.  It
@@ -58,26 +68,46 @@ public class RepositoryManager implements IRepositoryManager {
 
     private final ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(5);
 
-    private final ObjectCache<Long> repositorySizeCache = new ObjectCache<Long>();
+    private ThreadPoolExecutor searchExecutor;
 
-    private final ObjectCache<List<Metric>> repositoryMetricsCache = new ObjectCache<List<Metric>>();
+    private final ObjectCache<Long> repositorySizeCache;
+
+    private final ObjectCache<List<Metric>> repositoryMetricsCache;
 
     private final Map<String, RepositoryModel> repositoryListCache = new ConcurrentHashMap<String, RepositoryModel>();
 
+    private final Map<String, RepositoryVersion> repositoryVersions = new ConcurrentHashMap<String, RepositoryVersion>();
+
+    private final Map<String, RepositorySnapshot> repositorySnapshots = new ConcurrentHashMap<String, RepositorySnapshot>();
+
+    private final List<ListenerHandle> repositoryListeners = new ArrayList<ListenerHandle>();
+
+    private final Set<String> commitGraphUpdates = ConcurrentHashMap.newKeySet();
+
     private final AtomicReference<String> repositoryListSettingsChecksum = new AtomicReference<String>("");
 
+    private RepositoryCatalog repositoryCatalog;
+
     private File repositoriesFolder;
 
     private GarbageCollectorService gcExecutor;
 
     private MirrorService mirrorExecutor;
 
+    private RepositoryWatcher repositoryWatcher;
+
+    private CommitCacheWarmup commitCacheWarmup;
+
     private GitStoreSettings settings;
     private final IUserManager userManager;
 
     public RepositoryManager(GitStoreSettings settings, IUserManager userManager) {
         this.settings = settings;
         this.userManager = userManager;
+        this.repositorySizeCache = new ObjectCache<Long>(settings.getRepositorySizeCacheSize());
+        // a date metric is a name, two doubles and an int
+        this.repositoryMetricsCache = new ObjectCache<List<Metric>>(settings.getRepositoryMetricsCacheBudget(),
+                (name, metrics) -> 64 + 64 * metrics.size());
         this.init();
     }
 
@@ -91,7 +121,7 @@ public class RepositoryManager implements IRepositoryManager {
         repositoryListSettingsChecksum.set(getRepositoryListSettingsChecksum());
 
         // build initial repository list
-        if (settings.isCacheRepositoryList()) {
+        if (settings.isCacheRepositoryList() && !restoreRepositoryCatalog()) {
             logger.info("Identifying repositories...");
             getRepositoryList();
         }
@@ -99,12 +129,38 @@ public class RepositoryManager implements IRepositoryManager {
         configureGarbageCollector();
         configureMirrorExecutor();
         configureJGit();
+        configureRepositoryListeners();
+        configureRepositoryCatalog();
+        configureRepositoryWatcher();
         configureCommitCache();
+        configureCommitIndex();
+        configureMergeBaseCache();
+        configureRefCache();
+        configureTreeListingCache();
+        configureLastCommitCache();
+        configureBlobProber();
+        configureSearchExecutor();
         confirmWriteAccess();
     }
 
     public RepositoryManager stop() {
+        if (repositoryWatcher != null) {
+            repositoryWatcher.close();
+        }
+        if (commitCacheWarmup != null) {
+            commitCacheWarmup.close();
+        }
+        for (ListenerHandle listener : repositoryListeners) {
+            listener.remove();
+        }
+        repositoryListeners.clear();
         scheduledExecutor.shutdownNow();
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+        }
+        writeRepositoryCatalog();
+        CommitCache.instance().save();
+        CommitIndex.instance().save();
         gcExecutor.close();
         mirrorExecutor.close();
         closeAll();
@@ -358,7 +414,72 @@ public class RepositoryManager implements IRepositoryManager {
             return null;
         }
         String key = getRepositoryKey(name);
-        return repositoryListCache.remove(key);
+        repositoryVersions.remove(key);
+        repositorySnapshots.remove(key);
+        RepositoryModel model = repositoryListCache.remove(key);
+
+        // update the fork origin repository
+        if (model != null && !StringUtils.isEmpty(model.originRepository)) {
+            RepositoryModel origin = repositoryListCache.get(getRepositoryKey(model.originRepository));
+            if (origin != null) {
+                origin.removeFork(model.name);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Reloads a repository of the repository list cache after it was created
+     * or replaced outside of the repository manager.
+     *
+     * @param repositoryName
+     */
+    private void reloadCachedRepository(String repositoryName) {
+        RepositoryModel previous = removeFromCachedRepositoryList(repositoryName);
+        if (previous != null) {
+            clearRepositoryMetadataCache(previous.name);
+        }
+        RepositoryModel model = loadRepositoryModel(repositoryName);
+        if (model == null) {
+            return;
+        }
+        if (previous != null) {
+            model.forks = previous.forks;
+        } else {
+            // adopt forks which are already cached
+            String key = getRepositoryKey(model.name);
+            for (RepositoryModel fork : repositoryListCache.values()) {
+                if (!StringUtils.isEmpty(fork.originRepository) && key.equals(getRepositoryKey(fork.originRepository))) {
+                    model.addFork(fork.name);
+                }
+            }
+        }
+        addToCachedRepositoryList(model);
+        logger.info(MessageFormat.format("{0} \"{1}\" in repository list cache",
+                previous == null ? "Added" : "Reloaded", model.name));
+    }
+
+    /**
+     * Removes the repository, or all repositories within the group folder, at
+     * the specified path from the repository list cache if they no longer
+     * exist.
+     *
+     * @param path
+     */
+    private void removeCachedRepositories(String path) {
+        String key = getRepositoryKey(path);
+        String prefix = fixRepositoryName(path).toLowerCase() + "/";
+        for (Map.Entry<String, RepositoryModel> entry : repositoryListCache.entrySet()) {
+            if (!entry.getKey().equals(key) && !entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            RepositoryModel model = entry.getValue();
+            if (FileKey.resolve(new File(repositoriesFolder, model.name), FS.DETECTED) == null) {
+                removeFromCachedRepositoryList(model.name);
+                clearRepositoryMetadataCache(model.name);
+                logger.info(MessageFormat.format("Removed \"{0}\" from repository list cache", model.name));
+            }
+        }
     }
 
     /**
@@ -393,9 +514,12 @@ public class RepositoryManager implements IRepositoryManager {
     public void resetRepositoryListCache() {
         logger.info("Repository cache manually reset");
         repositoryListCache.clear();
+        repositoryVersions.clear();
+        repositorySnapshots.clear();
         repositorySizeCache.clear();
         repositoryMetricsCache.clear();
         CommitCache.instance().clear();
+        RefCache.instance().clear();
     }
 
     /**
@@ -427,6 +551,8 @@ public class RepositoryManager implements IRepositoryManager {
         if (!valid && settings.isCacheRepositoryList()) {
             logger.info("Repository list settings have changed. Clearing repository list cache.");
             repositoryListCache.clear();
+            repositoryVersions.clear();
+            repositorySnapshots.clear();
         }
         return valid;
     }
@@ -465,15 +591,7 @@ public class RepositoryManager implements IRepositoryManager {
                 }
 
                 // rebuild fork networks
-                for (RepositoryModel model : repositoryListCache.values()) {
-                    if (!StringUtils.isEmpty(model.originRepository)) {
-                        String originKey = getRepositoryKey(model.originRepository);
-                        if (repositoryListCache.containsKey(originKey)) {
-                            RepositoryModel origin = repositoryListCache.get(originKey);
-                            origin.addFork(model.name);
-                        }
-                    }
-                }
+                rebuildForkNetworks();
 
                 long duration = System.currentTimeMillis() - startTime;
                 logger.info(MessageFormat.format(msg, repositoryListCache.size(), duration));
@@ -489,6 +607,25 @@ public class RepositoryManager implements IRepositoryManager {
         return list;
     }
 
+    /**
+     * Recalculates the forks of all cached repositories from their origin
+     * repositories.
+     */
+    private void rebuildForkNetworks() {
+        Map<String, Set<String>> networks = new HashMap<String, Set<String>>();
+        for (RepositoryModel model : repositoryListCache.values()) {
+            if (!StringUtils.isEmpty(model.originRepository)) {
+                String originKey = getRepositoryKey(model.originRepository);
+                if (repositoryListCache.containsKey(originKey)) {
+                    networks.computeIfAbsent(originKey, k -> new TreeSet<String>()).add(model.name);
+                }
+            }
+        }
+        for (Map.Entry<String, RepositoryModel> entry : repositoryListCache.entrySet()) {
+            entry.getValue().forks = networks.get(entry.getKey());
+        }
+    }
+
     /**
      * Returns the JGit repository for the specified name.
      *
@@ -607,6 +744,37 @@ public class RepositoryManager implements IRepositoryManager {
         return null;
     }
 
+    /**
+     * Searches the history of the default branches of all repositories which
+     * the user can view. The repositories are searched in parallel on a
+     * bounded pool and each repository is searched for at most the search
+     * budget.
+     *
+     * @param user
+     * @param value
+     * @param type AUTHOR, COMMITTER, COMMIT
+     * @param maxCount the number of listed matches
+     * @param listener receives the matches as soon as they are listed, may be null
+     * @return the finished search
+     * @throws InterruptedException
+     */
+    @Override
+    public RepositorySearch searchRepositories(UserModel user, String value, Constants.SearchType type, int maxCount,
+            RepositorySearch.Listener listener) throws InterruptedException {
+        List<String> names = new ArrayList<String>();
+        if (!StringUtils.isEmpty(value) && maxCount > 0) {
+            for (RepositoryModel model : getRepositoryModels(user)) {
+                if (model.hasCommits) {
+                    names.add(model.name);
+                }
+            }
+        }
+        RepositorySearch search = new RepositorySearch(this, searchExecutor, names, value, type,
+                settings.getRepositorySearchBudget());
+        search.run(maxCount, listener);
+        return search;
+    }
+
     /**
      * Returns the repository model for the specified repository. This method
      * does not consider user access permissions.
@@ -624,18 +792,24 @@ public class RepositoryManager implements IRepositoryManager {
                 return null;
             }
             addToCachedRepositoryList(model);
-            return DeepCopier.copy(model);
+            return model.copy();
         }
 
         // cached model
         RepositoryModel model = repositoryListCache.get(repositoryKey);
         if (isCollectingGarbage(model.name)) {
             // Gitblit is busy collecting garbage, use our cached model
-            RepositoryModel rm = DeepCopier.copy(model);
+            RepositoryModel rm = model.copy();
             rm.isCollectingGarbage = true;
             return rm;
         }
 
+        RepositorySnapshot snapshot = repositorySnapshots.get(repositoryKey);
+        if (snapshot != null && !snapshot.isModified()) {
+            // neither the config nor the local branches have changed
+            return model.copy();
+        }
+
         // check for updates
         Repository r = getRepository(model.name);
         if (r == null) {
@@ -645,12 +819,22 @@ public class RepositoryManager implements IRepositoryManager {
             return null;
         }
 
+        // stamp the repository before reading so that concurrent changes are detected later
+        snapshot = RepositorySnapshot.save(r.getDirectory());
+        RepositoryVersion version = RepositoryVersion.of(r.getDirectory());
         FileBasedConfig config = (FileBasedConfig) getRepositoryConfig(r);
         if (config.isOutdated()) {
             // reload model
             logger.debug(MessageFormat.format("Config for \"{0}\" has changed. Reloading model and updating cache.", repositoryName));
-            model = loadRepositoryModel(model.name);
+            Set<String> forks = model.forks;
+            // remove the old entry first, the load stores the new snapshot
             removeFromCachedRepositoryList(model.name);
+            model = loadRepositoryModel(model.name);
+            if (model == null) {
+                r.close();
+                return null;
+            }
+            model.forks = forks;
             addToCachedRepositoryList(model);
         } else {
             // update a few repository parameters
@@ -660,11 +844,13 @@ public class RepositoryManager implements IRepositoryManager {
             }
 
             updateLastChangeFields(r, model);
+            repositoryVersions.put(repositoryKey, version);
+            repositorySnapshots.put(repositoryKey, snapshot);
         }
         r.close();
 
         // return a copy of the cached model
-        return DeepCopier.copy(model);
+        return model.copy();
     }
 
     /**
@@ -764,8 +950,12 @@ public class RepositoryManager implements IRepositoryManager {
         if (r == null) {
             return null;
         }
+        // stamp the repository before reading so that concurrent changes are detected later
+        RepositorySnapshot snapshot = RepositorySnapshot.save(r.getDirectory());
+        RepositoryVersion version = RepositoryVersion.of(r.getDirectory());
         RepositoryModel model = new RepositoryModel();
         model.isBare = r.isBare();
+        model.useReftable = JGitUtils.isReftable(r);
         File basePath = getRepositoriesFolder();
         if (model.isBare) {
             model.name = GitFileUtils.getRelativePath(basePath, r.getDirectory());
@@ -861,6 +1051,11 @@ public class RepositoryManager implements IRepositoryManager {
         model.hasCommits = JGitUtils.hasCommits(r);
         updateLastChangeFields(r, model);
         r.close();
+        if (settings.isCacheRepositoryList()) {
+            String key = getRepositoryKey(model.name);
+            repositoryVersions.put(key, version);
+            repositorySnapshots.put(key, snapshot);
+        }
 
         if (StringUtils.isEmpty(model.originRepository) && model.origin != null && model.origin.startsWith("file://")) {
             // repository was cloned locally... perhaps as a fork
@@ -1096,12 +1291,8 @@ public class RepositoryManager implements IRepositoryManager {
             model.size = null;
             return 0L;
         }
-        if (!repositorySizeCache.hasCurrent(model.name, model.lastChange)) {
-            File gitDir = r.getDirectory();
-            long sz = GitFileUtils.folderSize(gitDir);
-            repositorySizeCache.updateObject(model.name, model.lastChange, sz);
-        }
-        long size = repositorySizeCache.getObject(model.name);
+        long size = repositorySizeCache.get(model.name, model.lastChange.getTime(),
+                previous -> GitFileUtils.folderSize(r.getDirectory()));
         ByteFormat byteFormat = new ByteFormat();
         model.size = byteFormat.format(size);
         return size;
@@ -1194,11 +1385,9 @@ public class RepositoryManager implements IRepositoryManager {
      */
     @Override
     public List<Metric> getRepositoryDefaultMetrics(RepositoryModel model, Repository repository) {
-        if (repositoryMetricsCache.hasCurrent(model.name, model.lastChange)) {
-            return new ArrayList<Metric>(repositoryMetricsCache.getObject(model.name));
-        }
-        List<Metric> metrics = MetricUtils.getDateMetrics(repository, null, true, null, TimeZone.getDefault());
-        repositoryMetricsCache.updateObject(model.name, model.lastChange, metrics);
+        long version = model.lastChange == null ? 0 : model.lastChange.getTime();
+        List<Metric> metrics = repositoryMetricsCache.get(model.name, version,
+                previous -> MetricUtils.getDateMetrics(repository, null, true, null, TimeZone.getDefault()));
         return new ArrayList<Metric>(metrics);
     }
 
@@ -1294,7 +1483,8 @@ public class RepositoryManager implements IRepositoryManager {
             // create repository
             logger.info("create repository " + repository.name);
             String shared = settings.isCreateRepositoriesShared() ? "TRUE" : "FALSE";
-            r = JGitUtils.createRepository(repositoriesFolder, repository.name, shared);
+            repository.useReftable |= settings.isCreateRepositoriesReftable();
+            r = JGitUtils.createRepository(repositoriesFolder, repository.name, shared, repository.useReftable);
         } else {
             // rename repository
             isRename = !repositoryName.equalsIgnoreCase(repository.name);
@@ -1365,6 +1555,11 @@ public class RepositoryManager implements IRepositoryManager {
             // load repository
             logger.info("edit repository " + repository.name);
             r = getRepository(repository.name);
+            if (r != null && JGitUtils.isReftable(r) != repository.useReftable) {
+                r.close();
+                convertRefStorage(repository.name, repository.useReftable);
+                r = getRepository(repository.name);
+            }
         }
 
         // update settings
@@ -1402,6 +1597,85 @@ public class RepositoryManager implements IRepositoryManager {
         addToCachedRepositoryList(repository);
     }
 
+    /**
+     * Converts the refs of a repository to the reftable format or back to
+     * loose and packed refs. The cached repository is closed and the refs are
+     * converted by a new repository instance, requests which still use the
+     * cached repository may fail.
+     *
+     * @param repositoryName
+     * @param reftable if true, the refs are converted to a reftable
+     * @return true if the refs were converted, false if the repository
+     *         already uses the format
+     * @throws GitException
+     */
+    @Override
+    public boolean convertRefStorage(String repositoryName, boolean reftable) throws GitException {
+        if (isCollectingGarbage(repositoryName)) {
+            throw new GitException(MessageFormat.format("sorry, Gitblit is busy collecting garbage in {0}", repositoryName));
+        }
+        File dir = FileKey.resolve(new File(repositoriesFolder, repositoryName), FS.DETECTED);
+        if (dir == null) {
+            throw new GitException(MessageFormat.format("Repository ''{0}'' does not exist", repositoryName));
+        }
+        close(repositoryName);
+        long start = System.nanoTime();
+        try (Repository r = new FileRepositoryBuilder().setGitDir(dir).setFS(FS.DETECTED).build()) {
+            if (!JGitUtils.convertRefStorage(r, reftable)) {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new GitException(e);
+        }
+        RefCache.instance().clear(dir);
+        logger.info(MessageFormat.format("Converted the refs of {0} to {1} in {2} msecs", repositoryName,
+                reftable ? "a reftable" : "loose and packed refs",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return true;
+    }
+
+    /**
+     * Converts the refs of all repositories with at least the specified
+     * number of refs to the reftable format. Repositories which fail to
+     * convert are logged and skipped.
+     *
+     * @param minimumRefs
+     * @return the names of the converted repositories
+     */
+    @Override
+    public List<String> convertToReftable(int minimumRefs) {
+        List<String> converted = new ArrayList<String>();
+        for (String repositoryName : getRepositoryList()) {
+            Repository r = getRepository(repositoryName, false);
+            if (r == null) {
+                continue;
+            }
+            int refs;
+            try {
+                if (JGitUtils.isReftable(r)) {
+                    continue;
+                }
+                refs = r.getRefDatabase().getRefs().size();
+            } catch (IOException e) {
+                logger.error(MessageFormat.format("Failed to count the refs of {0}", repositoryName), e);
+                continue;
+            } finally {
+                r.close();
+            }
+            if (refs < minimumRefs) {
+                continue;
+            }
+            try {
+                if (convertRefStorage(repositoryName, true)) {
+                    converted.add(repositoryName);
+                }
+            } catch (GitException e) {
+                logger.error(MessageFormat.format("Failed to convert the refs of {0} to a reftable", repositoryName), e);
+            }
+        }
+        return converted;
+    }
+
     /**
      * Updates the Gitblit configuration for the specified repository.
      *
@@ -1567,6 +1841,10 @@ public class RepositoryManager implements IRepositoryManager {
             }
 
             File folder = new File(repositoriesFolder, repositoryName);
+            CommitIndex.instance().clear(folder);
+            MergeBaseCache.instance().clear(folder);
+            LastCommitCache.instance().clear(folder);
+            RefCache.instance().clear(folder);
             if (folder.exists() && folder.isDirectory()) {
                 FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
                 if (userManager.deleteRepositoryRole(repositoryName)) {
@@ -1631,6 +1909,7 @@ public class RepositoryManager implements IRepositoryManager {
         cfg.setDeltaBaseCacheLimit(settings.getFilesize(Keys.git.deltaBaseCacheLimit, cfg.getDeltaBaseCacheLimit()));
         cfg.setPackedGitOpenFiles(settings.getPackedGitOpenFiles());
         cfg.setPackedGitMMAP(settings.isPackedGitMmap());
+        BlobContent.setHeapLimit(settings.getBlobHeapLimit());
 
         try {
             cfg.install();
@@ -1644,6 +1923,320 @@ public class RepositoryManager implements IRepositoryManager {
         }
     }
 
+    /**
+     * Calculate the checksum which identifies the repository catalog of the
+     * current repositories folder and repository list settings.
+     *
+     * @return a checksum
+     */
+    private String getRepositoryCatalogChecksum() {
+        return StringUtils.getSHA1(getRepositoryListSettingsChecksum() + '\n'
+                + repositoriesFolder.getAbsolutePath() + '\n'
+                + settings.isShowRepositorySizes());
+    }
+
+    /**
+     * Populates the repository list cache from the repository catalog snapshot
+     * and schedules the validation of the restored models.
+     *
+     * @return true if the repository list cache was restored
+     */
+    private boolean restoreRepositoryCatalog() {
+        if (settings.getCacheFolder() == null) {
+            return false;
+        }
+        repositoryCatalog = new RepositoryCatalog(new File(settings.getCacheFolder(), "repositories.json"));
+
+        long startTime = System.currentTimeMillis();
+        RepositoryCatalog.Snapshot snapshot = repositoryCatalog.read(getRepositoryCatalogChecksum());
+        if (snapshot == null || snapshot.entries.isEmpty()) {
+            return false;
+        }
+
+        final Set<String> restored = new HashSet<String>();
+        for (RepositoryCatalog.Entry entry : snapshot.entries) {
+            RepositoryModel model = entry.model;
+            if (model == null || StringUtils.isEmpty(model.name) || entry.version == null) {
+                continue;
+            }
+            String key = getRepositoryKey(model.name);
+            repositoryListCache.put(key, model);
+            repositoryVersions.put(key, entry.version);
+            if (entry.size >= 0 && model.lastChange != null) {
+                repositorySizeCache.put(model.name, model.lastChange.getTime(), entry.size);
+            }
+            restored.add(key);
+        }
+        rebuildForkNetworks();
+        logger.info(MessageFormat.format("{0} repositories restored from catalog {1} in {2} msecs",
+                restored.size(), repositoryCatalog.getFile(), System.currentTimeMillis() - startTime));
+
+        scheduledExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reconcileRepositoryList(restored);
+                } catch (Throwable t) {
+                    logger.error("Failed to validate the repository catalog", t);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Compares the repository list cache to the repositories folder. New
+     * repositories are loaded, missing repositories are removed and
+     * repositories whose config or refs have changed since their model was
+     * loaded are reloaded.
+     *
+     * @param known the cache keys which are removed if their repository is missing
+     */
+    private void reconcileRepositoryList(Set<String> known) {
+        long startTime = System.currentTimeMillis();
+        List<String> repositories = JGitUtils.getRepositoryList(repositoriesFolder,
+                settings.isOnlyAccessBareRepositories(),
+                settings.isSearchRepositoriesSubfolders(),
+                settings.getSearchRecursionDepth(),
+                settings.getSearchExclusions());
+
+        int added = 0;
+        int reloaded = 0;
+        int removed = 0;
+        Set<String> found = new HashSet<String>();
+        for (String repository : repositories) {
+            String key = getRepositoryKey(repository);
+            found.add(key);
+            RepositoryModel cached = repositoryListCache.get(key);
+            if (cached == null) {
+                RepositoryModel model = loadRepositoryModel(repository);
+                if (model != null) {
+                    addToCachedRepositoryList(model);
+                    added++;
+                }
+                continue;
+            }
+
+            File gitDir = FileKey.resolve(new File(repositoriesFolder, repository), FS.DETECTED);
+            if (gitDir == null || RepositoryVersion.of(gitDir).equals(repositoryVersions.get(key))) {
+                continue;
+            }
+            RepositoryModel model = loadRepositoryModel(cached.name);
+            if (model != null) {
+                model.forks = cached.forks;
+                repositoryListCache.put(key, model);
+                reloaded++;
+            }
+        }
+
+        for (String key : known) {
+            if (!found.contains(key)) {
+                repositoryVersions.remove(key);
+                repositorySnapshots.remove(key);
+                RepositoryModel model = repositoryListCache.remove(key);
+                if (model != null) {
+                    clearRepositoryMetadataCache(model.name);
+                    CommitIndex.instance().clear(new File(repositoriesFolder, model.name));
+                    MergeBaseCache.instance().clear(new File(repositoriesFolder, model.name));
+                    LastCommitCache.instance().clear(new File(repositoriesFolder, model.name));
+                    RefCache.instance().clear(new File(repositoriesFolder, model.name));
+                    removed++;
+                }
+            }
+        }
+        rebuildForkNetworks();
+
+        logger.info(MessageFormat.format("repository list reconciled in {0} msecs: {1} added, {2} reloaded, {3} removed",
+                System.currentTimeMillis() - startTime, added, reloaded, removed));
+    }
+
+    /**
+     * Schedules the periodic snapshots of the repository catalog.
+     */
+    protected void configureRepositoryCatalog() {
+        if (repositoryCatalog == null) {
+            return;
+        }
+        int mins = settings.getCatalogSnapshotInterval();
+        if (mins > 0) {
+            scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    writeRepositoryCatalog();
+                }
+            }, mins, mins, TimeUnit.MINUTES);
+        }
+        logger.info(MessageFormat.format("Repository catalog {0} is snapshotted every {1} minutes and on shutdown",
+                repositoryCatalog.getFile(), mins));
+    }
+
+    /**
+     * Writes a snapshot of the repository list cache to the repository
+     * catalog. Repositories without a recorded version are omitted and will be
+     * discovered by the validation of the next restore.
+     */
+    protected synchronized void writeRepositoryCatalog() {
+        if (repositoryCatalog == null || repositoryListCache.isEmpty()) {
+            return;
+        }
+        List<RepositoryCatalog.Entry> entries = new ArrayList<RepositoryCatalog.Entry>();
+        for (Map.Entry<String, RepositoryModel> entry : repositoryListCache.entrySet()) {
+            RepositoryVersion version = repositoryVersions.get(entry.getKey());
+            if (version == null) {
+                continue;
+            }
+            RepositoryModel model = entry.getValue();
+            long size = -1;
+            if (model.lastChange != null) {
+                Long cached = repositorySizeCache.getIfCurrent(model.name, model.lastChange.getTime());
+                if (cached != null) {
+                    size = cached;
+                }
+            }
+            entries.add(new RepositoryCatalog.Entry(model, version, size));
+        }
+        repositoryCatalog.write(getRepositoryCatalogChecksum(), entries);
+    }
+
+    /**
+     * Invalidates the snapshot of a cached repository model when JGit reports
+     * ref or config changes, e.g. after a push handled by this process.
+     */
+    protected void configureRepositoryListeners() {
+        repositoryListeners.add(Repository.getGlobalListenerList().addRefsChangedListener(new RefsChangedListener() {
+            @Override
+            public void onRefsChanged(RefsChangedEvent event) {
+                invalidateRepositorySnapshot(event.getRepository());
+                scheduleCommitGraphUpdate(event.getRepository());
+                CommitIndex.instance().scheduleUpdate(event.getRepository());
+            }
+        }));
+        repositoryListeners.add(Repository.getGlobalListenerList().addConfigChangedListener(new ConfigChangedListener() {
+            @Override
+            public void onConfigChanged(ConfigChangedEvent event) {
+                invalidateRepositorySnapshot(event.getRepository());
+            }
+        }));
+    }
+
+    /**
+     * Forces the next request for the repository model to check the repository.
+     *
+     * @param repository
+     */
+    private void invalidateRepositorySnapshot(Repository repository) {
+        if (repositorySnapshots.isEmpty()) {
+            return;
+        }
+        String name = getRepositoryName(repository);
+        if (!StringUtils.isEmpty(name)) {
+            repositorySnapshots.remove(getRepositoryKey(name));
+        }
+    }
+
+    /**
+     * Refreshes the commit-graph of a repository some time after a push so
+     * that the pushed commits are read from the commit-graph. Pushes within
+     * the delay are covered by a single refresh.
+     *
+     * @param repository
+     */
+    private void scheduleCommitGraphUpdate(Repository repository) {
+        final int delay = settings.getCommitGraphDelay();
+        if (!settings.isWriteCommitGraph() || delay <= 0 || scheduledExecutor.isShutdown()) {
+            return;
+        }
+        final String name = getRepositoryName(repository);
+        if (StringUtils.isEmpty(name) || !commitGraphUpdates.add(getRepositoryKey(name))) {
+            return;
+        }
+        try {
+            scheduledExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    commitGraphUpdates.remove(getRepositoryKey(name));
+                    updateCommitGraph(name);
+                }
+            }, delay, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            commitGraphUpdates.remove(getRepositoryKey(name));
+        }
+    }
+
+    private void updateCommitGraph(String repositoryName) {
+        // null while garbage is collected, gc refreshes the commit-graph
+        Repository repository = getRepository(repositoryName);
+        if (repository == null) {
+            return;
+        }
+        try {
+            boolean changedPaths = settings.isWriteChangedPathFilters();
+            if (CommitGraphs.isStale(repository, changedPaths)) {
+                long start = System.nanoTime();
+                CommitGraphs.write(repository, changedPaths);
+                logger.debug(MessageFormat.format("refreshed commit-graph of {0} in {1} msecs", repositoryName,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            }
+        } catch (Exception e) {
+            logger.error(MessageFormat.format("Failed to write the commit-graph of {0}", repositoryName), e);
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * Returns the name of an open repository relative to the repositories
+     * folder.
+     *
+     * @param repository
+     * @return the repository name or null if the repository is not served
+     */
+    private String getRepositoryName(Repository repository) {
+        if (repository == null || repository.getDirectory() == null) {
+            return null;
+        }
+        File folder = repository.isBare() ? repository.getDirectory() : repository.getDirectory().getParentFile();
+        return GitFileUtils.getRelativePath(repositoriesFolder, folder);
+    }
+
+    protected void configureRepositoryWatcher() {
+        repositoryWatcher = new RepositoryWatcher(settings, scheduledExecutor, new RepositoryWatcher.Listener() {
+
+            @Override
+            public void repositoryChanged(String repository) {
+                reloadCachedRepository(repository);
+            }
+
+            @Override
+            public void pathDeleted(String path) {
+                removeCachedRepositories(path);
+            }
+
+            @Override
+            public void rescan() {
+                reconcileRepositoryList(new HashSet<String>(repositoryListCache.keySet()));
+            }
+        });
+        if (repositoryWatcher.isReady()) {
+            Thread watcher = new Thread(repositoryWatcher);
+            watcher.setName("RepositoryWatcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } else {
+            logger.info("Repository watcher is disabled.");
+        }
+    }
+
+    /**
+     * Returns the commit cache warm-up which reports the warm-up progress.
+     *
+     * @return the warm-up or null if the commit cache is disabled
+     */
+    public CommitCacheWarmup getCommitCacheWarmup() {
+        return commitCacheWarmup;
+    }
+
     protected void configureCommitCache() {
         final int daysToCache = settings.getActivityCacheDays();
         if (daysToCache <= 0) {
@@ -1652,42 +2245,78 @@ public class RepositoryManager implements IRepositoryManager {
         }
 
         logger.info(MessageFormat.format("Preparing {0} day commit cache...", daysToCache));
+        CommitCache.instance().setCacheBudget(settings.getCommitCacheBudget());
         CommitCache.instance().setCacheDays(daysToCache);
-        Thread loader = new Thread() {
-            @Override
-            public void run() {
-                long start = System.nanoTime();
-                long repoCount = 0;
-                long commitCount = 0;
-                Date cutoff = CommitCache.instance().getCutoffDate();
-                for (String repositoryName : getRepositoryList()) {
-                    RepositoryModel model = getRepositoryModel(repositoryName);
-                    if (model != null && model.hasCommits && model.lastChange.after(cutoff)) {
-                        repoCount++;
-                        Repository repository = getRepository(repositoryName);
-                        for (RefModel ref : JGitUtils.getLocalBranches(repository, true, -1)) {
-                            if (!ref.getDate().after(cutoff)) {
-                                // branch not recently updated
-                                continue;
-                            }
-                            List<?> commits = CommitCache.instance().getCommits(repositoryName, repository, ref.getName());
-                            if (commits.size() > 0) {
-                                logger.info(MessageFormat.format("  cached {0} commits for {1}:{2}", commits.size(), repositoryName, ref.getName()));
-                                commitCount += commits.size();
-                            }
-                        }
-                        repository.close();
+        if (settings.getCacheFolder() != null) {
+            // restored branches are only updated with the commits since they were saved
+            CommitCache.instance().setCacheFolder(new File(settings.getCacheFolder(), "commits"));
+            CommitCache.instance().restore();
+            int mins = settings.getCatalogSnapshotInterval();
+            if (mins > 0) {
+                scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        CommitCache.instance().save();
                     }
-                }
-                logger.info(MessageFormat.format("built {0} day commit cache of {1} commits across {2} repositories in {3} msecs",
-                        daysToCache, commitCount, repoCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                }, mins, mins, TimeUnit.MINUTES);
             }
-        };
+        }
+        commitCacheWarmup = new CommitCacheWarmup(settings, this, CommitCache.instance());
+        Thread loader = new Thread(commitCacheWarmup);
         loader.setName("CommitCacheLoader");
         loader.setDaemon(true);
         loader.start();
     }
 
+    protected void configureCommitIndex() {
+        if (!settings.isIndexCommits()) {
+            logger.info("Commit index is disabled");
+            return;
+        }
+        CommitIndex.instance().setExecutor(scheduledExecutor, settings.getCommitIndexDelay());
+        CommitIndex.instance().setCacheSize(settings.getCommitIndexSize());
+        if (settings.getCacheFolder() != null) {
+            CommitIndex.instance().setIndexFolder(new File(settings.getCacheFolder(), "index"));
+            int mins = settings.getCatalogSnapshotInterval();
+            if (mins > 0) {
+                scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        CommitIndex.instance().save();
+                    }
+                }, mins, mins, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    protected void configureMergeBaseCache() {
+        MergeBaseCache.instance().setCacheSize(settings.getMergeBaseCacheSize());
+    }
+
+    protected void configureRefCache() {
+        RefCache.instance().setCacheSize(settings.getRefCacheSize());
+    }
+
+    protected void configureTreeListingCache() {
+        TreeListingCache.instance().setCacheSize(settings.getTreeListingCacheSize());
+    }
+
+    protected void configureLastCommitCache() {
+        LastCommitCache.instance().setCacheSize(settings.getLastCommitCacheSize());
+    }
+
+    protected void configureBlobProber() {
+        BlobProber.instance().setCacheSize(settings.getBlobProbeCacheSize());
+    }
+
+    protected void configureSearchExecutor() {
+        int threads = Math.max(1, settings.getRepositorySearchThreads());
+        searchExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("RepositorySearch-%d").setDaemon(true).build());
+        searchExecutor.allowCoreThreadTimeOut(true);
+    }
+
     protected void confirmWriteAccess() {
         try {
             if (!getRepositoriesFolder().exists()) {
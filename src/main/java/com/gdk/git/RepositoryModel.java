@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -71,6 +72,7 @@ public class RepositoryModel implements Serializable, Comparable<RepositoryModel
 	public boolean requireApproval;
 	public String mergeTo;
 	public MergeType mergeType;
+	public boolean useReftable;
 
 	public transient boolean isCollectingGarbage;
 	public Date lastGC;
@@ -190,6 +192,76 @@ public class RepositoryModel implements Serializable, Comparable<RepositoryModel
 		return !StringUtils.isEmpty(sparkleshareId);
 	}
 
+	/**
+	 * Returns an independent copy of this model. Collections and dates are
+	 * copied, all other fields are immutable and are shared. Like the
+	 * serialization round-trip it replaces, at a much lower cost, transient
+	 * runtime state is not copied.
+	 *
+	 * @return a copy of this model
+	 */
+	public RepositoryModel copy() {
+		RepositoryModel copy = new RepositoryModel();
+		copy.name = name;
+		copy.description = description;
+		copy.owners = copy(owners);
+		copy.lastChange = copy(lastChange);
+		copy.lastChangeAuthor = lastChangeAuthor;
+		copy.hasCommits = hasCommits;
+		copy.showRemoteBranches = showRemoteBranches;
+		copy.useIncrementalPushTags = useIncrementalPushTags;
+		copy.incrementalPushTagPrefix = incrementalPushTagPrefix;
+		copy.accessRestriction = accessRestriction;
+		copy.authorizationControl = authorizationControl;
+		copy.allowAuthenticated = allowAuthenticated;
+		copy.isFrozen = isFrozen;
+		copy.federationStrategy = federationStrategy;
+		copy.federationSets = copy(federationSets);
+		copy.isFederated = isFederated;
+		copy.skipSizeCalculation = skipSizeCalculation;
+		copy.skipSummaryMetrics = skipSummaryMetrics;
+		copy.frequency = frequency;
+		copy.isBare = isBare;
+		copy.isMirror = isMirror;
+		copy.origin = origin;
+		copy.HEAD = HEAD;
+		copy.availableRefs = copy(availableRefs);
+		copy.indexedBranches = copy(indexedBranches);
+		copy.size = size;
+		copy.preReceiveScripts = copy(preReceiveScripts);
+		copy.postReceiveScripts = copy(postReceiveScripts);
+		copy.mailingLists = copy(mailingLists);
+		copy.customFields = customFields == null ? null : new LinkedHashMap<String, String>(customFields);
+		copy.projectPath = projectPath;
+		copy.displayName = displayName;
+		copy.allowForks = allowForks;
+		copy.forks = forks == null ? null : new TreeSet<String>(forks);
+		copy.originRepository = originRepository;
+		copy.verifyCommitter = verifyCommitter;
+		copy.gcThreshold = gcThreshold;
+		copy.gcPeriod = gcPeriod;
+		copy.maxActivityCommits = maxActivityCommits;
+		copy.metricAuthorExclusions = copy(metricAuthorExclusions);
+		copy.commitMessageRenderer = commitMessageRenderer;
+		copy.acceptNewPatchsets = acceptNewPatchsets;
+		copy.acceptNewTickets = acceptNewTickets;
+		copy.requireApproval = requireApproval;
+		copy.mergeTo = mergeTo;
+		copy.mergeType = mergeType;
+		copy.useReftable = useReftable;
+		copy.lastGC = copy(lastGC);
+		copy.sparkleshareId = sparkleshareId;
+		return copy;
+	}
+
+	private static List<String> copy(List<String> list) {
+		return list == null ? null : new ArrayList<String>(list);
+	}
+
+	private static Date copy(Date date) {
+		return date == null ? null : new Date(date.getTime());
+	}
+
 	public RepositoryModel cloneAs(String cloneName) {
 		RepositoryModel clone = new RepositoryModel();
 		clone.originRepository = name;
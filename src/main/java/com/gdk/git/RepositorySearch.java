@@ -0,0 +1,293 @@
+package com.gdk.git;
+
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.AndRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gdk.git.Constants.SearchType;
+
+/**
+ * Searches the history of the default branches of several repositories in
+ * parallel and merges the matches by commit date, newest first.
+ * <p>
+ * Every repository is searched by a task on the executor which hands its
+ * matches, newest first, to the merge. The merge keeps the repositories with
+ * pending matches in a heap ordered by the date of their next match and
+ * passes a match to the listener as soon as every other repository has a
+ * pending match or has finished, so the first matches are listed before the
+ * slower repositories are searched completely.
+ * <p>
+ * The search of a repository stops after its time budget, the merge then
+ * lists the matches it found so far and the repository is reported by
+ * {@link #getIncompleteRepositories()}. Branches of the {@link CommitIndex} are
+ * searched in the index, but only repositories which are already indexed, a
+ * search never starts to build the index of a repository.
+ */
+public class RepositorySearch {
+
+	private final Logger logger = LoggerFactory.getLogger(RepositorySearch.class);
+
+	/**
+	 * Receives the matches in the order of the merge.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called by the thread of {@link RepositorySearch#run(int, Listener)}
+		 * for each listed match.
+		 *
+		 * @param commit
+		 */
+		void onCommit(RepositoryCommit commit);
+	}
+
+	private final IRepositoryManager repositoryManager;
+
+	private final Executor executor;
+
+	private final List<String> repositories;
+
+	private final String value;
+
+	private final SearchType type;
+
+	private final long budget;
+
+	private final Object lock = new Object();
+
+	private final PriorityQueue<Source> heap = new PriorityQueue<Source>(new Comparator<Source>() {
+		@Override
+		public int compare(Source o1, Source o2) {
+			int c = o1.matches.peek().compareTo(o2.matches.peek());
+			return c != 0 ? c : o1.repository.compareTo(o2.repository);
+		}
+	});
+
+	private final List<String> incomplete = Collections.synchronizedList(new ArrayList<String>());
+
+	private final List<RepositoryCommit> results = new ArrayList<RepositoryCommit>();
+
+	/**
+	 * The number of repositories without pending matches which may still
+	 * find a match.
+	 */
+	private int waiting;
+
+	private volatile boolean cancelled;
+
+	/**
+	 * @param repositoryManager
+	 * @param executor
+	 * @param repositories the names of the repositories
+	 * @param value
+	 * @param type AUTHOR, COMMITTER, COMMIT
+	 * @param budget the milliseconds each repository may be searched, 0 = unlimited
+	 */
+	public RepositorySearch(IRepositoryManager repositoryManager, Executor executor, List<String> repositories,
+			String value, SearchType type, long budget) {
+		this.repositoryManager = repositoryManager;
+		this.executor = executor;
+		this.repositories = repositories;
+		this.value = value;
+		this.type = type;
+		this.budget = budget;
+	}
+
+	/**
+	 * Searches the repositories until the newest matches are listed.
+	 *
+	 * @param maxCount the number of listed matches
+	 * @param listener receives the matches while the search runs, may be null
+	 * @return the listed matches
+	 * @throws InterruptedException
+	 */
+	public List<RepositoryCommit> run(int maxCount, Listener listener) throws InterruptedException {
+		long start = System.nanoTime();
+		List<Source> sources = new ArrayList<Source>();
+		synchronized (lock) {
+			waiting = repositories.size();
+		}
+		try {
+			for (String repository : repositories) {
+				final Source source = new Source(repository);
+				sources.add(source);
+				try {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							search(source, maxCount);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					// shutting down
+					source.finish();
+				}
+			}
+			while (results.size() < maxCount) {
+				RepositoryCommit commit;
+				synchronized (lock) {
+					while (waiting > 0) {
+						lock.wait();
+					}
+					Source source = heap.poll();
+					if (source == null) {
+						// all repositories finished
+						break;
+					}
+					commit = source.matches.poll();
+					if (!source.matches.isEmpty()) {
+						heap.add(source);
+					} else if (!source.finished) {
+						waiting++;
+					}
+				}
+				results.add(commit);
+				if (listener != null) {
+					listener.onCommit(commit);
+				}
+			}
+		} finally {
+			cancelled = true;
+		}
+		logger.debug(MessageFormat.format("searched {0} repositories for {1} in {2} msecs, {3} incomplete",
+				repositories.size(), value, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+				incomplete.size()));
+		return results;
+	}
+
+	/**
+	 * @return the matches listed by {@link #run(int, Listener)}
+	 */
+	public List<RepositoryCommit> getResults() {
+		return results;
+	}
+
+	/**
+	 * @return the repositories whose search exceeded the time budget
+	 */
+	public List<String> getIncompleteRepositories() {
+		return incomplete;
+	}
+
+	private void search(Source source, int maxCount) {
+		if (cancelled) {
+			source.finish();
+			return;
+		}
+		Repository repository = repositoryManager.getRepository(source.repository);
+		if (repository == null) {
+			source.finish();
+			return;
+		}
+		try {
+			String branch = JGitUtils.getHEADRef(repository);
+			// only existing indexes, a search of all repositories does not build them
+			List<RevCommit> indexed = CommitIndex.instance().search(repository, null, value, type, 0, maxCount, false);
+			if (indexed != null) {
+				for (RevCommit commit : indexed) {
+					source.add(new RepositoryCommit(source.repository, branch, commit));
+				}
+				return;
+			}
+			ObjectId head = JGitUtils.getDefaultBranch(repository);
+			if (head == null) {
+				return;
+			}
+			final long deadline = budget > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget) : Long.MAX_VALUE;
+			try (RevWalk rw = new RevWalk(repository)) {
+				rw.setRevFilter(AndRevFilter.create(new RevFilter() {
+					@Override
+					public boolean include(RevWalk walker, RevCommit commit) {
+						if (cancelled) {
+							throw StopWalkException.INSTANCE;
+						}
+						if (System.nanoTime() > deadline) {
+							incomplete.add(source.repository);
+							throw StopWalkException.INSTANCE;
+						}
+						return true;
+					}
+
+					@Override
+					public RevFilter clone() {
+						return this;
+					}
+
+					@Override
+					public boolean requiresCommitBody() {
+						return false;
+					}
+				}, new RawSearchFilter(type, value)));
+				rw.markStart(rw.parseCommit(head));
+				int count = 0;
+				RevCommit commit;
+				while (count < maxCount && (commit = rw.next()) != null) {
+					source.add(new RepositoryCommit(source.repository, branch, commit));
+					count++;
+				}
+			}
+		} catch (Exception e) {
+			logger.error(MessageFormat.format("Failed to search {0} for {1}", source.repository, value), e);
+		} finally {
+			repository.close();
+			source.finish();
+		}
+	}
+
+	/**
+	 * The pending matches of a repository.
+	 */
+	private class Source {
+
+		final String repository;
+
+		final ArrayDeque<RepositoryCommit> matches = new ArrayDeque<RepositoryCommit>();
+
+		boolean finished;
+
+		Source(String repository) {
+			this.repository = repository;
+		}
+
+		void add(RepositoryCommit commit) {
+			synchronized (lock) {
+				matches.add(commit);
+				if (matches.size() == 1) {
+					waiting--;
+					heap.add(this);
+					lock.notifyAll();
+				}
+			}
+		}
+
+		void finish() {
+			synchronized (lock) {
+				if (finished) {
+					return;
+				}
+				finished = true;
+				if (matches.isEmpty()) {
+					waiting--;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+}
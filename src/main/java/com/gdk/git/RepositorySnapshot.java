@@ -0,0 +1,106 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.internal.storage.file.FileSnapshot;
+
+/**
+ * RepositorySnapshot records the {@link FileSnapshot}s of the files which
+ * determine a cached repository model: the repository config and the local
+ * branches of the ref database (HEAD, packed-refs, the reftable stack and the
+ * refs/heads folder hierarchy).
+ * <p>
+ * Checking a snapshot only stats these files, it does not open the
+ * repository. A loose branch is updated by renaming a lock file, which
+ * modifies the folder containing the branch, and a new branch namespace
+ * modifies its parent folder, so the folders recorded when the snapshot was
+ * taken are sufficient to notice every branch update. Racily clean files are
+ * reported as modified.
+ */
+public class RepositorySnapshot {
+
+    private final File config;
+
+    private final FileSnapshot configSnapshot;
+
+    private final File[] refs;
+
+    private final FileSnapshot[] refsSnapshots;
+
+    private RepositorySnapshot(File config, FileSnapshot configSnapshot, File[] refs, FileSnapshot[] refsSnapshots) {
+        this.config = config;
+        this.configSnapshot = configSnapshot;
+        this.refs = refs;
+        this.refsSnapshots = refsSnapshots;
+    }
+
+    /**
+     * Records a snapshot of the repository in the specified git folder. The
+     * snapshot must be taken before the repository is read.
+     *
+     * @param gitDir
+     * @return a snapshot
+     */
+    public static RepositorySnapshot save(File gitDir) {
+        File config = new File(gitDir, "config");
+        List<File> refs = new ArrayList<File>();
+        refs.add(new File(gitDir, org.eclipse.jgit.lib.Constants.HEAD));
+        refs.add(new File(gitDir, org.eclipse.jgit.lib.Constants.PACKED_REFS));
+        refs.add(new File(new File(gitDir, "reftable"), "tables.list"));
+        addFolders(new File(gitDir, org.eclipse.jgit.lib.Constants.R_HEADS).toPath(), refs);
+
+        FileSnapshot[] snapshots = new FileSnapshot[refs.size()];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = FileSnapshot.save(refs.get(i));
+        }
+        return new RepositorySnapshot(config, FileSnapshot.save(config), refs.toArray(new File[0]), snapshots);
+    }
+
+    private static void addFolders(Path folder, List<File> folders) {
+        // a missing folder is recorded as well so that its creation is noticed
+        folders.add(folder.toFile());
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(folder, Files::isDirectory)) {
+            for (Path child : children) {
+                addFolders(child, folders);
+            }
+        } catch (IOException e) {
+            // subfolders which can not be listed are not recorded
+        }
+    }
+
+    /**
+     * @return true if the repository config may have been modified
+     */
+    public boolean isConfigModified() {
+        return configSnapshot.isModified(config);
+    }
+
+    /**
+     * @return true if the local branches or HEAD may have been modified
+     */
+    public boolean isRefsModified() {
+        for (int i = 0; i < refs.length; i++) {
+            if (refsSnapshots[i].isModified(refs[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the repository config or the local branches may have
+     * been modified
+     */
+    public boolean isModified() {
+        return isConfigModified() || isRefsModified();
+    }
+}
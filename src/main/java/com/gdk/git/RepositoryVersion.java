@@ -0,0 +1,154 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RepositoryVersion is a cheap fingerprint of the on-disk state of a
+ * repository which is computed from file system metadata only. It has a
+ * config component (the repository config file) and a ref database component
+ * (HEAD, packed-refs, the loose ref folders and the reftable stack).
+ * <p>
+ * Loose refs are replaced by renaming a lock file so every ref update changes
+ * the modification time of the folder which contains the ref. Ref contents
+ * are never read.
+ */
+public class RepositoryVersion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long config;
+
+    private final long refs;
+
+    public RepositoryVersion(long config, long refs) {
+        this.config = config;
+        this.refs = refs;
+    }
+
+    /**
+     * Computes the version of the repository in the specified git folder.
+     *
+     * @param gitDir
+     * @return the repository version
+     */
+    public static RepositoryVersion of(File gitDir) {
+        Path dir = gitDir.toPath();
+        long config = stat(dir.resolve("config"));
+
+        long refs = stat(dir.resolve(org.eclipse.jgit.lib.Constants.HEAD));
+        refs = mix(refs, stat(dir.resolve(org.eclipse.jgit.lib.Constants.PACKED_REFS)));
+        refs = mix(refs, stat(dir.resolve("reftable").resolve("tables.list")));
+        refs = mix(refs, folders(dir.resolve("refs")));
+        return new RepositoryVersion(config, refs);
+    }
+
+    /**
+     * @return the fingerprint of the repository config
+     */
+    public long getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the fingerprint of the ref database
+     */
+    public long getRefs() {
+        return refs;
+    }
+
+    /**
+     * Returns true if the specified version has the same config fingerprint.
+     *
+     * @param version
+     * @return true if the config is unchanged
+     */
+    public boolean isSameConfig(RepositoryVersion version) {
+        return version != null && config == version.config;
+    }
+
+    /**
+     * Returns true if the specified version has the same ref database
+     * fingerprint.
+     *
+     * @param version
+     * @return true if the refs are unchanged
+     */
+    public boolean isSameRefs(RepositoryVersion version) {
+        return version != null && refs == version.refs;
+    }
+
+    /**
+     * Fingerprint of the modification time and size of a file. Missing files
+     * have a fingerprint of 0.
+     */
+    private static long stat(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return mix(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), attrs.size());
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            // unreadable, never matches a previous fingerprint
+            return System.nanoTime();
+        }
+    }
+
+    /**
+     * Fingerprint of the modification times of a folder and all its subfolders.
+     */
+    private static long folders(Path folder) {
+        long hash;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(folder, BasicFileAttributes.class);
+            if (!attrs.isDirectory()) {
+                return 0;
+            }
+            hash = mix(folder.toString().hashCode(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            return System.nanoTime();
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(folder, Files::isDirectory)) {
+            for (Path child : children) {
+                // xor keeps the fingerprint independent of the listing order
+                hash ^= folders(child);
+            }
+        } catch (IOException e) {
+            return System.nanoTime();
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(config) * 31 + Long.hashCode(refs);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof RepositoryVersion) {
+            RepositoryVersion version = (RepositoryVersion) o;
+            return config == version.config && refs == version.refs;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x:%016x", config, refs);
+    }
+}
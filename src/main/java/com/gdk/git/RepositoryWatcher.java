@@ -0,0 +1,335 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.lib.RepositoryCache.FileKey;
+import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The repository watcher observes the repositories folder and the group
+ * folders within the search recursion depth with a {@link WatchService} and
+ * reports created, replaced and deleted repositories so that the repository
+ * list cache can be updated entry by entry instead of being rebuilt.
+ * <p>
+ * Events are debounced per path because a repository is created in several
+ * steps. If the watch service overflows the listener is asked to rescan.
+ */
+public class RepositoryWatcher implements Runnable {
+
+	/**
+	 * Receives the changes of the repositories folder. Names and paths are
+	 * relative to the repositories folder.
+	 */
+	public interface Listener {
+
+		/**
+		 * A repository was created or replaced.
+		 *
+		 * @param repository
+		 */
+		void repositoryChanged(String repository);
+
+		/**
+		 * A repository or a group folder was deleted or moved away.
+		 *
+		 * @param path
+		 */
+		void pathDeleted(String path);
+
+		/**
+		 * Events were lost and the repositories folder must be rescanned.
+		 */
+		void rescan();
+	}
+
+	private static final String RESCAN = "";
+
+	private final Logger logger = LoggerFactory.getLogger(RepositoryWatcher.class);
+
+	private final GitStoreSettings settings;
+
+	private final ScheduledExecutorService scheduledExecutor;
+
+	private final Listener listener;
+
+	private final Path basePath;
+
+	private final List<Pattern> exclusions = new ArrayList<Pattern>();
+
+	private final Map<WatchKey, Path> folders = new ConcurrentHashMap<WatchKey, Path>();
+
+	private final Map<String, ScheduledFuture<?>> pending = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+
+	private final long delay;
+
+	private final AtomicBoolean running = new AtomicBoolean(false);
+
+	private volatile WatchService watchService;
+
+	public RepositoryWatcher(GitStoreSettings settings, ScheduledExecutorService scheduledExecutor, Listener listener) {
+		this.settings = settings;
+		this.scheduledExecutor = scheduledExecutor;
+		this.listener = listener;
+		this.basePath = settings.getRepositoriesFolder().toPath().toAbsolutePath();
+		this.delay = settings.getRepositoryWatcherDelay();
+		for (String regex : settings.getSearchExclusions()) {
+			exclusions.add(Pattern.compile(regex));
+		}
+	}
+
+	public boolean isReady() {
+		return settings.isCacheRepositoryList() && settings.isWatchRepositoriesFolder();
+	}
+
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	public void close() {
+		WatchService service = watchService;
+		if (service != null) {
+			try {
+				service.close();
+			} catch (IOException e) {
+				logger.debug("failed to close the watch service", e);
+			}
+		}
+		for (ScheduledFuture<?> future : pending.values()) {
+			future.cancel(false);
+		}
+		pending.clear();
+	}
+
+	@Override
+	public void run() {
+		if (!isReady()) {
+			return;
+		}
+		try {
+			watchService = basePath.getFileSystem().newWatchService();
+		} catch (IOException e) {
+			logger.error("Failed to create a watch service for " + basePath, e);
+			return;
+		}
+
+		running.set(true);
+		try {
+			long start = System.currentTimeMillis();
+			register(basePath, 0, false);
+			logger.info("Watching {} folders of {} for repository changes ({} msecs)",
+					folders.size(), basePath, System.currentTimeMillis() - start);
+
+			while (true) {
+				WatchKey key = watchService.take();
+				Path folder = folders.get(key);
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						logger.warn("Repository watcher overflowed, rescanning {}", basePath);
+						schedule(RESCAN);
+					} else if (folder != null) {
+						Path child = folder.resolve((Path) event.context());
+						schedule(relativize(child));
+					}
+				}
+				if (!key.reset()) {
+					// the folder was deleted
+					folders.remove(key);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			running.set(false);
+			folders.clear();
+		}
+	}
+
+	/**
+	 * Debounces the processing of a path. Repeated events for the same path
+	 * postpone the processing.
+	 */
+	private void schedule(final String path) {
+		ScheduledFuture<?> future = scheduledExecutor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				pending.remove(path);
+				try {
+					process(path);
+				} catch (Throwable t) {
+					logger.error("Failed to process the repository watcher event for " + path, t);
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+		ScheduledFuture<?> previous = pending.put(path, future);
+		if (previous != null) {
+			previous.cancel(false);
+		}
+	}
+
+	private void process(String path) {
+		if (RESCAN.equals(path)) {
+			listener.rescan();
+			return;
+		}
+		if (isExcluded(path)) {
+			return;
+		}
+		String repository = findParentRepository(path);
+		if (repository != null) {
+			// the folder was still being initialized when it was registered as
+			// a group folder
+			unregister(basePath.resolve(repository));
+			listener.repositoryChanged(repository);
+			return;
+		}
+		Path folder = basePath.resolve(path);
+		if (!Files.isDirectory(folder)) {
+			logger.debug("{} was deleted", path);
+			listener.pathDeleted(path);
+			return;
+		}
+		File dir = folder.toFile();
+		if (isRepository(dir)) {
+			logger.debug("{} was created or replaced", path);
+			listener.repositoryChanged(path);
+		} else if (!isWorkingCopy(dir) && isWatched(level(path))) {
+			// a new group folder, it may already contain repositories
+			register(folder, level(path), true);
+		}
+	}
+
+	/**
+	 * Registers the folder and all group folders within the search recursion
+	 * depth.
+	 *
+	 * @param folder
+	 * @param level  the depth of the folder below the repositories folder
+	 * @param notify report the repositories found in the folder
+	 */
+	private void register(Path folder, int level, boolean notify) {
+		try {
+			WatchKey key = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE);
+			folders.put(key, folder);
+		} catch (IOException e) {
+			logger.warn("Failed to watch " + folder + ", changes will be noticed by the next rescan", e);
+			return;
+		}
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(folder, Files::isDirectory)) {
+			for (Path child : children) {
+				String path = relativize(child);
+				if (isExcluded(path)) {
+					continue;
+				}
+				File dir = child.toFile();
+				if (isRepository(dir)) {
+					if (notify) {
+						listener.repositoryChanged(path);
+					}
+				} else if (!isWorkingCopy(dir) && isWatched(level + 1) && dir.canRead()) {
+					register(child, level + 1, notify);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to list " + folder, e);
+		}
+	}
+
+	/**
+	 * Cancels the watches of the folder and its subfolders.
+	 */
+	private void unregister(Path folder) {
+		for (Map.Entry<WatchKey, Path> entry : folders.entrySet()) {
+			if (entry.getValue().startsWith(folder)) {
+				entry.getKey().cancel();
+				folders.remove(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Returns the nearest parent folder of the path which is a repository.
+	 */
+	private String findParentRepository(String path) {
+		int index = path.lastIndexOf('/');
+		while (index > 0) {
+			String parent = path.substring(0, index);
+			if (isRepository(basePath.resolve(parent).toFile())) {
+				return parent;
+			}
+			index = parent.lastIndexOf('/');
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if folders at the specified depth may contain repositories.
+	 */
+	private boolean isWatched(int level) {
+		if (level == 0) {
+			return true;
+		}
+		int depth = settings.getSearchRecursionDepth();
+		return settings.isSearchRepositoriesSubfolders() && (depth == -1 || level < depth);
+	}
+
+	/**
+	 * Returns true if the folder is a repository which is listed by the
+	 * repository manager.
+	 */
+	private boolean isRepository(File dir) {
+		if (FileKey.isGitRepository(dir, FS.DETECTED)) {
+			return !(settings.isOnlyAccessBareRepositories() && org.eclipse.jgit.lib.Constants.DOT_GIT.equals(dir.getName()));
+		}
+		return !settings.isOnlyAccessBareRepositories() && isWorkingCopy(dir);
+	}
+
+	private boolean isWorkingCopy(File dir) {
+		return FileKey.isGitRepository(new File(dir, org.eclipse.jgit.lib.Constants.DOT_GIT), FS.DETECTED);
+	}
+
+	private boolean isExcluded(String path) {
+		for (Pattern pattern : exclusions) {
+			if (pattern.matcher(path).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String relativize(Path path) {
+		return basePath.relativize(path).toString().replace('\\', '/');
+	}
+
+	private static int level(String path) {
+		int level = 1;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				level++;
+			}
+		}
+		return level;
+	}
+}
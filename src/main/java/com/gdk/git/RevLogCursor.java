@@ -0,0 +1,316 @@
+package com.gdk.git;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+/**
+ * The position of a paged history walk. The cursor stores the last returned
+ * commit, the frontier of the walk, which are the commits that were queued but
+ * not yet returned, and the uninteresting commits of a range. Resuming a walk
+ * from the frontier continues with the next commit of the history without
+ * walking the previous pages again.
+ * <p>
+ * A commit with a newer commit time than one of its children is walked before
+ * that child. The cursor also stores these visited parents of the frontier so
+ * that the next page does not list them again.
+ * <p>
+ * The cursor is serialized as an opaque, URL safe token. A token must be used
+ * with the same revision, path or query that produced it.
+ */
+public class RevLogCursor {
+
+    private static final int VERSION = 2;
+
+    private final ObjectId last;
+
+    private final List<ObjectId> frontier;
+
+    private final List<ObjectId> seen;
+
+    private final List<ObjectId> uninteresting;
+
+    public RevLogCursor(ObjectId last, List<ObjectId> frontier, List<ObjectId> seen, List<ObjectId> uninteresting) {
+        this.last = last;
+        this.frontier = Collections.unmodifiableList(new ArrayList<ObjectId>(frontier));
+        this.seen = Collections.unmodifiableList(new ArrayList<ObjectId>(seen));
+        this.uninteresting = Collections.unmodifiableList(new ArrayList<ObjectId>(uninteresting));
+    }
+
+    /**
+     * @return the last commit of the previous page
+     */
+    public ObjectId getLastCommit() {
+        return last;
+    }
+
+    /**
+     * @return the commits to resume the walk from
+     */
+    public List<ObjectId> getFrontier() {
+        return frontier;
+    }
+
+    /**
+     * @return the visited commits which are parents of the frontier
+     */
+    public List<ObjectId> getSeen() {
+        return seen;
+    }
+
+    /**
+     * @return the uninteresting commits of a range
+     */
+    public List<ObjectId> getUninteresting() {
+        return uninteresting;
+    }
+
+    /**
+     * Serializes the cursor into an URL safe token.
+     *
+     * @return the token
+     */
+    public String toToken() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeId(out, last);
+            writeIds(out, frontier);
+            writeIds(out, seen);
+            writeIds(out, uninteresting);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Parses a token of {@link #toToken()}.
+     *
+     * @param token
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static RevLogCursor parse(String token) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (in.readUnsignedByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported revlog token " + token);
+            }
+            ObjectId last = readId(in);
+            List<ObjectId> frontier = readIds(in);
+            List<ObjectId> seen = readIds(in);
+            List<ObjectId> uninteresting = readIds(in);
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("Malformed revlog token " + token);
+            }
+            return new RevLogCursor(last, frontier, seen, uninteresting);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed revlog token " + token, e);
+        }
+    }
+
+    private static void writeId(DataOutputStream out, ObjectId id) throws IOException {
+        byte[] raw = new byte[org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH];
+        id.copyRawTo(raw, 0);
+        out.write(raw);
+    }
+
+    private static void writeIds(DataOutputStream out, List<ObjectId> ids) throws IOException {
+        out.writeInt(ids.size());
+        for (ObjectId id : ids) {
+            writeId(out, id);
+        }
+    }
+
+    private static ObjectId readId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH];
+        in.readFully(raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    private static List<ObjectId> readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || (long) count * org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH > in.available()) {
+            throw new IOException("Invalid id count " + count);
+        }
+        List<ObjectId> ids = new ArrayList<ObjectId>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(readId(in));
+        }
+        return ids;
+    }
+
+    /**
+     * Tracks the frontier of a walk. The tracker wraps the filter of the walk
+     * because the walk calls the filter for every commit it takes from its
+     * queue, before it queues the parents of the commit.
+     */
+    public static class Tracker extends RevFilter {
+
+        private final RevFilter filter;
+
+        private final Set<RevCommit> frontier = new LinkedHashSet<RevCommit>();
+
+        private final Map<RevCommit, List<RevCommit>> produced = new LinkedHashMap<RevCommit, List<RevCommit>>();
+
+        private final List<ObjectId> uninteresting = new ArrayList<ObjectId>();
+
+        public Tracker(RevFilter filter) {
+            this.filter = filter == null ? RevFilter.ALL : filter;
+        }
+
+        /**
+         * Marks a start commit of the walk.
+         *
+         * @param walk
+         * @param id
+         * @throws IOException
+         */
+        public void markStart(RevWalk walk, ObjectId id) throws IOException {
+            RevCommit commit = walk.parseCommit(id);
+            walk.markStart(commit);
+            frontier.add(commit);
+        }
+
+        /**
+         * Marks an uninteresting commit of a range.
+         *
+         * @param walk
+         * @param id
+         * @throws IOException
+         */
+        public void markUninteresting(RevWalk walk, ObjectId id) throws IOException {
+            walk.markUninteresting(walk.parseCommit(id));
+            uninteresting.add(id.copy());
+        }
+
+        /**
+         * Resumes the walk from the cursor.
+         *
+         * @param walk
+         * @param cursor
+         * @throws IOException if a commit of the cursor is missing
+         */
+        public void resume(RevWalk walk, RevLogCursor cursor) throws IOException {
+            for (ObjectId id : cursor.getFrontier()) {
+                markStart(walk, id);
+            }
+            for (ObjectId id : cursor.getSeen()) {
+                // not queued again when the walk reaches it
+                walk.lookupCommit(id).add(RevFlag.SEEN);
+            }
+            for (ObjectId id : cursor.getUninteresting()) {
+                markUninteresting(walk, id);
+            }
+        }
+
+        /**
+         * Records that the walk returned the commit.
+         *
+         * @param commit
+         */
+        public void returned(RevCommit commit) {
+            produced.remove(commit);
+        }
+
+        /**
+         * Returns the cursor after the last returned commit or null if the walk
+         * has no more commits to visit.
+         *
+         * @param last the last returned commit
+         * @return the cursor or null
+         */
+        public RevLogCursor getCursor(RevCommit last) {
+            // commits which the walk accepted but still holds back are
+            // walked again by the next page, the commits they queued are
+            // queued again then
+            Set<RevCommit> queued = new HashSet<RevCommit>();
+            for (List<RevCommit> parents : produced.values()) {
+                queued.addAll(parents);
+            }
+            List<RevCommit> starts = new ArrayList<RevCommit>();
+            for (RevCommit commit : produced.keySet()) {
+                if (!commit.has(RevFlag.UNINTERESTING) && !queued.contains(commit)) {
+                    starts.add(commit);
+                }
+            }
+            for (RevCommit commit : frontier) {
+                if (!commit.has(RevFlag.UNINTERESTING) && !queued.contains(commit)) {
+                    starts.add(commit);
+                }
+            }
+            if (starts.isEmpty()) {
+                return null;
+            }
+            List<ObjectId> ids = new ArrayList<ObjectId>();
+            List<ObjectId> seen = new ArrayList<ObjectId>();
+            for (RevCommit commit : starts) {
+                ids.add(commit.copy());
+                for (RevCommit parent : commit.getParents()) {
+                    if (parent.has(RevFlag.SEEN) && !parent.has(RevFlag.UNINTERESTING)
+                            && !frontier.contains(parent) && !produced.containsKey(parent)
+                            && !seen.contains(parent)) {
+                        // walked before its child because of clock skew
+                        seen.add(parent.copy());
+                    }
+                }
+            }
+            return new RevLogCursor(last.copy(), ids, seen, uninteresting);
+        }
+
+        @Override
+        public boolean include(RevWalk walker, RevCommit commit)
+                throws StopWalkException, MissingObjectException, IncorrectObjectTypeException, IOException {
+            frontier.remove(commit);
+            // a path filter may simplify the parents of a merge
+            boolean include = filter.include(walker, commit);
+            List<RevCommit> queued = new ArrayList<RevCommit>(commit.getParentCount());
+            for (RevCommit parent : commit.getParents()) {
+                if (!parent.has(RevFlag.SEEN) && frontier.add(parent)) {
+                    // queued by the walk after this filter
+                    queued.add(parent);
+                }
+            }
+            if (include) {
+                produced.put(commit, queued);
+            }
+            return include;
+        }
+
+        @Override
+        public boolean requiresCommitBody() {
+            return filter.requiresCommitBody();
+        }
+
+        @Override
+        public RevFilter clone() {
+            return new Tracker(filter.clone());
+        }
+
+        @Override
+        public String toString() {
+            return filter.toString();
+        }
+    }
+}
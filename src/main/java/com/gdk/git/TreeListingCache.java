@@ -0,0 +1,192 @@
+package com.gdk.git;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the listings of trees: the entries of a folder, the compressed
+ * entries of a folder and the documents below a tree, with the blob sizes and
+ * the filestore pointers of the files.
+ * <p>
+ * A listing only depends on the tree id, the listed path and the listing
+ * mode, so a cached listing never becomes stale and is shared by all
+ * branches, commits and repositories which contain the tree. The commit of
+ * the returned {@link PathModel}s is set for every request.
+ * <p>
+ * The cache is bounded by the estimated memory of the listings and evicts the
+ * least recently used listings. Concurrent requests of the same listing wait
+ * for a single computation.
+ */
+public class TreeListingCache {
+
+    private static final TreeListingCache instance;
+
+    /**
+     * The default memory budget of the cached listings in bytes.
+     */
+    public static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The listing modes, see {@link JGitUtils#getFilesInPath},
+     * {@link JGitUtils#getFilesInPath2} and {@link JGitUtils#getDocuments}.
+     */
+    public enum Mode {
+        FILES, COMPRESSED, DOCUMENTS
+    }
+
+    /**
+     * Computes a listing which is not cached.
+     */
+    public interface Computation {
+
+        /**
+         * @return the entries of the listing
+         * @throws IOException the listing is not cached
+         */
+        List<PathModel> compute() throws IOException;
+    }
+
+    /**
+     * Thrown by a computation whose listing is incomplete, e.g. with blobs
+     * which can not be read. The listing is returned but not cached.
+     */
+    public static class IncompleteListingException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<PathModel> entries;
+
+        public IncompleteListingException(String message, List<PathModel> entries) {
+            super(message);
+            this.entries = entries;
+        }
+    }
+
+    protected volatile ObjectCache<Listing> cache;
+
+    static {
+        instance = new TreeListingCache();
+    }
+
+    public static TreeListingCache instance() {
+        return instance;
+    }
+
+    protected TreeListingCache() {
+        this.cache = newCache(DEFAULT_SIZE);
+    }
+
+    private static ObjectCache<Listing> newCache(long size) {
+        return new ObjectCache<Listing>(size, (String name, Listing listing) -> listing.weight);
+    }
+
+    /**
+     * Sets the memory budget of the cached listings in bytes, the cached
+     * listings are discarded.
+     *
+     * @param size
+     */
+    public synchronized void setCacheSize(long size) {
+        this.cache = newCache(size);
+    }
+
+    /**
+     * Returns the cached listing or computes and caches it.
+     *
+     * @param mode
+     * @param tree        the listed tree
+     * @param path        the path of the tree or, for documents, the
+     *                    extensions of the documents
+     * @param commitId    the commit of the returned path models
+     * @param computation computes the entries with any commit
+     * @return the sorted entries of the listing
+     * @throws IOException if the listing can not be computed, except for an
+     *                     {@link IncompleteListingException}
+     */
+    public List<PathModel> get(Mode mode, AnyObjectId tree, String path, String commitId,
+            final Computation computation) throws IOException {
+        Listing listing;
+        try {
+            listing = cache.get(getKey(mode, tree, path), 0, previous -> {
+                try {
+                    return new Listing(computation.compute());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof IncompleteListingException) {
+                listing = new Listing(((IncompleteListingException) e.getCause()).entries);
+            } else {
+                throw e.getCause();
+            }
+        }
+        return listing.toPathModels(commitId);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached listings
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the hit, miss, eviction and computation time statistics of the
+     * cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static String getKey(Mode mode, AnyObjectId tree, String path) {
+        return mode.ordinal() + tree.name() + (path == null ? "" : path);
+    }
+
+    /**
+     * The sorted entries of a listing without a commit.
+     */
+    static class Listing {
+
+        /**
+         * The estimated memory of an entry without its strings.
+         */
+        private static final int ENTRY_WEIGHT = 120;
+
+        private final PathModel[] entries;
+
+        final int weight;
+
+        Listing(List<PathModel> list) {
+            List<PathModel> sorted = new ArrayList<PathModel>(list);
+            Collections.sort(sorted);
+            this.entries = sorted.toArray(new PathModel[sorted.size()]);
+            long weight = 0;
+            for (PathModel entry : entries) {
+                weight += ENTRY_WEIGHT + 2L * (entry.name.length() + entry.path.length());
+            }
+            this.weight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, weight));
+        }
+
+        List<PathModel> toPathModels(String commitId) {
+            List<PathModel> list = new ArrayList<PathModel>(entries.length);
+            for (PathModel entry : entries) {
+                list.add(entry.withCommit(commitId));
+            }
+            return list;
+        }
+    }
+}
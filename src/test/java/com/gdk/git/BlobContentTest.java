@@ -0,0 +1,86 @@
+package com.gdk.git;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.junit.Test;
+
+public class BlobContentTest extends org.junit.Assert {
+
+	@Test
+	public void testContent() throws Exception {
+		WindowCacheConfig cfg = new WindowCacheConfig();
+		cfg.setStreamFileThreshold(64 * 1024);
+		cfg.install();
+		try (TestRepository test = new TestRepository("blobcontent")) {
+			Repository repository = test.repository;
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; text.length() < 300_000; i++) {
+				text.append("line ").append(i).append('\n');
+			}
+			byte[] large = text.toString().getBytes(StandardCharsets.UTF_8);
+			byte[] binary = Arrays.copyOf(large, 200_000);
+			binary[100] = 0;
+			byte[] lateBinary = Arrays.copyOf(large, 200_000);
+			lateBinary[100_000] = 0;
+			test.write("large.txt", large);
+			test.write("binary.bin", binary);
+			test.write("late.bin", lateBinary);
+			test.write("small.txt", "small\n".getBytes(StandardCharsets.UTF_8));
+			RevCommit commit = test.commit("first");
+
+			BlobContent content = BlobContent.open(repository, commit.getTree(), "large.txt");
+			assertEquals(large.length, content.getSize());
+			assertEquals(repository.resolve("master:large.txt"), content.getId());
+			assertFalse(content.isBinary());
+			assertArrayEquals(large, write(content, 0, -1));
+			assertArrayEquals(Arrays.copyOfRange(large, 1000, 1100), write(content, 1000, 100));
+			assertArrayEquals(Arrays.copyOfRange(large, 250_000, large.length), write(content, 250_000, 1_000_000));
+			assertArrayEquals(Arrays.copyOfRange(large, 10, 20), write(content, 10, 10));
+			assertEquals(0, write(content, large.length, 10).length);
+			ByteArrayOutputStream channel = new ByteArrayOutputStream();
+			assertEquals(5000, content.writeTo(Channels.newChannel(channel), 120_000, 5000));
+			assertArrayEquals(Arrays.copyOfRange(large, 120_000, 125_000), channel.toByteArray());
+			try {
+				write(content, large.length + 1, 1);
+				fail("offset beyond the blob");
+			} catch (IndexOutOfBoundsException e) {
+			}
+
+			assertTrue(BlobContent.open(repository, commit.getTree(), "binary.bin").isBinary());
+			// binary content is detected from the first chunk only
+			assertFalse(BlobContent.open(repository, commit.getTree(), "late.bin").isBinary());
+
+			BlobContent small = BlobContent.open(repository, null, "small.txt");
+			assertFalse(small.isBinary());
+			assertArrayEquals("mall".getBytes(StandardCharsets.UTF_8), write(small, 1, 4));
+			assertNull(BlobContent.open(repository, commit.getTree(), "missing.txt"));
+
+			// the blobs loaded into the heap are bounded
+			BlobContent.setHeapLimit(100_000);
+			try {
+				content.getBytes();
+				fail("blob exceeds the heap limit");
+			} catch (LargeObjectException e) {
+			}
+			assertNull(JGitUtils.getByteContent(repository, commit.getTree(), "large.txt", false));
+			assertEquals("small\n", JGitUtils.getStringContent(repository, commit.getTree(), "small.txt"));
+		} finally {
+			BlobContent.setHeapLimit(BlobContent.DEFAULT_HEAP_LIMIT);
+			new WindowCacheConfig().install();
+		}
+	}
+
+	private static byte[] write(BlobContent content, long offset, long length) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long written = content.writeTo(out, offset, length);
+		assertEquals(out.size(), written);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,97 @@
+package com.gdk.git;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Test;
+
+import com.gdk.git.PathModel.PathChangeModel;
+
+public class BlobProberTest extends org.junit.Assert {
+
+	private static final String OID = "4d7a214614ab2935c943f9e0ff69d22eadbb8f32b1258daaa5e2ca24d17e2393";
+
+	private static final String POINTER = "version https://git-lfs.github.com/spec/v1\noid sha256:" + OID
+			+ "\nsize 12345\n";
+
+	@Test
+	public void testProbe() throws Exception {
+		BlobProber prober = BlobProber.instance();
+		prober.clear();
+		try (TestRepository test = new TestRepository("blobprober")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			for (int i = 0; i < 20; i++) {
+				test.write("src/file" + i + ".txt", "content " + i);
+			}
+			test.write("big.bin", POINTER);
+			test.write("same.txt", "content 0");
+			RevCommit first = test.commit("first");
+			git.gc().call();
+			test.write("loose.txt", "loose");
+			RevCommit second = test.commit("second");
+
+			List<ObjectId> blobs = new ArrayList<ObjectId>();
+			try (TreeWalk tw = new TreeWalk(repository)) {
+				tw.addTree(second.getTree());
+				tw.setRecursive(true);
+				while (tw.next()) {
+					blobs.add(tw.getObjectId(0));
+				}
+			}
+			blobs.add(ObjectId.zeroId());
+			ObjectId missing = ObjectId.fromString("0123456789012345678901234567890123456789");
+			blobs.add(missing);
+
+			try (ObjectReader reader = repository.newObjectReader()) {
+				Map<ObjectId, BlobProber.Probe> probes = prober.probe(repository, reader, blobs);
+				assertEquals(22, probes.size());
+				assertFalse(probes.containsKey(missing));
+				for (ObjectId blob : blobs.subList(0, blobs.size() - 2)) {
+					BlobProber.Probe probe = probes.get(blob);
+					assertEquals(reader.open(blob).getSize(), probe.size);
+				}
+				BlobProber.Probe pointer = probes.get(repository.resolve("master:big.bin"));
+				assertTrue(pointer.isFilestoreItem());
+				assertEquals(OID, pointer.getFilestoreItem().oid);
+				assertEquals(12345, pointer.getFilestoreItem().getSize());
+				assertNotSame(pointer.getFilestoreItem(), pointer.getFilestoreItem());
+				assertFalse(probes.get(repository.resolve("master:loose.txt")).isFilestoreItem());
+				assertNull(probes.get(repository.resolve("master:loose.txt")).getFilestoreItem());
+
+				// the probes are memoized by blob id
+				long misses = prober.stats().missCount();
+				assertEquals(probes.keySet(), prober.probe(repository, reader, blobs).keySet());
+				assertEquals(misses + 1, prober.stats().missCount());
+				assertEquals(22, prober.size());
+			}
+
+			// the listings use the probes
+			for (PathModel file : JGitUtils.getFilesInPath(repository, null, second)) {
+				if (file.name.equals("big.bin")) {
+					assertTrue(file.isFilestoreItem());
+					assertEquals(12345, file.size);
+				}
+			}
+			List<PathChangeModel> changes = JGitUtils.getFilesInCommit(repository, first, false);
+			assertEquals(22, changes.size());
+			for (PathChangeModel change : changes) {
+				long size = repository.open(ObjectId.fromString(change.objectId)).getSize();
+				assertEquals(change.path.equals("big.bin") ? 12345 : size, change.size);
+			}
+			changes = JGitUtils.getFilesInCommit(repository, second, false);
+			assertEquals(1, changes.size());
+			assertEquals("loose.txt", changes.get(0).path);
+			assertEquals(5, changes.get(0).size);
+		} finally {
+			prober.clear();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+public class CommitCacheTest extends org.junit.Assert {
+
+	/**
+	 * Records the loads of the cache.
+	 */
+	private static class RecordingCommitCache extends CommitCache {
+
+		int walked = -1;
+
+		boolean incremental;
+
+		int checked;
+
+		RecordingCommitCache(File folder) {
+			setCacheDays(14);
+			setCacheFolder(folder);
+		}
+
+		@Override
+		protected CommitHistory load(Repository repository, List<RevCommit> revLog, CommitHistory previous, Date cutoffDate) {
+			walked = revLog.size();
+			incremental = previous != null;
+			return super.load(repository, revLog, previous, cutoffDate);
+		}
+
+		@Override
+		protected boolean isFastForward(Repository repository, ObjectId previousTip, RevCommit tip) {
+			checked++;
+			return super.isFastForward(repository, previousTip, tip);
+		}
+	}
+
+	@Test
+	public void testRestore() throws Exception {
+		File folder = Files.createTempDirectory("commitcache").toFile();
+		File cacheFolder = new File(folder, "cache");
+		try (Git git = Git.init().setDirectory(new File(folder, "test.git")).setInitialBranch("master").call()) {
+			Repository repository = git.getRepository();
+			for (int i = 0; i < 10; i++) {
+				git.commit().setMessage("commit " + i).setAllowEmpty(true).call();
+			}
+			RecordingCommitCache cache = new RecordingCommitCache(cacheFolder);
+			assertEquals(10, cache.getCommits("test.git", repository, "master").size());
+			assertEquals(1, cache.save());
+			assertEquals(0, cache.save());
+
+			// fast-forward, only the new commits are walked
+			git.commit().setMessage("commit 10").setAllowEmpty(true).call();
+			RevCommit tip = git.commit().setMessage("commit 11").setAllowEmpty(true).call();
+			git.tag().setName("v1").call();
+			cache = new RecordingCommitCache(cacheFolder);
+			assertEquals(1, cache.restore());
+			List<RepositoryCommit> commits = cache.getCommits("test.git", repository, "master");
+			assertTrue(cache.incremental);
+			assertEquals(2, cache.walked);
+			assertEquals(1, cache.checked);
+			assertEquals(log(git), names(commits));
+			assertEquals(tip.getName(), commits.get(0).getName());
+			assertNotNull(commits.get(0).getRefs());
+			assertEquals(1, cache.save());
+
+			// only restored branches are checked for a rewrite
+			git.commit().setMessage("commit 12").setAllowEmpty(true).call();
+			assertEquals(13, cache.getCommits("test.git", repository, "master").size());
+			assertTrue(cache.incremental);
+			assertEquals(1, cache.walked);
+			assertEquals(1, cache.checked);
+			assertEquals(1, cache.save());
+
+			// rewritten branch, reloaded
+			git.reset().setMode(ResetType.HARD).setRef("HEAD~5").call();
+			git.commit().setMessage("rewritten").setAllowEmpty(true).call();
+			cache = new RecordingCommitCache(cacheFolder);
+			assertEquals(1, cache.restore());
+			commits = cache.getCommits("test.git", repository, "master");
+			assertFalse(cache.incremental);
+			assertEquals(9, cache.walked);
+			assertEquals(log(git), names(commits));
+
+			// the files of branches which are no longer cached are removed
+			git.branchCreate().setName("topic").call();
+			cache.getCommits("test.git", repository, "topic");
+			assertEquals(2, cache.save());
+			cache = new RecordingCommitCache(cacheFolder);
+			cache.getCommits("test.git", repository, "master");
+			assertEquals(1, cache.save());
+			assertEquals(1, new RecordingCommitCache(cacheFolder).restore());
+
+			// cleared branches are removed from the cache folder
+			cache.clear("test.git");
+			cache.save();
+			assertEquals(0, new RecordingCommitCache(cacheFolder).restore());
+		} finally {
+			FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
+		}
+	}
+
+	private static List<String> log(Git git) throws Exception {
+		List<String> names = new ArrayList<String>();
+		for (RevCommit commit : git.log().call()) {
+			names.add(commit.getName());
+		}
+		return names;
+	}
+
+	private static List<String> names(List<RepositoryCommit> commits) {
+		List<String> names = new ArrayList<String>();
+		for (RepositoryCommit commit : commits) {
+			names.add(commit.getName());
+		}
+		return names;
+	}
+}
@@ -0,0 +1,148 @@
+package com.gdk.git;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.Test;
+
+public class CommitGraphsTest extends org.junit.Assert {
+
+	@Test
+	public void testWriteAndWalk() throws Exception {
+		try (TestRepository test = new TestRepository("commitgraph")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			List<RevCommit> commits = new ArrayList<RevCommit>();
+			commits.add(test.commit("initial"));
+			git.branchCreate().setName("topic").call();
+			for (int i = 0; i < 3; i++) {
+				commits.add(test.commit("master " + i));
+			}
+			git.checkout().setName("topic").call();
+			RevCommit topic = test.commit("topic");
+			commits.add(topic);
+			git.checkout().setName("master").call();
+			git.merge().setCommit(true).setMessage("merge topic").include(topic).call();
+			commits.add(repository.parseCommit(repository.resolve("master")));
+			git.tag().setName("v1").setAnnotated(true).setMessage("v1").call();
+			git.checkout().setName("topic").call();
+			commits.add(test.commit("unmerged"));
+
+			assertTrue(CommitGraphs.isStale(repository, true));
+			assertTrue(CommitGraphs.write(repository, true));
+			assertFalse(CommitGraphs.isStale(repository, true));
+			assertTrue(repository.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+					ConfigConstants.CONFIG_COMMIT_GRAPH, false));
+
+			// the commit-graph answers like a walk of the commits
+			try (ObjectReader reader = repository.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+				CommitGraph graph = CommitGraphs.getCommitGraph(reader);
+				assertEquals(commits.size(), graph.getCommitCnt());
+				for (RevCommit a : commits) {
+					for (RevCommit b : commits) {
+						walk.reset();
+						assertEquals(a.getName() + " in " + b.getName(),
+								walk.isMergedInto(walk.parseCommit(a), walk.parseCommit(b)),
+								CommitGraphs.isMergedInto(graph, a, b));
+					}
+				}
+			}
+			assertEquals(commits.get(0), JGitUtils.getFirstCommit(repository, "master"));
+			assertEquals("initial", JGitUtils.getFirstCommit(repository, "master").getFullMessage());
+			assertEquals("master 2", JGitUtils.getRevLog(repository, "master", 2, 1).get(0).getShortMessage());
+
+			// new commits are walked from the pack until the graph is refreshed
+			RevCommit pushed = test.commit("pushed");
+			assertTrue(CommitGraphs.isStale(repository, true));
+			assertTrue(JGitUtils.isMergedInto(repository, topic, pushed));
+			assertFalse(JGitUtils.isMergedInto(repository, pushed, topic));
+			assertTrue(CommitGraphs.write(repository, true));
+			assertFalse(CommitGraphs.isStale(repository, true));
+			assertTrue(JGitUtils.isMergedInto(repository, topic, pushed));
+			assertFalse(JGitUtils.isMergedInto(repository, commits.get(3), pushed));
+		}
+	}
+
+	@Test
+	public void testPathHistory() throws Exception {
+		try (TestRepository test = new TestRepository("commitgraph")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			String[] paths = { "a/x.txt", "a/y.txt", "b/x.txt", "b/c/z.txt" };
+			for (int i = 0; i < 20; i++) {
+				test.change(paths[i % paths.length], i);
+			}
+			// a merge of changes to both sides
+			git.branchCreate().setName("topic").call();
+			test.change("b/x.txt", 20);
+			git.checkout().setName("topic").call();
+			RevCommit topic = test.change("a/x.txt", 21);
+			git.checkout().setName("master").call();
+			git.merge().setCommit(true).setMessage("change 22 merge").include(topic).call();
+			// a merge which discards the change of the topic
+			git.branchCreate().setName("discarded").call();
+			test.change("b/x.txt", 23);
+			git.checkout().setName("discarded").call();
+			RevCommit discarded = test.change("a/y.txt", 24);
+			git.checkout().setName("master").call();
+			git.merge().setStrategy(MergeStrategy.OURS).setCommit(true).setMessage("change 25 merge").include(discarded).call();
+			test.change("a/x.txt", 26);
+
+			String[] queries = { "a/x.txt", "a/y.txt", "a", "b/c", "b/c/z.txt", "missing.txt" };
+			List<List<RevCommit>> expected = new ArrayList<List<RevCommit>>();
+			for (String query : queries) {
+				expected.add(log(repository, query));
+			}
+			assertEquals(7, expected.get(0).size());
+			// the history is simplified, the discarded change is not listed
+			for (int i : new int[] { 1, 2 }) {
+				assertFalse(expected.get(i).contains(discarded));
+			}
+			for (int i = 0; i < queries.length; i++) {
+				assertEquals(queries[i], expected.get(i), JGitUtils.getRevLog(repository, "master", queries[i], 0, -1));
+				assertEquals(queries[i], expected.get(i),
+						JGitUtils.getRevLogPage(repository, "master", queries[i], null, -1).commits);
+			}
+
+			assertTrue(CommitGraphs.write(repository, true));
+			assertFalse(CommitGraphs.isStale(repository, true));
+			assertTrue(repository.getConfig().getBoolean(ConfigConstants.CONFIG_COMMIT_GRAPH_SECTION,
+					ConfigConstants.CONFIG_KEY_READ_CHANGED_PATHS, false));
+			for (int i = 0; i < queries.length; i++) {
+				List<RevCommit> actual = JGitUtils.getRevLog(repository, "master", queries[i], 0, -1);
+				assertEquals(queries[i], expected.get(i), actual);
+				for (RevCommit commit : actual) {
+					// the bodies of the listed commits are parsed
+					assertTrue(commit.getFullMessage().startsWith("change "));
+				}
+			}
+			assertEquals(expected.get(2).subList(2, 5), JGitUtils.getRevLog(repository, "master", "a", 2, 3));
+		}
+	}
+
+	/**
+	 * The history of the path with the tree filter of JGit.
+	 */
+	private static List<RevCommit> log(Repository repository, String path) throws Exception {
+		List<RevCommit> list = new ArrayList<RevCommit>();
+		try (RevWalk walk = new RevWalk(repository)) {
+			walk.markStart(walk.parseCommit(repository.resolve("master")));
+			walk.setTreeFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(path), TreeFilter.ANY_DIFF));
+			for (RevCommit commit : walk) {
+				list.add(commit);
+			}
+		}
+		return list;
+	}
+}
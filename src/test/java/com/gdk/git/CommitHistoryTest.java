@@ -0,0 +1,90 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+public class CommitHistoryTest extends org.junit.Assert {
+
+	@Test
+	public void testViews() throws Exception {
+		File folder = Files.createTempDirectory("history").toFile();
+		try (Git git = Git.init().setDirectory(folder).setInitialBranch("master").call()) {
+			PersonIdent alice = new PersonIdent("Alice", "alice@example.com", Instant.ofEpochSecond(1_700_000_000L),
+					ZoneOffset.ofHours(1));
+			PersonIdent bob = new PersonIdent("Bob", "bob@example.com", Instant.ofEpochSecond(1_700_000_100L),
+					ZoneOffset.ofHours(-5));
+			git.commit().setMessage("initial").setAllowEmpty(true).setAuthor(alice).setCommitter(alice).call();
+			git.branchCreate().setName("topic").call();
+			git.commit().setMessage("master été\n\nbody").setAllowEmpty(true).setAuthor(alice).setCommitter(bob).call();
+			git.checkout().setName("topic").call();
+			RevCommit topic = git.commit().setMessage("topic").setAllowEmpty(true).setAuthor(bob).setCommitter(bob).call();
+			git.checkout().setName("master").call();
+			git.merge().setCommit(true).setMessage("merge topic").include(topic).call();
+			git.tag().setName("v1").call();
+
+			Repository repository = git.getRepository();
+			List<RevCommit> revLog = JGitUtils.getRevLog(repository, "master", new Date(0));
+			CommitHistory history = new CommitCache().load(repository, revLog, null, new Date(0));
+			assertEquals(4, history.size());
+
+			List<RepositoryCommit> views = history.getCommits("test.git", "master", new Date(0));
+			List<RepositoryCommit> expected = new ArrayList<RepositoryCommit>();
+			for (RevCommit commit : revLog) {
+				expected.add(new RepositoryCommit("test.git", "master", commit));
+			}
+			assertEquals(expected.size(), views.size());
+			for (int i = 0; i < views.size(); i++) {
+				assertSameCommit(expected.get(i), views.get(i));
+			}
+			assertNotNull(views.get(0).getRefs());
+			assertNull(views.get(0).getCommit());
+
+			// append the history to itself, dropping the commits before the cutoff
+			CommitHistory.Builder builder = new CommitHistory.Builder();
+			Date cutoff = views.get(1).getCommitDate();
+			for (int i = 0; i < history.size(); i++) {
+				if (history.getCommitTime(i) >= cutoff.getTime()) {
+					builder.add(history, i);
+				}
+			}
+			CommitHistory copy = builder.build();
+			List<RepositoryCommit> copied = copy.getCommits("test.git", "master", new Date(0));
+			assertEquals(history.getCommits("test.git", "master", cutoff).size(), copied.size());
+			for (RepositoryCommit commit : copied) {
+				assertSameCommit(expected.get(expected.indexOf(commit)), commit);
+			}
+		} finally {
+			FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
+		}
+	}
+
+	private static void assertSameCommit(RepositoryCommit expected, RepositoryCommit actual) {
+		assertEquals(expected, actual);
+		assertEquals(expected.hashCode(), actual.hashCode());
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getShortMessage(), actual.getShortMessage());
+		assertEquals(expected.getCommitDate(), actual.getCommitDate());
+		assertEquals(expected.getAuthorIdent(), actual.getAuthorIdent());
+		assertEquals(expected.getAuthorIdent().getZoneOffset(), actual.getAuthorIdent().getZoneOffset());
+		assertEquals(expected.getCommitterIdent(), actual.getCommitterIdent());
+		assertEquals(expected.getCommitterIdent().getZoneOffset(), actual.getCommitterIdent().getZoneOffset());
+		assertEquals(expected.getParentCount(), actual.getParentCount());
+		for (int i = 0; i < expected.getParentCount(); i++) {
+			assertEquals((ObjectId) expected.getParents()[i], actual.getParents()[i]);
+		}
+		assertEquals(0, expected.compareTo(actual));
+	}
+}
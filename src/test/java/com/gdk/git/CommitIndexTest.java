@@ -0,0 +1,157 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+import com.gdk.git.Constants.SearchType;
+
+public class CommitIndexTest extends org.junit.Assert {
+
+	private static final String[] QUERIES = { "change 1", "of a/", "x.txt", "merge", "bob", "ALICE", "@example.com",
+			"missing" };
+
+	@Test
+	public void testSearch() throws Exception {
+		File indexFolder = Files.createTempDirectory("commitindex").toFile();
+		try (TestRepository test = new TestRepository("commitindex")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			String[] paths = { "a/x.txt", "a/y.txt", "b/x.txt" };
+			for (int i = 0; i < 12; i++) {
+				test.change(paths[i % paths.length], i, i % 3 == 0 ? "bob" : "alice");
+			}
+			for (int n = 0; n < 2; n++) {
+				git.branchCreate().setName("topic" + n).call();
+				test.change("b/x.txt", 100 + n, "alice");
+				git.checkout().setName("topic" + n).call();
+				RevCommit topic = test.change("a/y.txt", 200 + n, "bob");
+				git.checkout().setName("master").call();
+				git.merge().setCommit(false).include(topic).call();
+				test.commit("Merge topic" + n, "carol");
+			}
+
+			CommitIndex index = new CommitIndex();
+			assertFalse(index.isIndexed(repository));
+			// a search without a build does not schedule the index
+			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+			index.setExecutor(executor, 0);
+			assertNull(index.search(repository, "master", "change", SearchType.COMMIT, 0, -1, false));
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			assertFalse(index.isIndexed(repository));
+			index.setExecutor(null, 0);
+			assertNull(index.search(repository, "master", "change", SearchType.COMMIT, 0, -1));
+			Map<String, List<RevCommit>> expected = walk(repository, "master");
+
+			assertEquals(JGitUtils.getRevLog(repository, "master", 0, -1).size(), index.update(repository));
+			assertTrue(index.isIndexed(repository));
+			assertEquals(0, index.update(repository));
+			assertSearches(index, repository, "master", expected);
+			assertSearches(index, repository, null, expected);
+			assertSearches(index, repository, "topic1", walk(repository, "topic1"));
+
+			// short queries and other revisions walk
+			assertNull(index.search(repository, "master", "of", SearchType.COMMIT, 0, -1));
+			assertNull(index.search(repository, "master~1", "change", SearchType.COMMIT, 0, -1));
+			assertNull(index.search(repository, "topic0..master", "change", SearchType.COMMIT, 0, -1));
+
+			// paged
+			List<RevCommit> all = expected.get(SearchType.COMMIT + " change 1");
+			assertEquals(all.subList(1, 3), index.search(repository, "master", "change 1", SearchType.COMMIT, 1, 2));
+
+			// fast-forward
+			test.change("a/x.txt", 12, "dave");
+			RevCommit head = test.change("a/x.txt", 13, "bob");
+			assertNull(index.search(repository, "master", "dave", SearchType.AUTHOR, 0, -1));
+			assertEquals(2, index.update(repository));
+			assertSearches(index, repository, "master", walk(repository, "master"));
+			assertEquals(1, index.search(repository, "master", "dave", SearchType.AUTHOR, 0, -1).size());
+
+			// rewritten branch, the dropped commits are not listed
+			git.reset().setMode(ResetType.HARD).setRef("HEAD~3").call();
+			assertEquals(0, index.update(repository));
+			expected = walk(repository, "master");
+			assertSearches(index, repository, "master", expected);
+			assertTrue(index.search(repository, "master", "dave", SearchType.AUTHOR, 0, -1).isEmpty());
+
+			// a removed branch is not indexed
+			git.branchDelete().setBranchNames("topic0").setForce(true).call();
+			index.update(repository);
+			assertNull(index.search(repository, "topic0", "change", SearchType.COMMIT, 0, -1));
+
+			// the saved index is loaded on first use
+			index.setIndexFolder(indexFolder);
+			assertEquals(1, index.save());
+			CommitIndex loaded = new CommitIndex();
+			loaded.setIndexFolder(indexFolder);
+			assertTrue(loaded.isIndexed(repository));
+			assertSearches(loaded, repository, "master", expected);
+			assertEquals(0, loaded.update(repository));
+
+			// an evicted index is saved and loaded again
+			test.change("a/x.txt", 14, "erin");
+			assertEquals(1, loaded.update(repository));
+			loaded.setCacheSize(1);
+			assertTrue(loaded.indexes.isEmpty());
+			assertEquals(1, loaded.search(repository, "master", "erin", SearchType.AUTHOR, 0, -1).size());
+			assertEquals(1, loaded.indexes.size());
+			expected = walk(repository, "master");
+			loaded.clear(test.folder);
+			assertFalse(loaded.isIndexed(repository));
+
+			// searches of the indexed branches answer from the index
+			assertNotEquals(head, repository.resolve("master"));
+			CommitIndex.instance().update(repository);
+			try {
+				for (Map.Entry<String, List<RevCommit>> search : expected.entrySet()) {
+					String[] query = search.getKey().split(" ", 2);
+					assertEquals(search.getValue(), JGitUtils.searchRevlogs(repository, "master", query[1],
+							SearchType.forName(query[0]), 0, -1));
+				}
+			} finally {
+				CommitIndex.instance().clear(test.folder);
+			}
+		} finally {
+			FileUtils.delete(indexFolder, FileUtils.RECURSIVE | FileUtils.RETRY);
+		}
+	}
+
+	/**
+	 * The matches of all queries by walking the history.
+	 */
+	private static Map<String, List<RevCommit>> walk(Repository repository, String objectId) {
+		Map<String, List<RevCommit>> matches = new LinkedHashMap<String, List<RevCommit>>();
+		for (SearchType type : SearchType.values()) {
+			for (String query : QUERIES) {
+				matches.put(type + " " + query, JGitUtils.searchRevlogs(repository, objectId, query, type, 0, -1));
+			}
+		}
+		assertFalse(matches.get(SearchType.COMMIT + " change 1").isEmpty());
+		return matches;
+	}
+
+	private static void assertSearches(CommitIndex index, Repository repository, String objectId,
+			Map<String, List<RevCommit>> expected) {
+		for (Map.Entry<String, List<RevCommit>> search : expected.entrySet()) {
+			String[] query = search.getKey().split(" ", 2);
+			List<RevCommit> actual = index.search(repository, objectId, query[1], SearchType.forName(query[0]), 0, -1);
+			assertEquals(search.getKey(), search.getValue(), actual);
+			for (RevCommit commit : actual) {
+				assertNotNull(commit.getFullMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+public class FilesInPathTest extends org.junit.Assert {
+
+	private static final String POINTER = "version https://git-lfs.github.com/spec/v1\n"
+			+ "oid sha256:4d7a214614ab2935c943f9e0ff69d22eadbb8f32b1258daaa5e2ca24d17e2393\n"
+			+ "size 12345\n";
+
+	@Test
+	public void testFilesInPath2() throws Exception {
+		File folder = Files.createTempDirectory("filesinpath").toFile();
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			RevCommit commit;
+			try (ObjectInserter inserter = repository.newObjectInserter()) {
+				Folder root = new Folder();
+				root.add("README.md", "readme");
+				root.add("lfs.bin", POINTER);
+				root.add("src/main/java/com/gdk/App.java", "app");
+				root.add("src/main/java/com/gdk/Util.java", "util");
+				root.add("src/test/java/AppTest.java", "test");
+				root.add("docs/a/b/c/only.txt", "only");
+				root.add("[C++]/x/y/hello.cpp", "hello");
+				root.add("[C++]/x/z/world.cpp", "world");
+				root.add("[C++]/main.cpp", "main");
+				root.gitlink("modules/lib");
+				ObjectId tree = root.insert(inserter);
+				PersonIdent ident = new PersonIdent("alice", "alice@example.com", Instant.ofEpochSecond(1_700_000_000L),
+						ZoneOffset.UTC);
+				CommitBuilder builder = new CommitBuilder();
+				builder.setTreeId(tree);
+				builder.setAuthor(ident);
+				builder.setCommitter(ident);
+				builder.setMessage("files");
+				ObjectId id = inserter.insert(builder);
+				inserter.flush();
+				try (RevWalk rw = new RevWalk(repository)) {
+					commit = rw.parseCommit(id);
+				}
+			}
+			RefUpdate update = repository.updateRef("refs/heads/master");
+			update.setNewObjectId(commit);
+			assertEquals(RefUpdate.Result.NEW, update.update());
+
+			List<PathModel> files = JGitUtils.getFilesInPath2(repository, null, null);
+			assertEquals(listCompressed(repository, null, commit), describe(files));
+			assertEquals("[[C++]|[C++]|40000, docs/a/b/c|docs/a/b/c|40000, modules|modules|40000, src|src|40000, "
+					+ "README.md|README.md|100644, lfs.bin|lfs.bin|100644]", names(files));
+			PathModel lfs = files.get(5);
+			assertTrue(lfs.isFilestoreItem());
+			assertEquals(12345, lfs.size);
+			assertEquals("readme".length(), files.get(4).size);
+			assertEquals(commit.getName(), files.get(0).commitId);
+
+			for (String path : new String[] { "src", "src/main", "src/main/java/com/gdk", "[C++]", "[C++]/x",
+					"docs/a/b/c", "src/" }) {
+				files = JGitUtils.getFilesInPath2(repository, path, commit);
+				assertEquals(path, listCompressed(repository, path, commit), describe(files));
+			}
+			assertEquals("[main/java/com/gdk|src/main/java/com/gdk|40000, test/java|src/test/java|40000]",
+					names(JGitUtils.getFilesInPath2(repository, "src", commit)));
+			assertEquals("[x|[C++]/x|40000, main.cpp|[C++]/main.cpp|100644]",
+					names(JGitUtils.getFilesInPath2(repository, "[C++]", commit)));
+
+			// files and missing folders
+			assertTrue(JGitUtils.getFilesInPath2(repository, "README.md", commit).isEmpty());
+			assertTrue(JGitUtils.getFilesInPath2(repository, "missing", commit).isEmpty());
+		} finally {
+			FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
+		}
+	}
+
+	/**
+	 * Lists the folder by compressing the paths of all files below it.
+	 */
+	private static String listCompressed(Repository repository, String path, RevCommit commit) throws Exception {
+		String base = path == null ? "" : path.replaceAll("/+$", "") + "/";
+		List<String> paths = new ArrayList<String>();
+		try (TreeWalk tw = new TreeWalk(repository)) {
+			tw.addTree(commit.getTree());
+			tw.setRecursive(true);
+			if (path != null) {
+				tw.setFilter(PathFilter.create(path));
+			}
+			while (tw.next()) {
+				paths.add(tw.getPathString().substring(base.length()));
+			}
+		}
+		List<PathModel> list = new ArrayList<PathModel>();
+		for (String p : PathUtils.compressPaths(paths)) {
+			String name = p.endsWith("/") ? p.substring(0, p.length() - 1) : p;
+			try (TreeWalk tw = TreeWalk.forPath(repository, base + p, commit.getTree())) {
+				list.add(new PathModel(name, tw.getPathString(), null, 0, tw.getRawMode(0),
+						tw.getObjectId(0).getName(), commit.getName()));
+			}
+		}
+		Collections.sort(list);
+		return describe(list);
+	}
+
+	private static String describe(List<PathModel> files) {
+		List<String> list = new ArrayList<String>();
+		for (PathModel file : files) {
+			list.add(file.name + "|" + file.path + "|" + Integer.toOctalString(file.mode) + "|" + file.objectId);
+		}
+		return list.toString();
+	}
+
+	private static String names(List<PathModel> files) {
+		List<String> list = new ArrayList<String>();
+		for (PathModel file : files) {
+			list.add(file.name + "|" + file.path + "|" + Integer.toOctalString(file.mode));
+		}
+		return list.toString();
+	}
+
+	/**
+	 * A folder of a tree which is written with {@link TreeFormatter}.
+	 */
+	private static class Folder {
+
+		final TreeMap<String, Object> entries = new TreeMap<String, Object>();
+
+		void add(String path, String content) {
+			folder(path).entries.put(path.substring(path.lastIndexOf('/') + 1), content);
+		}
+
+		void gitlink(String path) {
+			folder(path).entries.put(path.substring(path.lastIndexOf('/') + 1), ObjectId.zeroId());
+		}
+
+		private Folder folder(String path) {
+			Folder folder = this;
+			String[] names = path.split("/");
+			for (int i = 0; i < names.length - 1; i++) {
+				Folder child = (Folder) folder.entries.get(names[i]);
+				if (child == null) {
+					child = new Folder();
+					folder.entries.put(names[i], child);
+				}
+				folder = child;
+			}
+			return folder;
+		}
+
+		ObjectId insert(ObjectInserter inserter) throws Exception {
+			// tree entries are sorted as if folders end with a slash
+			TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+			for (String name : entries.keySet()) {
+				Object entry = entries.get(name);
+				sorted.put(entry instanceof Folder ? name + "/" : name, entry);
+			}
+			TreeFormatter tree = new TreeFormatter();
+			for (String key : sorted.keySet()) {
+				Object entry = sorted.get(key);
+				if (entry instanceof Folder) {
+					tree.append(key.substring(0, key.length() - 1), FileMode.TREE, ((Folder) entry).insert(inserter));
+				} else if (entry instanceof ObjectId) {
+					tree.append(key, FileMode.GITLINK, (ObjectId) entry);
+				} else {
+					tree.append(key, FileMode.REGULAR_FILE, inserter.insert(org.eclipse.jgit.lib.Constants.OBJ_BLOB,
+							((String) entry).getBytes(StandardCharsets.UTF_8)));
+				}
+			}
+			return inserter.insert(tree);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.gdk.git;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+public class LastCommitCacheTest extends org.junit.Assert {
+
+	@Test
+	public void testLastCommits() throws Exception {
+		LastCommitCache cache = LastCommitCache.instance();
+		cache.clear();
+		try (TestRepository test = new TestRepository("lastcommits")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			for (int i = 0; i < 5; i++) {
+				test.write("src/file" + i + ".txt", "first");
+			}
+			test.write("README.md", "readme");
+			test.commit("initial");
+			for (int i = 0; i < 10; i++) {
+				test.write("src/file" + (i % 3) + ".txt", "change " + i);
+				test.commit("change " + i);
+			}
+			git.checkout().setCreateBranch(true).setName("topic").setStartPoint("master~4").call();
+			test.write("src/file3.txt", "topic");
+			test.write("src/nested/deep.txt", "topic");
+			test.commit("topic");
+			// a commit older than its parent
+			test.time -= 100_000;
+			test.write("src/file4.txt", "skewed");
+			test.commit("skewed");
+			test.time += 100_000;
+			git.checkout().setName("master").call();
+			test.write("src/file0.txt", "before merge");
+			test.commit("before merge");
+			git.merge().include(repository.resolve("topic")).setMessage("merge topic").call();
+			git.rm().addFilepattern("src/file1.txt").call();
+			test.commit("remove file1");
+			test.write("src/file1.txt", "added again");
+			test.commit("add file1 again");
+
+			RevCommit head = JGitUtils.getCommit(repository, null);
+			for (String path : new String[] { null, "src", "src/", "src/nested" }) {
+				assertEquals(String.valueOf(path), getRevLogs(repository, head, path),
+						names(JGitUtils.getLastCommits(repository, path, head, 0)));
+			}
+			assertEquals("add file1 again", JGitUtils.getLastCommits(repository, "src", head, 0)
+					.get("file1.txt").getShortMessage());
+			assertEquals("initial", JGitUtils.getLastCommits(repository, null, head, 0)
+					.get("README.md").getShortMessage());
+			assertTrue(JGitUtils.getLastCommits(repository, "missing", head, 0).isEmpty());
+
+			// a new commit reuses the results of its parent
+			test.write("src/file2.txt", "latest");
+			RevCommit latest = test.commit("latest");
+			long misses = cache.stats().missCount();
+			long hits = cache.stats().hitCount();
+			Map<String, RevCommit> commits = JGitUtils.getLastCommits(repository, "src", latest, 0);
+			assertEquals(getRevLogs(repository, latest, "src"), names(commits));
+			assertEquals(latest, commits.get("file2.txt"));
+			assertEquals(misses + 1, cache.stats().missCount());
+			assertEquals(hits + 1, cache.stats().hitCount());
+			hits = cache.stats().hitCount();
+			assertEquals(names(commits), names(JGitUtils.getLastCommits(repository, "src", latest, 0)));
+			assertEquals(hits + 1, cache.stats().hitCount());
+
+			// the history of older commits
+			RevCommit older = JGitUtils.getCommit(repository, "master~5");
+			assertEquals(getRevLogs(repository, older, "src"),
+					names(JGitUtils.getLastCommits(repository, "src", older, 0)));
+
+			cache.clear(test.folder);
+			assertEquals(0, cache.size());
+		} finally {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Finds the last commit of every entry by a path-limited rev log.
+	 */
+	private static Map<String, String> getRevLogs(Repository repository, RevCommit commit, String path) {
+		String base = path == null ? "" : path.replaceAll("/+$", "") + "/";
+		Map<String, String> commits = new LinkedHashMap<String, String>();
+		for (PathModel entry : JGitUtils.getFilesInPath(repository, path, commit)) {
+			List<RevCommit> log = JGitUtils.getRevLog(repository, commit.getName(), base + entry.name, 0, 1);
+			commits.put(entry.name, log.get(0).getShortMessage());
+		}
+		return new TreeMap<String, String>(commits);
+	}
+
+	private static Map<String, String> names(Map<String, RevCommit> commits) {
+		Map<String, String> names = new TreeMap<String, String>();
+		for (Map.Entry<String, RevCommit> entry : commits.entrySet()) {
+			names.put(entry.getKey(), entry.getValue().getShortMessage());
+		}
+		return names;
+	}
+}
@@ -0,0 +1,167 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+import com.gdk.git.JGitUtils.AheadBehind;
+
+public class MergeBaseCacheTest extends org.junit.Assert {
+
+	@Test
+	public void testAheadBehind() throws Exception {
+		MergeBaseCache cache = MergeBaseCache.instance();
+		cache.clear();
+		try (TestRepository test = new TestRepository("mergebase")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			for (int i = 0; i < 10; i++) {
+				test.change("a.txt", i);
+			}
+			for (int n = 0; n < 4; n++) {
+				git.checkout().setCreateBranch(true).setName("topic" + n).setStartPoint("master~" + (n * 2)).call();
+				for (int i = 0; i < n + 1; i++) {
+					test.change("b" + n + ".txt", i);
+				}
+			}
+			// merged into master
+			git.checkout().setName("master").call();
+			test.change("a.txt", 10);
+			git.merge().include(repository.resolve("topic1")).setMessage("merge topic1").call();
+			test.change("a.txt", 11);
+			// a commit older than its parent
+			git.checkout().setCreateBranch(true).setName("skewed").setStartPoint("master~3").call();
+			test.time -= 100_000;
+			test.change("c.txt", 0);
+			test.time += 100_000;
+			test.change("c.txt", 1);
+			git.checkout().setCreateBranch(true).setName("same").setStartPoint("master").call();
+			git.checkout().setOrphan(true).setName("orphan").call();
+			test.change("d.txt", 0);
+			git.checkout().setName("master").call();
+
+			ObjectId master = repository.resolve("master");
+			Map<String, AheadBehind> counts = JGitUtils.getAheadBehind(repository);
+			assertEquals(repository.getRefDatabase().getRefsByPrefix(org.eclipse.jgit.lib.Constants.R_HEADS).size(),
+					counts.size());
+			for (Ref ref : repository.getRefDatabase().getRefsByPrefix(org.eclipse.jgit.lib.Constants.R_HEADS)) {
+				ObjectId tip = ref.getObjectId();
+				AheadBehind expected = new AheadBehind(count(repository, master, tip), count(repository, tip, master));
+				assertEquals(ref.getName(), expected, counts.get(ref.getName()));
+			}
+			assertEquals(new AheadBehind(0, 0), counts.get("refs/heads/same"));
+			assertEquals(new AheadBehind(0, 5), counts.get("refs/heads/topic1"));
+			assertEquals(new AheadBehind(2, 5), counts.get("refs/heads/skewed"));
+			assertEquals(new AheadBehind(1, 15), counts.get("refs/heads/orphan"));
+
+			// the counts of the walk are cached
+			long misses = cache.stats().missCount();
+			ObjectId topic3 = repository.resolve("topic3");
+			assertEquals(4, JGitUtils.countCommits(repository, new RevWalk(repository), master, topic3));
+			assertEquals(misses, cache.stats().missCount());
+			assertEquals(counts, JGitUtils.getAheadBehind(repository));
+			assertEquals(misses, cache.stats().missCount());
+
+			// cached ancestry and merge bases
+			ObjectId topic0 = repository.resolve("topic0");
+			String base = mergeBase(repository, master, topic0);
+			for (int i = 0; i < 2; i++) {
+				assertEquals(base, JGitUtils.getMergeBase(repository, master, topic0));
+				assertNull(JGitUtils.getMergeBase(repository, master, repository.resolve("orphan")));
+				assertTrue(JGitUtils.isMergedInto(repository, repository.resolve("topic1"), master));
+				assertFalse(JGitUtils.isMergedInto(repository, topic0, master));
+			}
+			assertEquals(misses + 4, cache.stats().missCount());
+
+			cache.clear(test.folder);
+			assertEquals(0, cache.size());
+		} finally {
+			cache.clear();
+		}
+	}
+
+	@Test
+	public void testAheadBehindBelowSkewedCommit() throws Exception {
+		File folder = Files.createTempDirectory("mergebase").toFile();
+		MergeBaseCache.instance().clear();
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			// the base reaches x and r only through f, which is older than both
+			ObjectId r, x, f, b, g, t;
+			try (ObjectInserter inserter = repository.newObjectInserter()) {
+				r = insertCommit(inserter, "r", 100);
+				x = insertCommit(inserter, "x", 500, r);
+				f = insertCommit(inserter, "f", 50, x);
+				b = insertCommit(inserter, "b", 300, f);
+				g = insertCommit(inserter, "g", 350, f);
+				t = insertCommit(inserter, "t", 400, x, g);
+				inserter.flush();
+			}
+			Map<String, AheadBehind> counts = JGitUtils.getAheadBehind(repository, b,
+					Collections.singletonMap("t", t));
+			assertEquals(new AheadBehind(2, 1), counts.get("t"));
+			assertEquals(new AheadBehind(count(repository, b, t), count(repository, t, b)), counts.get("t"));
+		} finally {
+			MergeBaseCache.instance().clear();
+			FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
+		}
+	}
+
+	private static ObjectId insertCommit(ObjectInserter inserter, String message, long time, ObjectId... parents)
+			throws Exception {
+		CommitBuilder commit = new CommitBuilder();
+		commit.setTreeId(inserter.insert(new TreeFormatter()));
+		commit.setParentIds(parents);
+		PersonIdent ident = new PersonIdent("alice", "alice@example.com", Instant.ofEpochSecond(time), ZoneOffset.UTC);
+		commit.setAuthor(ident);
+		commit.setCommitter(ident);
+		commit.setMessage(message);
+		return inserter.insert(commit);
+	}
+
+	/**
+	 * The number of commits of the tip which are not in the base.
+	 */
+	private static int count(Repository repository, ObjectId base, ObjectId tip) throws Exception {
+		try (RevWalk rw = new RevWalk(repository)) {
+			// not misled by the skewed commit
+			rw.sort(RevSort.TOPO);
+			rw.markStart(rw.parseCommit(tip));
+			rw.markUninteresting(rw.parseCommit(base));
+			int count = 0;
+			while (rw.next() != null) {
+				count++;
+			}
+			return count;
+		}
+	}
+
+	private static String mergeBase(Repository repository, ObjectId a, ObjectId b) throws Exception {
+		try (RevWalk rw = new RevWalk(repository)) {
+			rw.setRevFilter(RevFilter.MERGE_BASE);
+			rw.markStart(rw.parseCommit(a));
+			rw.markStart(rw.parseCommit(b));
+			RevCommit base = rw.next();
+			return base == null ? null : base.getName();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.gdk.git;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+
+public class ObjectCacheTest extends org.junit.Assert {
+
+	@Test
+	public void testVersions() {
+		ObjectCache<String> cache = new ObjectCache<String>(10);
+		assertEquals("a1", cache.get("a", 1, previous -> {
+			assertNull(previous);
+			return "a1";
+		}));
+		assertEquals("a1", cache.get("a", 1, previous -> {
+			fail("current object reloaded");
+			return null;
+		}));
+		assertEquals("a1", cache.getIfCurrent("a", 1));
+		assertNull(cache.getIfCurrent("a", 2));
+		assertEquals("a2", cache.get("a", 2, previous -> {
+			assertEquals("a1", previous);
+			return "a2";
+		}));
+		assertEquals("a2", cache.remove("a"));
+		assertNull(cache.getIfPresent("a"));
+
+		CacheStats stats = cache.stats();
+		assertEquals(2, stats.hitCount());
+		assertEquals(3, stats.missCount());
+		assertEquals(2, stats.loadSuccessCount());
+	}
+
+	@Test
+	public void testWeightBudget() {
+		ObjectCache<String> cache = new ObjectCache<String>(100, (name, value) -> value.length());
+		for (int i = 0; i < 20; i++) {
+			cache.put("key" + i, 0, "0123456789");
+		}
+		assertTrue(cache.size() <= 10);
+		assertTrue(cache.stats().evictionCount() >= 10);
+		assertNotNull(cache.getIfPresent("key19"));
+	}
+
+	@Test
+	public void testRemoveByPrefix() {
+		ObjectCache<String> cache = new ObjectCache<String>(10);
+		cache.put("a:1", 0, "a1");
+		cache.put("a:2", 0, "a2");
+		cache.put("b:1", 0, "b1");
+		assertTrue(cache.removeByPrefix("a:"));
+		assertFalse(cache.removeByPrefix("a:"));
+		assertEquals(1, cache.size());
+		assertEquals("b1", cache.getIfPresent("b:1"));
+	}
+
+	@Test
+	public void testSingleLoad() throws Exception {
+		final ObjectCache<String> cache = new ObjectCache<String>(10);
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return cache.get("a", 1, previous -> {
+						loads.incrementAndGet();
+						try {
+							Thread.sleep(50);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return "a1";
+					});
+				}));
+			}
+			start.countDown();
+			for (Future<String> result : results) {
+				assertEquals("a1", result.get(10, TimeUnit.SECONDS));
+			}
+			assertEquals(1, loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testStaleWhileLoading() throws Exception {
+		final ObjectCache<String> cache = new ObjectCache<String>(10);
+		cache.put("a", 1, "a1");
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> load = executor.submit(() -> cache.get("a", 2, previous -> {
+				loading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return "a2";
+			}));
+			assertTrue(loading.await(10, TimeUnit.SECONDS));
+			assertEquals("a1", cache.get("a", 2, previous -> {
+				fail("concurrent load");
+				return null;
+			}, true));
+			assertEquals(1, cache.getStaleHitCount());
+			release.countDown();
+			assertEquals("a2", load.get(10, TimeUnit.SECONDS));
+			assertEquals("a2", cache.get("a", 2, previous -> "a3", true));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,1197 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache.FileKey;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.gdk.git.Constants.SearchType;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Coarse performance checks for the hot paths of the repository manager.
+ * <p>
+ * These tests build large synthetic fixtures and are skipped unless the
+ * build is run with -Dgdk.benchmarks=true.
+ */
+public class PerformanceTest extends org.junit.Assert {
+
+	private static final int WARMUP = 2;
+
+	private static final int ROUNDS = 5;
+
+	@BeforeClass
+	public static void checkEnabled() {
+		assumeTrue(Boolean.getBoolean("gdk.benchmarks"));
+	}
+
+	private static File createTempFolder(String prefix) throws IOException {
+		return Files.createTempDirectory(prefix).toFile();
+	}
+
+	private static void delete(File folder) throws IOException {
+		FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY | FileUtils.SKIP_MISSING);
+	}
+
+	private static void report(String name, long nanos, int rounds) {
+		System.out.println(MessageFormat.format("{0}: {1} us/op", name,
+				String.format("%.3f", nanos / 1_000d / rounds)));
+	}
+
+	/**
+	 * Creates the minimal layout which is recognized as a bare repository.
+	 */
+	private static void createBareRepositoryLayout(File folder) throws IOException {
+		new File(folder, "objects").mkdirs();
+		new File(folder, "refs/heads").mkdirs();
+		Files.write(new File(folder, "HEAD").toPath(), "ref: refs/heads/master\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testRepositoryDiscovery() throws Exception {
+		final int groups = 500;
+		final int repositoriesPerGroup = 100;
+		File folder = createTempFolder("discovery");
+		try {
+			for (int g = 0; g < groups; g++) {
+				File group = new File(folder, "group" + g);
+				for (int r = 0; r < repositoriesPerGroup; r++) {
+					createBareRepositoryLayout(new File(group, "repository" + r + ".git"));
+				}
+				// plain folders which must be searched and pruned
+				new File(group, "docs/images").mkdirs();
+				new File(group, "excluded/nested").mkdirs();
+			}
+			List<String> exclusions = new ArrayList<String>();
+			exclusions.add(".*/excluded");
+
+			List<String> expected = null;
+			List<String> actual = null;
+			for (int i = 0; i < WARMUP; i++) {
+				expected = listRecursively(folder, exclusions);
+				actual = JGitUtils.getRepositoryList(folder, false, true, -1, exclusions);
+			}
+			assertEquals(groups * repositoriesPerGroup, actual.size());
+			assertEquals(expected, actual);
+
+			long start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				listRecursively(folder, exclusions);
+			}
+			report("recursive discovery (" + actual.size() + " repositories)", System.nanoTime() - start, ROUNDS);
+
+			start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				JGitUtils.getRepositoryList(folder, false, true, -1, exclusions);
+			}
+			report("parallel discovery (" + actual.size() + " repositories)", System.nanoTime() - start, ROUNDS);
+		} finally {
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testRepositoryModelCopy() {
+		final int iterations = 20_000;
+		RepositoryModel model = RepositoryModelTest.newRepositoryModel(200, 20);
+		for (int i = 0; i < iterations; i++) {
+			DeepCopier.copy(model);
+			model.copy();
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			DeepCopier.copy(model);
+		}
+		long deepCopy = System.nanoTime() - start;
+		report("DeepCopier.copy (200 forks)", deepCopy, iterations);
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			model.copy();
+		}
+		long copy = System.nanoTime() - start;
+		report("RepositoryModel.copy (200 forks)", copy, iterations);
+		assertTrue(copy < deepCopy);
+	}
+
+	@Test
+	public void testCommitCacheReaders() throws Exception {
+		final int readers = 64;
+		final int commits = 2000;
+		File folder = createTempFolder("commitcache");
+		try (Git git = Git.init().setDirectory(folder).setInitialBranch("master").call()) {
+			for (int i = 0; i < commits; i++) {
+				git.commit().setMessage("commit " + i).setAllowEmpty(true).call();
+			}
+			measureCommitCacheReaders("synchronized commit cache", new SynchronizedCommitCache(), git, readers);
+			measureCommitCacheReaders("commit cache", new CommitCache(), git, readers);
+		} finally {
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testCommitHistoryFootprint() throws Exception {
+		final int commits = 1_000_000;
+		long baseline = usedHeap();
+		List<RepositoryCommit> list = new ArrayList<RepositoryCommit>(commits);
+		for (int i = 0; i < commits; i++) {
+			list.add(new RepositoryCommit("test.git", "refs/heads/master", createCommit(i)));
+		}
+		long models = usedHeap() - baseline;
+		assertEquals(commits, list.size());
+		list = null;
+
+		baseline = usedHeap();
+		CommitHistory.Builder builder = new CommitHistory.Builder();
+		for (int i = 0; i < commits; i++) {
+			builder.add(createCommit(i), null);
+		}
+		CommitHistory history = builder.build();
+		builder = null;
+		long columns = usedHeap() - baseline;
+		assertEquals(commits, history.size());
+
+		System.out.println(MessageFormat.format("{0} cached commits: {1} MB as RepositoryCommits, {2} MB as CommitHistory (weight {3} MB)",
+				commits, models >> 20, columns >> 20, history.getWeight() >> 20));
+		assertTrue(columns < models);
+	}
+
+	@Test
+	public void testCommitGraphWalks() throws Exception {
+		final int commits = 500_000;
+		final int rounds = 3;
+		File folder = createTempFolder("commitgraph");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			long start = System.nanoTime();
+			ObjectId[] ends = createHistory(repository, commits);
+			System.out.println(MessageFormat.format("created {0} commits in {1} msecs", commits,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+			start = System.nanoTime();
+			assertTrue(CommitGraphs.write(repository, false));
+			assertFalse(CommitGraphs.isStale(repository, false));
+			System.out.println(MessageFormat.format("wrote commit-graph of {0} commits in {1} msecs", commits,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+			StoredConfig config = repository.getConfig();
+			// measure the walks, not the merge base cache
+			MergeBaseCache.instance().setCacheSize(0);
+			for (boolean graph : new boolean[] { false, true }) {
+				config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_COMMIT_GRAPH, graph);
+				String suffix = graph ? " with commit-graph" : " without commit-graph";
+				measureCommitGraphWalks(repository, ends, suffix, 1);
+				measureCommitGraphWalks(repository, ends, suffix, rounds);
+			}
+		} finally {
+			MergeBaseCache.instance().setCacheSize(MergeBaseCache.DEFAULT_SIZE);
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testAheadBehind() throws Exception {
+		final int commits = 200_000;
+		final int branches = 100;
+		File folder = createTempFolder("aheadbehind");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			ObjectId tip = createHistory(repository, commits)[1];
+			// branches of two commits every 100 mainline commits below the tip
+			Map<String, ObjectId> tipIds = new LinkedHashMap<String, ObjectId>();
+			try (RevWalk rw = new RevWalk(repository);
+					ObjectInserter inserter = repository.newObjectInserter()) {
+				ObjectId tree = inserter.insert(new TreeFormatter());
+				RevCommit commit = rw.parseCommit(tip);
+				for (int b = 0; b < branches; b++) {
+					for (int i = 0; i < 100; i++) {
+						commit = rw.parseCommit(commit.getParent(0));
+					}
+					ObjectId branch = insertCommit(inserter, tree, commits + b, "branch " + b, commit);
+					branch = insertCommit(inserter, tree, commits + b, "branch " + b + " fixup", branch);
+					tipIds.put("refs/heads/branch" + b, branch);
+				}
+				inserter.flush();
+			}
+
+			MergeBaseCache cache = MergeBaseCache.instance();
+			cache.setCacheSize(0);
+			Map<String, JGitUtils.AheadBehind> expected = new LinkedHashMap<String, JGitUtils.AheadBehind>();
+			long start = System.nanoTime();
+			for (Map.Entry<String, ObjectId> branch : tipIds.entrySet()) {
+				int ahead = JGitUtils.countCommits(repository, new RevWalk(repository), tip, branch.getValue());
+				int behind = JGitUtils.countCommits(repository, new RevWalk(repository), branch.getValue(), tip);
+				expected.put(branch.getKey(), new JGitUtils.AheadBehind(ahead, behind));
+			}
+			report("ahead/behind of " + branches + " branches by countCommits", System.nanoTime() - start, 1);
+
+			cache.setCacheSize(MergeBaseCache.DEFAULT_SIZE);
+			start = System.nanoTime();
+			assertEquals(expected, JGitUtils.getAheadBehind(repository, tip, tipIds));
+			report("ahead/behind of " + branches + " branches in one walk", System.nanoTime() - start, 1);
+
+			start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				assertEquals(expected, JGitUtils.getAheadBehind(repository, tip, tipIds));
+			}
+			report("ahead/behind of " + branches + " cached branches", System.nanoTime() - start, ROUNDS);
+		} finally {
+			MergeBaseCache.instance().setCacheSize(MergeBaseCache.DEFAULT_SIZE);
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testTagPages() throws Exception {
+		final int tags = 100_000;
+		final int rounds = 10;
+		File folder = createTempFolder("tagpages");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			ObjectId tip = createHistory(repository, tags)[1];
+			// one tag per mainline commit in the packed-refs
+			List<String> lines = new ArrayList<String>();
+			try (RevWalk rw = new RevWalk(repository)) {
+				rw.setRetainBody(false);
+				rw.setRevFilter(RevFilter.NO_MERGES);
+				rw.markStart(rw.parseCommit(tip));
+				RevCommit commit;
+				for (int i = 0; i < tags && (commit = rw.next()) != null; i++) {
+					lines.add(commit.name() + " refs/tags/v" + String.format("%06d", i));
+				}
+			}
+			Collections.sort(lines, (l1, l2) -> l1.substring(41).compareTo(l2.substring(41)));
+			lines.add(0, "# pack-refs with: peeled fully-peeled sorted ");
+			Files.write(new File(folder, org.eclipse.jgit.lib.Constants.PACKED_REFS).toPath(), lines,
+					StandardCharsets.UTF_8);
+
+			RefCache.instance().clear();
+			long start = System.nanoTime();
+			List<RefModel> expected = new ArrayList<RefModel>();
+			try (RevWalk rw = new RevWalk(repository)) {
+				for (Ref ref : repository.getRefDatabase().getRefsByPrefix(org.eclipse.jgit.lib.Constants.R_TAGS)) {
+					expected.add(new RefModel(ref.getName(), ref, rw.parseAny(ref.getObjectId())));
+				}
+			}
+			Collections.sort(expected);
+			Collections.reverse(expected);
+			expected = expected.subList(0, 50);
+			report("first tag page by parsing all tags", System.nanoTime() - start, 1);
+
+			start = System.nanoTime();
+			assertEquals(expected, JGitUtils.getTags(repository, true, 50));
+			report("first tag page, cold cache", System.nanoTime() - start, 1);
+
+			start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				assertEquals(expected, JGitUtils.getTags(repository, true, 50));
+			}
+			report("first tag page, cached", System.nanoTime() - start, rounds);
+
+			start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				assertEquals(50, JGitUtils.getTags(repository, true, 50, 50_000).size());
+			}
+			report("middle tag page, cached", System.nanoTime() - start, rounds);
+
+			RefUpdate update = repository.updateRef("refs/tags/newest");
+			update.setNewObjectId(tip);
+			assertEquals(RefUpdate.Result.NEW, update.update());
+			start = System.nanoTime();
+			// the new tag has the date of v000000 and sorts after it
+			assertEquals("refs/tags/newest", JGitUtils.getTags(repository, true, 50).get(1).getName());
+			report("first tag page after a new tag", System.nanoTime() - start, 1);
+		} finally {
+			RefCache.instance().clear();
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testRefStorage() throws Exception {
+		for (String refs : System.getProperty("gdk.benchmarks.refs", "10000,100000,1000000").split(",")) {
+			measureRefStorage(Integer.parseInt(refs.trim()));
+		}
+	}
+
+	/**
+	 * Measures the ref listings and ref updates of a repository with patchset
+	 * refs in the packed-refs and after the refs are converted to a reftable.
+	 */
+	private static void measureRefStorage(int refs) throws Exception {
+		final int rounds = refs > 100_000 ? 3 : 10;
+		final int updates = 20;
+		File folder = createTempFolder("refstorage");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			ObjectId[] ends = createHistory(repository, 2000);
+			// one patchset commit per ref on top of master
+			List<String> lines = new ArrayList<String>();
+			try (ObjectInserter inserter = ((ObjectDirectory) repository.getObjectDatabase()).newPackInserter()) {
+				ObjectId tree = inserter.insert(new TreeFormatter());
+				for (int i = 0; i < refs; i++) {
+					ObjectId id = insertCommit(inserter, tree, i, "patchset " + i, ends[1]);
+					lines.add(id.name() + " refs/changes/" + String.format("%02d", i % 100) + "/" + i + "/1");
+				}
+				inserter.flush();
+			}
+			lines.add(ends[1].name() + " refs/heads/master");
+			lines.add(ends[2].name() + " refs/heads/topic");
+			Collections.sort(lines, (l1, l2) -> l1.substring(41).compareTo(l2.substring(41)));
+			lines.add(0, "# pack-refs with: peeled fully-peeled sorted ");
+			Files.write(new File(folder, org.eclipse.jgit.lib.Constants.PACKED_REFS).toPath(), lines,
+					StandardCharsets.UTF_8);
+			// the loose refs of createHistory are packed
+			new File(folder, "refs/heads/master").delete();
+			new File(folder, "refs/heads/topic").delete();
+
+			for (boolean reftable : new boolean[] { false, true }) {
+				if (reftable) {
+					long start = System.nanoTime();
+					assertTrue(JGitUtils.convertRefStorage(repository, true));
+					report("convert " + refs + " refs to reftable", System.nanoTime() - start, 1);
+				}
+				String suffix = " (" + refs + " refs, " + (reftable ? "reftable" : "packed-refs") + ")";
+				assertEquals(refs + 3, repository.getRefDatabase().getRefs().size());
+
+				long start = System.nanoTime();
+				for (int i = 0; i < rounds; i++) {
+					RefCache.instance().clear();
+					assertEquals(2, JGitUtils.getLocalBranches(repository, true, -1).size());
+				}
+				report("getRefs of the branches" + suffix, System.nanoTime() - start, rounds);
+
+				start = System.nanoTime();
+				RefCache.instance().clear();
+				assertEquals(refs + 2, JGitUtils.getAllRefs(repository).size());
+				report("getAllRefs" + suffix, System.nanoTime() - start, 1);
+				RefCache.instance().clear();
+
+				start = System.nanoTime();
+				for (int i = 0; i < updates; i++) {
+					RefUpdate update = repository.updateRef("refs/changes/00/new" + i + "/1");
+					update.setNewObjectId(ends[1]);
+					assertEquals(RefUpdate.Result.NEW, update.update());
+				}
+				report("create ref" + suffix, System.nanoTime() - start, updates);
+
+				start = System.nanoTime();
+				for (int i = 0; i < updates; i++) {
+					RefUpdate update = repository.updateRef("refs/changes/00/new" + i + "/1");
+					update.setForceUpdate(true);
+					assertEquals(RefUpdate.Result.FORCED, update.delete());
+				}
+				report("delete ref" + suffix, System.nanoTime() - start, updates);
+			}
+		} finally {
+			RefCache.instance().clear();
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testFilesInPath() throws Exception {
+		final int files = 15_000;
+		final int folders = 5_000;
+		final String path = "modules/core/src/big";
+		File folder = createTempFolder("filesinpath");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			RevCommit commit;
+			try (ObjectInserter inserter = ((ObjectDirectory) repository.getObjectDatabase()).newPackInserter();
+					RevWalk rw = new RevWalk(repository)) {
+				// files and chains of two folders, folder names sort after the files
+				TreeFormatter big = new TreeFormatter();
+				for (int i = 0; i < files; i++) {
+					ObjectId blob = inserter.insert(org.eclipse.jgit.lib.Constants.OBJ_BLOB,
+							("file " + i).getBytes(StandardCharsets.UTF_8));
+					big.append(String.format("file%05d.txt", i), FileMode.REGULAR_FILE, blob);
+				}
+				for (int i = 0; i < folders; i++) {
+					ObjectId blob = inserter.insert(org.eclipse.jgit.lib.Constants.OBJ_BLOB,
+							("nested " + i).getBytes(StandardCharsets.UTF_8));
+					TreeFormatter leaf = new TreeFormatter();
+					leaf.append("a.txt", FileMode.REGULAR_FILE, blob);
+					leaf.append("b.txt", FileMode.REGULAR_FILE, blob);
+					TreeFormatter chain = new TreeFormatter();
+					chain.append("impl", FileMode.TREE, inserter.insert(leaf));
+					big.append(String.format("pkg%05d", i), FileMode.TREE, inserter.insert(chain));
+				}
+				ObjectId tree = inserter.insert(big);
+				String[] names = path.split("/");
+				for (int i = names.length - 1; i >= 0; i--) {
+					TreeFormatter parent = new TreeFormatter();
+					parent.append(names[i], FileMode.TREE, tree);
+					tree = inserter.insert(parent);
+				}
+				ObjectId id = insertCommit(inserter, tree, 0, "files");
+				inserter.flush();
+				commit = rw.parseCommit(id);
+			}
+			RefUpdate update = repository.updateRef("refs/heads/master");
+			update.setNewObjectId(commit);
+			assertEquals(RefUpdate.Result.NEW, update.update());
+
+			// the former listing: a recursive walk and a tree walk per entry
+			long nanos = 0;
+			for (int i = 0; i < WARMUP + ROUNDS; i++) {
+				long start = System.nanoTime();
+				List<String> paths = new ArrayList<String>();
+				try (TreeWalk tw = new TreeWalk(repository)) {
+					tw.addTree(commit.getTree());
+					tw.setRecursive(true);
+					tw.setFilter(PathFilter.create(path));
+					while (tw.next()) {
+						paths.add(tw.getPathString().substring(path.length() + 1));
+					}
+				}
+				int count = 0;
+				for (String p : PathUtils.compressPaths(paths)) {
+					try (TreeWalk tw = TreeWalk.forPath(repository, path + "/" + p, commit.getTree())) {
+						if (!tw.isSubtree()) {
+							tw.getObjectReader().getObjectSize(tw.getObjectId(0), org.eclipse.jgit.lib.Constants.OBJ_BLOB);
+						}
+						count++;
+					}
+				}
+				assertEquals(files + folders, count);
+				if (i >= WARMUP) {
+					nanos += System.nanoTime() - start;
+				}
+			}
+			report("compressed listing of " + (files + folders) + " entries by path", nanos, ROUNDS);
+
+			TreeListingCache.instance().setCacheSize(0);
+			nanos = 0;
+			for (int i = 0; i < WARMUP + ROUNDS; i++) {
+				long start = System.nanoTime();
+				List<PathModel> list = JGitUtils.getFilesInPath2(repository, path, commit);
+				assertEquals(files + folders, list.size());
+				assertEquals("pkg00000/impl", list.get(0).name);
+				if (i >= WARMUP) {
+					nanos += System.nanoTime() - start;
+				}
+			}
+			report("compressed listing of " + (files + folders) + " entries in one pass", nanos, ROUNDS);
+
+			// another commit with the same folder
+			RevCommit next;
+			try (ObjectInserter inserter = repository.newObjectInserter(); RevWalk rw = new RevWalk(repository)) {
+				ObjectId id = insertCommit(inserter, commit.getTree(), 1, "same files", commit);
+				inserter.flush();
+				next = rw.parseCommit(id);
+			}
+			TreeListingCache.instance().setCacheSize(TreeListingCache.DEFAULT_SIZE);
+			long start = System.nanoTime();
+			JGitUtils.getFilesInPath2(repository, path, commit);
+			report("compressed listing of " + (files + folders) + " entries, cache miss", System.nanoTime() - start, 1);
+			nanos = 0;
+			for (int i = 0; i < WARMUP + ROUNDS; i++) {
+				start = System.nanoTime();
+				List<PathModel> list = JGitUtils.getFilesInPath2(repository, path, i % 2 == 0 ? next : commit);
+				assertEquals(files + folders, list.size());
+				if (i >= WARMUP) {
+					nanos += System.nanoTime() - start;
+				}
+			}
+			report("compressed listing of " + (files + folders) + " entries, cached", nanos, ROUNDS);
+			System.out.println("listing cache: " + TreeListingCache.instance().stats());
+		} finally {
+			TreeListingCache.instance().setCacheSize(TreeListingCache.DEFAULT_SIZE);
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testPathHistory() throws Exception {
+		final int commits = 100_000;
+		final int rounds = 3;
+		File folder = createTempFolder("pathhistory");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			createPathHistory(repository, commits);
+			String path = "dir7/file7.txt";
+			StoredConfig config = repository.getConfig();
+
+			config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_COMMIT_GRAPH, false);
+			int matches = measurePathHistory(repository, path, "path history without commit-graph", rounds);
+
+			assertTrue(CommitGraphs.write(repository, false));
+			assertEquals(matches, measurePathHistory(repository, path, "path history with commit-graph", rounds));
+
+			long start = System.nanoTime();
+			assertTrue(CommitGraphs.write(repository, true));
+			System.out.println(MessageFormat.format("wrote changed-path filters of {0} commits in {1} msecs", commits,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+			assertEquals(matches, measurePathHistory(repository, path, "path history with changed-path filters", rounds));
+		} finally {
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testRevLogPages() throws Exception {
+		final int commits = 200_000;
+		final int depth = 100_000;
+		final int pageSize = 50;
+		final int rounds = 10;
+		File folder = createTempFolder("revlogpages");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			createHistory(repository, commits);
+			assertTrue(CommitGraphs.write(repository, false));
+
+			// the token of the page at the depth
+			List<RevCommit> expected = JGitUtils.getRevLog(repository, "master", depth, pageSize);
+			String token = null;
+			for (int i = 0; i < depth / pageSize; i++) {
+				token = JGitUtils.getRevLogPage(repository, "master", null, token, pageSize).nextToken;
+			}
+			assertEquals(expected, JGitUtils.getRevLogPage(repository, "master", null, token, pageSize).commits);
+
+			for (int i = 0; i < WARMUP; i++) {
+				JGitUtils.getRevLog(repository, "master", depth, pageSize);
+				JGitUtils.getRevLogPage(repository, "master", null, token, pageSize);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				assertEquals(pageSize, JGitUtils.getRevLog(repository, "master", depth, pageSize).size());
+			}
+			report("revlog page at offset " + depth, System.nanoTime() - start, rounds);
+			start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				assertEquals(pageSize, JGitUtils.getRevLogPage(repository, "master", null, token, pageSize).commits.size());
+			}
+			report("revlog page at token of offset " + depth, System.nanoTime() - start, rounds);
+		} finally {
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testRevLogVisitorFootprint() throws Exception {
+		final int commits = 500_000;
+		File folder = createTempFolder("revlogvisitor");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			createHistory(repository, commits);
+			assertTrue(CommitGraphs.write(repository, false));
+
+			long[] list = measureRevLogList(repository);
+			long listed = list[0];
+			long messages = list[1];
+
+			long baseline = usedHeap();
+			final long[] visited = new long[3];
+			JGitUtils.walkRevLog(repository, "master", null, new JGitUtils.RevLogVisitor() {
+				@Override
+				public boolean visit(RevCommit commit) throws IOException {
+					visited[0]++;
+					visited[1] += commit.getFullMessage().length();
+					if (commit.getParentCount() == 0) {
+						// the last commit, the walk still holds all commits
+						try {
+							visited[2] = usedHeap();
+						} catch (InterruptedException e) {
+							throw new IOException(e);
+						}
+					}
+					return true;
+				}
+			});
+			long walked = visited[2] - baseline;
+			assertEquals(messages, visited[1]);
+
+			System.out.println(MessageFormat.format("revlog of {0} commits: {1} MB as list, {2} MB during the visit",
+					visited[0], listed >> 20, walked >> 20));
+			assertTrue(walked < listed);
+		} finally {
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testCommitIndexSearch() throws Exception {
+		final int commits = 200_000;
+		final int rounds = 10;
+		File folder = createTempFolder("commitindex");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			createHistory(repository, commits);
+			assertTrue(CommitGraphs.write(repository, false));
+			String[][] queries = { { "COMMIT", "fixup" }, { "COMMIT", "commit 19999" }, { "AUTHOR", "developer 42" } };
+
+			List<List<RevCommit>> expected = new ArrayList<List<RevCommit>>();
+			for (String[] query : queries) {
+				expected.add(JGitUtils.searchRevlogs(repository, "master", query[1], SearchType.forName(query[0]), 0, 25));
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				for (String[] query : queries) {
+					JGitUtils.searchRevlogs(repository, "master", query[1], SearchType.forName(query[0]), 0, 25);
+				}
+			}
+			report("search walk", System.nanoTime() - start, rounds * queries.length);
+
+			CommitIndex index = new CommitIndex();
+			start = System.nanoTime();
+			assertEquals(commits + (commits - 1) / 50 * 2, index.update(repository));
+			System.out.println(MessageFormat.format("indexed {0} commits in {1} msecs", commits,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+			for (int i = 0; i < WARMUP; i++) {
+				for (String[] query : queries) {
+					index.search(repository, "master", query[1], SearchType.forName(query[0]), 0, 25);
+				}
+			}
+			start = System.nanoTime();
+			for (int i = 0; i < rounds; i++) {
+				for (int q = 0; q < queries.length; q++) {
+					assertEquals(expected.get(q), index.search(repository, "master", queries[q][1],
+							SearchType.forName(queries[q][0]), 0, 25));
+				}
+			}
+			report("search index", System.nanoTime() - start, rounds * queries.length);
+		} finally {
+			delete(folder);
+		}
+	}
+
+	@Test
+	public void testSearchFilterAllocations() throws Exception {
+		final int commits = 200_000;
+		File folder = createTempFolder("searchfilter");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			createHistory(repository, commits);
+			assertTrue(CommitGraphs.write(repository, false));
+
+			// the allocations of the walk and of reading the bodies
+			long walk = measureSearchFilter(repository, new ParsingSearchFilter(SearchType.COMMIT, "missing", false), null);
+			for (SearchType type : new SearchType[] { SearchType.AUTHOR, SearchType.COMMIT }) {
+				long parsed = measureSearchFilter(repository, new ParsingSearchFilter(type, "missing", true), type + " parsed");
+				long raw = measureSearchFilter(repository, new RawSearchFilter(type, "missing"), type + " raw");
+				System.out.println(MessageFormat.format("{0} search: {1} bytes/commit parsed, {2} bytes/commit raw",
+						type, parsed - walk, raw - walk));
+				assertTrue(raw - walk < parsed - walk);
+			}
+			long raw = measureSearchFilter(repository, new RawSearchFilter(SearchType.COMMIT, "missing", "topic 9", "fixup",
+					"merge topic 1", "commit 42"), "COMMIT raw 5 values");
+			System.out.println(MessageFormat.format("commit search of 5 values: {0} bytes/commit raw", raw - walk));
+		} finally {
+			delete(folder);
+		}
+	}
+
+	/**
+	 * Walks master with the filter.
+	 *
+	 * @return the allocated bytes per walked commit
+	 */
+	private static long measureSearchFilter(Repository repository, final RevFilter filter, String name) throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final int[] count = new int[1];
+		RevFilter counting = new RevFilter() {
+			@Override
+			public boolean include(RevWalk walker, RevCommit commit) throws IOException {
+				count[0]++;
+				return filter.include(walker, commit);
+			}
+
+			@Override
+			public RevFilter clone() {
+				return this;
+			}
+		};
+		long bytes = 0;
+		long nanos = 0;
+		for (int i = 0; i <= WARMUP; i++) {
+			count[0] = 0;
+			long allocated = threads.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			try (RevWalk rw = new RevWalk(repository)) {
+				rw.setRevFilter(counting);
+				rw.markStart(rw.parseCommit(repository.resolve("master")));
+				while (rw.next() != null) {
+				}
+			}
+			nanos = System.nanoTime() - start;
+			bytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+		}
+		if (name != null) {
+			report("search filter " + name, nanos, count[0]);
+		}
+		return bytes / count[0];
+	}
+
+	/**
+	 * The search filter which lower cases the parsed fields.
+	 */
+	private static class ParsingSearchFilter extends RevFilter {
+
+		private final SearchType type;
+
+		private final String lcValue;
+
+		private final boolean parse;
+
+		ParsingSearchFilter(SearchType type, String value, boolean parse) {
+			this.type = type;
+			this.lcValue = value.toLowerCase();
+			this.parse = parse;
+		}
+
+		@Override
+		public boolean include(RevWalk walker, RevCommit commit) {
+			if (!parse) {
+				// reads the body like the other filters
+				return false;
+			}
+			switch (type) {
+				case AUTHOR:
+					return commit.getAuthorIdent().getName().toLowerCase().indexOf(lcValue) > -1
+							|| commit.getAuthorIdent().getEmailAddress().toLowerCase().indexOf(lcValue) > -1;
+				case COMMITTER:
+					return commit.getCommitterIdent().getName().toLowerCase().indexOf(lcValue) > -1
+							|| commit.getCommitterIdent().getEmailAddress().toLowerCase().indexOf(lcValue) > -1;
+				default:
+					return commit.getFullMessage().toLowerCase().indexOf(lcValue) > -1;
+			}
+		}
+
+		@Override
+		public RevFilter clone() {
+			return this;
+		}
+	}
+
+	/**
+	 * @return the heap of the revlog list and the length of its messages
+	 */
+	private static long[] measureRevLogList(Repository repository) throws InterruptedException {
+		long baseline = usedHeap();
+		List<RevCommit> list = JGitUtils.getRevLog(repository, "master", 0, -1);
+		long listed = usedHeap() - baseline;
+		long messages = 0;
+		for (RevCommit commit : list) {
+			messages += commit.getFullMessage().length();
+		}
+		return new long[] { listed, messages };
+	}
+
+	@Test
+	public void testLastCommits() throws Exception {
+		final int commits = 100_000;
+		File folder = createTempFolder("lastcommits");
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(folder).setBare().build()) {
+			repository.create(true);
+			createPathHistory(repository, commits);
+			assertTrue(CommitGraphs.write(repository, true));
+			RevCommit head = JGitUtils.getCommit(repository, "master");
+			for (String path : new String[] { null, "dir7" }) {
+				measureLastCommits(repository, head, path);
+			}
+
+			// a new commit which changes one file
+			RevCommit next;
+			try (ObjectInserter inserter = repository.newObjectInserter(); RevWalk rw = new RevWalk(repository)) {
+				TreeFormatter root = new TreeFormatter();
+				try (TreeWalk tw = new TreeWalk(repository)) {
+					tw.addTree(head.getTree());
+					while (tw.next()) {
+						ObjectId id = tw.getObjectId(0);
+						if (tw.getNameString().equals("dir7")) {
+							ObjectId[] blobs = new ObjectId[10];
+							Arrays.fill(blobs, inserter.insert(org.eclipse.jgit.lib.Constants.OBJ_BLOB,
+									"next".getBytes(StandardCharsets.UTF_8)));
+							id = insertFolder(inserter, blobs);
+						}
+						root.append(tw.getNameString(), FileMode.TREE, id);
+					}
+				}
+				ObjectId id = insertCommit(inserter, inserter.insert(root), commits, "next", head);
+				inserter.flush();
+				next = rw.parseCommit(id);
+			}
+			for (String path : new String[] { null, "dir7" }) {
+				long start = System.nanoTime();
+				Map<String, RevCommit> last = JGitUtils.getLastCommits(repository, path, next, 0);
+				report("last commits of " + (path == null ? "the root folder" : path) + " of a new commit",
+						System.nanoTime() - start, 1);
+				assertEquals(next, last.get(path == null ? "dir7" : "file0.txt"));
+			}
+			System.out.println("last commit cache: " + LastCommitCache.instance().stats());
+		} finally {
+			LastCommitCache.instance().clear();
+			delete(folder);
+		}
+	}
+
+	private static void measureLastCommits(Repository repository, RevCommit head, String path) {
+		String name = path == null ? "the root folder" : path;
+		String base = path == null ? "" : path + "/";
+		List<PathModel> entries = JGitUtils.getFilesInPath(repository, path, head);
+		Map<String, RevCommit> expected = new LinkedHashMap<String, RevCommit>();
+		long start = System.nanoTime();
+		for (PathModel entry : entries) {
+			expected.put(entry.name, JGitUtils.getRevLog(repository, head.getName(), base + entry.name, 0, 1).get(0));
+		}
+		report("last commits of " + name + " (" + entries.size() + " entries) by a rev log per entry",
+				System.nanoTime() - start, 1);
+
+		long nanos = 0;
+		for (int i = 0; i < WARMUP + ROUNDS; i++) {
+			LastCommitCache.instance().clear();
+			start = System.nanoTime();
+			assertEquals(expected, JGitUtils.getLastCommits(repository, path, head, 0));
+			if (i >= WARMUP) {
+				nanos += System.nanoTime() - start;
+			}
+		}
+		report("last commits of " + name + " in one walk", nanos, ROUNDS);
+
+		start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			assertEquals(expected, JGitUtils.getLastCommits(repository, path, head, 0));
+		}
+		report("last commits of " + name + ", cached", System.nanoTime() - start, ROUNDS);
+	}
+
+	private static int measurePathHistory(Repository repository, String path, String name, int rounds) {
+		int matches = JGitUtils.getRevLog(repository, "master", path, 0, -1).size();
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			assertEquals(matches, JGitUtils.getRevLog(repository, "master", path, 0, -1).size());
+		}
+		report(name + " (" + matches + " matching commits)", System.nanoTime() - start, rounds);
+		return matches;
+	}
+
+	/**
+	 * Writes a single pack with a history in which every commit changes one
+	 * of 1000 files in 100 folders, so each file is changed by one in 1000
+	 * commits.
+	 */
+	private static void createPathHistory(Repository repository, int commits) throws IOException {
+		final int folders = 100;
+		final int files = 10;
+		ObjectId[][] blobs = new ObjectId[folders][files];
+		ObjectId[] trees = new ObjectId[folders];
+		ObjectId tip = null;
+		try (ObjectInserter inserter = ((ObjectDirectory) repository.getObjectDatabase()).newPackInserter()) {
+			ObjectId blob = inserter.insert(org.eclipse.jgit.lib.Constants.OBJ_BLOB, new byte[0]);
+			for (ObjectId[] folder : blobs) {
+				Arrays.fill(folder, blob);
+			}
+			// tree entries are sorted by name
+			String[] names = new String[folders];
+			for (int d = 0; d < folders; d++) {
+				names[d] = "dir" + d;
+			}
+			Arrays.sort(names);
+			for (int d = 0; d < folders; d++) {
+				trees[d] = insertFolder(inserter, blobs[d]);
+			}
+			for (int i = 0; i < commits; i++) {
+				int d = i % folders;
+				int f = (i / folders) % files;
+				blobs[d][f] = inserter.insert(org.eclipse.jgit.lib.Constants.OBJ_BLOB,
+						("change " + i).getBytes(StandardCharsets.UTF_8));
+				trees[d] = insertFolder(inserter, blobs[d]);
+				TreeFormatter root = new TreeFormatter();
+				for (String name : names) {
+					root.append(name, FileMode.TREE, trees[Integer.parseInt(name.substring(3))]);
+				}
+				ObjectId tree = inserter.insert(root);
+				tip = tip == null ? insertCommit(inserter, tree, i, "change " + i)
+						: insertCommit(inserter, tree, i, "change " + i, tip);
+			}
+			inserter.flush();
+		}
+		RefUpdate update = repository.updateRef("refs/heads/master");
+		update.setNewObjectId(tip);
+		assertEquals(RefUpdate.Result.NEW, update.update());
+	}
+
+	private static ObjectId insertFolder(ObjectInserter inserter, ObjectId[] blobs) throws IOException {
+		TreeFormatter tree = new TreeFormatter();
+		for (int f = 0; f < blobs.length; f++) {
+			tree.append("file" + f + ".txt", FileMode.REGULAR_FILE, blobs[f]);
+		}
+		return inserter.insert(tree);
+	}
+
+	/**
+	 * Runs the history walks of the repository helpers, the first call only
+	 * warms up the pack and JIT.
+	 */
+	private static void measureCommitGraphWalks(Repository repository, ObjectId[] ends, String suffix, int rounds) {
+		boolean report = rounds > 1;
+		ObjectId root = ends[0];
+		ObjectId tip = ends[1];
+		ObjectId side = ends[2];
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			assertEquals(root, JGitUtils.getFirstCommit(repository, "master").getId());
+		}
+		if (report) {
+			report("getFirstCommit" + suffix, System.nanoTime() - start, rounds);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			assertTrue(JGitUtils.isMergedInto(repository, root, tip));
+		}
+		if (report) {
+			report("isMergedInto (root)" + suffix, System.nanoTime() - start, rounds);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			assertFalse(JGitUtils.isMergedInto(repository, side, tip));
+		}
+		if (report) {
+			report("isMergedInto (unmerged branch)" + suffix, System.nanoTime() - start, rounds);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			assertNotNull(JGitUtils.getMergeBase(repository, tip, side));
+		}
+		if (report) {
+			report("getMergeBase" + suffix, System.nanoTime() - start, rounds);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			assertTrue(JGitUtils.countCommits(repository, new RevWalk(repository), root, tip) > 0);
+		}
+		if (report) {
+			report("countCommits" + suffix, System.nanoTime() - start, rounds);
+		}
+	}
+
+	/**
+	 * Writes a single pack with a mainline of commits which merges a two
+	 * commit topic branch every 50 commits. The last topic branch is left
+	 * unmerged 1000 commits before the tip.
+	 *
+	 * @return the root commit, the tip of master and the tip of the topic
+	 */
+	private static ObjectId[] createHistory(Repository repository, int commits) throws IOException {
+		ObjectId root;
+		ObjectId tip;
+		ObjectId side = null;
+		try (ObjectInserter inserter = ((ObjectDirectory) repository.getObjectDatabase()).newPackInserter()) {
+			ObjectId tree = inserter.insert(new TreeFormatter());
+			root = insertCommit(inserter, tree, 0, "commit 0");
+			tip = root;
+			for (int i = 1; i < commits; i++) {
+				if (i % 50 == 0) {
+					ObjectId topic = insertCommit(inserter, tree, i, "topic " + i, tip);
+					topic = insertCommit(inserter, tree, i, "topic " + i + " fixup", topic);
+					if (i == commits - 1000) {
+						side = topic;
+						tip = insertCommit(inserter, tree, i, "commit " + i, tip);
+					} else {
+						tip = insertCommit(inserter, tree, i, "merge topic " + i, tip, topic);
+					}
+				} else {
+					tip = insertCommit(inserter, tree, i, "commit " + i, tip);
+				}
+			}
+			inserter.flush();
+		}
+		RefUpdate update = repository.updateRef("refs/heads/master");
+		update.setNewObjectId(tip);
+		assertEquals(RefUpdate.Result.NEW, update.update());
+		update = repository.updateRef("refs/heads/topic");
+		update.setNewObjectId(side);
+		assertEquals(RefUpdate.Result.NEW, update.update());
+		return new ObjectId[] { root, tip, side };
+	}
+
+	private static ObjectId insertCommit(ObjectInserter inserter, ObjectId tree, int i, String message,
+			ObjectId... parents) throws IOException {
+		PersonIdent ident = new PersonIdent("Developer " + (i % 500), "developer" + (i % 500) + "@example.com",
+				Instant.ofEpochSecond(1_700_000_000L + i), ZoneOffset.ofHours(1));
+		CommitBuilder commit = new CommitBuilder();
+		commit.setTreeId(tree);
+		commit.setParentIds(parents);
+		commit.setAuthor(ident);
+		commit.setCommitter(ident);
+		commit.setMessage(message);
+		return inserter.insert(commit);
+	}
+
+	/**
+	 * Parses a synthetic commit with one of 500 authors and a unique message.
+	 */
+	private static RevCommit createCommit(int i) {
+		ObjectId tree = ObjectId.fromString(String.format("%08x%032x", i, 1));
+		ObjectId parent = ObjectId.fromString(String.format("%08x%032x", i + 1, 0));
+		String author = "Developer " + (i % 500) + " <developer" + (i % 500) + "@example.com> " + (1_700_000_000L + i) + " +0100";
+		String raw = "tree " + tree.name() + "\n"
+				+ "parent " + parent.name() + "\n"
+				+ "author " + author + "\n"
+				+ "committer " + author + "\n"
+				+ "\n"
+				+ "Fix issue #" + i + " in the repository manager\n"
+				+ "\n"
+				+ "The repository manager did not handle case " + i + " correctly, this\n"
+				+ "change handles it and adds a test for it.\n";
+		return RevCommit.parse(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Runs dashboard readers against the cache for a few seconds while the
+	 * branch is updated every 100 msecs.
+	 */
+	private static void measureCommitCacheReaders(String name, final CommitCache cache, Git git, int readers)
+			throws Exception {
+		final Repository repository = git.getRepository();
+		cache.setCacheDays(14);
+		cache.getCommits("test.git", repository, "master");
+
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final LongAdder reads = new LongAdder();
+		final AtomicLong maxLatency = new AtomicLong();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < readers; i++) {
+			Thread thread = new Thread(() -> {
+				while (running.get()) {
+					long start = System.nanoTime();
+					cache.getCommits("test.git", repository, "master");
+					maxLatency.accumulateAndGet(System.nanoTime() - start, Math::max);
+					reads.increment();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+
+		long start = System.nanoTime();
+		long duration = TimeUnit.SECONDS.toNanos(5);
+		int updates = 0;
+		while (System.nanoTime() - start < duration) {
+			Thread.sleep(100);
+			git.commit().setMessage("update " + updates++).setAllowEmpty(true).call();
+		}
+		running.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		List<RepositoryCommit> list = cache.getCommits("test.git", repository, "master");
+		assertEquals(git.log().setMaxCount(1).call().iterator().next().getName(), list.get(0).getName());
+		System.out.println(MessageFormat.format("{0} ({1} readers, {2} updates): {3} reads/s, max latency {4} msecs",
+				name, readers, updates, String.format("%.0f", reads.sum() * 1e9 / elapsed),
+				TimeUnit.NANOSECONDS.toMillis(maxLatency.get())));
+	}
+
+	/**
+	 * Serializes all requests like the commit cache which held a lock per
+	 * repository while a branch was loaded. Kept here as the baseline for
+	 * comparison.
+	 */
+	private static class SynchronizedCommitCache extends CommitCache {
+
+		@Override
+		public synchronized List<RepositoryCommit> getCommits(String repositoryName, Repository repository,
+				String branch, Date sinceDate) {
+			return super.getCommits(repositoryName, repository, branch, sinceDate);
+		}
+	}
+
+	/**
+	 * The single-threaded File.listFiles discovery which RepositoryDiscovery
+	 * replaced. Kept here as the baseline for comparison.
+	 */
+	private static List<String> listRecursively(File repositoriesFolder, List<String> exclusions) {
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for (String regex : exclusions) {
+			patterns.add(Pattern.compile(regex));
+		}
+		List<String> list = listRecursively(repositoriesFolder, repositoriesFolder, -1, patterns);
+		StringUtils.sortRepositorynames(list);
+		return list;
+	}
+
+	private static List<String> listRecursively(File baseFile, File searchFolder, int depth, List<Pattern> patterns) {
+		List<String> list = new ArrayList<String>();
+		if (depth == 0) {
+			return list;
+		}
+		int nextDepth = (depth == -1) ? -1 : depth - 1;
+		for (File file : searchFolder.listFiles()) {
+			if (file.isDirectory()) {
+				boolean exclude = false;
+				for (Pattern pattern : patterns) {
+					String path = GitFileUtils.getRelativePath(baseFile, file).replace('\\', '/');
+					if (pattern.matcher(path).matches()) {
+						exclude = true;
+						break;
+					}
+				}
+				if (exclude) {
+					continue;
+				}
+				File gitDir = FileKey.resolve(new File(searchFolder, file.getName()), FS.DETECTED);
+				if (gitDir != null && (gitDir.equals(file) || gitDir.getParentFile().equals(file))) {
+					list.add(GitFileUtils.getRelativePath(baseFile, file));
+				} else if (file.canRead()) {
+					list.addAll(listRecursively(baseFile, file, nextDepth, patterns));
+				}
+			}
+		}
+		return list;
+	}
+}
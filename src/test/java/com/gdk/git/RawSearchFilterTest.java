@@ -0,0 +1,118 @@
+package com.gdk.git;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+import com.gdk.git.Constants.SearchType;
+
+public class RawSearchFilterTest extends org.junit.Assert {
+
+	private static final String[] VALUES = { "alice", "ALICE", "example", "e.com", "ice <", "ice@", "fix", "FIX #1",
+			"ürgen", "JÜRGEN", "i̇", "k", "#12", "x", "", "missing" };
+
+	@Test
+	public void testMatch() {
+		List<RevCommit> commits = Arrays.asList(
+				commit("Alice Smith <ALICE@Example.com>", "Fix #12 in the parser\n\nDetails.\n"),
+				commit("Jürgen Müller <juergen@example.com>", "Überarbeitet\n"),
+				commit("İsmail <ismail@example.com>", "FIX the Kelvin sign\n"),
+				commit("Bob  <bob@example.com>", "x\n"),
+				commit("<anonymous@example.com>", "\n"));
+		for (RevCommit commit : commits) {
+			for (SearchType type : SearchType.values()) {
+				for (String value : VALUES) {
+					assertEquals(type + " " + value + " in " + new String(commit.getRawBuffer(), StandardCharsets.UTF_8),
+							matches(commit, type, value), new RawSearchFilter(type, value).match(commit) != 0);
+				}
+				// all values at once
+				long expected = 0;
+				for (int i = 0; i < VALUES.length; i++) {
+					if (matches(commit, type, VALUES[i])) {
+						expected |= 1L << i;
+					}
+				}
+				assertEquals(expected, new RawSearchFilter(type, VALUES).match(commit));
+			}
+		}
+	}
+
+	@Test
+	public void testParallelSearch() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try (TestRepository test = new TestRepository("rawsearch")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			for (int i = 0; i < 10; i++) {
+				test.change("a.txt", i, i % 2 == 0 ? "alice" : "bob");
+			}
+			List<String> branches = new ArrayList<String>(Arrays.asList("master"));
+			for (int n = 0; n < 3; n++) {
+				git.checkout().setCreateBranch(true).setName("topic" + n).setStartPoint("master~" + (n * 3)).call();
+				for (int i = 0; i < 4; i++) {
+					test.change("b.txt", 100 * n + i, i % 2 == 0 ? "alice" : "carol");
+				}
+				branches.add("topic" + n);
+			}
+			branches.add("topic0");
+
+			List<String> values = Arrays.asList("change 1", "change 20");
+			Set<RevCommit> union = new LinkedHashSet<RevCommit>();
+			for (String branch : branches) {
+				for (String value : values) {
+					union.addAll(JGitUtils.searchRevlogs(repository, branch, value, SearchType.COMMIT, 0, -1));
+				}
+			}
+			List<RevCommit> expected = new ArrayList<RevCommit>(union);
+			expected.sort((c1, c2) -> Integer.compare(c2.getCommitTime(), c1.getCommitTime()));
+			assertTrue(expected.size() > 3);
+
+			assertEquals(expected, JGitUtils.searchRevlogs(repository, branches, values, SearchType.COMMIT, -1, null));
+			assertEquals(expected, JGitUtils.searchRevlogs(repository, branches, values, SearchType.COMMIT, -1, executor));
+			assertEquals(expected.subList(0, 3),
+					JGitUtils.searchRevlogs(repository, branches, values, SearchType.COMMIT, 3, executor));
+			assertEquals(6, JGitUtils.searchRevlogs(repository, branches, Arrays.asList("CAROL"), SearchType.AUTHOR, -1,
+					executor).size());
+			assertTrue(JGitUtils.searchRevlogs(repository, branches, Arrays.asList("missing"), SearchType.AUTHOR, -1,
+					executor).isEmpty());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The match of the parsed and lower case fields.
+	 */
+	private static boolean matches(RevCommit commit, SearchType type, String value) {
+		String lcValue = value.toLowerCase();
+		switch (type) {
+			case AUTHOR:
+				return commit.getAuthorIdent().getName().toLowerCase().contains(lcValue)
+						|| commit.getAuthorIdent().getEmailAddress().toLowerCase().contains(lcValue);
+			case COMMITTER:
+				return commit.getCommitterIdent().getName().toLowerCase().contains(lcValue)
+						|| commit.getCommitterIdent().getEmailAddress().toLowerCase().contains(lcValue);
+			default:
+				return commit.getFullMessage().toLowerCase().contains(lcValue);
+		}
+	}
+
+	private static RevCommit commit(String ident, String message) {
+		String raw = "tree 4b825dc642cb6eb9a060e54bf8d69288fbee4904\n"
+				+ "author " + ident + " 1700000000 +0100\n"
+				+ "committer " + ident + " 1700000000 +0100\n"
+				+ "\n"
+				+ message;
+		return RevCommit.parse(raw.getBytes(StandardCharsets.UTF_8));
+	}
+}
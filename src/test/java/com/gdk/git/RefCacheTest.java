@@ -0,0 +1,110 @@
+package com.gdk.git;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Test;
+
+public class RefCacheTest extends org.junit.Assert {
+
+	@Test
+	public void testRefs() throws Exception {
+		RefCache.instance().clear();
+		try (TestRepository test = new TestRepository("refcache")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			List<RevCommit> commits = new ArrayList<RevCommit>();
+			for (int i = 0; i < 20; i++) {
+				commits.add(test.change("a.txt", i));
+			}
+			for (int i = 0; i < 20; i++) {
+				// lightweight and annotated tags, some with the same date
+				if (i % 2 == 0) {
+					git.tag().setName("lightweight" + i).setObjectId(commits.get(i)).setAnnotated(false).call();
+				} else {
+					PersonIdent tagger = new PersonIdent("alice", "alice@example.com",
+							Instant.ofEpochSecond(test.time + (i % 5)), ZoneOffset.UTC);
+					git.tag().setName("annotated" + i).setObjectId(commits.get(i)).setTagger(tagger)
+							.setMessage("tag " + i).call();
+				}
+				git.branchCreate().setName("branch" + i).setStartPoint(commits.get(i % 4)).call();
+			}
+
+			for (String prefix : new String[] { org.eclipse.jgit.lib.Constants.R_TAGS,
+					org.eclipse.jgit.lib.Constants.R_HEADS, RefDatabase.ALL }) {
+				for (boolean fullName : new boolean[] { false, true }) {
+					List<RefModel> expected = getRefs(repository, prefix, fullName);
+					assertRefs(expected, RefCache.instance().getRefs(repository, prefix, fullName, -1, 0));
+					for (int offset = 0; offset < expected.size(); offset += 7) {
+						assertRefs(expected.subList(offset, Math.min(offset + 7, expected.size())),
+								RefCache.instance().getRefs(repository, prefix, fullName, 7, offset));
+					}
+					assertTrue(RefCache.instance().getRefs(repository, prefix, fullName, 7, 100).isEmpty());
+					// the page size is larger than the list
+					assertRefs(expected, RefCache.instance().getRefs(repository, prefix, fullName, 100, 7));
+				}
+			}
+			assertRefs(getRefs(repository, org.eclipse.jgit.lib.Constants.R_TAGS, true),
+					JGitUtils.getTags(repository, true, -1));
+
+			// the cached list is replaced when the refs change
+			git.tag().setName("newest").setObjectId(test.change("a.txt", 20)).setAnnotated(false).call();
+			git.branchDelete().setBranchNames("branch3").call();
+			for (String prefix : new String[] { org.eclipse.jgit.lib.Constants.R_TAGS,
+					org.eclipse.jgit.lib.Constants.R_HEADS }) {
+				List<RefModel> expected = getRefs(repository, prefix, true);
+				assertRefs(expected, RefCache.instance().getRefs(repository, prefix, true, -1, 0));
+				assertRefs(expected.subList(0, 3), RefCache.instance().getRefs(repository, prefix, true, 3, 0));
+			}
+			assertEquals("refs/tags/newest", JGitUtils.getTags(repository, true, 1).get(0).displayName);
+
+			RefCache.instance().clear(test.folder);
+			assertEquals(0, RefCache.instance().cache.size());
+		} finally {
+			RefCache.instance().clear();
+		}
+	}
+
+	/**
+	 * Lists the refs by parsing and sorting all of them.
+	 */
+	@SuppressWarnings("deprecation")
+	private static List<RefModel> getRefs(Repository repository, String prefix, boolean fullName) throws Exception {
+		List<RefModel> list = new ArrayList<RefModel>();
+		try (RevWalk rw = new RevWalk(repository)) {
+			for (Map.Entry<String, Ref> entry : repository.getRefDatabase().getRefs(prefix).entrySet()) {
+				String name = fullName && !prefix.isEmpty() ? prefix + entry.getKey() : entry.getKey();
+				list.add(new RefModel(name, entry.getValue(), rw.parseAny(entry.getValue().getObjectId())));
+			}
+		}
+		Collections.sort(list);
+		Collections.reverse(list);
+		return list;
+	}
+
+	private static void assertRefs(List<RefModel> expected, List<RefModel> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			RefModel e = expected.get(i);
+			RefModel a = actual.get(i);
+			assertEquals(e.displayName, a.displayName);
+			assertEquals(e.getName(), a.getName());
+			assertEquals(e.getDate(), a.getDate());
+			assertEquals(e.getObjectId(), a.getObjectId());
+			assertEquals(e.getReferencedObjectId(), a.getReferencedObjectId());
+			assertEquals(e.isAnnotatedTag(), a.isAnnotatedTag());
+			assertEquals(e.getShortMessage(), a.getShortMessage());
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+public class RefStorageTest extends org.junit.Assert {
+
+	@Test
+	public void testConvertRefStorage() throws Exception {
+		File folder = Files.createTempDirectory("refstorage").toFile();
+		RefCache.instance().clear();
+		try {
+			try (Repository repository = JGitUtils.createRepository(folder, "refs.git", "FALSE", true)) {
+				assertTrue(JGitUtils.isReftable(repository));
+				assertTrue(new File(repository.getDirectory(), "reftable").isDirectory());
+				ObjectId commit = insertCommit(repository);
+				update(repository, "refs/heads/master", commit);
+				update(repository, "refs/tags/v1", commit);
+				assertEquals(2, JGitUtils.getRefs(repository, org.eclipse.jgit.lib.RefDatabase.ALL).size());
+				assertEquals(commit, JGitUtils.getDefaultBranch(repository));
+			}
+
+			try (Repository repository = JGitUtils.createRepository(folder, "loose.git", "FALSE")) {
+				assertFalse(JGitUtils.isReftable(repository));
+				ObjectId commit = insertCommit(repository);
+				for (int i = 0; i < 100; i++) {
+					update(repository, "refs/tags/t" + i, commit);
+				}
+				update(repository, "refs/heads/master", commit);
+				List<String> expected = names(JGitUtils.getTags(repository, true, -1));
+				assertEquals(100, expected.size());
+
+				assertTrue(JGitUtils.convertRefStorage(repository, true));
+				assertFalse(JGitUtils.convertRefStorage(repository, true));
+				assertTrue(JGitUtils.isReftable(repository));
+				assertEquals(expected, names(JGitUtils.getTags(repository, true, -1)));
+				// the cached tag list is replaced
+				update(repository, "refs/tags/t100", commit);
+				assertEquals(101, JGitUtils.getTags(repository, true, -1).size());
+			}
+
+			// a new instance reads the reftable
+			File gitDir = new File(folder, "loose.git");
+			try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).build()) {
+				assertTrue(JGitUtils.isReftable(repository));
+				// 101 tags, master and HEAD
+				assertEquals(103, repository.getRefDatabase().getRefs().size());
+				RefUpdate delete = repository.updateRef("refs/tags/t100");
+				delete.setForceUpdate(true);
+				assertEquals(RefUpdate.Result.FORCED, delete.delete());
+
+				assertTrue(JGitUtils.convertRefStorage(repository, false));
+				assertFalse(JGitUtils.isReftable(repository));
+			}
+			try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).build()) {
+				assertFalse(JGitUtils.isReftable(repository));
+				assertEquals(102, repository.getRefDatabase().getRefs().size());
+				assertEquals(100, JGitUtils.getTags(repository, true, -1).size());
+			}
+		} finally {
+			RefCache.instance().clear();
+			FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
+		}
+	}
+
+	private static List<String> names(List<RefModel> refs) {
+		List<String> names = new ArrayList<String>();
+		for (RefModel ref : refs) {
+			names.add(ref.getName());
+		}
+		return names;
+	}
+
+	private static ObjectId insertCommit(Repository repository) throws Exception {
+		try (ObjectInserter inserter = repository.newObjectInserter()) {
+			PersonIdent ident = new PersonIdent("alice", "alice@example.com", Instant.ofEpochSecond(1_700_000_000L),
+					ZoneOffset.UTC);
+			CommitBuilder commit = new CommitBuilder();
+			commit.setTreeId(inserter.insert(new TreeFormatter()));
+			commit.setAuthor(ident);
+			commit.setCommitter(ident);
+			commit.setMessage("commit");
+			ObjectId id = inserter.insert(commit);
+			inserter.flush();
+			return id;
+		}
+	}
+
+	private static void update(Repository repository, String name, ObjectId id) throws Exception {
+		RefUpdate update = repository.updateRef(name);
+		update.setNewObjectId(id);
+		Ref ref = repository.exactRef(name);
+		assertEquals(ref == null ? RefUpdate.Result.NEW : RefUpdate.Result.NO_CHANGE, update.update());
+	}
+}
@@ -0,0 +1,109 @@
+package com.gdk.git;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+
+import com.gdk.git.Constants.AccessRestrictionType;
+import com.gdk.git.Constants.AuthorizationControl;
+import com.gdk.git.Constants.CommitMessageRenderer;
+import com.gdk.git.Constants.FederationStrategy;
+import com.gdk.git.Constants.MergeType;
+
+public class RepositoryModelTest extends org.junit.Assert {
+
+	public static RepositoryModel newRepositoryModel(int forks, int customFields) {
+		RepositoryModel model = new RepositoryModel("group/test.git", "a test repository", "admin", new Date());
+		model.lastChangeAuthor = "James Moger";
+		model.hasCommits = true;
+		model.showRemoteBranches = true;
+		model.useIncrementalPushTags = true;
+		model.incrementalPushTagPrefix = "r";
+		model.accessRestriction = AccessRestrictionType.CLONE;
+		model.authorizationControl = AuthorizationControl.AUTHENTICATED;
+		model.allowAuthenticated = true;
+		model.isFrozen = true;
+		model.federationStrategy = FederationStrategy.FEDERATE_ORIGIN;
+		model.federationSets.add("set");
+		model.isFederated = true;
+		model.skipSizeCalculation = true;
+		model.skipSummaryMetrics = true;
+		model.frequency = "daily";
+		model.isMirror = true;
+		model.origin = "https://example.com/test.git";
+		model.HEAD = "refs/heads/master";
+		model.availableRefs = Arrays.asList("refs/heads/master", "refs/heads/develop");
+		model.indexedBranches = Arrays.asList("refs/heads/master");
+		model.size = "1 MB";
+		model.preReceiveScripts = Arrays.asList("pre");
+		model.postReceiveScripts = Arrays.asList("post");
+		model.mailingLists = Arrays.asList("list@example.com");
+		model.customFields = new LinkedHashMap<String, String>();
+		for (int i = 0; i < customFields; i++) {
+			model.customFields.put("field" + i, "value" + i);
+		}
+		model.allowForks = true;
+		for (int i = 0; i < forks; i++) {
+			model.addFork("~user" + i + "/test.git");
+		}
+		model.originRepository = "origin.git";
+		model.verifyCommitter = true;
+		model.gcThreshold = "1MB";
+		model.gcPeriod = 3;
+		model.maxActivityCommits = 50;
+		model.metricAuthorExclusions = Arrays.asList("bot");
+		model.commitMessageRenderer = CommitMessageRenderer.MARKDOWN;
+		model.acceptNewPatchsets = false;
+		model.acceptNewTickets = false;
+		model.requireApproval = true;
+		model.mergeTo = "develop";
+		model.mergeType = MergeType.MERGE_IF_NECESSARY;
+		model.useReftable = true;
+		model.lastGC = new Date(1000);
+		model.sparkleshareId = "sparkle";
+		model.isCollectingGarbage = true;
+		model.toString();
+		return model;
+	}
+
+	@Test
+	public void testCopyMatchesDeepCopy() throws Exception {
+		RepositoryModel model = newRepositoryModel(20, 5);
+		RepositoryModel copy = model.copy();
+		RepositoryModel deepCopy = DeepCopier.copy(model);
+		for (Field field : RepositoryModel.class.getDeclaredFields()) {
+			int modifiers = field.getModifiers();
+			if (Modifier.isStatic(modifiers)) {
+				continue;
+			}
+			field.setAccessible(true);
+			if (Modifier.isTransient(modifiers)) {
+				// runtime state is not copied
+				assertEquals(field.getName(), field.get(deepCopy), field.get(copy));
+				continue;
+			}
+			Object value = field.get(model);
+			assertNotNull("test model does not set " + field.getName(), value);
+			assertEquals(field.getName(), field.get(deepCopy), field.get(copy));
+			if (!(value instanceof String || value instanceof Enum || field.getType().isPrimitive())) {
+				assertNotSame(field.getName() + " is shared", value, field.get(copy));
+			}
+		}
+	}
+
+	@Test
+	public void testCopyIsIndependent() {
+		RepositoryModel model = newRepositoryModel(2, 1);
+		RepositoryModel copy = model.copy();
+		copy.addFork("~other/test.git");
+		copy.addOwner("other");
+		copy.customFields.put("other", "value");
+		assertEquals(2, model.forks.size());
+		assertEquals(1, model.owners.size());
+		assertEquals(1, model.customFields.size());
+	}
+}
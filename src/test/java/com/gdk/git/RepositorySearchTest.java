@@ -0,0 +1,157 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+import com.gdk.git.Constants.SearchType;
+
+public class RepositorySearchTest extends org.junit.Assert {
+
+	@Test
+	public void testSearch() throws Exception {
+		File folder = Files.createTempDirectory("repositorysearch").toFile();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		List<TestRepository> tests = new ArrayList<TestRepository>();
+		try {
+			final Map<String, File> repositories = new LinkedHashMap<String, File>();
+			for (int n = 0; n < 4; n++) {
+				TestRepository test = new TestRepository("repositorysearch");
+				tests.add(test);
+				// interleaved commit dates
+				test.time += 15 * n;
+				for (int i = 0; i < 6; i++) {
+					test.change("a.txt", i, n % 2 == 0 ? "alice" : "bob");
+				}
+				repositories.put("repo" + n + ".git", test.repository.getDirectory());
+			}
+			IRepositoryManager manager = newManager(repositories);
+			List<String> names = new ArrayList<String>(repositories.keySet());
+			names.add("missing.git");
+
+			List<RepositoryCommit> expected = new ArrayList<RepositoryCommit>();
+			for (String name : repositories.keySet()) {
+				try (Repository repository = manager.getRepository(name)) {
+					for (RevCommit commit : JGitUtils.searchRevlogs(repository, null, "change", SearchType.COMMIT, 0, -1)) {
+						expected.add(new RepositoryCommit(name, "refs/heads/master", commit));
+					}
+				}
+			}
+			Collections.sort(expected);
+			assertEquals(24, expected.size());
+
+			final List<RepositoryCommit> streamed = new ArrayList<RepositoryCommit>();
+			RepositorySearch search = new RepositorySearch(manager, executor, names, "CHANGE", SearchType.COMMIT, 0);
+			List<RepositoryCommit> results = search.run(10, new RepositorySearch.Listener() {
+				@Override
+				public void onCommit(RepositoryCommit commit) {
+					streamed.add(commit);
+				}
+			});
+			assertEquals(expected.subList(0, 10), results);
+			assertEquals(results, streamed);
+			assertEquals(results, search.getResults());
+			assertTrue(search.getIncompleteRepositories().isEmpty());
+			for (RepositoryCommit commit : results) {
+				assertTrue(commit.getShortMessage().startsWith("change "));
+				assertEquals("refs/heads/master", commit.branch);
+			}
+
+			search = new RepositorySearch(manager, executor, names, "change", SearchType.COMMIT, 0);
+			assertEquals(expected, search.run(100, null));
+
+			search = new RepositorySearch(manager, executor, names, "bob", SearchType.AUTHOR, 0);
+			results = search.run(100, null);
+			assertEquals(12, results.size());
+			for (RepositoryCommit commit : results) {
+				assertTrue(commit.repository, commit.repository.equals("repo1.git") || commit.repository.equals("repo3.git"));
+			}
+
+			search = new RepositorySearch(manager, executor, names, "missing", SearchType.COMMIT, 0);
+			assertTrue(search.run(10, null).isEmpty());
+
+			// a repository which exceeds its budget lists the matches it found
+			File large = new File(folder, "large.git");
+			createHistory(large, 50_000);
+			repositories.put("large.git", large);
+			search = new RepositorySearch(manager, executor, Arrays.asList("large.git", "repo0.git"), "commit",
+					SearchType.COMMIT, 1);
+			results = search.run(100_000, null);
+			assertTrue(search.getIncompleteRepositories().contains("large.git"));
+			assertTrue(results.size() < 50_000);
+			List<RepositoryCommit> sorted = new ArrayList<RepositoryCommit>(results);
+			Collections.sort(sorted);
+			assertEquals(sorted, results);
+		} finally {
+			executor.shutdownNow();
+			for (TestRepository test : tests) {
+				test.close();
+			}
+			FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
+		}
+	}
+
+	/**
+	 * A repository manager which only opens the repositories.
+	 */
+	private static IRepositoryManager newManager(final Map<String, File> repositories) {
+		return (IRepositoryManager) Proxy.newProxyInstance(IRepositoryManager.class.getClassLoader(),
+				new Class<?>[] { IRepositoryManager.class }, (proxy, method, args) -> {
+					if (method.getName().equals("getRepository")) {
+						File gitDir = repositories.get(args[0]);
+						return gitDir == null ? null : new FileRepositoryBuilder().setGitDir(gitDir).build();
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	private static void createHistory(File gitDir, int commits) throws Exception {
+		try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).setBare().build()) {
+			repository.create(true);
+			ObjectId tip = null;
+			try (ObjectInserter inserter = ((ObjectDirectory) repository.getObjectDatabase()).newPackInserter()) {
+				ObjectId tree = inserter.insert(new TreeFormatter());
+				for (int i = 0; i < commits; i++) {
+					PersonIdent ident = new PersonIdent("alice", "alice@example.com",
+							Instant.ofEpochSecond(1_600_000_000L + i), ZoneOffset.UTC);
+					CommitBuilder commit = new CommitBuilder();
+					commit.setTreeId(tree);
+					if (tip != null) {
+						commit.setParentId(tip);
+					}
+					commit.setAuthor(ident);
+					commit.setCommitter(ident);
+					commit.setMessage("commit " + i);
+					tip = inserter.insert(commit);
+				}
+				inserter.flush();
+			}
+			RefUpdate update = repository.updateRef("refs/heads/master");
+			update.setNewObjectId(tip);
+			assertEquals(RefUpdate.Result.NEW, update.update());
+		}
+	}
+}
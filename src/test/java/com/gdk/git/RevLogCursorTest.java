@@ -0,0 +1,119 @@
+package com.gdk.git;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+import com.gdk.git.Constants.SearchType;
+import com.gdk.git.JGitUtils.RevLogPage;
+
+public class RevLogCursorTest extends org.junit.Assert {
+
+	@Test
+	public void testToken() {
+		ObjectId a = ObjectId.fromString("0123456789012345678901234567890123456789");
+		ObjectId b = ObjectId.fromString("abcdefabcdefabcdefabcdefabcdefabcdefabcd");
+		RevLogCursor cursor = RevLogCursor.parse(new RevLogCursor(a, Arrays.asList(a, b), Arrays.asList(a), Arrays.asList(b)).toToken());
+		assertEquals(a, cursor.getLastCommit());
+		assertEquals(Arrays.asList(a, b), cursor.getFrontier());
+		assertEquals(Arrays.asList(a), cursor.getSeen());
+		assertEquals(Arrays.asList(b), cursor.getUninteresting());
+
+		// more ids than fit in a short
+		List<ObjectId> seen = new ArrayList<ObjectId>();
+		for (int i = 0; i < 70_000; i++) {
+			seen.add(ObjectId.fromRaw(new int[] { i, 0, 0, 0, 0 }));
+		}
+		cursor = RevLogCursor.parse(new RevLogCursor(a, Arrays.asList(a), seen, Arrays.asList(b)).toToken());
+		assertEquals(seen, cursor.getSeen());
+		assertEquals(Arrays.asList(b), cursor.getUninteresting());
+		try {
+			RevLogCursor.parse("bogus");
+			fail("malformed token");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testPages() throws Exception {
+		try (TestRepository test = new TestRepository("revlogcursor")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			String[] paths = { "a/x.txt", "a/y.txt", "b/x.txt" };
+			for (int i = 0; i < 12; i++) {
+				test.change(paths[i % paths.length], i, "alice");
+			}
+			git.tag().setName("v1").call();
+			// interleaved branches and merges, the merges are committed with
+			// the current time so they are newer than their children
+			for (int n = 0; n < 3; n++) {
+				git.branchCreate().setName("topic" + n).call();
+				test.change("b/x.txt", 100 + n, "alice");
+				git.checkout().setName("topic" + n).call();
+				test.change("a/y.txt", 200 + n, "bob");
+				RevCommit topic = test.change("a/x.txt", 300 + n, "bob");
+				git.checkout().setName("master").call();
+				test.change("b/x.txt", 400 + n, "alice");
+				git.merge().setCommit(true).setMessage("merge " + n).include(topic).call();
+			}
+
+			assertPages(repository, "master", null);
+			assertPages(repository, "master", "a");
+			assertPages(repository, "master", "a/y.txt");
+			assertPages(repository, "master", "missing.txt");
+			assertPages(repository, "v1..master", null);
+			assertPages(repository, "topic0..master", "a");
+			assertSearchPages(repository, "bob", SearchType.AUTHOR);
+			assertSearchPages(repository, "change 1", SearchType.COMMIT);
+
+			// pages walk the commit-graph as well
+			assertTrue(CommitGraphs.write(repository, true));
+			assertPages(repository, "master", null);
+			assertPages(repository, "master", "a/y.txt");
+			assertPages(repository, "v1..master", "a");
+			assertSearchPages(repository, "bob", SearchType.AUTHOR);
+
+			// the last page has no token
+			RevLogPage page = JGitUtils.getRevLogPage(repository, "master", null, null, -1);
+			assertFalse(page.hasNext());
+			assertEquals(JGitUtils.getRevLog(repository, "master", 0, -1), page.commits);
+		}
+	}
+
+	private static void assertPages(Repository repository, String objectId, String path) {
+		List<RevCommit> expected = JGitUtils.getRevLog(repository, objectId, path, 0, -1);
+		for (int size = 1; size <= 4; size++) {
+			List<RevCommit> actual = new ArrayList<RevCommit>();
+			String token = null;
+			do {
+				RevLogPage page = JGitUtils.getRevLogPage(repository, objectId, path, token, size);
+				assertTrue(page.commits.size() <= size);
+				for (RevCommit commit : page.commits) {
+					assertNotNull(commit.getFullMessage());
+				}
+				actual.addAll(page.commits);
+				token = page.nextToken;
+			} while (token != null);
+			assertEquals(objectId + " " + path + " by " + size, expected, actual);
+		}
+	}
+
+	private static void assertSearchPages(Repository repository, String value, SearchType type) {
+		List<RevCommit> expected = JGitUtils.searchRevlogs(repository, "master", value, type, 0, -1);
+		assertFalse(expected.isEmpty());
+		List<RevCommit> actual = new ArrayList<RevCommit>();
+		String token = null;
+		do {
+			RevLogPage page = JGitUtils.searchRevlogsPage(repository, "master", value, type, token, 2);
+			actual.addAll(page.commits);
+			token = page.nextToken;
+		} while (token != null);
+		assertEquals(value, expected, actual);
+	}
+}
@@ -0,0 +1,126 @@
+package com.gdk.git;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+import com.gdk.git.Constants.SearchType;
+import com.gdk.git.JGitUtils.RevLogVisitor;
+
+public class RevLogVisitorTest extends org.junit.Assert {
+
+	/**
+	 * Collects the visited commits and their messages, which are only
+	 * available during the visit.
+	 */
+	private static class Collector implements RevLogVisitor {
+
+		final List<RevCommit> visited = new ArrayList<RevCommit>();
+
+		final List<String> messages = new ArrayList<String>();
+
+		final int limit;
+
+		Collector(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean visit(RevCommit commit) {
+			visited.add(commit);
+			messages.add(commit.getFullMessage());
+			return limit < 0 || visited.size() < limit;
+		}
+	}
+
+	@Test
+	public void testWalk() throws Exception {
+		try (TestRepository test = new TestRepository("revlogvisitor")) {
+			Git git = test.git;
+			Repository repository = test.repository;
+			String[] paths = { "a/x.txt", "a/y.txt", "b/x.txt" };
+			for (int i = 0; i < 9; i++) {
+				test.change(paths[i % paths.length], i, i < 6 ? "alice" : "bob");
+			}
+			git.tag().setName("v1").call();
+			git.branchCreate().setName("topic").call();
+			test.change("b/x.txt", 10, "alice");
+			git.checkout().setName("topic").call();
+			RevCommit topic = test.change("a/y.txt", 11, "bob");
+			git.checkout().setName("master").call();
+			git.merge().setCommit(true).setMessage("merge").include(topic).call();
+
+			for (boolean graph : new boolean[] { false, true }) {
+				if (graph) {
+					assertTrue(CommitGraphs.write(repository, false));
+				}
+				assertVisits(repository, "master", null);
+				assertVisits(repository, "master", "a");
+				assertVisits(repository, "v1..master", null);
+				assertVisits(repository, "v1..master", "a/y.txt");
+
+				// early termination
+				Collector collector = new Collector(3);
+				assertEquals(3, JGitUtils.walkRevLog(repository, "master", null, collector));
+				assertEquals(JGitUtils.getRevLog(repository, "master", 0, 3), collector.visited);
+
+				// the bodies are released after the visit
+				for (RevCommit commit : collector.visited) {
+					assertNull(commit.getRawBuffer());
+				}
+
+				// headers only
+				final List<RevCommit> headers = new ArrayList<RevCommit>();
+				JGitUtils.walkRevLog(repository, "master", null, new RevLogVisitor() {
+					@Override
+					public boolean visit(RevCommit commit) {
+						if (commit.getRawBuffer() == null) {
+							headers.add(commit);
+						}
+						return true;
+					}
+
+					@Override
+					public boolean requiresCommitBody() {
+						return false;
+					}
+				});
+				assertEquals(JGitUtils.getRevLog(repository, -1), headers);
+
+				collector = new Collector(-1);
+				JGitUtils.searchRevlogs(repository, "master", "bob", SearchType.AUTHOR, collector);
+				assertEquals(JGitUtils.searchRevlogs(repository, "master", "bob", SearchType.AUTHOR, 0, -1),
+						collector.visited);
+
+				Date since = new Date((test.time - 200) * 1000L);
+				collector = new Collector(-1);
+				JGitUtils.walkRevLogSince(repository, "master", since, collector);
+				assertEquals(JGitUtils.getRevLog(repository, "master", since), collector.visited);
+			}
+
+			// alice, bob and the author of the merge
+			List<Metric> metrics = MetricUtils.getAuthorMetrics(repository, "master", false);
+			assertEquals(3, metrics.size());
+			assertEquals("alice", metrics.get(0).name);
+			assertEquals(7, metrics.get(0).count, 0);
+			assertEquals(12, MetricUtils.getDateMetrics(repository, "master", true, null, TimeZone.getDefault())
+					.get(0).count, 0);
+		}
+	}
+
+	private static void assertVisits(Repository repository, String objectId, String path) {
+		List<RevCommit> expected = JGitUtils.getRevLog(repository, objectId, path, 0, -1);
+		Collector collector = new Collector(-1);
+		assertEquals(expected.size(), JGitUtils.walkRevLog(repository, objectId, path, collector));
+		assertEquals(objectId + " " + path, expected, collector.visited);
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getFullMessage(), collector.messages.get(i));
+		}
+	}
+}
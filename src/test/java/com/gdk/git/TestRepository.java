@@ -0,0 +1,85 @@
+package com.gdk.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * A repository with a work tree in a temporary folder which is deleted on
+ * close. The commits are dated one minute apart from a fixed time so that the
+ * tests do not depend on the clock.
+ */
+public class TestRepository implements AutoCloseable {
+
+	public final File folder;
+
+	public final Git git;
+
+	public final Repository repository;
+
+	/**
+	 * The time of the last commit in seconds, tests may move it to commit out
+	 * of order.
+	 */
+	public long time = 1_700_000_000L;
+
+	public TestRepository(String prefix) throws Exception {
+		this.folder = Files.createTempDirectory(prefix).toFile();
+		this.git = Git.init().setDirectory(folder).setInitialBranch("master").call();
+		this.repository = git.getRepository();
+	}
+
+	/**
+	 * Writes a file of the work tree and adds it to the index.
+	 */
+	public void write(String path, byte[] content) throws Exception {
+		File file = new File(folder, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content);
+		git.add().addFilepattern(path).call();
+	}
+
+	public void write(String path, String content) throws Exception {
+		write(path, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Commits the index as alice.
+	 */
+	public RevCommit commit(String message) throws Exception {
+		return commit(message, "alice");
+	}
+
+	public RevCommit commit(String message, String name) throws Exception {
+		PersonIdent ident = new PersonIdent(name, name + "@example.com", Instant.ofEpochSecond(time += 60),
+				ZoneOffset.UTC);
+		return git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+	}
+
+	/**
+	 * Writes "change i" to a file and commits it as alice.
+	 */
+	public RevCommit change(String path, int i) throws Exception {
+		return change(path, i, "alice");
+	}
+
+	public RevCommit change(String path, int i, String name) throws Exception {
+		write(path, "change " + i);
+		return commit("change " + i + " of " + path, name);
+	}
+
+	@Override
+	public void close() throws IOException {
+		git.close();
+		FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
+	}
+}
@@ -0,0 +1,174 @@
+package com.gdk.git;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.junit.Test;
+
+public class TreeListingCacheTest extends org.junit.Assert {
+
+	@Test
+	public void testListings() throws Exception {
+		TreeListingCache cache = TreeListingCache.instance();
+		cache.clear();
+		try (TestRepository test = new TestRepository("treelisting")) {
+			Repository repository = test.repository;
+			test.write("README.md", "readme");
+			test.write("docs/guide.md", "guide");
+			test.write("docs/api/index.mkd", "index");
+			test.write("src/main/App.java", "app");
+			test.write("src/main/Util.java", "util");
+			RevCommit first = test.commit("first");
+			test.write("README.md", "changed readme");
+			RevCommit second = test.commit("second");
+
+			for (RevCommit commit : new RevCommit[] { first, second }) {
+				for (String path : new String[] { null, "docs", "src/main", "docs/api" }) {
+					assertEquals(list(repository, commit, path), describe(JGitUtils.getFilesInPath(repository, path, commit)));
+				}
+				assertEquals(documents(repository, commit, ".md", ".mkd"), describe(
+						JGitUtils.getDocuments(repository, Arrays.asList("md", ".mkd"), commit.getName())));
+				assertEquals(list(repository, commit, null),
+						describe(JGitUtils.getDocuments(repository, null, commit.getName())));
+			}
+			assertTrue(JGitUtils.getFilesInPath(repository, "README.md", first).isEmpty());
+
+			// the unchanged folders of the second commit are shared with the first
+			long misses = cache.stats().missCount();
+			List<PathModel> docs = JGitUtils.getFilesInPath(repository, "docs", second);
+			assertEquals(misses, cache.stats().missCount());
+			for (PathModel doc : docs) {
+				assertEquals(second.getName(), doc.commitId);
+			}
+			JGitUtils.getFilesInPath2(repository, "docs", first);
+			JGitUtils.getFilesInPath2(repository, "docs", second);
+			assertEquals(misses + 1, cache.stats().missCount());
+			assertTrue(cache.stats().hitRate() > 0);
+
+			// the listings are copied for every request
+			docs.clear();
+			assertEquals(2, JGitUtils.getFilesInPath(repository, "docs", second).size());
+
+			// the listings are bounded by their estimated memory
+			cache.setCacheSize(100);
+			assertEquals(list(repository, second, null), describe(JGitUtils.getFilesInPath(repository, null, second)));
+			assertEquals(0, cache.size());
+		} finally {
+			cache.setCacheSize(TreeListingCache.DEFAULT_SIZE);
+		}
+	}
+
+	@Test
+	public void testMissingBlob() throws Exception {
+		TreeListingCache cache = TreeListingCache.instance();
+		cache.clear();
+		try (TestRepository test = new TestRepository("treelisting")) {
+			Repository repository = test.repository;
+			test.write("README.md", "readme");
+			RevCommit first = test.commit("first");
+			RevCommit broken;
+			try (ObjectInserter inserter = repository.newObjectInserter()) {
+				TreeFormatter tree = new TreeFormatter();
+				tree.append("README.md", FileMode.REGULAR_FILE, repository.resolve("master:README.md"));
+				tree.append("missing.txt", FileMode.REGULAR_FILE,
+						ObjectId.fromString("0123456789012345678901234567890123456789"));
+				CommitBuilder commit = new CommitBuilder();
+				commit.setTreeId(inserter.insert(tree));
+				commit.setParentId(first);
+				commit.setAuthor(first.getAuthorIdent());
+				commit.setCommitter(first.getCommitterIdent());
+				commit.setMessage("broken");
+				ObjectId id = inserter.insert(commit);
+				inserter.flush();
+				broken = repository.parseCommit(id);
+			}
+
+			// a blob which can not be read is listed with size 0, the listing
+			// is not cached
+			List<PathModel> files = JGitUtils.getFilesInPath(repository, null, broken);
+			assertEquals(2, files.size());
+			assertEquals("missing.txt", files.get(1).name);
+			assertEquals(0, files.get(1).size);
+			assertEquals(6, files.get(0).size);
+			List<PathModel> documents = JGitUtils.getDocuments(repository, Arrays.asList("txt"), broken.getName());
+			assertEquals(1, documents.size());
+			assertEquals("missing.txt", documents.get(0).path);
+			assertEquals(broken.getName(), documents.get(0).commitId);
+			assertEquals(0, cache.size());
+			assertEquals(1, JGitUtils.getFilesInPath(repository, null, first).size());
+			assertEquals(1, cache.size());
+		} finally {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Lists the entries of a folder with a tree walk.
+	 */
+	private static String list(Repository repository, RevCommit commit, String path) throws Exception {
+		List<PathModel> list = new ArrayList<PathModel>();
+		try (TreeWalk tw = new TreeWalk(repository)) {
+			tw.addTree(commit.getTree());
+			if (path != null) {
+				tw.setFilter(PathFilter.create(path));
+			}
+			while (tw.next()) {
+				if (path != null && tw.getPathString().equals(path)) {
+					tw.enterSubtree();
+				} else if (path == null || tw.getPathString().startsWith(path + "/")) {
+					list.add(toPathModel(repository, tw, path == null ? 0 : path.length() + 1, commit));
+				} else if (tw.isSubtree()) {
+					tw.enterSubtree();
+				}
+			}
+		}
+		Collections.sort(list);
+		return describe(list);
+	}
+
+	private static String documents(Repository repository, RevCommit commit, String... suffixes) throws Exception {
+		List<PathModel> list = new ArrayList<PathModel>();
+		try (TreeWalk tw = new TreeWalk(repository)) {
+			tw.addTree(commit.getTree());
+			tw.setRecursive(true);
+			while (tw.next()) {
+				for (String suffix : suffixes) {
+					if (PathSuffixFilter.create(suffix).include(tw)) {
+						list.add(toPathModel(repository, tw, 0, commit));
+						break;
+					}
+				}
+			}
+		}
+		Collections.sort(list);
+		return describe(list);
+	}
+
+	private static PathModel toPathModel(Repository repository, TreeWalk tw, int offset, RevCommit commit)
+			throws Exception {
+		long size = tw.isSubtree() ? 0 : repository.open(tw.getObjectId(0)).getSize();
+		return new PathModel(tw.getPathString().substring(offset), tw.getPathString(), null, size,
+				tw.getFileMode(0).getBits(), tw.getObjectId(0).getName(), commit.getName());
+	}
+
+	private static String describe(List<PathModel> files) {
+		List<String> list = new ArrayList<String>();
+		for (PathModel file : files) {
+			list.add(file.name + "|" + file.path + "|" + file.size + "|" + Integer.toOctalString(file.mode) + "|"
+					+ file.objectId + "|" + file.commitId);
+		}
+		return list.toString();
+	}
+}